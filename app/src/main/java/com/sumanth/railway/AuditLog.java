@@ -0,0 +1,241 @@
+package com.sumanth.railway;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only backup log of registrations, profile changes, bookings and cancellations, one
+ * CSV line per event: timestamp, event, then the event's fields. Callers only enqueue; a single
+ * writer thread batches lines into a buffer, writes them through a FileChannel, fsyncs once per
+ * flush interval and rotates the file when it reaches its size limit. A full queue refuses the
+ * record instead of blocking; every record that was accepted is on disk once {@link #close()} returns.
+ */
+class AuditLog implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(AuditLog.class);
+    static final int DEFAULT_QUEUE_CAPACITY = 65_536;
+    static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMillis(200);
+    static final long DEFAULT_MAX_FILE_BYTES = 64L * 1024 * 1024;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final DateTimeFormatter ROTATED_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final String STOP = new String("STOP");
+    // Refusals come in bursts when the disk stalls; one error per window is enough to raise the alarm
+    private static final long ALERT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    enum Event {
+        USER_REGISTERED, PROFILE_UPDATED, PASSWORD_CHANGED,
+        RESERVATION_BOOKED, RESERVATION_CANCELLED, PNR_BOOKED, WAITLIST_PROMOTED
+    }
+
+    record Stats(long appended, long refused, long bytesWritten, long syncs, long rotations, int queueDepth) {}
+
+    private final Path file;
+    private final long flushNanos;
+    private final long maxFileBytes;
+    private final BlockingQueue<String> queue;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    // Appenders share the read side; close takes the write side so nothing is accepted after the stop marker
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private final Thread writer;
+    private boolean closed;
+    private FileChannel channel;
+    private long fileBytes;
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder rotations = new LongAdder();
+    private final AtomicLong lastAlert = new AtomicLong(System.nanoTime() - ALERT_INTERVAL_NANOS);
+
+    AuditLog(Path file, Duration flushInterval, long maxFileBytes, int queueCapacity) throws IOException {
+        this.file = file;
+        this.flushNanos = flushInterval.toNanos();
+        this.maxFileBytes = maxFileBytes;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        this.channel = open();
+
+        this.writer = new Thread(this::run, "audit-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        logger.info("Audit log {}: flush every {} ms, rotate at {} MB", file, flushInterval.toMillis(),
+            maxFileBytes / (1024 * 1024));
+    }
+
+    // For callers that keep no backup, such as the benchmarks
+    static AuditLog disabled() {
+        return new AuditLog();
+    }
+
+    private AuditLog() {
+        this.file = null;
+        this.flushNanos = 0;
+        this.maxFileBytes = 0;
+        this.queue = null;
+        this.writer = null;
+    }
+
+    // Never blocks on I/O; false when the record was refused because the queue is full or the log closed
+    boolean append(Event event, Object... fields) {
+        if (queue == null) return true;
+
+        StringBuilder line = new StringBuilder(128).append(LocalDateTime.now()).append(',').append(event);
+        for (Object field : fields) {
+            line.append(',').append(escape(String.valueOf(field)));
+        }
+
+        closeLock.readLock().lock();
+        try {
+            if (!closed && queue.offer(line.toString())) {
+                appended.increment();
+                return true;
+            }
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        refused.increment();
+        // Only the event type: the fields carry Aadhaar numbers, phone numbers and addresses
+        long now = System.nanoTime();
+        long last = lastAlert.get();
+        if (now - last >= ALERT_INTERVAL_NANOS && lastAlert.compareAndSet(last, now)) {
+            logger.error("Audit log refused a {} record; {} refused since start, the backup is incomplete",
+                event, refused.sum());
+        }
+        return false;
+    }
+
+    Stats stats() {
+        return new Stats(appended.sum(), refused.sum(), bytesWritten.sum(), syncs.sum(), rotations.sum(),
+            queue == null ? 0 : queue.size());
+    }
+
+    @Override
+    public void close() {
+        if (queue == null) return;
+        closeLock.writeLock().lock();
+        try {
+            if (closed) return;
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+
+        try {
+            // Behind every accepted record, so the writer drains them all before it stops
+            queue.put(STOP);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long nextFlush = System.nanoTime() + flushNanos;
+        while (true) {
+            try {
+                String line = queue.poll(Math.max(0, nextFlush - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (line == STOP) break;
+                if (line != null) write(line);
+
+                if (System.nanoTime() >= nextFlush) {
+                    sync();
+                    nextFlush = System.nanoTime() + flushNanos;
+                }
+            } catch (InterruptedException e) {
+                // Only close() stops the writer
+            } catch (IOException e) {
+                logger.error("Audit log write failed: {}", e.getMessage(), e);
+            }
+        }
+
+        try {
+            sync();
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Audit log close failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void write(String line) throws IOException {
+        byte[] bytes = (line + '\n').getBytes(StandardCharsets.UTF_8);
+        if (fileBytes + buffer.position() + bytes.length > maxFileBytes && fileBytes + buffer.position() > 0) {
+            rotate();
+        }
+        if (bytes.length > buffer.remaining()) {
+            drainBuffer();
+        }
+        if (bytes.length > buffer.capacity()) {
+            writeFully(ByteBuffer.wrap(bytes));
+        } else {
+            buffer.put(bytes);
+        }
+    }
+
+    private void sync() throws IOException {
+        if (buffer.position() == 0) return;
+        drainBuffer();
+        channel.force(false);
+        syncs.increment();
+    }
+
+    private void drainBuffer() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            int written = channel.write(source);
+            fileBytes += written;
+            bytesWritten.add(written);
+        }
+    }
+
+    private void rotate() throws IOException {
+        sync();
+        channel.close();
+        String base = file.getFileName() + "." + LocalDateTime.now().format(ROTATED_SUFFIX);
+        Path rotated = file.resolveSibling(base);
+        // Two rotations in the same millisecond must not overwrite each other
+        for (int n = 1; Files.exists(rotated); n++) {
+            rotated = file.resolveSibling(base + "-" + n);
+        }
+        Files.move(file, rotated, StandardCopyOption.ATOMIC_MOVE);
+        channel = open();
+        rotations.increment();
+        logger.info("Audit log rotated to {}", rotated);
+    }
+
+    private FileChannel open() throws IOException {
+        FileChannel opened = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+        fileBytes = opened.size();
+        return opened;
+    }
+
+    private static String escape(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
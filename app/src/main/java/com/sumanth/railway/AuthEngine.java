@@ -0,0 +1,156 @@
+package com.sumanth.railway;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.mindrot.jbcrypt.BCrypt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs BCrypt hashing and verification on its own bounded pool so a burst of logins cannot take
+ * every CPU from booking traffic. Work beyond the queue bound is refused rather than queued, and
+ * usernames with repeated failures are throttled before any hashing is done for them.
+ */
+class AuthEngine implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(AuthEngine.class);
+    // Same as BCrypt.gensalt()
+    static final int DEFAULT_COST = 10;
+    static final int DEFAULT_QUEUE_CAPACITY = 256;
+    static final int MAX_FAILED_ATTEMPTS = 5;
+    static final Duration THROTTLE_WINDOW = Duration.ofMinutes(15);
+    private static final long TASK_TIMEOUT_SECONDS = 10;
+    // Expired throttle entries are swept once this many usernames are tracked
+    private static final int MAX_TRACKED_USERNAMES = 100_000;
+
+    record Stats(long hashes, long verifications, long rejected, long throttled, long rehashes,
+                 int queueDepth, int activeThreads, int threads, int cost) {}
+
+    private record Attempts(int failures, long windowStart) {}
+
+    private final int cost;
+    private final long windowNanos = THROTTLE_WINDOW.toNanos();
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Attempts> attempts = new ConcurrentHashMap<>();
+
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder verifications = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder rehashes = new LongAdder();
+
+    AuthEngine(int threads, int queueCapacity, int cost) {
+        if (cost < 4 || cost > 30) throw new IllegalArgumentException("BCrypt cost must be between 4 and 30");
+        this.cost = cost;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "auth-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+        logger.info("Auth engine started: {} threads, queue {}, BCrypt cost {}", threads, queueCapacity, cost);
+    }
+
+    // Half the cores, so hashing can never starve the request threads completely
+    static int defaultThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    String hash(String password) throws ServiceException {
+        hashes.increment();
+        return run(() -> BCrypt.hashpw(password, BCrypt.gensalt(cost)));
+    }
+
+    boolean verify(String password, String hash) throws ServiceException {
+        verifications.increment();
+        return run(() -> BCrypt.checkpw(password, hash));
+    }
+
+    // True for hashes made with a different cost than the configured one
+    boolean needsRehash(String hash) {
+        try {
+            return Integer.parseInt(hash.substring(4, 6)) != cost;
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    void rehashed() {
+        rehashes.increment();
+    }
+
+    void checkThrottle(String username) throws ServiceException {
+        Attempts current = attempts.get(username);
+        if (current == null || current.failures() < MAX_FAILED_ATTEMPTS) return;
+
+        long elapsed = System.nanoTime() - current.windowStart();
+        if (elapsed >= windowNanos) {
+            attempts.remove(username, current);
+            return;
+        }
+        throttled.increment();
+        long minutes = Math.max(1, TimeUnit.NANOSECONDS.toMinutes(windowNanos - elapsed));
+        throw new ServiceException(ServiceException.Kind.THROTTLED,
+            "Too many failed login attempts. Try again in " + minutes + " minute(s).");
+    }
+
+    void recordFailure(String username) {
+        long now = System.nanoTime();
+        attempts.compute(username, (key, current) ->
+            current == null || now - current.windowStart() >= windowNanos
+                ? new Attempts(1, now)
+                : new Attempts(current.failures() + 1, current.windowStart()));
+
+        if (attempts.size() > MAX_TRACKED_USERNAMES) {
+            attempts.values().removeIf(entry -> now - entry.windowStart() >= windowNanos);
+        }
+    }
+
+    void recordSuccess(String username) {
+        attempts.remove(username);
+    }
+
+    Stats stats() {
+        return new Stats(hashes.sum(), verifications.sum(), rejected.sum(), throttled.sum(), rehashes.sum(),
+            executor.getQueue().size(), executor.getActiveCount(), executor.getPoolSize(), cost);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private <T> T run(Callable<T> task) throws ServiceException {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ServiceException(ServiceException.Kind.UNAVAILABLE,
+                "The system is busy signing people in. Please try again shortly.");
+        }
+
+        try {
+            return future.get(TASK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.increment();
+            throw new ServiceException(ServiceException.Kind.UNAVAILABLE,
+                "The system is busy signing people in. Please try again shortly.");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ServiceException(ServiceException.Kind.UNAVAILABLE, "Sign-in was interrupted");
+        } catch (ExecutionException e) {
+            // BCrypt only fails on malformed hashes or salts
+            if (e.getCause() instanceof IllegalArgumentException cause) throw cause;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
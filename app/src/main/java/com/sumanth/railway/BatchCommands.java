@@ -0,0 +1,347 @@
+package com.sumanth.railway;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scripted changes, one command per line, read from a file or standard input:
+ *
+ * <pre>
+ * add-train,12951,Rajdhani Express,Mumbai,Delhi,400,AC coaches only
+ * update-train,12951,seats,450
+ * remove-train,12951
+ * book,asha_k,12951,2026-11-02,lower,Y
+ * cancel,asha_k,4711
+ * update-profile,asha_k,phone,9876543210
+ * </pre>
+ *
+ * Fields are comma-separated and may be double-quoted, as in the user import; blank lines and
+ * lines starting with # are skipped. Users are named by username, and every command is checked
+ * with the rules the console and the HTTP API apply.
+ *
+ * <p>Runs of up to {@value #GROUP_SIZE} consecutive commands of the same kind go to the service's
+ * bulk calls together, so each run costs one transaction per shard with batched statements while
+ * commands still take effect in file order. The outcome of every command is streamed to a results
+ * file in the same order: its line number, command, OK or the reason it was refused, and a detail.
+ */
+class BatchCommands {
+    private static final Logger logger = LoggerFactory.getLogger(BatchCommands.class);
+    static final int GROUP_SIZE = 500;
+
+    enum Kind {
+        ADD_TRAIN("add-train", 5, 6), UPDATE_TRAIN("update-train", 3, 3), REMOVE_TRAIN("remove-train", 1, 1),
+        BOOK("book", 5, 5), CANCEL("cancel", 2, 2), UPDATE_PROFILE("update-profile", 3, 3);
+
+        final String command;
+        // Fields after the command name
+        final int minFields;
+        final int maxFields;
+
+        Kind(String command, int minFields, int maxFields) {
+            this.command = command;
+            this.minFields = minFields;
+            this.maxFields = maxFields;
+        }
+
+        static Kind of(String command) {
+            for (Kind kind : values()) {
+                if (kind.command.equals(command)) return kind;
+            }
+            return null;
+        }
+    }
+
+    record Report(long commands, long succeeded, long refused, long failed, Path results, long elapsedMillis) {}
+
+    // error is set when the line could not be read as a command; args excludes the command name
+    private record Command(long lineNo, Kind kind, List<String> args, ServiceException error) {}
+
+    private record Result(String status, String detail) {}
+
+    private final RailwayService service;
+    private long succeeded;
+    private long refused;
+    private long failed;
+
+    BatchCommands(RailwayService service) {
+        this.service = service;
+    }
+
+    Report run(Path input, Path results) throws IOException, SQLException {
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            return run(reader, results);
+        }
+    }
+
+    Report run(BufferedReader reader, Path results) throws IOException, SQLException {
+        long started = System.nanoTime();
+        long commands = 0;
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(results, StandardCharsets.UTF_8))) {
+            out.println("line,command,result,detail");
+            List<Command> group = new ArrayList<>(GROUP_SIZE);
+            Kind groupKind = null;
+
+            String line;
+            long lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank() || line.stripLeading().startsWith("#")) continue;
+                commands++;
+                Command command = parse(lineNo, line);
+                // Unreadable lines ride along with whatever group they land in
+                if (command.kind() != null && groupKind != null && command.kind() != groupKind
+                        || group.size() == GROUP_SIZE) {
+                    apply(groupKind, group, out);
+                    group.clear();
+                    groupKind = null;
+                }
+                if (command.kind() != null) groupKind = command.kind();
+                group.add(command);
+            }
+            apply(groupKind, group, out);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        logger.info("Batch of {} commands: {} succeeded, {} refused, {} failed in {} ms",
+            commands, succeeded, refused, failed, elapsed);
+        return new Report(commands, succeeded, refused, failed, results, elapsed);
+    }
+
+    private static Command parse(long lineNo, String line) {
+        List<String> fields = UserImport.split(line);
+        String name = fields.get(0).trim().toLowerCase(Locale.ROOT);
+        Kind kind = Kind.of(name);
+        List<String> args = fields.subList(1, fields.size()).stream().map(String::trim).toList();
+        if (kind == null) {
+            return new Command(lineNo, null, args, invalid("Unknown command: " + name));
+        }
+        if (args.size() < kind.minFields || args.size() > kind.maxFields) {
+            String expected = kind.minFields == kind.maxFields ? String.valueOf(kind.minFields)
+                : kind.minFields + " to " + kind.maxFields;
+            return new Command(lineNo, kind, args,
+                invalid(kind.command + " takes " + expected + " fields, found " + args.size()));
+        }
+        return new Command(lineNo, kind, args, null);
+    }
+
+    private void apply(Kind kind, List<Command> group, PrintWriter out) throws SQLException {
+        if (group.isEmpty()) return;
+        Result[] results = new Result[group.size()];
+        for (int i = 0; i < group.size(); i++) {
+            ServiceException error = group.get(i).error();
+            if (error != null) results[i] = refusal(error);
+        }
+        if (kind != null) {
+            switch (kind) {
+                case ADD_TRAIN -> addTrains(group, results);
+                case UPDATE_TRAIN, REMOVE_TRAIN -> changeTrains(group, results);
+                case BOOK -> book(group, results);
+                case CANCEL -> cancel(group, results);
+                case UPDATE_PROFILE -> updateProfiles(group, results);
+            }
+        }
+        for (int i = 0; i < group.size(); i++) {
+            Command command = group.get(i);
+            Result result = results[i];
+            if (result.status().equals("OK")) {
+                succeeded++;
+            } else if (result.status().equals("FAILED")) {
+                failed++;
+            } else {
+                refused++;
+            }
+            out.println(command.lineNo() + "," + (command.kind() == null ? "" : command.kind().command) + ","
+                + result.status() + "," + quote(result.detail()));
+        }
+    }
+
+    private void addTrains(List<Command> group, Result[] results) throws SQLException {
+        List<Integer> indices = new ArrayList<>();
+        List<RailwayService.Train> trains = new ArrayList<>();
+        for (int i = 0; i < group.size(); i++) {
+            if (results[i] != null) continue;
+            List<String> args = group.get(i).args();
+            try {
+                trains.add(new RailwayService.Train(args.get(1), number(args.get(0), "train number"), args.get(2),
+                    args.get(3), args.size() > 5 ? args.get(5) : "", number(args.get(4), "seats")));
+                indices.add(i);
+            } catch (ServiceException e) {
+                results[i] = refusal(e);
+            }
+        }
+        if (trains.isEmpty()) return;
+        List<RailwayService.BulkResult<RailwayService.Train>> added = service.addTrains(trains);
+        for (int k = 0; k < indices.size(); k++) {
+            results[indices.get(k)] = result(added.get(k), "Train " + trains.get(k).trainNo() + " added");
+        }
+    }
+
+    // Timetable changes are rare, so they go through the single-train calls
+    private void changeTrains(List<Command> group, Result[] results) throws SQLException {
+        for (int i = 0; i < group.size(); i++) {
+            if (results[i] != null) continue;
+            List<String> args = group.get(i).args();
+            try {
+                int trainNo = number(args.get(0), "train number");
+                if (group.get(i).kind() == Kind.REMOVE_TRAIN) {
+                    service.removeTrain(trainNo);
+                    results[i] = new Result("OK", "Train " + trainNo + " removed");
+                } else {
+                    RailwayService.TrainField field = field(RailwayService.TrainField.class, args.get(1));
+                    service.updateTrain(trainNo, field, args.get(2));
+                    results[i] = new Result("OK", "Train " + trainNo + " " + args.get(1) + " updated");
+                }
+            } catch (ServiceException e) {
+                results[i] = refusal(e);
+            } catch (SQLException e) {
+                results[i] = failure(e);
+            }
+        }
+    }
+
+    private void book(List<Command> group, Result[] results) throws SQLException {
+        Map<String, RailwayService.UserAccount> accounts = accounts(group, results);
+        List<Integer> indices = new ArrayList<>();
+        List<RailwayService.BookingRequest> requests = new ArrayList<>();
+        for (int i = 0; i < group.size(); i++) {
+            if (results[i] != null) continue;
+            List<String> args = group.get(i).args();
+            try {
+                requests.add(new RailwayService.BookingRequest(accounts.get(args.get(0)),
+                    number(args.get(1), "train number"), date(args.get(2)), args.get(3), yesNo(args.get(4))));
+                indices.add(i);
+            } catch (ServiceException e) {
+                results[i] = refusal(e);
+            }
+        }
+        if (requests.isEmpty()) return;
+        List<RailwayService.BulkResult<RailwayService.Ticket>> tickets = service.bookAll(requests);
+        for (int k = 0; k < indices.size(); k++) {
+            RailwayService.Ticket ticket = tickets.get(k).value();
+            results[indices.get(k)] = result(tickets.get(k), ticket == null ? ""
+                : "Reservation " + ticket.reservationId() + ", coach " + ticket.coach() + " seat " + ticket.seatNo()
+                    + " (" + ticket.berthType() + ")");
+        }
+    }
+
+    private void cancel(List<Command> group, Result[] results) throws SQLException {
+        Map<String, RailwayService.UserAccount> accounts = accounts(group, results);
+        List<Integer> indices = new ArrayList<>();
+        List<RailwayService.Cancellation> cancellations = new ArrayList<>();
+        for (int i = 0; i < group.size(); i++) {
+            if (results[i] != null) continue;
+            List<String> args = group.get(i).args();
+            try {
+                cancellations.add(new RailwayService.Cancellation(accounts.get(args.get(0)).userId(),
+                    number(args.get(1), "reservation id")));
+                indices.add(i);
+            } catch (ServiceException e) {
+                results[i] = refusal(e);
+            }
+        }
+        if (cancellations.isEmpty()) return;
+        List<RailwayService.BulkResult<Void>> cancelled = service.cancelAll(cancellations);
+        for (int k = 0; k < indices.size(); k++) {
+            results[indices.get(k)] = result(cancelled.get(k),
+                "Reservation " + cancellations.get(k).reservationId() + " cancelled");
+        }
+    }
+
+    private void updateProfiles(List<Command> group, Result[] results) throws SQLException {
+        Map<String, RailwayService.UserAccount> accounts = accounts(group, results);
+        List<Integer> indices = new ArrayList<>();
+        List<RailwayService.ProfileUpdate> updates = new ArrayList<>();
+        for (int i = 0; i < group.size(); i++) {
+            if (results[i] != null) continue;
+            List<String> args = group.get(i).args();
+            try {
+                updates.add(new RailwayService.ProfileUpdate(accounts.get(args.get(0)).userId(),
+                    field(RailwayService.ProfileField.class, args.get(1)), args.get(2)));
+                indices.add(i);
+            } catch (ServiceException e) {
+                results[i] = refusal(e);
+            }
+        }
+        if (updates.isEmpty()) return;
+        List<RailwayService.BulkResult<Void>> updated = service.updateProfiles(updates);
+        for (int k = 0; k < indices.size(); k++) {
+            results[indices.get(k)] = result(updated.get(k), updates.get(k).field().column + " updated");
+        }
+    }
+
+    // Looks up the group's usernames in one query; commands naming an unknown user are refused
+    private Map<String, RailwayService.UserAccount> accounts(List<Command> group, Result[] results)
+            throws SQLException {
+        Set<String> usernames = new LinkedHashSet<>();
+        for (int i = 0; i < group.size(); i++) {
+            if (results[i] == null) usernames.add(group.get(i).args().get(0));
+        }
+        Map<String, RailwayService.UserAccount> accounts = service.findAccounts(usernames);
+        for (int i = 0; i < group.size(); i++) {
+            if (results[i] == null && !accounts.containsKey(group.get(i).args().get(0))) {
+                results[i] = new Result(ServiceException.Kind.NOT_FOUND.name(), "User not found!");
+            }
+        }
+        return accounts;
+    }
+
+    private static Result result(RailwayService.BulkResult<?> result, String detail) {
+        if (result.error() == null) return new Result("OK", detail);
+        return result.error() instanceof ServiceException e ? refusal(e) : failure(result.error());
+    }
+
+    private static Result refusal(ServiceException e) {
+        return new Result(e.getKind().name(), e.getMessage());
+    }
+
+    private static Result failure(Exception e) {
+        return new Result("FAILED", e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+    }
+
+    private static int number(String value, String what) throws ServiceException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw invalid("Invalid " + what + ": " + value);
+        }
+    }
+
+    private static LocalDate date(String value) throws ServiceException {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw invalid("Invalid date (use YYYY-MM-DD): " + value);
+        }
+    }
+
+    private static boolean yesNo(String value) throws ServiceException {
+        if (value.equalsIgnoreCase("Y")) return true;
+        if (value.equalsIgnoreCase("N")) return false;
+        throw invalid("Expected Y or N for meals: " + value);
+    }
+
+    // Field names as the enum spells them, in any case and with - or _ between words
+    private static <E extends Enum<E>> E field(Class<E> type, String name) throws ServiceException {
+        try {
+            return Enum.valueOf(type, name.toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw invalid("Unknown field: " + name);
+        }
+    }
+
+    private static ServiceException invalid(String message) {
+        return new ServiceException(ServiceException.Kind.INVALID, message);
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
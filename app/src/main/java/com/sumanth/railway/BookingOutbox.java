@@ -0,0 +1,274 @@
+package com.sumanth.railway;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Booking and cancellation events, written to the booking_outbox table in the same transaction as
+ * the change they describe and delivered from there to a {@link Sink} by a background publisher.
+ * Rows are deleted only after the sink has accepted them, so delivery is at least once: a batch
+ * interrupted in between is sent again, and consumers drop event ids they have already seen.
+ *
+ * <p>Each shard's events are read in event id order and a train lives on one shard, so a train's
+ * events reach the sink in the order they happened. An event whose transaction commits after a
+ * later id was delivered goes out with the next batch; the two were concurrent, whereas a
+ * cancellation is only ever written after the booking it undoes has committed.
+ */
+final class BookingOutbox implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(BookingOutbox.class);
+    static final int DEFAULT_BATCH_SIZE = 500;
+
+    enum Type { RESERVATION_BOOKED, RESERVATION_CANCELLED }
+
+    // What an event says; stored as its JSON payload. Coach is null for a booking without a berth
+    record Change(Type type, int reservationId, String userId, int trainNo, LocalDate departureDate,
+                  String berthType, boolean meals, String coach, int seatNo) {
+
+        static Change booked(int reservationId, String userId, int trainNo, LocalDate departureDate,
+                             SeatMap.Berth berth, boolean meals) {
+            return new Change(Type.RESERVATION_BOOKED, reservationId, userId, trainNo, departureDate,
+                berth.berthType(), meals, berth.coach(), berth.seatNo());
+        }
+
+        static Change cancelled(int reservationId, String userId, int trainNo, LocalDate departureDate,
+                                String berthType, boolean meals, int coachNo, int seatNo) {
+            return new Change(Type.RESERVATION_CANCELLED, reservationId, userId, trainNo, departureDate,
+                berthType, meals, coachNo > 0 ? SeatMap.coachLabel(coachNo) : null, seatNo);
+        }
+
+        // Field by field rather than through Json's record reflection, which is slow on the booking path
+        String toJson() {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            fields.put("type", type);
+            fields.put("reservationId", reservationId);
+            fields.put("userId", userId);
+            fields.put("trainNo", trainNo);
+            fields.put("departureDate", departureDate);
+            fields.put("berthType", berthType);
+            fields.put("meals", meals);
+            fields.put("coach", coach);
+            fields.put("seatNo", seatNo);
+            return Json.write(fields);
+        }
+    }
+
+    record Event(long eventId, Type type, int trainNo, String payload, Instant createdAt) {
+        // One line of JSON; the payload is JSON already and goes in as it is
+        String toJson() {
+            return "{\"eventId\":" + eventId + ",\"type\":" + Json.write(type) + ",\"trainNo\":" + trainNo +
+                ",\"createdAt\":" + Json.write(createdAt) + ",\"change\":" + payload + "}";
+        }
+    }
+
+    // Lag is the time from the event's transaction to the sink accepting it
+    record Stats(long delivered, long batches, long failures, long pending, long oldestPendingMillis,
+                 long lagP50Millis, long lagP99Millis, long lagMaxMillis) {}
+
+    /** Where events go. A call returns only once the events are stored, since they are deleted after. */
+    interface Sink {
+        void publish(List<Event> events) throws IOException;
+    }
+
+    /**
+     * Writes each batch as one file of JSON lines, named so that the directory listed in name
+     * order gives the batches in delivery order. A file is written under a temporary name, forced
+     * to disk and then renamed, so a consumer never sees part of a batch; it takes a file by moving
+     * or deleting it once the file has been processed.
+     */
+    static final class DirectoryQueue implements Sink {
+        private static final String FILE_PREFIX = "events-";
+        private static final String FILE_SUFFIX = ".jsonl";
+
+        private final Path directory;
+        private long sequence;
+
+        DirectoryQueue(Path directory) throws IOException {
+            this.directory = directory;
+            Files.createDirectories(directory);
+        }
+
+        @Override
+        public synchronized void publish(List<Event> events) throws IOException {
+            Path file = directory.resolve(String.format("%s%013d-%09d%s", FILE_PREFIX, System.currentTimeMillis(),
+                sequence++, FILE_SUFFIX));
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8);
+                for (Event event : events) {
+                    out.write(event.toJson());
+                    out.write('\n');
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private final ShardRouter shards;
+    private final Sink sink;
+    private final int batchSize;
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LatencyHistogram lag = new LatencyHistogram();
+    private ScheduledExecutorService publisher;
+
+    BookingOutbox(ShardRouter shards, Sink sink, int batchSize) {
+        this.shards = shards;
+        this.sink = sink;
+        this.batchSize = batchSize;
+    }
+
+    // Writing, inside the caller's transaction
+
+    static void append(Connection conn, Change change) throws SQLException {
+        append(conn, List.of(change));
+    }
+
+    static void append(Connection conn, List<Change> changes) throws SQLException {
+        if (changes.isEmpty()) return;
+        // The publisher's clock, not the database's, so the lag it measures is not skewed
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO booking_outbox (event_type, train_no, payload, created_at) VALUES (?, ?, ?, ?)")) {
+            for (Change change : changes) {
+                pstmt.setString(1, change.type().name());
+                pstmt.setInt(2, change.trainNo());
+                pstmt.setString(3, change.toJson());
+                pstmt.setTimestamp(4, now);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    // Publishing
+
+    // Drains every shard each interval; a shard whose batch fails is retried on the next round
+    void start(Duration interval) {
+        publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "outbox-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publisher.scheduleWithFixedDelay(this::drain, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // Delivers everything waiting on every shard; returns how many events went out
+    int drain() {
+        int count = 0;
+        for (ShardRouter.Shard shard : shards.shards()) {
+            try {
+                while (true) {
+                    List<Event> batch = read(shard.primary());
+                    if (batch.isEmpty()) break;
+                    sink.publish(batch);
+                    delete(shard.primary(), batch);
+                    delivered(batch);
+                    count += batch.size();
+                    if (batch.size() < batchSize) break;
+                }
+            } catch (SQLException | IOException | RuntimeException e) {
+                failures.increment();
+                logger.error("Publishing outbox events from shard {} failed: {}", shard.name(), e.getMessage(), e);
+            }
+        }
+        return count;
+    }
+
+    private List<Event> read(DataSource dataSource) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT event_id, event_type, train_no, payload, created_at FROM booking_outbox " +
+                 "ORDER BY event_id LIMIT ?")) {
+
+            pstmt.setInt(1, batchSize);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                List<Event> events = new ArrayList<>();
+                while (rs.next()) {
+                    events.add(new Event(rs.getLong("event_id"), Type.valueOf(rs.getString("event_type")),
+                        rs.getInt("train_no"), rs.getString("payload"), rs.getTimestamp("created_at").toInstant()));
+                }
+                return events;
+            }
+        }
+    }
+
+    // By id, not by range: an id below the batch's last may still belong to an open transaction
+    private static void delete(DataSource dataSource, List<Event> batch) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "DELETE FROM booking_outbox WHERE event_id IN (" + "?, ".repeat(batch.size() - 1) + "?)")) {
+
+            for (int i = 0; i < batch.size(); i++) {
+                pstmt.setLong(i + 1, batch.get(i).eventId());
+            }
+            pstmt.executeUpdate();
+        }
+    }
+
+    private void delivered(List<Event> batch) {
+        long now = System.currentTimeMillis();
+        for (Event event : batch) {
+            lag.record(Math.max(now - event.createdAt().toEpochMilli(), 0) * 1_000_000);
+        }
+        delivered.add(batch.size());
+        batches.increment();
+    }
+
+    Stats stats() throws SQLException {
+        long pending = 0;
+        long oldest = Long.MAX_VALUE;
+        for (ShardRouter.Shard shard : shards.shards()) {
+            try (Connection conn = shard.primary().getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*), MIN(created_at) FROM booking_outbox")) {
+                rs.next();
+                pending += rs.getLong(1);
+                Timestamp created = rs.getTimestamp(2);
+                if (created != null) oldest = Math.min(oldest, created.getTime());
+            }
+        }
+        long oldestPendingMillis = oldest == Long.MAX_VALUE ? 0 : Math.max(System.currentTimeMillis() - oldest, 0);
+        LatencyHistogram.Summary summary = lag.snapshot();
+        return new Stats(delivered.sum(), batches.sum(), failures.sum(), pending, oldestPendingMillis,
+            summary.p50() / 1_000_000, summary.p99() / 1_000_000, summary.maxNanos() / 1_000_000);
+    }
+
+    // Stops the schedule and delivers what is left, so a clean shutdown leaves the table empty
+    @Override
+    public void close() {
+        if (publisher == null) return;
+        publisher.shutdown();
+        try {
+            publisher.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+    }
+}
@@ -0,0 +1,129 @@
+package com.sumanth.railway;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Connection settings for the primary database, its read replicas and any extra shards, read from
+ * a properties file. Every key is optional; without a file the application talks to a single local
+ * MySQL server, as it always has.
+ *
+ * <pre>
+ * db.name=train_management
+ * db.primary.url=jdbc:mysql://localhost:3306/
+ * db.primary.user=root
+ * db.primary.password=123123
+ * db.primary.pool-size=10
+ * db.primary.min-idle=2
+ * db.primary.connection-timeout-ms=30000
+ * db.replicas=r1,r2
+ * db.replica.r1.url=jdbc:mysql://replica1:3306/
+ * db.replica.r1.pool-size=20                  (user, password and sizing default to the primary's)
+ * db.read-your-writes-ms=5000                 (a user's reads stay on the primary this long after a write)
+ * db.health-check-interval-ms=5000
+ * db.replica.max-lag-seconds=30               (MySQL replicas further behind are taken out of rotation)
+ * db.primary.shard-id=1
+ * db.shards=s2,s3                             (trains and their bookings are spread over the primary and these)
+ * db.shard.s2.url=jdbc:mysql://shard2:3306/
+ * db.shard.s2.id=2                            (1 to 64, unique and never reused; keeps generated ids apart)
+ * db.shard.s2.pool-size=10                    (user, password and sizing default to the primary's)
+ * </pre>
+ */
+record DataSourceConfig(String databaseName, Pool primary, List<Pool> replicas, List<Pool> shards,
+                        Duration readYourWrites, Duration healthCheckInterval, int maxReplicaLagSeconds) {
+
+    // url is the server URL; the database name is appended to it. shardId is 0 when not sharded.
+    record Pool(String name, String url, String user, String password, int poolSize, int minIdle,
+                long connectionTimeoutMillis, int shardId) {
+        String jdbcUrl(String databaseName) {
+            return url + databaseName;
+        }
+    }
+
+    static DataSourceConfig load(Path file) throws IOException {
+        Properties properties = new Properties();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                properties.load(reader);
+            }
+        }
+        return from(properties);
+    }
+
+    static DataSourceConfig from(Properties properties) {
+        List<String> shardNames = names(properties, "db.shards");
+        Pool primary = new Pool("primary",
+            properties.getProperty("db.primary.url", "jdbc:mysql://localhost:3306/"),
+            properties.getProperty("db.primary.user", "root"),
+            properties.getProperty("db.primary.password", "123123"),
+            intValue(properties, "db.primary.pool-size", 10),
+            intValue(properties, "db.primary.min-idle", 2),
+            intValue(properties, "db.primary.connection-timeout-ms", 30_000),
+            shardNames.isEmpty() ? 0 : intValue(properties, "db.primary.shard-id", 1));
+
+        List<Pool> replicas = new ArrayList<>();
+        for (String name : names(properties, "db.replicas")) {
+            replicas.add(pool(properties, "db.replica." + name + ".", "replica-" + name, primary, 0));
+        }
+
+        List<Pool> shards = new ArrayList<>();
+        if (!shardNames.isEmpty() && (primary.shardId() < 1 || primary.shardId() > ShardRouter.MAX_SHARDS)) {
+            throw new IllegalArgumentException("db.primary.shard-id must be between 1 and " + ShardRouter.MAX_SHARDS);
+        }
+        Set<Integer> shardIds = new HashSet<>(Set.of(primary.shardId()));
+        for (String name : shardNames) {
+            String prefix = "db.shard." + name + ".";
+            int id = intValue(properties, prefix + "id", 0);
+            if (id < 1 || id > ShardRouter.MAX_SHARDS || !shardIds.add(id)) {
+                throw new IllegalArgumentException("Shard " + name + " needs a unique " + prefix + "id between 1 and " +
+                    ShardRouter.MAX_SHARDS);
+            }
+            shards.add(pool(properties, prefix, "shard-" + name, primary, id));
+        }
+
+        return new DataSourceConfig(properties.getProperty("db.name", "train_management"), primary,
+            List.copyOf(replicas), List.copyOf(shards),
+            Duration.ofMillis(intValue(properties, "db.read-your-writes-ms", 5000)),
+            Duration.ofMillis(intValue(properties, "db.health-check-interval-ms", 5000)),
+            intValue(properties, "db.replica.max-lag-seconds", 30));
+    }
+
+    // Replicas and shards take the primary's credentials and sizing unless they set their own
+    private static Pool pool(Properties properties, String prefix, String name, Pool primary, int shardId) {
+        String url = properties.getProperty(prefix + "url");
+        if (url == null) throw new IllegalArgumentException(name + " has no " + prefix + "url");
+        return new Pool(name, url,
+            properties.getProperty(prefix + "user", primary.user()),
+            properties.getProperty(prefix + "password", primary.password()),
+            intValue(properties, prefix + "pool-size", primary.poolSize()),
+            intValue(properties, prefix + "min-idle", primary.minIdle()),
+            intValue(properties, prefix + "connection-timeout-ms", (int) primary.connectionTimeoutMillis()),
+            shardId);
+    }
+
+    private static List<String> names(Properties properties, String key) {
+        List<String> names = new ArrayList<>();
+        for (String name : properties.getProperty(key, "").split(",")) {
+            if (!name.isBlank()) names.add(name.trim());
+        }
+        return names;
+    }
+
+    private static int intValue(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + key + ": " + value);
+        }
+    }
+}
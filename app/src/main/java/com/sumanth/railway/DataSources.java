@@ -0,0 +1,276 @@
+package com.sumanth.railway;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.sql.DataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The primary pool, which takes every write, and the replica pools that serve reads. Replicas are
+ * used round robin while their health check passes; with none healthy, reads go to the primary.
+ * A user who has just written reads from the primary for a short window, so a booking or a profile
+ * change is never missing from the page that follows it because a replica has not caught up yet.
+ *
+ * <p>Only the primary is connected before {@link #open} returns. Replica pools connect in the
+ * background and a replica joins the rotation once its first health check passes, so a slow or
+ * unreachable replica neither delays nor stops startup.
+ */
+class DataSources implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(DataSources.class);
+    // Expired read-your-writes entries are swept once this many users are tracked
+    private static final int MAX_TRACKED_USERS = 100_000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    record Status(String pool, boolean primary, boolean healthy, Integer lagSeconds, String lastError, long reads) {}
+
+    private static final class Replica {
+        final String name;
+        final DataSource dataSource;
+        final LongAdder reads = new LongAdder();
+        // Out of rotation until the first health check has reached it
+        volatile boolean healthy;
+        // Only the health check thread reads or writes this
+        boolean checked;
+        volatile Integer lagSeconds;
+        volatile String lastError;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final List<HikariDataSource> pools;
+    private final long readYourWritesNanos;
+    private final int maxLagSeconds;
+    private final Map<String, Long> stickyUntil = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder primaryReads = new LongAdder();
+    private final ScheduledExecutorService healthChecker;
+
+    private DataSources(DataSource primary, List<Replica> replicas, List<HikariDataSource> pools,
+                        DataSourceConfig config) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.pools = pools;
+        this.readYourWritesNanos = config == null ? 0 : config.readYourWrites().toNanos();
+        this.maxLagSeconds = config == null ? 0 : config.maxReplicaLagSeconds();
+        if (replicas.isEmpty()) {
+            this.healthChecker = null;
+            return;
+        }
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = config.healthCheckInterval().toMillis();
+        healthChecker.scheduleWithFixedDelay(this::checkReplicas, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    // Everything on one database, as in tests and benchmarks
+    static DataSources single(DataSource dataSource) {
+        return new DataSources(dataSource, List.of(), List.of(), null);
+    }
+
+    static DataSources open(DataSourceConfig config, MetricsTrackerFactory metrics) {
+        return open(config, config.primary(), config.replicas(), metrics);
+    }
+
+    // A shard is its own primary, optionally with replicas of its own
+    static DataSources open(DataSourceConfig config, DataSourceConfig.Pool primarySettings,
+                            List<DataSourceConfig.Pool> replicaSettings, MetricsTrackerFactory metrics) {
+        List<HikariDataSource> pools = new ArrayList<>();
+        try {
+            HikariDataSource primary = pool(primarySettings, config.databaseName(), false, metrics);
+            pools.add(primary);
+            List<Replica> replicas = new ArrayList<>();
+            for (DataSourceConfig.Pool settings : replicaSettings) {
+                HikariDataSource replica = pool(settings, config.databaseName(), true, metrics);
+                pools.add(replica);
+                replicas.add(new Replica(settings.name(), replica));
+            }
+            logger.info("Connection pools initialized: {} ({} connections), {} replica(s)",
+                primarySettings.name(), primarySettings.poolSize(), replicas.size());
+            return new DataSources(primary, List.copyOf(replicas), List.copyOf(pools), config);
+        } catch (RuntimeException e) {
+            pools.forEach(HikariDataSource::close);
+            throw e;
+        }
+    }
+
+    private static HikariDataSource pool(DataSourceConfig.Pool settings, String databaseName, boolean readOnly,
+                                         MetricsTrackerFactory metrics) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("railway-" + settings.name());
+        config.setJdbcUrl(settings.jdbcUrl(databaseName));
+        config.setUsername(settings.user());
+        config.setPassword(settings.password());
+        config.setMaximumPoolSize(settings.poolSize());
+        config.setMinimumIdle(settings.minIdle());
+        config.setConnectionTimeout(settings.connectionTimeoutMillis());
+        // MySQL rejects writes on a read-only session, so a misrouted write fails instead of diverging
+        config.setReadOnly(readOnly);
+        if (readOnly) {
+            // Fills in the background instead of connecting before open returns
+            config.setInitializationFailTimeout(-1);
+            // Listings and exports read here, streaming rows in fetch-size chunks instead of buffering
+            // the result. Only on replicas: the driver also switches every statement to server-side
+            // prepares, an extra round trip the primary's short booking statements should not pay for
+            config.addDataSourceProperty("useCursorFetch", "true");
+        } else if (settings.url().startsWith("jdbc:mysql:")) {
+            // First start on an empty server; saves a separate connection just to run CREATE DATABASE
+            config.addDataSourceProperty("createDatabaseIfNotExist", "true");
+        }
+        if (!readOnly && settings.shardId() > 0 && settings.url().startsWith("jdbc:mysql:")) {
+            config.setConnectionInitSql(ShardRouter.idSequenceSql(settings.shardId()));
+        }
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize", "250");
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        config.addDataSourceProperty("rewriteBatchedStatements", "true");
+        // Acquire and usage times, timeouts and pool gauges go to the application metrics
+        if (metrics != null) config.setMetricsTrackerFactory(metrics);
+        return new HikariDataSource(config);
+    }
+
+    DataSource primary() {
+        return primary;
+    }
+
+    // Replica for reads that tolerate replication lag and belong to no user, such as train listings
+    DataSource reader() {
+        return reader(null);
+    }
+
+    DataSource reader(String userId) {
+        if (userId != null && !stickyUntil.isEmpty()) {
+            Long until = stickyUntil.get(userId);
+            if (until != null) {
+                if (System.nanoTime() - until < 0) {
+                    primaryReads.increment();
+                    return primary;
+                }
+                stickyUntil.remove(userId, until);
+            }
+        }
+        int count = replicas.size();
+        int start = count == 0 ? 0 : Math.floorMod(next.getAndIncrement(), count);
+        for (int i = 0; i < count; i++) {
+            Replica replica = replicas.get((start + i) % count);
+            if (replica.healthy) {
+                replica.reads.increment();
+                return replica.dataSource;
+            }
+        }
+        primaryReads.increment();
+        return primary;
+    }
+
+    // Called after a user's write commits; their reads stay on the primary until replicas have it
+    void wrote(String userId) {
+        if (replicas.isEmpty() || readYourWritesNanos == 0) return;
+        if (stickyUntil.size() >= MAX_TRACKED_USERS) {
+            long now = System.nanoTime();
+            stickyUntil.values().removeIf(until -> now - until >= 0);
+        }
+        stickyUntil.put(userId, System.nanoTime() + readYourWritesNanos);
+    }
+
+    List<Status> status() {
+        List<Status> status = new ArrayList<>();
+        status.add(new Status(poolName(primary, "primary"), true, true, null, null, primaryReads.sum()));
+        for (Replica replica : replicas) {
+            status.add(new Status(poolName(replica.dataSource, replica.name), false, replica.healthy,
+                replica.lagSeconds, replica.lastError, replica.reads.sum()));
+        }
+        return status;
+    }
+
+    private static String poolName(DataSource dataSource, String fallback) {
+        return dataSource instanceof HikariDataSource hikari ? hikari.getPoolName() : fallback;
+    }
+
+    private void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try {
+                healthy = check(replica);
+            } catch (SQLException | RuntimeException e) {
+                replica.lastError = e.getMessage();
+                healthy = false;
+            }
+            if (healthy != replica.healthy || !replica.checked) {
+                if (healthy) {
+                    logger.info("Replica {} is healthy, in rotation", replica.name);
+                } else {
+                    logger.warn("Replica {} failed its health check, reads go elsewhere: {}", replica.name,
+                        replica.lastError);
+                }
+            }
+            replica.healthy = healthy;
+            replica.checked = true;
+        }
+    }
+
+    private boolean check(Replica replica) throws SQLException {
+        try (Connection conn = replica.dataSource.getConnection()) {
+            if (!conn.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                replica.lastError = "Connection is not valid";
+                return false;
+            }
+            if (!conn.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("mysql")) {
+                replica.lastError = null;
+                return true;
+            }
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SHOW REPLICA STATUS")) {
+                // No row: the server is not replicating, so it cannot lag
+                if (!rs.next()) {
+                    replica.lagSeconds = 0;
+                    replica.lastError = null;
+                    return true;
+                }
+                int lag = rs.getInt("Seconds_Behind_Source");
+                if (rs.wasNull()) {
+                    replica.lagSeconds = null;
+                    replica.lastError = "Replication is not running";
+                    return false;
+                }
+                replica.lagSeconds = lag;
+                if (lag > maxLagSeconds) {
+                    replica.lastError = "Replica is " + lag + " s behind the primary";
+                    return false;
+                }
+                replica.lastError = null;
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        // Replicas first, so nothing is routed to a closed pool while the primary drains
+        for (int i = pools.size() - 1; i >= 0; i--) {
+            pools.get(i).close();
+        }
+    }
+}
@@ -0,0 +1,522 @@
+package com.sumanth.railway;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HTTP/JSON front end for {@link RailwayService} on the JDK's built-in server.
+ * Every request runs on its own virtual thread, so blocking JDBC calls only ever
+ * wait on the connection pool, never on a fixed set of worker threads.
+ *
+ * <pre>
+ * POST   /api/login                      {username, password}           -> {token, userId, fullName, expiresAt}
+ * POST   /api/logout                                                    (ends the session of the bearer token)
+ * POST   /api/users                      registration fields            -> {userId}
+ * GET    /api/trains?origin=&destination=&after=&limit=                 -> {items: [train], nextCursor}
+ * POST   /api/trains                     train fields
+ * GET    /api/trains/{no}                                               -> train
+ * PUT    /api/trains/{no}                {field, value}
+ * DELETE /api/trains/{no}
+ * GET    /api/trains/{no}/availability?date=YYYY-MM-DD                  -> {seatsAvailable}
+ * GET    /api/routes?from=&to=&date=YYYY-MM-DD                         -> [itinerary]
+ * GET    /api/stations?q=&limit=                                        -> [{name, trains}] (typeahead)
+ * GET    /api/reservations?from=&to=&origin=&destination=&after=&limit= -> {items: [reservation], nextCursor}
+ * POST   /api/reservations               {trainNo, departureDate, berthType, meals} -> ticket
+ * GET    /api/reservations/archive                                      -> [reservation] (departed trips)
+ * DELETE /api/reservations/{id}
+ * POST   /api/pnr                        {trainNo, departureDate, passengers: [...]} -> pnr
+ * GET    /api/waitlist                                                  -> [waitlist entry]
+ * POST   /api/waitlist                   {trainNo, departureDate, berthType, meals} -> waitlist entry
+ * DELETE /api/waitlist/{id}
+ * GET    /api/profile                                                   -> profile
+ * PUT    /api/profile                    {field, value}
+ * POST   /api/profile/password           {currentPassword, newPassword}
+ * GET    /api/stats/catalog-cache                                       -> cache hit/miss counters
+ * GET    /api/stats/auth                                                -> password hashing pool counters
+ * GET    /api/stats/audit-log                                           -> audit log queue and write counters
+ * GET    /api/stats/occupancy?from=&to=&trainNo=                        -> load factor, berth mix, meals per train
+ * GET    /api/stats/data-sources                                        -> pool health, replica lag and reads routed
+ * GET    /api/stats/metrics                                             -> latency percentiles, counters, pool gauges
+ * GET    /api/stats/outbox                                              -> booking events delivered, pending and lag
+ * </pre>
+ * Everything except login and registration needs an {@code Authorization: Bearer <token>} header.
+ * A token lasts {@link #SESSION_TTL} from login; at most {@value #MAX_SESSIONS} are held, the
+ * oldest giving way once expired ones have been cleared out.
+ */
+class HttpApi {
+    private static final Logger logger = LoggerFactory.getLogger(HttpApi.class);
+    private static final SecureRandom RANDOM = new SecureRandom();
+    static final java.time.Duration SESSION_TTL = java.time.Duration.ofHours(12);
+    static final int MAX_SESSIONS = 100_000;
+
+    private final RailwayService service;
+    private final HttpServer server;
+    private final ExecutorService executor = newRequestExecutor();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    HttpApi(RailwayService service, int port) throws IOException {
+        this.service = service;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/api/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    void start() {
+        server.start();
+        logger.info("HTTP API started on port {}", server.getAddress().getPort());
+    }
+
+    // The bound port, for an API started on port 0
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(1);
+        executor.shutdown();
+        logger.info("HTTP API stopped");
+    }
+
+    private record Response(int status, Object body) {}
+
+    private record Session(RailwayService.UserAccount account, long expiresAt) {
+        boolean expired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    // Virtual threads on JDK 21+; the build targets 17, so look the factory up at runtime
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads unavailable on this JDK, using a cached thread pool");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Response response;
+        try {
+            response = route(exchange);
+        } catch (ServiceException e) {
+            int status = switch (e.getKind()) {
+                case INVALID -> 400;
+                case UNAUTHORIZED -> 401;
+                case NOT_FOUND -> 404;
+                case CONFLICT -> 409;
+                case THROTTLED -> 429;
+                case UNAVAILABLE -> 503;
+            };
+            response = error(status, e.getMessage());
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            response = error(400, e.getMessage());
+        } catch (SQLException e) {
+            logger.error("Database error on {} {}: {}", exchange.getRequestMethod(), exchange.getRequestURI(), e.getMessage(), e);
+            response = error(500, "Database error");
+        } catch (RuntimeException e) {
+            logger.error("Unexpected error on {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            response = error(500, "Internal error");
+        }
+
+        byte[] bytes = response.body() == null ? new byte[0] : Json.write(response.body()).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status(), bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+        exchange.close();
+    }
+
+    private Response route(HttpExchange exchange) throws IOException, SQLException, ServiceException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().replaceAll("/+$", "").split("/");
+        // path[0] is empty and path[1] is "api"
+        String resource = path.length > 2 ? path[2] : "";
+        String id = path.length > 3 ? path[3] : null;
+        String sub = path.length > 4 ? path[4] : null;
+
+        if (resource.equals("login") && method.equals("POST")) {
+            return login(readBody(exchange));
+        }
+        if (resource.equals("users") && method.equals("POST")) {
+            return register(readBody(exchange));
+        }
+
+        RailwayService.UserAccount user = authenticate(exchange);
+
+        switch (resource) {
+            case "logout" -> {
+                if (method.equals("POST")) {
+                    sessions.remove(bearerToken(exchange));
+                    return noContent();
+                }
+            }
+            case "trains" -> {
+                if (id == null) {
+                    if (method.equals("GET")) return ok(trainPage(exchange));
+                    if (method.equals("POST")) return addTrain(readBody(exchange));
+                } else if (sub == null) {
+                    int trainNo = parseInt(id, "train number");
+                    switch (method) {
+                        case "GET" -> {
+                            RailwayService.Train train = service.findTrain(trainNo);
+                            if (train == null) return error(404, "Train not found!");
+                            return ok(train);
+                        }
+                        case "PUT" -> {
+                            Map<String, Object> body = readBody(exchange);
+                            service.updateTrain(trainNo, enumValue(RailwayService.TrainField.class, body, "field"),
+                                string(body, "value"));
+                            return noContent();
+                        }
+                        case "DELETE" -> {
+                            service.removeTrain(trainNo);
+                            return noContent();
+                        }
+                    }
+                } else if (sub.equals("availability") && method.equals("GET")) {
+                    LocalDate date = LocalDate.parse(queryParam(exchange, "date"));
+                    int seats = service.availableSeats(parseInt(id, "train number"), date);
+                    return ok(Map.of("trainNo", parseInt(id, "train number"), "departureDate", date, "seatsAvailable", seats));
+                }
+            }
+            case "reservations" -> {
+                if (id == null) {
+                    if (method.equals("GET")) return ok(reservationPage(exchange, user));
+                    if (method.equals("POST")) return book(user, readBody(exchange));
+                } else if (id.equals("archive") && method.equals("GET")) {
+                    return ok(service.listArchivedReservations(user.userId()));
+                } else if (method.equals("DELETE")) {
+                    service.cancelReservation(user.userId(), parseInt(id, "reservation id"));
+                    return noContent();
+                }
+            }
+            case "routes" -> {
+                if (id == null && method.equals("GET")) {
+                    return ok(service.searchRoutes(queryParam(exchange, "from"), queryParam(exchange, "to"),
+                        LocalDate.parse(queryParam(exchange, "date"))));
+                }
+            }
+            case "stations" -> {
+                if (id == null && method.equals("GET")) {
+                    String limit = optionalQueryParam(exchange, "limit");
+                    return ok(service.suggestStations(queryParam(exchange, "q"),
+                        limit == null ? StationIndex.MAX_SUGGESTIONS : parseInt(limit, "limit")));
+                }
+            }
+            case "pnr" -> {
+                if (id == null && method.equals("POST")) return bookGroup(user, readBody(exchange));
+            }
+            case "waitlist" -> {
+                if (id == null) {
+                    if (method.equals("GET")) return ok(service.listWaitlist(user.userId()));
+                    if (method.equals("POST")) return joinWaitlist(user, readBody(exchange));
+                } else if (method.equals("DELETE")) {
+                    service.leaveWaitlist(user.userId(), parseInt(id, "waitlist id"));
+                    return noContent();
+                }
+            }
+            case "profile" -> {
+                if (id == null) {
+                    if (method.equals("GET")) return ok(service.getProfile(user.userId()));
+                    if (method.equals("PUT")) {
+                        Map<String, Object> body = readBody(exchange);
+                        service.updateProfile(user.userId(), enumValue(RailwayService.ProfileField.class, body, "field"),
+                            string(body, "value"));
+                        return noContent();
+                    }
+                } else if (id.equals("password") && method.equals("POST")) {
+                    Map<String, Object> body = readBody(exchange);
+                    service.changePassword(user.userId(), string(body, "currentPassword"), string(body, "newPassword"));
+                    return noContent();
+                }
+            }
+            case "stats" -> {
+                if ("catalog-cache".equals(id) && method.equals("GET")) {
+                    TrainCatalogCache.Stats stats = service.catalogCacheStats();
+                    Map<String, Object> body = new LinkedHashMap<>();
+                    body.put("hits", stats.hits());
+                    body.put("misses", stats.misses());
+                    body.put("hitRatio", stats.hitRatio());
+                    body.put("evictions", stats.evictions());
+                    body.put("invalidations", stats.invalidations());
+                    body.put("size", stats.size());
+                    return ok(body);
+                }
+                if ("auth".equals(id) && method.equals("GET")) {
+                    return ok(service.authStats());
+                }
+                if ("audit-log".equals(id) && method.equals("GET")) {
+                    return ok(service.auditStats());
+                }
+                if ("occupancy".equals(id) && method.equals("GET")) {
+                    LocalDate from = LocalDate.parse(queryParam(exchange, "from"));
+                    LocalDate to = LocalDate.parse(queryParam(exchange, "to"));
+                    String trainNo = optionalQueryParam(exchange, "trainNo");
+                    if (trainNo != null) {
+                        return ok(occupancy(service.occupancy(parseInt(trainNo, "train number"), from, to)));
+                    }
+                    return ok(service.occupancy(from, to).stream().map(HttpApi::occupancy).toList());
+                }
+                if ("data-sources".equals(id) && method.equals("GET")) {
+                    return ok(service.dataSourceStatus());
+                }
+                if ("metrics".equals(id) && method.equals("GET")) {
+                    return ok(service.metrics().attributes());
+                }
+                if ("outbox".equals(id) && method.equals("GET")) {
+                    return ok(service.outboxStats());
+                }
+            }
+            default -> { }
+        }
+        return error(404, "No route for " + method + " " + exchange.getRequestURI().getPath());
+    }
+
+    private PagedListings.Page<RailwayService.Train> trainPage(HttpExchange exchange) throws SQLException, ServiceException {
+        PagedListings.TrainFilter filter = new PagedListings.TrainFilter(
+            optionalQueryParam(exchange, "origin"),
+            optionalQueryParam(exchange, "destination"));
+        return service.trainPage(filter, optionalQueryParam(exchange, "after"), pageSize(exchange));
+    }
+
+    private PagedListings.Page<RailwayService.Reservation> reservationPage(HttpExchange exchange,
+            RailwayService.UserAccount user) throws SQLException, ServiceException {
+        String from = optionalQueryParam(exchange, "from");
+        String to = optionalQueryParam(exchange, "to");
+        PagedListings.ReservationFilter filter = new PagedListings.ReservationFilter(
+            from == null ? null : LocalDate.parse(from),
+            to == null ? null : LocalDate.parse(to),
+            optionalQueryParam(exchange, "origin"),
+            optionalQueryParam(exchange, "destination"));
+        return service.reservationPage(user.userId(), filter, optionalQueryParam(exchange, "after"), pageSize(exchange));
+    }
+
+    private static int pageSize(HttpExchange exchange) {
+        String limit = optionalQueryParam(exchange, "limit");
+        return limit == null ? PagedListings.DEFAULT_PAGE_SIZE : parseInt(limit, "limit");
+    }
+
+    private Response login(Map<String, Object> body) throws SQLException, ServiceException {
+        RailwayService.UserAccount account = service.authenticate(string(body, "username"), string(body, "password"));
+        if (account == null) {
+            throw new ServiceException(ServiceException.Kind.UNAUTHORIZED, "Invalid credentials");
+        }
+
+        byte[] tokenBytes = new byte[32];
+        RANDOM.nextBytes(tokenBytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+        long now = System.currentTimeMillis();
+        if (sessions.size() >= MAX_SESSIONS) makeRoom(now);
+        Session session = new Session(account, now + SESSION_TTL.toMillis());
+        sessions.put(token, session);
+        return ok(Map.of("token", token, "userId", account.userId(), "fullName", account.fullName(),
+            "expiresAt", java.time.Instant.ofEpochMilli(session.expiresAt())));
+    }
+
+    // Drops expired sessions, then the oldest ones if the map is still full
+    private void makeRoom(long now) {
+        sessions.values().removeIf(session -> session.expired(now));
+        int excess = sessions.size() - MAX_SESSIONS + 1;
+        if (excess <= 0) return;
+        sessions.entrySet().stream()
+            .sorted(Comparator.comparingLong(entry -> entry.getValue().expiresAt()))
+            .limit(excess)
+            .map(Map.Entry::getKey)
+            .toList()
+            .forEach(sessions::remove);
+        logger.warn("Session limit of {} reached; ended the {} oldest sessions", MAX_SESSIONS, excess);
+    }
+
+    private Response register(Map<String, Object> body) throws SQLException, ServiceException {
+        String userId = service.registerUser(new RailwayService.NewUser(
+            string(body, "fullName"),
+            integer(body, "age"),
+            string(body, "phone"),
+            string(body, "aadhaar"),
+            string(body, "address"),
+            string(body, "pincode"),
+            string(body, "username"),
+            string(body, "password")));
+        return new Response(201, Map.of("userId", userId));
+    }
+
+    private Response addTrain(Map<String, Object> body) throws SQLException, ServiceException {
+        service.addTrain(new RailwayService.Train(
+            string(body, "trainName"),
+            integer(body, "trainNo"),
+            string(body, "startingPoint"),
+            string(body, "destination"),
+            string(body, "specifications"),
+            integer(body, "seatsPerDeparture")));
+        return new Response(201, null);
+    }
+
+    private Response book(RailwayService.UserAccount user, Map<String, Object> body) throws SQLException, ServiceException {
+        RailwayService.Ticket ticket = service.book(user,
+            integer(body, "trainNo"),
+            LocalDate.parse(string(body, "departureDate")),
+            string(body, "berthType"),
+            Boolean.TRUE.equals(body.get("meals")));
+        return new Response(201, ticket);
+    }
+
+    private Response joinWaitlist(RailwayService.UserAccount user, Map<String, Object> body)
+            throws SQLException, ServiceException {
+        Waitlist.Entry entry = service.joinWaitlist(user.userId(),
+            integer(body, "trainNo"),
+            LocalDate.parse(string(body, "departureDate")),
+            string(body, "berthType"),
+            Boolean.TRUE.equals(body.get("meals")));
+        return new Response(201, entry);
+    }
+
+    private Response bookGroup(RailwayService.UserAccount user, Map<String, Object> body) throws SQLException, ServiceException {
+        if (!(body.get("passengers") instanceof List<?> items)) {
+            throw new IllegalArgumentException("passengers must be an array");
+        }
+
+        List<PnrBooking.Passenger> passengers = new ArrayList<>();
+        for (Object item : items) {
+            if (!(item instanceof Map<?, ?> raw)) {
+                throw new IllegalArgumentException("Each passenger must be an object");
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> passenger = (Map<String, Object>) raw;
+            passengers.add(new PnrBooking.Passenger(
+                string(passenger, "name"),
+                integer(passenger, "age"),
+                string(passenger, "berthType").toUpperCase(),
+                Boolean.TRUE.equals(passenger.get("meals"))));
+        }
+
+        PnrBooking.Result result = service.bookGroup(user.userId(),
+            integer(body, "trainNo"), LocalDate.parse(string(body, "departureDate")), passengers);
+        return new Response(201, result);
+    }
+
+    private RailwayService.UserAccount authenticate(HttpExchange exchange) throws ServiceException {
+        String token = bearerToken(exchange);
+        Session session = token == null ? null : sessions.get(token);
+        if (session != null && session.expired(System.currentTimeMillis())) {
+            sessions.remove(token, session);
+            throw new ServiceException(ServiceException.Kind.UNAUTHORIZED, "Session expired, please log in again");
+        }
+        if (session == null) {
+            throw new ServiceException(ServiceException.Kind.UNAUTHORIZED, "Login required");
+        }
+        return session.account();
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) return null;
+        return header.substring("Bearer ".length()).trim();
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return text.isBlank() ? Map.of() : Json.parseObject(text);
+        }
+    }
+
+    // The record plus the ratios dashboards plot
+    private static Map<String, Object> occupancy(OccupancyAnalytics.Occupancy occupancy) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("trainNo", occupancy.trainNo());
+        body.put("from", occupancy.from());
+        body.put("to", occupancy.to());
+        body.put("seatCapacity", occupancy.seatCapacity());
+        body.put("booked", occupancy.booked());
+        body.put("loadFactor", occupancy.loadFactor());
+        body.put("lower", occupancy.lower());
+        body.put("middle", occupancy.middle());
+        body.put("upper", occupancy.upper());
+        body.put("side", occupancy.side());
+        body.put("meals", occupancy.meals());
+        body.put("mealShare", occupancy.mealShare());
+        return body;
+    }
+
+    private static String queryParam(HttpExchange exchange, String name) {
+        String value = optionalQueryParam(exchange, name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing query parameter: " + name);
+        }
+        return value;
+    }
+
+    // Absent and empty parameters both come back as null
+    private static String optionalQueryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0 && URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8).equals(name)) {
+                    String value = URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+                    return value.isEmpty() ? null : value;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Missing fields come back empty so the service's own validation reports them
+    private static String string(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        return value == null ? "" : value.toString();
+    }
+
+    private static int integer(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (value instanceof Number number) return number.intValue();
+        if (value instanceof String text) return parseInt(text, name);
+        throw new IllegalArgumentException("Missing numeric field: " + name);
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static <E extends Enum<E>> E enumValue(Class<E> type, Map<String, Object> body, String name) {
+        try {
+            return Enum.valueOf(type, string(body, name).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + string(body, name));
+        }
+    }
+
+    private static Response ok(Object body) {
+        return new Response(200, body);
+    }
+
+    private static Response noContent() {
+        return new Response(204, null);
+    }
+
+    private static Response error(int status, String message) {
+        return new Response(status, Map.of("error", message));
+    }
+}
@@ -0,0 +1,88 @@
+package com.sumanth.railway;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets: every power of two is split into
+ * {@value #SUB_BUCKETS} equal slices, so any recorded value lands in a bucket at most about 3%
+ * wider than itself. Recording is a few atomic adds and never allocates, so it can sit inside the
+ * code it measures. Values are nanoseconds; anything above about 18 minutes shares the last bucket.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    // Values below SUB_BUCKETS get one bucket each, then SUB_BUCKETS per power of two
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    record Summary(long count, long sumNanos, long maxNanos, long p50, long p90, long p99, long p999) {
+        double meanNanos() {
+            return count == 0 ? 0 : (double) sumNanos / count;
+        }
+    }
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets.incrementAndGet(index(nanos));
+        count.increment();
+        sum.add(nanos);
+        long current = max.get();
+        while (nanos > current && !max.compareAndSet(current, nanos)) {
+            current = max.get();
+        }
+    }
+
+    void recordSince(long startedNanos) {
+        record(System.nanoTime() - startedNanos);
+    }
+
+    // Counts and buckets are read one after another, so a summary taken under load is approximate
+    Summary snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        long maxNanos = max.get();
+        return new Summary(count.sum(), sum.sum(), maxNanos, percentile(counts, total, 0.5, maxNanos),
+            percentile(counts, total, 0.9, maxNanos), percentile(counts, total, 0.99, maxNanos),
+            percentile(counts, total, 0.999, maxNanos));
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+        int shift = exponent - SUB_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Highest value that falls into the bucket, so percentiles never under-report
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    // A bucket's upper bound can pass the largest value actually seen, so it is capped there
+    private static long percentile(long[] counts, long total, double quantile, long maxNanos) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(upperBound(i), maxNanos);
+        }
+        return maxNanos;
+    }
+}
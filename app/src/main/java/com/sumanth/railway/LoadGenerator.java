@@ -0,0 +1,298 @@
+package com.sumanth.railway;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reproduces peak-hour traffic against the service: a synthetic population of users and trains,
+ * then bookings, cancellations, reservation listings and logins arriving at a fixed rate whether
+ * or not earlier requests have finished (open loop). Latency is measured from when each request
+ * was due, not when a worker got to it, so a stalled system shows up as queueing delay instead of
+ * quietly lowering the offered load. Afterwards every departure of the synthetic trains is checked
+ * for overselling and for seat counters that disagree with the reservations table.
+ */
+class LoadGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+    // Synthetic trains are numbered from here, well clear of real ones
+    static final int FIRST_TRAIN_NO = 990_001;
+    private static final String USERNAME_PREFIX = "loadtest_";
+    private static final String PASSWORD = "loadtest-password";
+    private static final String[] BERTHS = {"lower", "middle", "upper", "side"};
+    static final double MAX_RATE_PER_SECOND = 1e9;
+
+    enum Operation { BOOK, CANCEL, LIST, LOGIN }
+
+    // Weights are relative; a zero weight leaves the operation out
+    record Settings(int users, int trains, int seatsPerDeparture, int days, double ratePerSecond,
+                    Duration duration, int threads, Map<Operation, Integer> mix) {
+        Settings {
+            require(users > 0, "users must be positive: " + users);
+            require(trains > 0, "trains must be positive: " + trains);
+            require(seatsPerDeparture > 0, "seatsPerDeparture must be positive: " + seatsPerDeparture);
+            require(days > 0, "days must be positive: " + days);
+            // Above one request per nanosecond the interval between requests rounds down to zero
+            require(ratePerSecond > 0 && ratePerSecond <= MAX_RATE_PER_SECOND,
+                "ratePerSecond must be above 0 and at most " + MAX_RATE_PER_SECOND + ": " + ratePerSecond);
+            require(!duration.isNegative() && !duration.isZero(), "duration must be positive: " + duration);
+            require(threads > 0, "threads must be positive: " + threads);
+        }
+
+        static Settings defaults(double ratePerSecond, Duration duration, int threads) {
+            Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+            mix.put(Operation.BOOK, 50);
+            mix.put(Operation.CANCEL, 20);
+            mix.put(Operation.LIST, 25);
+            mix.put(Operation.LOGIN, 5);
+            return new Settings(500, 20, 200, 7, ratePerSecond, duration, threads, mix);
+        }
+    }
+
+    record OperationReport(Operation operation, long succeeded, long refused, long failed,
+                           LatencyHistogram.Summary latency) {}
+
+    record Departure(int trainNo, LocalDate departureDate, int capacity, int booked, int available) {
+        boolean oversold() {
+            return booked > capacity;
+        }
+
+        boolean inconsistent() {
+            return available != capacity - booked;
+        }
+    }
+
+    record Report(List<OperationReport> operations, long offered, long dropped, long elapsedMillis,
+                  List<Departure> departures) {
+        double throughput() {
+            long completed = operations.stream().mapToLong(op -> op.succeeded() + op.refused() + op.failed()).sum();
+            return elapsedMillis == 0 ? 0 : completed * 1000.0 / elapsedMillis;
+        }
+
+        List<Departure> problems() {
+            return departures.stream().filter(d -> d.oversold() || d.inconsistent()).toList();
+        }
+    }
+
+    private record User(String username, RailwayService.UserAccount account, Queue<Integer> reservations) {}
+
+    private final RailwayService service;
+    private final Settings settings;
+    private final List<User> users = new ArrayList<>();
+    private final List<Integer> trainNumbers = new ArrayList<>();
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder[]> outcomes = new EnumMap<>(Operation.class);
+    private final Operation[] schedule;
+
+    LoadGenerator(RailwayService service, Settings settings) {
+        this.service = service;
+        this.settings = settings;
+        List<Operation> schedule = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+            outcomes.put(operation, new LongAdder[] {new LongAdder(), new LongAdder(), new LongAdder()});
+            for (int i = 0; i < settings.mix().getOrDefault(operation, 0); i++) {
+                schedule.add(operation);
+            }
+        }
+        if (schedule.isEmpty()) throw new IllegalArgumentException("The operation mix is empty");
+        this.schedule = schedule.toArray(Operation[]::new);
+    }
+
+    Report run() throws SQLException, InterruptedException {
+        createPopulation();
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(settings.threads(), settings.threads(), 0,
+            TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(settings.threads() * 1000), daemonThreads("load-worker"));
+        long intervalNanos = (long) (1_000_000_000L / settings.ratePerSecond());
+        long started = System.nanoTime();
+        long end = started + settings.duration().toNanos();
+        long offered = 0;
+        long dropped = 0;
+        logger.info("Load test: {} requests/s for {} s on {} threads", settings.ratePerSecond(),
+            settings.duration().toSeconds(), settings.threads());
+
+        for (long due = started; due < end; due += intervalNanos) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            long dueAt = due;
+            offered++;
+            try {
+                workers.execute(() -> request(dueAt));
+            } catch (RejectedExecutionException e) {
+                // The backlog is full: the system is far behind the offered rate
+                dropped++;
+            }
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+        List<OperationReport> operations = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            LongAdder[] counts = outcomes.get(operation);
+            operations.add(new OperationReport(operation, counts[0].sum(), counts[1].sum(), counts[2].sum(),
+                latencies.get(operation).snapshot()));
+        }
+        return new Report(operations, offered, dropped, elapsedMillis, checkInventory());
+    }
+
+    // Reuses the users and trains of an earlier run, so repeated runs do not pile up accounts
+    private void createPopulation() throws SQLException, InterruptedException {
+        for (int i = 0; i < settings.trains(); i++) {
+            int trainNo = FIRST_TRAIN_NO + i;
+            if (service.findTrain(trainNo) == null) {
+                try {
+                    service.addTrain(new RailwayService.Train("Load Test " + (i + 1), trainNo, "LOADTEST-" + (i % 5),
+                        "LOADTEST-" + (i % 5 + 1), "synthetic", settings.seatsPerDeparture()));
+                } catch (ServiceException e) {
+                    throw new IllegalStateException("Cannot create synthetic train " + trainNo + ": " + e.getMessage());
+                }
+            }
+            trainNumbers.add(trainNo);
+        }
+
+        // Password hashing dominates, so users are registered on all the worker threads
+        ExecutorService registration = Executors.newFixedThreadPool(settings.threads(), daemonThreads("load-setup"));
+        List<User> created = new ArrayList<>();
+        AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < settings.users(); i++) {
+            int index = i;
+            registration.execute(() -> {
+                try {
+                    User user = user(index);
+                    synchronized (created) {
+                        created.add(user);
+                    }
+                } catch (SQLException | ServiceException e) {
+                    failures.incrementAndGet();
+                    logger.warn("Synthetic user {} not created: {}", index, e.getMessage());
+                }
+            });
+        }
+        registration.shutdown();
+        registration.awaitTermination(1, TimeUnit.HOURS);
+        if (created.isEmpty()) throw new IllegalStateException("No synthetic users could be created");
+        users.addAll(created);
+        logger.info("Load test population: {} users ({} failed), {} trains", users.size(), failures.get(),
+            trainNumbers.size());
+    }
+
+    private User user(int index) throws SQLException, ServiceException {
+        String username = USERNAME_PREFIX + index;
+        String fullName = "Load Test User";
+        try {
+            String userId = service.registerUser(new RailwayService.NewUser(fullName, 30,
+                String.format("9%09d", index), String.format("99%010d", index), "Synthetic address", "560001",
+                username, PASSWORD));
+            return new User(username, new RailwayService.UserAccount(userId, fullName), new ConcurrentLinkedQueue<>());
+        } catch (ServiceException e) {
+            if (e.getKind() != ServiceException.Kind.CONFLICT) throw e;
+        }
+        RailwayService.UserAccount account = service.authenticate(username, PASSWORD);
+        if (account == null) throw new ServiceException(ServiceException.Kind.CONFLICT, "Username taken by a real user");
+        return new User(username, account, new ConcurrentLinkedQueue<>());
+    }
+
+    private void request(long dueAt) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Operation operation = schedule[random.nextInt(schedule.length)];
+        User user = users.get(random.nextInt(users.size()));
+        int outcome;
+        try {
+            if (!perform(operation, user, random)) {
+                // Nothing to do took no time worth reporting
+                outcomes.get(operation)[1].increment();
+                return;
+            }
+            outcome = 0;
+        } catch (ServiceException e) {
+            // Sold out, already cancelled, throttled: the service said no, as it would to a real user
+            outcome = 1;
+        } catch (SQLException | RuntimeException e) {
+            outcome = 2;
+            logger.debug("Load test {} failed: {}", operation, e.getMessage());
+        }
+        latencies.get(operation).recordSince(dueAt);
+        outcomes.get(operation)[outcome].increment();
+    }
+
+    // Returns false when there was nothing to do, such as a cancel for a user with no bookings; counted as refused
+    private boolean perform(Operation operation, User user, ThreadLocalRandom random)
+            throws SQLException, ServiceException {
+        switch (operation) {
+            case BOOK -> {
+                int trainNo = trainNumbers.get(random.nextInt(trainNumbers.size()));
+                LocalDate departureDate = LocalDate.now().plusDays(1 + random.nextInt(settings.days()));
+                RailwayService.Ticket ticket = service.book(user.account(), trainNo, departureDate,
+                    BERTHS[random.nextInt(BERTHS.length)], random.nextBoolean());
+                user.reservations().add(ticket.reservationId());
+                return true;
+            }
+            case CANCEL -> {
+                Integer reservationId = user.reservations().poll();
+                if (reservationId == null) return false;
+                service.cancelReservation(user.account().userId(), reservationId);
+                return true;
+            }
+            case LIST -> {
+                service.listReservations(user.account().userId());
+                return true;
+            }
+            case LOGIN -> {
+                return service.authenticate(user.username(), PASSWORD) != null;
+            }
+            default -> throw new IllegalStateException("Unknown operation " + operation);
+        }
+    }
+
+    // Compares each departure's reservations with the train's capacity and the in-memory counter
+    private List<Departure> checkInventory() throws SQLException {
+        List<Departure> departures = new ArrayList<>();
+        for (int trainNo : trainNumbers) {
+            RailwayService.Train train = service.findTrain(trainNo);
+            if (train == null) continue;
+            for (Map.Entry<LocalDate, Integer> booked : service.bookedSeats(trainNo).entrySet()) {
+                int available;
+                try {
+                    available = service.availableSeats(trainNo, booked.getKey());
+                } catch (ServiceException e) {
+                    available = -1;
+                }
+                departures.add(new Departure(trainNo, booked.getKey(), train.seatsPerDeparture(), booked.getValue(),
+                    available));
+            }
+        }
+        return departures;
+    }
+
+    private static void require(boolean condition, String message) {
+        if (!condition) throw new IllegalArgumentException(message);
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,303 @@
+package com.sumanth.railway;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.*;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Latency histograms per service operation and per SQL statement, event counters and connection
+ * pool gauges. Everything is pre-allocated per enum constant, so recording is an array lookup and
+ * a few atomic adds. Readers get the numbers through JMX or in Prometheus text format.
+ */
+final class Metrics implements MetricsTrackerFactory {
+    private static final Logger logger = LoggerFactory.getLogger(Metrics.class);
+    static final String MBEAN_NAME = "com.sumanth.railway:type=Metrics";
+
+    enum Operation { LOGIN, MAKE_RESERVATION, GROUP_BOOKING, CANCEL_RESERVATION, LIST_RESERVATIONS,
+        RESERVATION_PAGE, TRAIN_PAGE, SEARCH_ROUTES }
+
+    // Named after what the statement does, not its SQL, so the labels survive query rewrites
+    enum Query { FIND_USER, INSERT_RESERVATION, INSERT_PNR, CANCEL_RESERVATION, LIST_RESERVATIONS,
+        RESERVATION_PAGE, TRAIN_PAGE, PROMOTE_WAITLIST }
+
+    enum Counter { BOOKINGS, CANCELLATIONS, FAILED_LOGINS, THROTTLED_LOGINS, ROLLBACKS, SOLD_OUT,
+        WAITLIST_PROMOTIONS, POOL_TIMEOUTS, AUDIT_REFUSED }
+
+    enum PoolHistogram { ACQUIRE, USAGE, CREATE }
+
+    private final LatencyHistogram[] operations = histograms(Operation.values().length);
+    private final LatencyHistogram[] queries = histograms(Query.values().length);
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private final List<Pool> pools = new CopyOnWriteArrayList<>();
+
+    private record Pool(String name, PoolStats stats, LatencyHistogram[] histograms) {}
+
+    Metrics() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    void record(Operation operation, long startedNanos) {
+        operations[operation.ordinal()].recordSince(startedNanos);
+    }
+
+    void recordSql(Query query, long startedNanos) {
+        queries[query.ordinal()].recordSince(startedNanos);
+    }
+
+    void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    void add(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    long count(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    LatencyHistogram.Summary summary(Operation operation) {
+        return operations[operation.ordinal()].snapshot();
+    }
+
+    LatencyHistogram.Summary summary(Query query) {
+        return queries[query.ordinal()].snapshot();
+    }
+
+    // HikariCP calls this once per pool, when it starts; its tracker feeds that pool's histograms
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        LatencyHistogram[] pool = histograms(PoolHistogram.values().length);
+        pools.add(new Pool(poolName, poolStats, pool));
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                pool[PoolHistogram.CREATE.ordinal()].record(connectionCreatedMillis * 1_000_000);
+            }
+
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                pool[PoolHistogram.ACQUIRE.ordinal()].record(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                pool[PoolHistogram.USAGE.ordinal()].record(elapsedBorrowedMillis * 1_000_000);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                increment(Counter.POOL_TIMEOUTS);
+            }
+        };
+    }
+
+    // Prometheus text exposition format, version 0.0.4
+    String prometheus() {
+        StringBuilder out = new StringBuilder(8192);
+        out.append("# HELP railway_operation_duration_seconds Service operation latency.\n")
+           .append("# TYPE railway_operation_duration_seconds summary\n");
+        for (Operation operation : Operation.values()) {
+            summary(out, "railway_operation_duration_seconds", "operation", label(operation),
+                operations[operation.ordinal()].snapshot());
+        }
+        out.append("# HELP railway_sql_duration_seconds SQL statement latency, including commit.\n")
+           .append("# TYPE railway_sql_duration_seconds summary\n");
+        for (Query query : Query.values()) {
+            summary(out, "railway_sql_duration_seconds", "statement", label(query),
+                queries[query.ordinal()].snapshot());
+        }
+        for (Counter counter : Counter.values()) {
+            String name = "railway_" + label(counter) + "_total";
+            out.append("# TYPE ").append(name).append(" counter\n")
+               .append(name).append(' ').append(count(counter)).append('\n');
+        }
+
+        if (pools.isEmpty()) return out.toString();
+
+        out.append("# HELP railway_pool_duration_seconds Connection pool acquire, usage and create times.\n")
+           .append("# TYPE railway_pool_duration_seconds summary\n");
+        for (Pool pool : pools) {
+            for (PoolHistogram histogram : PoolHistogram.values()) {
+                summary(out, "railway_pool_duration_seconds", "pool=\"" + pool.name() + "\",phase", label(histogram),
+                    pool.histograms()[histogram.ordinal()].snapshot());
+            }
+        }
+        out.append("# HELP railway_pool_connections Connections in the pool by state.\n")
+           .append("# TYPE railway_pool_connections gauge\n");
+        for (Pool pool : pools) {
+            String series = "railway_pool_connections{pool=\"" + pool.name() + "\",state=";
+            gauge(out, series + "\"active\"}", pool.stats().getActiveConnections());
+            gauge(out, series + "\"idle\"}", pool.stats().getIdleConnections());
+            gauge(out, series + "\"total\"}", pool.stats().getTotalConnections());
+            gauge(out, series + "\"max\"}", pool.stats().getMaxConnections());
+        }
+        out.append("# HELP railway_pool_pending_threads Threads waiting for a connection.\n")
+           .append("# TYPE railway_pool_pending_threads gauge\n");
+        for (Pool pool : pools) {
+            gauge(out, "railway_pool_pending_threads{pool=\"" + pool.name() + "\"}", pool.stats().getPendingThreads());
+        }
+        return out.toString();
+    }
+
+    private static void summary(StringBuilder out, String name, String labelName, String labelValue,
+                                LatencyHistogram.Summary summary) {
+        String labels = "{" + labelName + "=\"" + labelValue + "\"";
+        quantile(out, name, labels, "0.5", summary.p50());
+        quantile(out, name, labels, "0.9", summary.p90());
+        quantile(out, name, labels, "0.99", summary.p99());
+        quantile(out, name, labels, "0.999", summary.p999());
+        out.append(name).append("_sum").append(labels).append("} ").append(seconds(summary.sumNanos())).append('\n');
+        out.append(name).append("_count").append(labels).append("} ").append(summary.count()).append('\n');
+    }
+
+    private static void quantile(StringBuilder out, String name, String labels, String quantile, long nanos) {
+        out.append(name).append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+           .append(seconds(nanos)).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String series, int value) {
+        out.append(series).append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    private static String label(Enum<?> constant) {
+        return constant.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static LatencyHistogram[] histograms(int size) {
+        LatencyHistogram[] histograms = new LatencyHistogram[size];
+        for (int i = 0; i < size; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    // JMX
+
+    // Flat read-only attributes, so jconsole and any JMX exporter can read them without our classes
+    Map<String, Object> attributes() {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            putSummary(attributes, "operation." + label(operation), operations[operation.ordinal()].snapshot());
+        }
+        for (Query query : Query.values()) {
+            putSummary(attributes, "sql." + label(query), queries[query.ordinal()].snapshot());
+        }
+        for (Counter counter : Counter.values()) {
+            attributes.put("count." + label(counter), count(counter));
+        }
+        for (Pool pool : pools) {
+            String prefix = "pool." + pool.name() + ".";
+            for (PoolHistogram histogram : PoolHistogram.values()) {
+                putSummary(attributes, prefix + label(histogram), pool.histograms()[histogram.ordinal()].snapshot());
+            }
+            attributes.put(prefix + "active", pool.stats().getActiveConnections());
+            attributes.put(prefix + "idle", pool.stats().getIdleConnections());
+            attributes.put(prefix + "total", pool.stats().getTotalConnections());
+            attributes.put(prefix + "max", pool.stats().getMaxConnections());
+            attributes.put(prefix + "pending", pool.stats().getPendingThreads());
+        }
+        return attributes;
+    }
+
+    private static void putSummary(Map<String, Object> attributes, String prefix, LatencyHistogram.Summary summary) {
+        attributes.put(prefix + ".count", summary.count());
+        attributes.put(prefix + ".meanMicros", summary.meanNanos() / 1000);
+        attributes.put(prefix + ".p50Micros", summary.p50() / 1000);
+        attributes.put(prefix + ".p90Micros", summary.p90() / 1000);
+        attributes.put(prefix + ".p99Micros", summary.p99() / 1000);
+        attributes.put(prefix + ".p999Micros", summary.p999() / 1000);
+        attributes.put(prefix + ".maxMicros", summary.maxNanos() / 1000);
+    }
+
+    // A second registration (another service in the same JVM) replaces the first
+    void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(new MetricsMBean(this), name);
+        } catch (JMException e) {
+            logger.warn("Could not register metrics MBean: {}", e.getMessage());
+        }
+    }
+
+    void unregisterMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(MBEAN_NAME));
+        } catch (InstanceNotFoundException e) {
+            // Never registered
+        } catch (JMException e) {
+            logger.warn("Could not unregister metrics MBean: {}", e.getMessage());
+        }
+    }
+
+    private static final class MetricsMBean implements DynamicMBean {
+        private final Metrics metrics;
+
+        MetricsMBean(Metrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object value = metrics.attributes().get(attribute);
+            if (value == null) throw new AttributeNotFoundException(attribute);
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            Map<String, Object> attributes = metrics.attributes();
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                if (attributes.containsKey(name)) list.add(new Attribute(name, attributes.get(name)));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        // Built on every call, so pool attributes appear once the pool has started
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> infos = new ArrayList<>();
+            for (Map.Entry<String, Object> entry : metrics.attributes().entrySet()) {
+                infos.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                    entry.getKey(), true, false, false));
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Railway latency, counters and pool gauges",
+                infos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
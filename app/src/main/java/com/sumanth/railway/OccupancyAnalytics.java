@@ -0,0 +1,399 @@
+package com.sumanth.railway;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntUnaryOperator;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bookings, berth mix and meal demand per (train_no, departure_date), kept current by the booking,
+ * cancellation and waitlist paths instead of by querying the reservations table.
+ *
+ * <p>Each train keeps one Fenwick tree per measure over its span of departure days, so a change
+ * updates O(log days) cells in place and any date range is the difference of two prefix sums,
+ * also O(log days). A train's trees are guarded by its own lock, held for a few dozen array writes,
+ * which is small next to the booking transaction that precedes every change.
+ *
+ * <p>{@link #rebuild()} recounts everything from the reservations table, splitting each shard's
+ * reservation ids into chunks read in parallel on a fork-join pool. Changes wait while it runs,
+ * so none is lost between the count and the swap.
+ */
+final class OccupancyAnalytics {
+    private static final Logger logger = LoggerFactory.getLogger(OccupancyAnalytics.class);
+    // Reservation ids per chunk read by one rebuild task
+    static final int REBUILD_CHUNK = 50_000;
+    // Chunks read at once during a rebuild; each holds a connection while it reads
+    static final int DEFAULT_PARALLELISM = 4;
+    // Days a train's trees cover at first, from a few days before the first change; they double as needed
+    private static final int INITIAL_DAYS = 64;
+    private static final int PAST_SLACK_DAYS = 8;
+
+    // BOOKED counts every reservation; the berth measures follow RailwayService.BERTH_TYPES
+    enum Measure { BOOKED, LOWER, MIDDLE, UPPER, SIDE, MEALS }
+
+    static final int MEASURES = Measure.values().length;
+
+    record Occupancy(int trainNo, LocalDate from, LocalDate to, long seatCapacity, long booked, long lower,
+                     long middle, long upper, long side, long meals) {
+        double loadFactor() {
+            return seatCapacity == 0 ? 0 : (double) booked / seatCapacity;
+        }
+
+        double mealShare() {
+            return booked == 0 ? 0 : (double) meals / booked;
+        }
+    }
+
+    // Guarded by its own monitor
+    private static final class Train {
+        // Day of tree index 1; trees[m] is 1-based, values[m][i] is day firstDay + i
+        int firstDay;
+        long[][] values;
+        long[][] trees;
+        // Days that have seen a change, so a range outside them is answered without a lookup
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+
+        void add(int day, long[] deltas) {
+            cover(day);
+            minDay = Math.min(minDay, day);
+            maxDay = Math.max(maxDay, day);
+            int index = day - firstDay;
+            for (int m = 0; m < MEASURES; m++) {
+                if (deltas[m] == 0) continue;
+                values[m][index] += deltas[m];
+                long[] tree = trees[m];
+                for (int i = index + 1; i < tree.length; i += i & -i) {
+                    tree[i] += deltas[m];
+                }
+            }
+        }
+
+        // Sum of measure m over days [firstDay, firstDay + count)
+        long prefix(int m, int count) {
+            long sum = 0;
+            long[] tree = trees[m];
+            for (int i = Math.min(count, tree.length - 1); i > 0; i -= i & -i) {
+                sum += tree[i];
+            }
+            return sum;
+        }
+
+        long[] totals(int fromDay, int toDay) {
+            long[] totals = new long[MEASURES];
+            int lo = Math.max(fromDay, minDay);
+            int hi = Math.min(toDay, maxDay);
+            if (values == null || lo > hi) return totals;
+            for (int m = 0; m < MEASURES; m++) {
+                totals[m] = prefix(m, hi - firstDay + 1) - prefix(m, lo - firstDay);
+            }
+            return totals;
+        }
+
+        // Grows the trees, keeping their values, until they cover the day
+        private void cover(int day) {
+            if (values == null) {
+                firstDay = day - PAST_SLACK_DAYS;
+                resize(firstDay, INITIAL_DAYS);
+                return;
+            }
+            int days = values[0].length;
+            if (day >= firstDay && day < firstDay + days) return;
+            int from = Math.min(firstDay, day - PAST_SLACK_DAYS);
+            int needed = Math.max(firstDay + days, day + 1) - from;
+            int capacity = days;
+            while (capacity < needed) capacity *= 2;
+            resize(from, capacity);
+        }
+
+        private void resize(int from, int capacity) {
+            long[][] resized = new long[MEASURES][capacity];
+            if (values != null) {
+                for (int m = 0; m < MEASURES; m++) {
+                    System.arraycopy(values[m], 0, resized[m], firstDay - from, values[m].length);
+                }
+            }
+            firstDay = from;
+            values = resized;
+            trees = new long[MEASURES][];
+            for (int m = 0; m < MEASURES; m++) {
+                trees[m] = build(values[m]);
+            }
+        }
+
+        // Linear-time Fenwick construction: each cell passes its partial sum to its parent
+        private static long[] build(long[] values) {
+            long[] tree = new long[values.length + 1];
+            for (int i = 1; i < tree.length; i++) {
+                tree[i] += values[i - 1];
+                int parent = i + (i & -i);
+                if (parent < tree.length) tree[parent] += tree[i];
+            }
+            return tree;
+        }
+    }
+
+    private final List<DataSource> dataSources;
+    private final IntUnaryOperator capacity;
+    private final ForkJoinPool pool;
+    // Changes hold the read side; a rebuild holds the write side from its first read to the swap
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+    private volatile Map<Integer, Train> trains = new ConcurrentHashMap<>();
+
+    // capacity gives a train's seats per departure, as SeatInventory knows it
+    OccupancyAnalytics(List<DataSource> dataSources, IntUnaryOperator capacity, int parallelism) {
+        this.dataSources = List.copyOf(dataSources);
+        this.capacity = capacity;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    void booked(int trainNo, LocalDate departureDate, String berthType, boolean meals) {
+        add(trainNo, departureDate, berthType, meals, 1);
+    }
+
+    void cancelled(int trainNo, LocalDate departureDate, String berthType, boolean meals) {
+        add(trainNo, departureDate, berthType, meals, -1);
+    }
+
+    private void add(int trainNo, LocalDate departureDate, String berthType, boolean meals, int delta) {
+        long[] deltas = new long[MEASURES];
+        count(deltas, berthType, meals, delta);
+        rebuildLock.readLock().lock();
+        try {
+            Train train = trains.computeIfAbsent(trainNo, no -> new Train());
+            synchronized (train) {
+                train.add((int) departureDate.toEpochDay(), deltas);
+            }
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    // Adds one reservation's worth of each measure it counts towards
+    static void count(long[] counts, String berthType, boolean meals, long delta) {
+        counts[Measure.BOOKED.ordinal()] += delta;
+        Measure berth = berth(berthType);
+        if (berth != null) counts[berth.ordinal()] += delta;
+        if (meals) counts[Measure.MEALS.ordinal()] += delta;
+    }
+
+    // Both dates inclusive; seat capacity assumes the train runs every day of the range
+    Occupancy occupancy(int trainNo, LocalDate from, LocalDate to) {
+        Train train = trains.get(trainNo);
+        long[] totals = train == null ? new long[MEASURES] : totals(train, from, to);
+        return occupancy(trainNo, from, to, totals);
+    }
+
+    private Occupancy occupancy(int trainNo, LocalDate from, LocalDate to, long[] totals) {
+        long days = ChronoUnit.DAYS.between(from, to) + 1;
+        long seatCapacity = days <= 0 ? 0 : days * capacity.applyAsInt(trainNo);
+        return new Occupancy(trainNo, from, to, seatCapacity, totals[Measure.BOOKED.ordinal()],
+            totals[Measure.LOWER.ordinal()], totals[Measure.MIDDLE.ordinal()], totals[Measure.UPPER.ordinal()],
+            totals[Measure.SIDE.ordinal()], totals[Measure.MEALS.ordinal()]);
+    }
+
+    // One row per train with any bookings, busiest first; trains with no changed day in the range are
+    // passed over without a lookup
+    List<Occupancy> occupancy(LocalDate from, LocalDate to) {
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        List<Occupancy> rows = new ArrayList<>();
+        for (Map.Entry<Integer, Train> entry : trains.entrySet()) {
+            Train train = entry.getValue();
+            long[] totals;
+            synchronized (train) {
+                if (train.maxDay < fromDay || train.minDay > toDay) continue;
+                totals = train.totals(fromDay, toDay);
+            }
+            if (totals[Measure.BOOKED.ordinal()] > 0) rows.add(occupancy(entry.getKey(), from, to, totals));
+        }
+        rows.sort((a, b) -> Double.compare(b.loadFactor(), a.loadFactor()));
+        return rows;
+    }
+
+    private static long[] totals(Train train, LocalDate from, LocalDate to) {
+        synchronized (train) {
+            return train.totals((int) from.toEpochDay(), (int) to.toEpochDay());
+        }
+    }
+
+    /**
+     * Recounts everything from the reservations table and swaps the result in. Bookings and
+     * cancellations wait until it is done, so this belongs at startup or in a quiet period. Trips
+     * already archived are no longer in the table and drop out of the counts.
+     */
+    void rebuild() throws SQLException {
+        long started = System.nanoTime();
+        rebuildLock.writeLock().lock();
+        try {
+            Map<Long, long[]> counts = new HashMap<>();
+            for (DataSource dataSource : dataSources) {
+                long[] range = idRange(dataSource);
+                if (range == null) continue;
+                try {
+                    merge(counts, pool.invoke(new ChunkTask(dataSource, range[0], range[1])));
+                } catch (RuntimeException e) {
+                    // Tasks wrap their SQLException; the pool may wrap it again when rethrowing
+                    for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                        if (cause instanceof SQLException sql) throw sql;
+                    }
+                    throw e;
+                }
+            }
+            swap(counts, "rebuilt", started);
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Takes the counts from a snapshot instead of the reservations table: its departed totals plus
+     * the reservations it holds that are still in {@code live}. Changes replayed after this go through
+     * {@link #booked} and {@link #cancelled} as usual.
+     */
+    void restore(StateSnapshot snapshot, BitSet live) {
+        long started = System.nanoTime();
+        rebuildLock.writeLock().lock();
+        try {
+            Map<Long, long[]> counts = new HashMap<>();
+            for (int i = 0; i < snapshot.departedCount(); i++) {
+                StateSnapshot.Departed departed = snapshot.departed(i);
+                counts.put(key(departed.trainNo(), (int) departed.departureDate().toEpochDay()), departed.counts());
+            }
+            for (int i = 0; i < snapshot.reservationCount(); i++) {
+                StateSnapshot.ActiveReservation reservation = snapshot.reservation(i);
+                if (!live.get(reservation.reservationId())) continue;
+                long key = key(reservation.trainNo(), (int) reservation.departureDate().toEpochDay());
+                count(counts.computeIfAbsent(key, k -> new long[MEASURES]), reservation.berthType(),
+                    reservation.meals(), 1);
+            }
+            swap(counts, "restored", started);
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+    }
+
+    // Replaces every count with the given ones, keyed by train number and departure day
+    private void swap(Map<Long, long[]> counts, String how, long started) {
+        Map<Integer, Train> rebuilt = new ConcurrentHashMap<>();
+        long reservations = 0;
+        for (Map.Entry<Long, long[]> entry : counts.entrySet()) {
+            int trainNo = (int) (entry.getKey() >> 32);
+            int day = (int) (long) entry.getKey();
+            rebuilt.computeIfAbsent(trainNo, no -> new Train()).add(day, entry.getValue());
+            reservations += entry.getValue()[Measure.BOOKED.ordinal()];
+        }
+        trains = rebuilt;
+        logger.info("Occupancy analytics {}: {} reservations over {} trains in {} ms", how, reservations,
+            rebuilt.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private static void merge(Map<Long, long[]> into, Map<Long, long[]> counts) {
+        for (Map.Entry<Long, long[]> entry : counts.entrySet()) {
+            long[] sums = into.computeIfAbsent(entry.getKey(), key -> new long[MEASURES]);
+            for (int m = 0; m < MEASURES; m++) {
+                sums[m] += entry.getValue()[m];
+            }
+        }
+    }
+
+    static long key(int trainNo, int day) {
+        return ((long) trainNo << 32) | (day & 0xffffffffL);
+    }
+
+    private static long[] idRange(DataSource dataSource) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(reservation_id), MAX(reservation_id) FROM reservations")) {
+            rs.next();
+            long min = rs.getLong(1);
+            if (rs.wasNull()) return null;
+            return new long[] {min, rs.getLong(2)};
+        }
+    }
+
+    // Counts for the reservation ids in [from, to], keyed by train number and departure day
+    private static final class ChunkTask extends RecursiveTask<Map<Long, long[]>> {
+        private static final long serialVersionUID = 1L;
+
+        private final DataSource dataSource;
+        private final long from;
+        private final long to;
+
+        ChunkTask(DataSource dataSource, long from, long to) {
+            this.dataSource = dataSource;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Map<Long, long[]> compute() {
+            if (to - from < REBUILD_CHUNK) {
+                try {
+                    return read();
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            long middle = from + (to - from) / 2;
+            ChunkTask left = new ChunkTask(dataSource, from, middle);
+            left.fork();
+            Map<Long, long[]> counts = new ChunkTask(dataSource, middle + 1, to).compute();
+            for (Map.Entry<Long, long[]> entry : left.join().entrySet()) {
+                long[] into = counts.computeIfAbsent(entry.getKey(), key -> new long[MEASURES]);
+                for (int m = 0; m < MEASURES; m++) {
+                    into[m] += entry.getValue()[m];
+                }
+            }
+            return counts;
+        }
+
+        private Map<Long, long[]> read() throws SQLException {
+            Map<Long, long[]> counts = new HashMap<>();
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT train_no, departure_date, berth_type, meals_required FROM reservations " +
+                     "WHERE reservation_id BETWEEN ? AND ?")) {
+
+                pstmt.setLong(1, from);
+                pstmt.setLong(2, to);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        long key = key(rs.getInt(1), (int) rs.getDate(2).toLocalDate().toEpochDay());
+                        count(counts.computeIfAbsent(key, k -> new long[MEASURES]), rs.getString(3), rs.getBoolean(4), 1);
+                    }
+                }
+            }
+            return counts;
+        }
+    }
+
+    private static Measure berth(String berthType) {
+        if (berthType == null) return null;
+        return switch (berthType.toUpperCase(Locale.ROOT)) {
+            case "LOWER" -> Measure.LOWER;
+            case "MIDDLE" -> Measure.MIDDLE;
+            case "UPPER" -> Measure.UPPER;
+            case "SIDE" -> Measure.SIDE;
+            default -> null;
+        };
+    }
+
+    void close() {
+        pool.shutdownNow();
+    }
+}
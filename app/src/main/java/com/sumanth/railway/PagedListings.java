@@ -0,0 +1,197 @@
+package com.sumanth.railway;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import javax.sql.DataSource;
+
+/**
+ * Keyset-paginated train and reservation listings. Pages are ordered by train_no and by
+ * (departure_date, reservation_id); the cursor is the key of the last row returned, so a page
+ * costs the same however deep into the listing it is. Filters are pushed into the WHERE clause.
+ * With several shards each one returns its first page and the pages are merged by key.
+ */
+class PagedListings {
+    static final int DEFAULT_PAGE_SIZE = 25;
+    static final int MAX_PAGE_SIZE = 500;
+    static final int DEFAULT_FETCH_SIZE = 500;
+
+    // The reservation page is assembled from these; QueryDiagnostics explains the same pieces
+    static final String RESERVATION_SELECT =
+        "SELECT r.reservation_id, r.train_no, t.train_name, r.berth_type, r.meals_required, " +
+        "r.departure_date, r.booking_date, s.coach_no, s.seat_no " +
+        "FROM reservations r JOIN train_details t ON r.train_no = t.train_no " +
+        "LEFT JOIN seat_assignments s ON s.reservation_id = r.reservation_id " +
+        "WHERE r.user_id = ?";
+    static final String AFTER_RESERVATION =
+        " AND (r.departure_date > ? OR (r.departure_date = ? AND r.reservation_id > ?))";
+    static final String RESERVATION_PAGE_ORDER = " ORDER BY r.departure_date, r.reservation_id LIMIT ?";
+
+    record Page<T>(List<T> items, String nextCursor) {}
+
+    // Null fields are not filtered on
+    record TrainFilter(String origin, String destination) {
+        static final TrainFilter NONE = new TrainFilter(null, null);
+    }
+
+    record ReservationFilter(LocalDate fromDate, LocalDate toDate, String origin, String destination) {
+        static final ReservationFilter NONE = new ReservationFilter(null, null, null, null);
+    }
+
+    private static final Comparator<RailwayService.Reservation> RESERVATION_ORDER =
+        Comparator.comparing(RailwayService.Reservation::departureDate)
+            .thenComparingInt(RailwayService.Reservation::reservationId);
+
+    @FunctionalInterface
+    private interface RowReader<T> {
+        T read(ResultSet rs) throws SQLException;
+    }
+
+    // Listings read from replicas; a user who has just booked or cancelled is sent to the primary
+    private final ShardRouter shards;
+    private final Metrics metrics;
+    // Streams on replica pools, which use cursor fetch; a page read from the primary is at most
+    // MAX_PAGE_SIZE + 1 rows and is simply buffered
+    private volatile int fetchSize = DEFAULT_FETCH_SIZE;
+
+    PagedListings(ShardRouter shards, Metrics metrics) {
+        this.shards = shards;
+        this.metrics = metrics;
+    }
+
+    void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    Page<RailwayService.Train> trains(TrainFilter filter, String cursor, int limit) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT * FROM train_details WHERE 1 = 1");
+        List<Object> params = new ArrayList<>();
+
+        if (cursor != null) {
+            sql.append(" AND train_no > ?");
+            params.add(parseInt(cursor, cursor));
+        }
+        if (filter.origin() != null) {
+            sql.append(" AND starting_point = ?");
+            params.add(filter.origin());
+        }
+        if (filter.destination() != null) {
+            sql.append(" AND destination = ?");
+            params.add(filter.destination());
+        }
+        // One extra row tells us whether another page follows
+        sql.append(" ORDER BY train_no LIMIT ?");
+        params.add(limit + 1);
+
+        String query = sql.toString();
+        long started = System.nanoTime();
+        try {
+            List<RailwayService.Train> trains = new ArrayList<>();
+            for (List<RailwayService.Train> shardTrains : shards.scatter(shard ->
+                    fetch(shard.dataSources().reader(), query, params, limit + 1, RailwayService::readTrain))) {
+                trains.addAll(shardTrains);
+            }
+            if (shards.sharded()) trains.sort(Comparator.comparingInt(RailwayService.Train::trainNo));
+            if (trains.size() <= limit) {
+                return new Page<>(trains, null);
+            }
+            trains.subList(limit, trains.size()).clear();
+            return new Page<>(trains, String.valueOf(trains.get(limit - 1).trainNo()));
+        } finally {
+            metrics.recordSql(Metrics.Query.TRAIN_PAGE, started);
+        }
+    }
+
+    Page<RailwayService.Reservation> reservations(String userId, ReservationFilter filter, String cursor,
+                                                  int limit) throws SQLException {
+        StringBuilder sql = new StringBuilder(RESERVATION_SELECT);
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+
+        if (cursor != null) {
+            int separator = cursor.indexOf(':');
+            if (separator < 0) throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            java.sql.Date lastDate = java.sql.Date.valueOf(LocalDate.parse(cursor.substring(0, separator)));
+            sql.append(AFTER_RESERVATION);
+            params.add(lastDate);
+            params.add(lastDate);
+            params.add(parseInt(cursor.substring(separator + 1), cursor));
+        }
+        if (filter.fromDate() != null) {
+            sql.append(" AND r.departure_date >= ?");
+            params.add(java.sql.Date.valueOf(filter.fromDate()));
+        }
+        if (filter.toDate() != null) {
+            sql.append(" AND r.departure_date <= ?");
+            params.add(java.sql.Date.valueOf(filter.toDate()));
+        }
+        if (filter.origin() != null) {
+            sql.append(" AND t.starting_point = ?");
+            params.add(filter.origin());
+        }
+        if (filter.destination() != null) {
+            sql.append(" AND t.destination = ?");
+            params.add(filter.destination());
+        }
+        sql.append(RESERVATION_PAGE_ORDER);
+        params.add(limit + 1);
+
+        String query = sql.toString();
+        long started = System.nanoTime();
+        try {
+            List<RailwayService.Reservation> reservations = new ArrayList<>();
+            for (List<RailwayService.Reservation> shardReservations : shards.scatter(shard ->
+                    fetch(shard.dataSources().reader(userId), query, params, limit + 1,
+                        RailwayService::readReservation))) {
+                reservations.addAll(shardReservations);
+            }
+            if (shards.sharded()) reservations.sort(RESERVATION_ORDER);
+            if (reservations.size() <= limit) {
+                return new Page<>(reservations, null);
+            }
+            reservations.subList(limit, reservations.size()).clear();
+            RailwayService.Reservation last = reservations.get(limit - 1);
+            return new Page<>(reservations, last.departureDate() + ":" + last.reservationId());
+        } finally {
+            metrics.recordSql(Metrics.Query.RESERVATION_PAGE, started);
+        }
+    }
+
+    private <T> List<T> fetch(DataSource dataSource, String sql, List<Object> params, int maxRows,
+                              RowReader<T> reader) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = prepare(conn, sql, params);
+             ResultSet rs = pstmt.executeQuery()) {
+
+            List<T> rows = new ArrayList<>();
+            while (rows.size() < maxRows && rs.next()) {
+                rows.add(reader.read(rs));
+            }
+            return rows;
+        }
+    }
+
+    private PreparedStatement prepare(Connection conn, String sql, List<Object> params) throws SQLException {
+        PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try {
+            pstmt.setFetchSize(fetchSize);
+            for (int i = 0; i < params.size(); i++) {
+                pstmt.setObject(i + 1, params.get(i));
+            }
+            return pstmt;
+        } catch (SQLException e) {
+            pstmt.close();
+            throw e;
+        }
+    }
+
+    private static int parseInt(String value, String cursor) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.sumanth.railway;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Books a group of passengers under one PNR: a parent pnr row plus one
+ * reservations/pnr_passengers/seat_assignments triple per passenger, all or nothing.
+ */
+class PnrBooking {
+    private static final Logger logger = LoggerFactory.getLogger(PnrBooking.class);
+    static final int MAX_PASSENGERS = 6;
+
+    record Passenger(String name, int age, String berthType, boolean meals) {}
+
+    record Result(long pnrNo, int trainNo, LocalDate departureDate, List<Passenger> passengers,
+                  List<Integer> reservationIds, List<SeatMap.Berth> berths) {}
+
+    private final ShardRouter shards;
+    private final SeatInventory seatInventory;
+    private final SeatMapRegistry seatMaps;
+    private final Metrics metrics;
+
+    PnrBooking(ShardRouter shards, SeatInventory seatInventory, SeatMapRegistry seatMaps, Metrics metrics) {
+        this.shards = shards;
+        this.seatInventory = seatInventory;
+        this.seatMaps = seatMaps;
+        this.metrics = metrics;
+    }
+
+    // Returns null when the departure cannot seat the whole group
+    Result book(String userId, int trainNo, LocalDate departureDate, List<Passenger> passengers) throws SQLException {
+        if (passengers.isEmpty() || passengers.size() > MAX_PASSENGERS) {
+            throw new IllegalArgumentException("A PNR must carry between 1 and " + MAX_PASSENGERS + " passengers");
+        }
+
+        // One conditional decrement for the whole group
+        int seats = passengers.size();
+        if (!seatInventory.tryReserve(trainNo, departureDate, seats)) {
+            return null;
+        }
+
+        List<SeatMap.Berth> berths = new ArrayList<>(seats);
+        SeatMap seatMap = null;
+        try {
+            seatMap = seatMaps.get(trainNo, departureDate);
+            for (Passenger passenger : passengers) {
+                SeatMap.Berth berth = seatMap.allocate(passenger.berthType());
+                if (berth == null) {
+                    throw new SQLException("Seat map for train " + trainNo + " on " + departureDate + " is full");
+                }
+                berths.add(berth);
+            }
+
+            ShardRouter.Shard shard = shards.shardFor(trainNo);
+            shards.ensureUser(shard, userId);
+            long started = System.nanoTime();
+            try (Connection conn = shard.primary().getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    long pnrNo = insertPnr(conn, userId, trainNo, departureDate, seats);
+                    List<Integer> reservationIds = insertReservations(conn, userId, trainNo, departureDate,
+                        passengers, berths);
+                    insertPassengers(conn, pnrNo, reservationIds, passengers);
+                    RailwayService.insertSeatAssignments(conn, trainNo, departureDate, reservationIds, berths);
+                    List<BookingOutbox.Change> changes = new ArrayList<>(seats);
+                    for (int i = 0; i < seats; i++) {
+                        changes.add(BookingOutbox.Change.booked(reservationIds.get(i), userId, trainNo, departureDate,
+                            berths.get(i), passengers.get(i).meals()));
+                    }
+                    BookingOutbox.append(conn, changes);
+
+                    conn.commit();
+                    logger.info("PNR {} booked with {} passengers on train {}", pnrNo, seats, trainNo);
+                    return new Result(pnrNo, trainNo, departureDate, List.copyOf(passengers), reservationIds,
+                        List.copyOf(berths));
+                } catch (SQLException e) {
+                    conn.rollback();
+                    metrics.increment(Metrics.Counter.ROLLBACKS);
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            } finally {
+                metrics.recordSql(Metrics.Query.INSERT_PNR, started);
+            }
+        } catch (SQLException e) {
+            for (SeatMap.Berth berth : berths) {
+                seatMap.release(berth.coachNo(), berth.seatNo());
+            }
+            seatInventory.release(trainNo, departureDate, seats);
+            throw e;
+        }
+    }
+
+    private long insertPnr(Connection conn, String userId, int trainNo, LocalDate departureDate,
+                           int passengerCount) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO pnr (user_id, train_no, departure_date, passenger_count) VALUES (?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+
+            pstmt.setString(1, userId);
+            pstmt.setInt(2, trainNo);
+            pstmt.setDate(3, java.sql.Date.valueOf(departureDate));
+            pstmt.setInt(4, passengerCount);
+            pstmt.executeUpdate();
+
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                if (!keys.next()) throw new SQLException("No PNR number generated");
+                return keys.getLong(1);
+            }
+        }
+    }
+
+    private List<Integer> insertReservations(Connection conn, String userId, int trainNo, LocalDate departureDate,
+                                             List<Passenger> passengers, List<SeatMap.Berth> berths)
+            throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO reservations (user_id, train_no, berth_type, meals_required, departure_date) " +
+                "VALUES (?, ?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+
+            for (int i = 0; i < passengers.size(); i++) {
+                pstmt.setString(1, userId);
+                pstmt.setInt(2, trainNo);
+                pstmt.setString(3, berths.get(i).berthType());
+                pstmt.setBoolean(4, passengers.get(i).meals());
+                pstmt.setDate(5, java.sql.Date.valueOf(departureDate));
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+
+            List<Integer> ids = new ArrayList<>(passengers.size());
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                while (keys.next()) {
+                    ids.add(keys.getInt(1));
+                }
+            }
+            if (ids.size() != passengers.size()) {
+                throw new SQLException("Expected " + passengers.size() + " reservation ids, got " + ids.size());
+            }
+            return ids;
+        }
+    }
+
+    private void insertPassengers(Connection conn, long pnrNo, List<Integer> reservationIds,
+                                  List<Passenger> passengers) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO pnr_passengers (reservation_id, pnr_no, passenger_name, passenger_age) " +
+                "VALUES (?, ?, ?, ?)")) {
+
+            for (int i = 0; i < passengers.size(); i++) {
+                pstmt.setInt(1, reservationIds.get(i));
+                pstmt.setLong(2, pnrNo);
+                pstmt.setString(3, passengers.get(i).name());
+                pstmt.setInt(4, passengers.get(i).age());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+}
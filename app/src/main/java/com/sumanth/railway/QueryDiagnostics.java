@@ -0,0 +1,105 @@
+package com.sumanth.railway;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.sql.DataSource;
+
+/**
+ * Runs EXPLAIN on the queries behind every request path and reports how each table is reached.
+ * A full table scan on one of these queries means an index is missing or unusable. The SQL is
+ * taken from the constants the call sites prepare, bound to sample values.
+ */
+final class QueryDiagnostics {
+    // H2 prints its plan as SQL, each table followed by its alias and a comment naming the access path
+    private static final Pattern H2_ACCESS = Pattern.compile(
+        "\"\\w+\"\\.\"(\\w+)\"(?: \"\\w+\")?\\s*/\\* (\\w+\\.\\w+?)(\\.tableScan)?(?:: ([^*]*?))?\\s*\\*/");
+
+    record HotQuery(String name, String sql, List<Object> params) {}
+
+    // One row per table access; fullScan is set for MySQL type ALL or an H2 tableScan
+    record Access(String query, String table, String type, String key, String rows, String extra, boolean fullScan) {}
+
+    static final List<HotQuery> HOT_QUERIES = hotQueries();
+
+    private final DataSource dataSource;
+
+    QueryDiagnostics(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    List<Access> explainAll() throws SQLException {
+        List<Access> accesses = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection()) {
+            for (HotQuery query : HOT_QUERIES) {
+                accesses.addAll(explain(conn, query));
+            }
+        }
+        return accesses;
+    }
+
+    private static List<Access> explain(Connection conn, HotQuery query) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("EXPLAIN " + query.sql())) {
+            for (int i = 0; i < query.params().size(); i++) {
+                pstmt.setObject(i + 1, query.params().get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return hasColumn(rs.getMetaData(), "type") ? mysqlPlan(query, rs) : h2Plan(query, rs);
+            }
+        }
+    }
+
+    private static List<Access> mysqlPlan(HotQuery query, ResultSet rs) throws SQLException {
+        List<Access> accesses = new ArrayList<>();
+        while (rs.next()) {
+            String type = rs.getString("type");
+            accesses.add(new Access(query.name(), rs.getString("table"), type, rs.getString("key"),
+                rs.getString("rows"), rs.getString("Extra"), "ALL".equalsIgnoreCase(type)));
+        }
+        return accesses;
+    }
+
+    private static List<Access> h2Plan(HotQuery query, ResultSet rs) throws SQLException {
+        List<Access> accesses = new ArrayList<>();
+        while (rs.next()) {
+            Matcher matcher = H2_ACCESS.matcher(rs.getString(1));
+            while (matcher.find()) {
+                boolean fullScan = matcher.group(3) != null;
+                String condition = matcher.group(4) == null ? null : matcher.group(4).replaceAll("\\s+", " ");
+                accesses.add(new Access(query.name(), matcher.group(1), fullScan ? "ALL" : "index",
+                    fullScan ? null : matcher.group(2), null, condition, fullScan));
+            }
+        }
+        return accesses;
+    }
+
+    private static boolean hasColumn(ResultSetMetaData metaData, String column) throws SQLException {
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (column.equalsIgnoreCase(metaData.getColumnLabel(i))) return true;
+        }
+        return false;
+    }
+
+    private static List<HotQuery> hotQueries() {
+        String userId = "USER0";
+        int trainNo = 1;
+        java.sql.Date departure = java.sql.Date.valueOf(LocalDate.now());
+
+        return List.of(
+            new HotQuery("login", RailwayService.LOGIN_QUERY, List.of("user")),
+            new HotQuery("view reservations", RailwayService.RESERVATIONS_QUERY, List.of(userId)),
+            new HotQuery("reservation page",
+                PagedListings.RESERVATION_SELECT + PagedListings.AFTER_RESERVATION + PagedListings.RESERVATION_PAGE_ORDER,
+                List.of(userId, departure, departure, 0, 21)),
+            new HotQuery("ticket export", TicketExport.CHART_QUERY, List.of(trainNo, departure)),
+            new HotQuery("cancel lookup", RailwayService.CANCEL_LOOKUP_QUERY, List.of(1, userId)),
+            new HotQuery("seats booked per train", RailwayService.BOOKED_SEATS_QUERY, List.of(trainNo)),
+            new HotQuery("seat map load", SeatMapRegistry.LOAD_QUERY, List.of(trainNo, departure)),
+            new HotQuery("waitlist head", Waitlist.HEAD_QUERY, List.of(trainNo, departure, Waitlist.PROMOTION_BATCH)),
+            new HotQuery("my waitlist", Waitlist.USER_ENTRIES_QUERY, List.of(userId)),
+            new HotQuery("snapshot replay", StateSnapshot.REPLAY_QUERY, List.of(0)));
+    }
+}
@@ -0,0 +1,1111 @@
+package com.sumanth.railway;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.io.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import javax.sql.DataSource;
+
+public class RailwayManagementSystem {
+    private static final Logger logger = LoggerFactory.getLogger(RailwayManagementSystem.class);
+    private static DataSourceConfig dbConfig;
+    private static ShardRouter shards;
+    // The home shard's primary pool; reads that tolerate replica lag go through its DataSources
+    private static DataSource dataSource;
+    private static RailwayService service;
+    private static final Metrics metrics = new Metrics();
+    private static MetricsEndpoint metricsEndpoint;
+    private static Thread metricsStarter;
+    private static final Scanner scanner = new Scanner(System.in);
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_DATE;
+    private static final String APP_NAME = "Sumanth Railway Management System";
+    
+    // Configuration constants
+    // Database URLs, credentials, replicas and pool sizes; override the file with -Drailway.config=path
+    private static final java.nio.file.Path DB_CONFIG_FILE =
+        java.nio.file.Path.of(System.getProperty("railway.config", "railway.properties"));
+    private static final int DEFAULT_API_PORT = 8080;
+    private static final int LISTING_FETCH_SIZE = 500;
+    // Override with -Drailway.bcrypt.cost=N; existing hashes are upgraded as their users log in
+    private static final int BCRYPT_COST = Integer.getInteger("railway.bcrypt.cost", AuthEngine.DEFAULT_COST);
+    private static final int AUTH_QUEUE_CAPACITY = 256;
+    private static final java.nio.file.Path AUDIT_LOG_FILE = java.nio.file.Path.of("backup", "railway-audit.log");
+    // Override with -Drailway.audit.flush-ms=N; at most this much acknowledged history is lost on a crash
+    private static final long AUDIT_FLUSH_MILLIS =
+        Long.getLong("railway.audit.flush-ms", AuditLog.DEFAULT_FLUSH_INTERVAL.toMillis());
+    private static final java.nio.file.Path SNAPSHOT_FILE = java.nio.file.Path.of("backup", "railway.snapshot");
+    // Override with -Drailway.snapshot.interval-min=N; a final snapshot is also taken at shutdown
+    private static final long SNAPSHOT_INTERVAL_MINUTES = Long.getLong("railway.snapshot.interval-min", 10);
+    // Departed trips are moved to compressed archive files here once they are this many days old
+    private static final java.nio.file.Path ARCHIVE_DIRECTORY = java.nio.file.Path.of("archive");
+    private static final int ARCHIVE_AFTER_DAYS = Integer.getInteger("railway.archive.after-days", 7);
+    private static final long ARCHIVE_INTERVAL_MINUTES = Long.getLong("railway.archive.interval-min", 24 * 60);
+    // Booking events are published here as batch files; override the interval with -Drailway.outbox.interval-ms=N
+    private static final java.nio.file.Path OUTBOX_DIRECTORY =
+        java.nio.file.Path.of(System.getProperty("railway.outbox.dir", "outbox"));
+    private static final long OUTBOX_INTERVAL_MILLIS = Long.getLong("railway.outbox.interval-ms", 200);
+    // Override with -Drailway.metrics.port=N; 0 turns the loopback /metrics endpoint off
+    private static final int METRICS_PORT = Integer.getInteger("railway.metrics.port", MetricsEndpoint.DEFAULT_PORT);
+    
+    public static void main(String[] args) {
+        try {
+            dbConfig = DataSourceConfig.load(DB_CONFIG_FILE);
+            startMetrics();
+            initializeConnectionPool();
+            initializeDatabase();
+            
+            // Maintenance: move trains onto the shards the ring assigns them to and exit
+            if (args.length > 0 && args[0].equals("--rebalance-shards")) {
+                rebalanceShards(args.length > 1 && args[1].equals("--dry-run"));
+                return;
+            }
+            
+            // Batch mode: load users from a CSV file and exit
+            if (args.length > 1 && args[0].equals("--import-users")) {
+                importUsers(java.nio.file.Path.of(args[1]));
+                return;
+            }
+            
+            // Diagnostics: show how the hot queries reach their tables and exit
+            if (args.length > 0 && args[0].equals("--explain")) {
+                explainQueries();
+                return;
+            }
+            
+            // Class-data-sharing training run: start up, serve a few requests and exit. Run it once as
+            //   java -XX:ArchiveClassesAtExit=railway.jsa -jar railway-management.jar --warm-up
+            // and start with -XX:SharedArchiveFile=railway.jsa to load those classes from the archive
+            if (args.length > 0 && args[0].equals("--warm-up")) {
+                initializeServices(false);
+                warmUp();
+                return;
+            }
+            
+            initializeServices(true);
+            ProcessHandle.current().info().startInstant().ifPresent(start -> logger.info(
+                "Services ready {} ms after process start", java.time.Duration.between(start, java.time.Instant.now()).toMillis()));
+            
+            // Chart preparation: write every ticket of one departure to files and exit
+            if (args.length > 2 && args[0].equals("--export-tickets")) {
+                exportTickets(Integer.parseInt(args[1]), LocalDate.parse(args[2]),
+                    java.nio.file.Path.of(args.length > 3 ? args[3] : "tickets"));
+                return;
+            }
+            
+            // Batch mode: apply scripted train, booking and profile commands and exit
+            if (args.length > 1 && args[0].equals("--batch")) {
+                runBatch(args[1], args.length > 2 ? java.nio.file.Path.of(args[2]) : null);
+                return;
+            }
+            
+            // Release check: drive synthetic peak-hour traffic, report latencies, check for overselling and exit
+            if (args.length > 0 && args[0].equals("--load-test")) {
+                runLoadTest(args.length > 1 ? Double.parseDouble(args[1]) : 100,
+                    java.time.Duration.ofSeconds(args.length > 2 ? Long.parseLong(args[2]) : 60),
+                    args.length > 3 ? Integer.parseInt(args[3]) : 32);
+                return;
+            }
+            
+            // Headless mode: serve the HTTP API instead of the console menus
+            if (args.length > 0 && args[0].equals("--serve")) {
+                startHttpApi(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_API_PORT);
+                return;
+            }
+            
+            logger.info("Starting {}", APP_NAME);
+            System.out.println("\n\n\t\t============================================");
+            System.out.println("\t\t      WELCOME TO " + APP_NAME.toUpperCase());
+            System.out.println("\t\t============================================\n");
+            
+            if (!service.hasUsers()) {
+                registerNewUser();
+            }
+            loginUser();
+            
+        } catch (Exception e) {
+            logger.error("Application error: {}", e.getMessage(), e);
+            System.out.println("A critical error occurred. Please contact support.");
+        } finally {
+            shutdown();
+        }
+    }
+    
+    // Every shard carries the full schema. The pools create a missing database as they connect, and a
+    // shard whose recorded schema is current costs one query: no DDL runs on an ordinary start
+    private static void initializeDatabase() throws SQLException {
+        for (ShardRouter.Shard shard : shards.shards()) {
+            try (Connection conn = shard.primary().getConnection()) {
+                if (SchemaMigrations.isCurrent(conn)) {
+                    logger.info("Schema on {} is at version {}", shard.name(), SchemaMigrations.latestVersion());
+                    continue;
+                }
+                SchemaMigrations.migrate(conn);
+                logger.info("Database initialized successfully on {}", shard.name());
+            }
+        }
+    }
+    
+    private static void initializeConnectionPool() {
+        shards = ShardRouter.open(dbConfig, metrics);
+        dataSource = shards.home().primary();
+    }
+    
+    // Metrics are always collected; the MBean and the endpoint are only ways of reading them, so they
+    // are set up in the background while the pools connect rather than on the startup path
+    private static void startMetrics() {
+        metricsStarter = new Thread(() -> {
+            metrics.registerMBean();
+            if (METRICS_PORT == 0) return;
+            try {
+                metricsEndpoint = new MetricsEndpoint(metrics, METRICS_PORT);
+                metricsEndpoint.start();
+            } catch (IOException e) {
+                logger.warn("Metrics endpoint not started on port {}: {}", METRICS_PORT, e.getMessage());
+            }
+        }, "metrics-start");
+        metricsStarter.setDaemon(true);
+        metricsStarter.start();
+    }
+    
+    // Without background writers, as for --warm-up, the state is loaded but no snapshot, archive, outbox,
+    // audit log or waitlist promotion runs, so closing the service writes nothing either
+    private static void initializeServices(boolean backgroundWriters) throws SQLException, IOException {
+        SeatInventory seatInventory = new SeatInventory(shards.primaries());
+        AuthEngine authEngine = new AuthEngine(AuthEngine.defaultThreads(), AUTH_QUEUE_CAPACITY, BCRYPT_COST);
+        AuditLog auditLog = !backgroundWriters ? AuditLog.disabled()
+            : new AuditLog(AUDIT_LOG_FILE, java.time.Duration.ofMillis(AUDIT_FLUSH_MILLIS),
+                AuditLog.DEFAULT_MAX_FILE_BYTES, AuditLog.DEFAULT_QUEUE_CAPACITY);
+        service = new RailwayService(shards, seatInventory,
+            new TrainCatalogCache(RailwayService.DEFAULT_CATALOG_CACHE_SIZE, RailwayService.DEFAULT_CATALOG_CACHE_TTL),
+            authEngine, auditLog, metrics);
+        service.setListingFetchSize(LISTING_FETCH_SIZE);
+        // A snapshot brings the analytics counts with it; only without one are reservations rescanned
+        if (!service.restoreSnapshot(SNAPSHOT_FILE)) {
+            seatInventory.load();
+            service.loadRouteGraph();
+            service.rebuildAnalytics();
+        }
+        if (!backgroundWriters) return;
+        // Schedules promotions for departures with seats free
+        service.loadWaitlist();
+        service.startSnapshots(SNAPSHOT_FILE, java.time.Duration.ofMinutes(SNAPSHOT_INTERVAL_MINUTES));
+        ReservationArchive archive = new ReservationArchive(shards, ARCHIVE_DIRECTORY, ReservationArchive.DEFAULT_CHUNK_SIZE);
+        service.setArchive(archive);
+        archive.start(java.time.Duration.ofMinutes(ARCHIVE_INTERVAL_MINUTES), ARCHIVE_AFTER_DAYS);
+        BookingOutbox outbox = new BookingOutbox(shards, new BookingOutbox.DirectoryQueue(OUTBOX_DIRECTORY),
+            BookingOutbox.DEFAULT_BATCH_SIZE);
+        service.setOutbox(outbox);
+        outbox.start(java.time.Duration.ofMillis(OUTBOX_INTERVAL_MILLIS));
+    }
+    
+    private static void startHttpApi(int port) throws IOException, InterruptedException {
+        HttpApi api = new HttpApi(service, port);
+        api.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            api.stop();
+            shutdown();
+        }));
+        System.out.println(APP_NAME + " API listening on port " + port);
+        Thread.currentThread().join();
+    }
+    
+    private static void importUsers(java.nio.file.Path csv) throws IOException, SQLException {
+        System.out.println("Importing users from " + csv + "...");
+        UserImport.Report report = new UserImport(dataSource, BCRYPT_COST).run(csv);
+        System.out.println("Rows read:  " + report.rowsRead());
+        System.out.println("Imported:   " + report.imported());
+        System.out.println("Rejected:   " + report.rejected());
+        if (report.rejected() > 0) {
+            System.out.println("Rejected rows and reasons: " + report.rejectedRows());
+        }
+        System.out.printf("Finished in %.1f s%n", report.elapsedMillis() / 1000.0);
+    }
+    
+    // Touches the startup, login and request paths so their classes end up in the archive. The services
+    // run without background writers and the login is refused and the listing unauthorized, so beyond
+    // bringing the schema up to date nothing is written
+    private static void warmUp() throws IOException, SQLException {
+        service.hasUsers();
+        HttpApi api = new HttpApi(service, 0);
+        api.start();
+        try {
+            java.net.URI base = java.net.URI.create("http://localhost:" + api.port());
+            java.net.HttpURLConnection login = (java.net.HttpURLConnection) base.resolve("/api/login").toURL().openConnection();
+            login.setRequestMethod("POST");
+            login.setDoOutput(true);
+            try (OutputStream out = login.getOutputStream()) {
+                out.write("{\"username\":\"warm-up\",\"password\":\"warm-up\"}".getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            }
+            logger.info("Warm-up login answered {}", login.getResponseCode());
+            login.disconnect();
+            java.net.HttpURLConnection trains = (java.net.HttpURLConnection) base.resolve("/api/trains").toURL().openConnection();
+            logger.info("Warm-up train listing answered {}", trains.getResponseCode());
+            trains.disconnect();
+        } finally {
+            api.stop();
+        }
+        System.out.println("Warm-up finished");
+    }
+    
+    // "-" reads the commands from standard input
+    private static void runBatch(String input, java.nio.file.Path results) throws IOException, SQLException {
+        BatchCommands batch = new BatchCommands(service);
+        BatchCommands.Report report;
+        if (input.equals("-")) {
+            report = batch.run(new BufferedReader(new InputStreamReader(System.in, java.nio.charset.StandardCharsets.UTF_8)),
+                results != null ? results : java.nio.file.Path.of("batch.results.csv"));
+        } else {
+            java.nio.file.Path file = java.nio.file.Path.of(input);
+            System.out.println("Applying commands from " + file + "...");
+            report = batch.run(file, results != null ? results : file.resolveSibling(file.getFileName() + ".results.csv"));
+        }
+        System.out.println("Commands:   " + report.commands());
+        System.out.println("Succeeded:  " + report.succeeded());
+        System.out.println("Refused:    " + report.refused());
+        System.out.println("Failed:     " + report.failed());
+        System.out.println("Results:    " + report.results());
+        System.out.printf("Finished in %.1f s%n", report.elapsedMillis() / 1000.0);
+    }
+    
+    private static void exportTickets(int trainNo, LocalDate departureDate, java.nio.file.Path directory)
+            throws SQLException, IOException {
+        RailwayService.Train train = service.findTrain(trainNo);
+        if (train == null) {
+            System.out.println("Train not found!");
+            return;
+        }
+        TicketExport.Report report = new TicketExport(shards.shardFor(trainNo).dataSources().reader(),
+            LISTING_FETCH_SIZE).export(train, departureDate, directory);
+        System.out.println("Tickets exported: " + report.tickets());
+        System.out.println("Files written:    " + report.files());
+        System.out.println("Directory:        " + report.directory());
+        System.out.printf("Finished in %.1f s%n", report.elapsedMillis() / 1000.0);
+    }
+    
+    private static void runLoadTest(double ratePerSecond, java.time.Duration duration, int threads)
+            throws SQLException, InterruptedException {
+        System.out.printf("Load test: %.0f requests/s for %d s on %d threads...%n", ratePerSecond,
+            duration.toSeconds(), threads);
+        LoadGenerator.Report report = new LoadGenerator(service,
+            LoadGenerator.Settings.defaults(ratePerSecond, duration, threads)).run();
+        
+        System.out.println("\n=== LOAD TEST RESULTS (ms, from when each request was due) ===");
+        System.out.println("+-----------+-----------+---------+--------+----------+----------+----------+----------+----------+");
+        System.out.println("| Operation | Succeeded | Refused | Failed | p50      | p90      | p99      | p99.9    | Max      |");
+        System.out.println("+-----------+-----------+---------+--------+----------+----------+----------+----------+----------+");
+        for (LoadGenerator.OperationReport op : report.operations()) {
+            LatencyHistogram.Summary latency = op.latency();
+            System.out.printf("| %-9s | %-9d | %-7d | %-6d | %-8.2f | %-8.2f | %-8.2f | %-8.2f | %-8.2f |\n",
+                op.operation(), op.succeeded(), op.refused(), op.failed(), latency.p50() / 1e6, latency.p90() / 1e6,
+                latency.p99() / 1e6, latency.p999() / 1e6, latency.maxNanos() / 1e6);
+        }
+        System.out.println("+-----------+-----------+---------+--------+----------+----------+----------+----------+----------+");
+        System.out.printf("Offered: %d, dropped: %d, throughput: %.1f requests/s over %.1f s%n", report.offered(),
+            report.dropped(), report.throughput(), report.elapsedMillis() / 1000.0);
+        
+        List<LoadGenerator.Departure> problems = report.problems();
+        System.out.println("Departures checked: " + report.departures().size());
+        if (problems.isEmpty()) {
+            System.out.println("No departure oversold; seat counters match the reservations.");
+            return;
+        }
+        for (LoadGenerator.Departure departure : problems) {
+            System.out.printf("PROBLEM: train %d on %s has %d reservations for %d seats, counter shows %d available%n",
+                departure.trainNo(), departure.departureDate(), departure.booked(), departure.capacity(),
+                departure.available());
+        }
+    }
+    
+    private static void rebalanceShards(boolean dryRun) throws SQLException {
+        if (!shards.sharded()) {
+            System.out.println("Only one shard is configured; nothing to rebalance.");
+            return;
+        }
+        ShardRebalancer.Report report = new ShardRebalancer(shards).run(dryRun);
+        System.out.println(dryRun ? "\n=== PLANNED TRAIN MOVES ===" : "\n=== TRAIN MOVES ===");
+        System.out.println("+----------+----------------------+----------------------+--------------+");
+        System.out.println("| Train No | From                 | To                   | Reservations |");
+        System.out.println("+----------+----------------------+----------------------+--------------+");
+        for (ShardRebalancer.Move move : report.moves()) {
+            System.out.printf("| %-8d | %-20s | %-20s | %-12d |\n", move.trainNo(), truncate(move.from(), 20),
+                truncate(move.to(), 20), move.reservations());
+        }
+        System.out.println("+----------+----------------------+----------------------+--------------+");
+        System.out.println((dryRun ? "Trains to move: " : "Trains moved:   ") + report.moves().size());
+        System.out.printf("Finished in %.1f s%n", report.elapsedMillis() / 1000.0);
+    }
+    
+    private static void explainQueries() throws SQLException {
+        List<QueryDiagnostics.Access> accesses = new QueryDiagnostics(dataSource).explainAll();
+        System.out.println("\n=== QUERY PLANS ===");
+        System.out.println("+----------------------------+---------------------+--------+----------------------------------+----------+-----------+");
+        System.out.println("| Query                      | Table               | Access | Key                              | Rows     | Verdict   |");
+        System.out.println("+----------------------------+---------------------+--------+----------------------------------+----------+-----------+");
+        int fullScans = 0;
+        for (QueryDiagnostics.Access access : accesses) {
+            if (access.fullScan()) fullScans++;
+            System.out.printf("| %-26s | %-19s | %-6s | %-32s | %-8s | %-9s |\n",
+                truncate(access.query(), 26), truncate(access.table(), 19), truncate(access.type(), 6),
+                truncate(access.key() == null ? "-" : access.key(), 32),
+                access.rows() == null ? "-" : access.rows(), access.fullScan() ? "FULL SCAN" : "ok");
+        }
+        System.out.println("+----------------------------+---------------------+--------+----------------------------------+----------+-----------+");
+        System.out.println(fullScans == 0 ? "No full table scans." : fullScans + " full table scan(s) found.");
+    }
+    
+    private static void registerNewUser() throws SQLException {
+        System.out.println("\n=== NEW USER REGISTRATION ===");
+        
+        String fullName = getValidInput("Enter your full name: ", 
+            RailwayService.VALID_NAME, "Invalid name format");
+            
+        int age = getValidIntegerInput("Enter your age: ", 15, 120);
+        
+        String phone = getValidInput("Enter phone number (10 digits): ",
+            RailwayService.VALID_PHONE, "Invalid phone number");
+            
+        String aadhaar = getValidInput("Enter Aadhaar number (12 digits): ",
+            RailwayService.VALID_AADHAAR, "Invalid Aadhaar number");
+            
+        String address = getValidInput("Enter your address: ", 
+            RailwayService.NOT_BLANK, "Address cannot be empty");
+            
+        String pincode = getValidInput("Enter pincode (6 digits): ",
+            RailwayService.VALID_PINCODE, "Invalid pincode");
+            
+        String username = getValidInput("Choose a username: ",
+            RailwayService.VALID_USERNAME, "Invalid username");
+            
+        String password = getValidInput("Choose a password (min 8 chars): ",
+            RailwayService.VALID_PASSWORD, "Password too short");
+            
+        try {
+            String userId = service.registerUser(new RailwayService.NewUser(
+                fullName, age, phone, aadhaar, address, pincode, username, password));
+            System.out.println("\nRegistration successful! Your user ID is: " + userId);
+        } catch (ServiceException e) {
+            System.out.println("Registration failed: " + e.getMessage());
+        }
+    }
+    
+    private static void loginUser() throws SQLException {
+        System.out.println("\n=== USER LOGIN ===");
+        int attempts = 0;
+        final int MAX_ATTEMPTS = 3;
+        
+        while (attempts < MAX_ATTEMPTS) {
+            String username = getInput("Username: ");
+            String password = getInput("Password: ");
+            
+            RailwayService.UserAccount account;
+            try {
+                account = service.authenticate(username, password);
+            } catch (ServiceException e) {
+                System.out.println(e.getMessage());
+                attempts++;
+                continue;
+            }
+            if (account != null) {
+                System.out.println("\nWelcome, " + account.fullName() + "!");
+                showMainMenu(account.userId(), account.fullName());
+                return;
+            }
+            
+            attempts++;
+            System.out.println("Invalid credentials. Attempts remaining: " + (MAX_ATTEMPTS - attempts));
+        }
+        
+        System.out.println("Maximum login attempts reached. Exiting...");
+        System.exit(0);
+    }
+    
+    private static void showMainMenu(String userId, String fullName) throws SQLException {
+        while (true) {
+            System.out.println("\n=== MAIN MENU ===");
+            System.out.println("Logged in as: " + fullName);
+            System.out.println("1. Train Management");
+            System.out.println("2. Reservation System");
+            System.out.println("3. User Profile");
+            System.out.println("4. View Patents");
+            System.out.println("5. Logout");
+            System.out.println("6. Exit");
+            
+            int choice = getValidIntegerInput("Enter your choice: ", 1, 6);
+            
+            switch (choice) {
+                case 1 -> trainManagementMenu();
+                case 2 -> reservationMenu(userId, fullName);
+                case 3 -> userProfileMenu(userId);
+                case 4 -> showPatents();
+                case 5 -> { logout(); return; }
+                case 6 -> { shutdown(); System.exit(0); }
+            }
+        }
+    }
+    
+    private static void trainManagementMenu() throws SQLException {
+        System.out.println("\n=== TRAIN MANAGEMENT ===");
+        System.out.println("1. View All Trains");
+        System.out.println("2. Add New Train");
+        System.out.println("3. Update Train Details");
+        System.out.println("4. Remove Train");
+        System.out.println("5. Catalog Cache Statistics");
+        System.out.println("6. Occupancy Report");
+        System.out.println("7. Back to Main Menu");
+        
+        int choice = getValidIntegerInput("Enter your choice: ", 1, 7);
+        
+        switch (choice) {
+            case 1 -> displayAllTrains(PagedListings.TrainFilter.NONE);
+            case 2 -> addNewTrain();
+            case 3 -> updateTrainDetails();
+            case 4 -> removeTrain();
+            case 5 -> showCatalogCacheStats();
+            case 6 -> showOccupancyReport();
+            case 7 -> { return; }
+        }
+    }
+    
+    private static void showOccupancyReport() {
+        LocalDate from = getValidDateInput("From date (YYYY-MM-DD): ");
+        LocalDate to = getValidDateInput("To date (YYYY-MM-DD): ");
+        List<OccupancyAnalytics.Occupancy> rows;
+        try {
+            rows = service.occupancy(from, to);
+        } catch (ServiceException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        if (rows.isEmpty()) {
+            System.out.println("No bookings between " + from + " and " + to + ".");
+            return;
+        }
+        
+        System.out.println("\n=== OCCUPANCY " + from + " TO " + to + " ===");
+        System.out.println("+-----------+----------+-------------+-------+--------+-------+-------+-------+");
+        System.out.println("| Train No  | Booked   | Load Factor | Lower | Middle | Upper | Side  | Meals |");
+        System.out.println("+-----------+----------+-------------+-------+--------+-------+-------+-------+");
+        for (OccupancyAnalytics.Occupancy row : rows) {
+            System.out.printf("| %-9d | %-8d | %-11s | %-5d | %-6d | %-5d | %-5d | %-5s |\n",
+                row.trainNo(), row.booked(), String.format("%.1f%%", row.loadFactor() * 100), row.lower(),
+                row.middle(), row.upper(), row.side(), String.format("%.0f%%", row.mealShare() * 100));
+        }
+        System.out.println("+-----------+----------+-------------+-------+--------+-------+-------+-------+");
+    }
+    
+    private static void displayAllTrains(PagedListings.TrainFilter filter) throws SQLException {
+        System.out.println("\n=== AVAILABLE TRAINS ===");
+        
+        String cursor = null;
+        do {
+            PagedListings.Page<RailwayService.Train> page;
+            try {
+                page = service.trainPage(filter, cursor, PagedListings.DEFAULT_PAGE_SIZE);
+            } catch (ServiceException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+            
+            System.out.println("+---------------------+-----------+----------------+----------------+------------------------+----------------+");
+            System.out.println("| Train Name          | Train No  | Starting Point | Destination    | Specifications         | Seats/Departure|");
+            System.out.println("+---------------------+-----------+----------------+----------------+------------------------+----------------+");
+            
+            for (RailwayService.Train train : page.items()) {
+                System.out.printf("| %-19s | %-9d | %-14s | %-14s | %-22s | %-14d |\n",
+                    train.trainName(),
+                    train.trainNo(),
+                    train.startingPoint(),
+                    train.destination(),
+                    train.specifications(),
+                    train.seatsPerDeparture());
+            }
+            System.out.println("+---------------------+-----------+----------------+----------------+------------------------+----------------+");
+            cursor = page.nextCursor();
+        } while (cursor != null && getYesNoInput("Show more trains (Y/N)? "));
+    }
+    
+    private static void showCatalogCacheStats() {
+        TrainCatalogCache.Stats stats = service.catalogCacheStats();
+        System.out.println("\n=== CATALOG CACHE ===");
+        System.out.println("Cached trains: " + stats.size());
+        System.out.println("Hits: " + stats.hits());
+        System.out.println("Misses: " + stats.misses());
+        System.out.printf("Hit ratio: %.1f%%\n", stats.hitRatio() * 100);
+        System.out.println("Evictions: " + stats.evictions());
+        System.out.println("Invalidations: " + stats.invalidations());
+    }
+    
+    private static void addNewTrain() throws SQLException {
+        System.out.println("\n=== ADD NEW TRAIN ===");
+        
+        String trainName = getValidInput("Train name: ", 
+            RailwayService.NOT_BLANK, "Name cannot be empty");
+            
+        int trainNo = getValidIntegerInput("Train number: ", 1, Integer.MAX_VALUE);
+        
+        String startingPoint = getValidInput("Starting point: ", 
+            RailwayService.NOT_BLANK, "Starting point cannot be empty");
+            
+        String destination = getValidInput("Destination: ", 
+            RailwayService.NOT_BLANK, "Destination cannot be empty");
+            
+        int seats = getValidIntegerInput("Seats per departure: ", 1, Integer.MAX_VALUE);
+        String specs = getInput("Extra specifications (optional): ");
+        
+        try {
+            service.addTrain(new RailwayService.Train(trainName, trainNo, startingPoint, destination, specs, seats));
+            System.out.println("Train added successfully!");
+        } catch (ServiceException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+    
+    private static void updateTrainDetails() throws SQLException {
+        int trainNo = getValidIntegerInput("Enter train number to update: ", 1, Integer.MAX_VALUE);
+        
+        RailwayService.Train train = service.findTrain(trainNo);
+        if (train == null) {
+            System.out.println("Train not found!");
+            return;
+        }
+        
+        System.out.println("\nCurrent Train Details:");
+        System.out.println("1. Name: " + train.trainName());
+        System.out.println("2. Starting Point: " + train.startingPoint());
+        System.out.println("3. Destination: " + train.destination());
+        System.out.println("4. Seats Per Departure: " + train.seatsPerDeparture());
+        System.out.println("5. Specifications: " + train.specifications());
+        
+        int field = getValidIntegerInput("Which field to update (1-5, 0 to cancel)? ", 0, 5);
+        if (field == 0) return;
+        
+        RailwayService.TrainField updateField = switch (field) {
+            case 1 -> RailwayService.TrainField.NAME;
+            case 2 -> RailwayService.TrainField.STARTING_POINT;
+            case 3 -> RailwayService.TrainField.DESTINATION;
+            case 4 -> RailwayService.TrainField.SEATS;
+            case 5 -> RailwayService.TrainField.SPECIFICATIONS;
+            default -> throw new IllegalStateException("Unexpected value: " + field);
+        };
+        
+        String newValue;
+        if (field == 4) {
+            newValue = String.valueOf(getValidIntegerInput("New seats per departure: ", 0, Integer.MAX_VALUE));
+        } else {
+            newValue = getValidInput("New value: ", RailwayService.NOT_BLANK, "Value cannot be empty");
+        }
+        
+        try {
+            service.updateTrain(trainNo, updateField, newValue);
+            System.out.println("Train details updated successfully!");
+        } catch (ServiceException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+    
+    private static void removeTrain() throws SQLException {
+        int trainNo = getValidIntegerInput("Enter train number to remove: ", 1, Integer.MAX_VALUE);
+        
+        try {
+            service.removeTrain(trainNo);
+            System.out.println("Train removed successfully!");
+        } catch (ServiceException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+    
+    private static void reservationMenu(String userId, String fullName) throws SQLException {
+        System.out.println("\n=== RESERVATION SYSTEM ===");
+        System.out.println("1. Search Routes");
+        System.out.println("2. Make Reservation");
+        System.out.println("3. Group Booking (PNR)");
+        System.out.println("4. View My Reservations");
+        System.out.println("5. Cancel Reservation");
+        System.out.println("6. My Waitlist");
+        System.out.println("7. Back to Main Menu");
+        
+        int choice = getValidIntegerInput("Enter your choice: ", 1, 7);
+        
+        switch (choice) {
+            case 1 -> searchRoutes();
+            case 2 -> makeReservation(userId, fullName);
+            case 3 -> makeGroupReservation(userId);
+            case 4 -> viewReservations(userId);
+            case 5 -> cancelReservation(userId);
+            case 6 -> manageWaitlist(userId);
+            case 7 -> { return; }
+        }
+    }
+    
+    private static void searchRoutes() {
+        String from = getValidInput("From station: ", RailwayService.NOT_BLANK, "Starting point cannot be empty");
+        String to = getValidInput("To station: ", RailwayService.NOT_BLANK, "Destination cannot be empty");
+        LocalDate date = getValidDateInput("Travel date (YYYY-MM-DD): ");
+        
+        List<RouteGraph.Itinerary> itineraries;
+        try {
+            itineraries = service.searchRoutes(from, to, date);
+        } catch (ServiceException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        
+        if (itineraries.isEmpty()) {
+            System.out.println("No routes with available seats found.");
+            suggestStations(from);
+            suggestStations(to);
+            return;
+        }
+        
+        System.out.println("\n=== ROUTES FROM " + from.toUpperCase() + " TO " + to.toUpperCase() + " ===");
+        int option = 1;
+        for (RouteGraph.Itinerary itinerary : itineraries) {
+            System.out.println("\nOption " + option++ + " (" + (itinerary.changes() == 0 ? "direct" :
+                itinerary.changes() + " change" + (itinerary.changes() > 1 ? "s" : "")) +
+                ", " + itinerary.seatsAvailable() + " seats)");
+            for (RouteGraph.Leg leg : itinerary.legs()) {
+                System.out.printf("  Train %-9d %-19s %s -> %s (%d seats)\n",
+                    leg.trainNo(), leg.trainName(), leg.from(), leg.to(), leg.seatsAvailable());
+            }
+        }
+    }
+    
+    // Points at likely spellings when a station typed into the search is not one the trains use
+    private static void suggestStations(String station) {
+        List<StationIndex.Station> matches;
+        try {
+            matches = service.suggestStations(station, 5);
+        } catch (ServiceException e) {
+            // Not reached: the prompt has already refused a blank name
+            return;
+        }
+        if (matches.isEmpty() || StationIndex.fold(matches.get(0).name()).equals(StationIndex.fold(station))) return;
+        StringJoiner names = new StringJoiner(", ");
+        for (StationIndex.Station match : matches) {
+            names.add(match.name() + " (" + match.trains() + " trains)");
+        }
+        System.out.println("Stations like \"" + station.trim() + "\": " + names);
+    }
+    
+    private static void makeReservation(String userId, String fullName) throws SQLException {
+        displayAllTrains(getTrainFilter());
+        
+        int trainNo = getValidIntegerInput("Enter train number: ", 1, Integer.MAX_VALUE);
+        
+        RailwayService.Train train = service.findTrain(trainNo);
+        if (train == null) {
+            System.out.println("Train not found!");
+            return;
+        }
+        
+        LocalDate departureDate = getValidDateInput("Departure date (YYYY-MM-DD): ");
+        
+        try {
+            // Check seats for the chosen departure against the in-memory inventory
+            int availableSeats = service.availableSeats(trainNo, departureDate);
+            if (availableSeats <= 0) {
+                System.out.println("No seats available on this train for " + departureDate + "!");
+                if (getYesNoInput("Join the waitlist (Y/N)? ")) {
+                    joinWaitlist(userId, trainNo, departureDate);
+                }
+                return;
+            }
+            
+            System.out.println("Booking seat on: " + train.trainName());
+            System.out.println("Seats available: " + availableSeats);
+            
+            String berthType = getValidInput("Berth type (Lower/Upper/Middle/Side): ", 
+                RailwayService.VALID_BERTH, "Invalid berth type");
+                
+            boolean meals = getYesNoInput("Include meals (Y/N)? ");
+            
+            RailwayService.Ticket ticket = service.book(new RailwayService.UserAccount(userId, fullName),
+                trainNo, departureDate, berthType, meals);
+            System.out.println("Reservation successful!");
+            
+            // Display ticket
+            printTicket(ticket);
+        } catch (ServiceException e) {
+            System.out.println(e.getMessage());
+        } catch (SQLException e) {
+            System.out.println("Reservation failed: " + e.getMessage());
+        }
+    }
+    
+    private static void makeGroupReservation(String userId) throws SQLException {
+        displayAllTrains(getTrainFilter());
+        
+        int trainNo = getValidIntegerInput("Enter train number: ", 1, Integer.MAX_VALUE);
+        LocalDate departureDate = getValidDateInput("Departure date (YYYY-MM-DD): ");
+        
+        try {
+            int availableSeats = service.availableSeats(trainNo, departureDate);
+            System.out.println("Seats available: " + availableSeats);
+            
+            int count = getValidIntegerInput("Number of passengers (1-" + PnrBooking.MAX_PASSENGERS + "): ",
+                1, PnrBooking.MAX_PASSENGERS);
+            if (count > availableSeats) {
+                System.out.println("Not enough seats available for " + count + " passengers!");
+                return;
+            }
+            
+            List<PnrBooking.Passenger> passengers = new ArrayList<>();
+            for (int i = 1; i <= count; i++) {
+                System.out.println("\nPassenger " + i);
+                String name = getValidInput("Name: ", RailwayService.VALID_NAME, "Invalid name format");
+                int age = getValidIntegerInput("Age: ", 1, 120);
+                String berthType = getValidInput("Berth type (Lower/Upper/Middle/Side): ",
+                    RailwayService.VALID_BERTH, "Invalid berth type");
+                boolean meals = getYesNoInput("Include meals (Y/N)? ");
+                passengers.add(new PnrBooking.Passenger(name, age, berthType.toUpperCase(), meals));
+            }
+            
+            PnrBooking.Result result = service.bookGroup(userId, trainNo, departureDate, passengers);
+            System.out.println("Reservation successful!");
+            printPnr(result);
+        } catch (ServiceException e) {
+            System.out.println(e.getMessage());
+        } catch (SQLException e) {
+            System.out.println("Reservation failed: " + e.getMessage());
+        }
+    }
+    
+    private static void viewReservations(String userId) throws SQLException {
+        System.out.println("\n=== YOUR RESERVATIONS ===");
+        
+        String cursor = null;
+        do {
+            PagedListings.Page<RailwayService.Reservation> page;
+            try {
+                page = service.reservationPage(userId, PagedListings.ReservationFilter.NONE, cursor,
+                    PagedListings.DEFAULT_PAGE_SIZE);
+            } catch (ServiceException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+            
+            if (cursor == null && page.items().isEmpty()) {
+                System.out.println("No upcoming reservations found.");
+                break;
+            }
+            
+            printReservations(page.items());
+            cursor = page.nextCursor();
+        } while (cursor != null && getYesNoInput("Show more reservations (Y/N)? "));
+        
+        if (!getYesNoInput("Show past trips (Y/N)? ")) return;
+        List<RailwayService.Reservation> pastTrips = service.listArchivedReservations(userId);
+        if (pastTrips.isEmpty()) {
+            System.out.println("No past trips found.");
+            return;
+        }
+        System.out.println("\n=== YOUR PAST TRIPS ===");
+        printReservations(pastTrips);
+    }
+    
+    private static void printReservations(List<RailwayService.Reservation> reservations) {
+        System.out.println("+-----+---------------------+-----------+---------+-------+----------------+---------------------+");
+        System.out.println("| ID  | Train Name          | Berth     | Seat    | Meals | Departure Date | Booking Date        |");
+        System.out.println("+-----+---------------------+-----------+---------+-------+----------------+---------------------+");
+        
+        for (RailwayService.Reservation reservation : reservations) {
+            System.out.printf("| %-3d | %-19s | %-9s | %-7s | %-5s | %-14s | %-19s |\n",
+                reservation.reservationId(),
+                reservation.trainName(),
+                reservation.berthType(),
+                reservation.coachNo() > 0
+                    ? SeatMap.coachLabel(reservation.coachNo()) + "/" + reservation.seatNo() : "-",
+                reservation.meals() ? "Yes" : "No",
+                reservation.departureDate().toString(),
+                reservation.bookingDate().toString());
+        }
+        System.out.println("+-----+---------------------+-----------+---------+-------+----------------+---------------------+");
+    }
+    
+    private static void joinWaitlist(String userId, int trainNo, LocalDate departureDate)
+            throws SQLException, ServiceException {
+        String berthType = getValidInput("Preferred berth type (Lower/Upper/Middle/Side): ",
+            RailwayService.VALID_BERTH, "Invalid berth type");
+        boolean meals = getYesNoInput("Include meals (Y/N)? ");
+        
+        Waitlist.Entry entry = service.joinWaitlist(userId, trainNo, departureDate, berthType, meals);
+        if (entry.position() == 0) {
+            System.out.println("A seat was freed in the meantime - your booking is confirmed.");
+        } else {
+            System.out.println("Added to the waitlist as " + entry.status() + " (waitlist ID " + entry.waitlistId() + ").");
+            System.out.println("You will be confirmed automatically when a seat is freed.");
+        }
+    }
+    
+    private static void manageWaitlist(String userId) throws SQLException {
+        List<Waitlist.Entry> entries = service.listWaitlist(userId);
+        if (entries.isEmpty()) {
+            System.out.println("You are not on any waitlist.");
+            return;
+        }
+        
+        System.out.println("+-----+---------------------+-----------+-------+----------------+---------+");
+        System.out.println("| ID  | Train Name          | Berth     | Meals | Departure Date | Status  |");
+        System.out.println("+-----+---------------------+-----------+-------+----------------+---------+");
+        for (Waitlist.Entry entry : entries) {
+            System.out.printf("| %-3d | %-19s | %-9s | %-5s | %-14s | %-7s |\n",
+                entry.waitlistId(),
+                entry.trainName(),
+                entry.berthType(),
+                entry.meals() ? "Yes" : "No",
+                entry.departureDate().toString(),
+                entry.status());
+        }
+        System.out.println("+-----+---------------------+-----------+-------+----------------+---------+");
+        
+        int waitlistId = getValidIntegerInput("Enter waitlist ID to leave (0 to go back): ", 0, Integer.MAX_VALUE);
+        if (waitlistId == 0) return;
+        
+        try {
+            service.leaveWaitlist(userId, waitlistId);
+            System.out.println("Removed from the waitlist.");
+        } catch (ServiceException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+    
+    private static void cancelReservation(String userId) throws SQLException {
+        viewReservations(userId);
+        int reservationId = getValidIntegerInput("Enter reservation ID to cancel (0 to cancel): ", 0, Integer.MAX_VALUE);
+        if (reservationId == 0) return;
+        
+        try {
+            service.cancelReservation(userId, reservationId);
+            System.out.println("Reservation cancelled successfully!");
+        } catch (ServiceException e) {
+            System.out.println(e.getMessage());
+        } catch (SQLException e) {
+            System.out.println("Cancellation failed: " + e.getMessage());
+        }
+    }
+    
+    private static void userProfileMenu(String userId) throws SQLException {
+        System.out.println("\n=== USER PROFILE ===");
+        System.out.println("1. View Profile");
+        System.out.println("2. Update Profile");
+        System.out.println("3. Change Password");
+        System.out.println("4. Back to Main Menu");
+        
+        int choice = getValidIntegerInput("Enter your choice: ", 1, 4);
+        
+        switch (choice) {
+            case 1 -> viewProfile(userId);
+            case 2 -> updateProfile(userId);
+            case 3 -> changePassword(userId);
+            case 4 -> { return; }
+        }
+    }
+    
+    private static void viewProfile(String userId) throws SQLException {
+        try {
+            RailwayService.UserProfile profile = service.getProfile(userId);
+            System.out.println("\n=== YOUR PROFILE ===");
+            System.out.println("User ID: " + profile.userId());
+            System.out.println("Username: " + profile.username());
+            System.out.println("Full Name: " + profile.fullName());
+            System.out.println("Age: " + profile.age());
+            System.out.println("Phone: " + profile.phone());
+            System.out.println("Aadhaar: " + profile.aadhaar());
+            System.out.println("Address: " + profile.address());
+            System.out.println("Pincode: " + profile.pincode());
+        } catch (ServiceException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+    
+    private static void updateProfile(String userId) throws SQLException {
+        viewProfile(userId);
+        System.out.println("\nWhich field would you like to update?");
+        System.out.println("1. Full Name");
+        System.out.println("2. Phone");
+        System.out.println("3. Address");
+        System.out.println("4. Pincode");
+        System.out.println("5. Cancel");
+        
+        int choice = getValidIntegerInput("Enter your choice: ", 1, 5);
+        if (choice == 5) return;
+        
+        RailwayService.ProfileField field = switch (choice) {
+            case 1 -> RailwayService.ProfileField.FULL_NAME;
+            case 2 -> RailwayService.ProfileField.PHONE;
+            case 3 -> RailwayService.ProfileField.ADDRESS;
+            case 4 -> RailwayService.ProfileField.PINCODE;
+            default -> throw new IllegalStateException("Unexpected value: " + choice);
+        };
+        
+        String newValue;
+        if (choice == 2) {
+            newValue = getValidInput("New phone (10 digits): ", field.validator, field.errorMessage);
+        } else if (choice == 4) {
+            newValue = getValidInput("New pincode (6 digits): ", field.validator, field.errorMessage);
+        } else {
+            newValue = getValidInput("New value: ", field.validator, field.errorMessage);
+        }
+        
+        try {
+            service.updateProfile(userId, field, newValue);
+            System.out.println("Profile updated successfully!");
+        } catch (ServiceException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+    
+    private static void changePassword(String userId) throws SQLException {
+        String currentPassword = getInput("Current password: ");
+        
+        String newPassword = getValidInput("New password (min 8 chars): ",
+            RailwayService.VALID_PASSWORD, "Password too short");
+            
+        String confirmPassword = getInput("Confirm new password: ");
+        
+        if (!newPassword.equals(confirmPassword)) {
+            System.out.println("Passwords don't match!");
+            return;
+        }
+        
+        try {
+            service.changePassword(userId, currentPassword, newPassword);
+            System.out.println("Password changed successfully!");
+        } catch (ServiceException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+    
+    private static void showPatents() {
+        System.out.println("\n=== PATENT RIGHTS ===");
+        System.out.println("This software is developed and owned by:");
+        System.out.println("Sumanth Railway Management Solutions Pvt. Ltd.");
+        System.out.println("All rights reserved © 2023");
+    }
+    
+    private static void logout() {
+        System.out.println("\nLogging out...");
+        System.out.println("Thank you for using " + APP_NAME);
+    }
+    
+    private static void shutdown() {
+        if (metricsStarter != null) {
+            try {
+                metricsStarter.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+        }
+        metrics.unregisterMBean();
+        if (service != null) {
+            service.close();
+        }
+        if (shards != null) {
+            shards.close();
+            logger.info("Connection pools shut down");
+        }
+        scanner.close();
+    }
+    
+    // Utility methods for input handling
+    private static String getInput(String prompt) {
+        System.out.print(prompt);
+        return scanner.nextLine().trim();
+    }
+    
+    private static String getValidInput(String prompt, java.util.function.Predicate<String> validator, 
+                                      String errorMessage) {
+        while (true) {
+            String input = getInput(prompt);
+            if (validator.test(input)) {
+                return input;
+            }
+            System.out.println(errorMessage);
+        }
+    }
+    
+    private static int getValidIntegerInput(String prompt, int min, int max) {
+        while (true) {
+            try {
+                System.out.print(prompt);
+                int value = Integer.parseInt(scanner.nextLine());
+                if (value >= min && value <= max) {
+                    return value;
+                }
+                System.out.println("Please enter a number between " + min + " and " + max);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid number format");
+            }
+        }
+    }
+    
+    // Blank answers mean "any station"
+    private static PagedListings.TrainFilter getTrainFilter() {
+        String origin = getInput("From station (press Enter for all): ");
+        String destination = getInput("To station (press Enter for all): ");
+        return new PagedListings.TrainFilter(
+            origin.isEmpty() ? null : origin,
+            destination.isEmpty() ? null : destination);
+    }
+    
+    private static boolean getYesNoInput(String prompt) {
+        while (true) {
+            String input = getInput(prompt).toUpperCase();
+            if (input.equals("Y") || input.equals("YES")) return true;
+            if (input.equals("N") || input.equals("NO")) return false;
+            System.out.println("Please enter Y or N");
+        }
+    }
+    
+    private static LocalDate getValidDateInput(String prompt) {
+        while (true) {
+            try {
+                System.out.print(prompt);
+                return LocalDate.parse(scanner.nextLine(), DATE_FORMATTER);
+            } catch (DateTimeParseException e) {
+                System.out.println("Invalid date format. Please use YYYY-MM-DD");
+            }
+        }
+    }
+    
+    private static void printTicket(RailwayService.Ticket ticket) {
+        if (ticket == null) return;
+        
+        System.out.println("\n=== YOUR TICKET ===");
+        System.out.print(TicketExport.render(ticket));
+        System.out.println("Note: Please carry valid ID proof during journey");
+    }
+    
+    private static void printPnr(PnrBooking.Result result) {
+        System.out.println("\n=== PNR " + result.pnrNo() + " ===");
+        System.out.println("Train No: " + result.trainNo() + "    Departure Date: " + result.departureDate());
+        System.out.println("+-----+---------------------+-----+-----------+---------+-------+");
+        System.out.println("| ID  | Passenger Name      | Age | Berth     | Seat    | Meals |");
+        System.out.println("+-----+---------------------+-----+-----------+---------+-------+");
+        for (int i = 0; i < result.passengers().size(); i++) {
+            PnrBooking.Passenger passenger = result.passengers().get(i);
+            SeatMap.Berth berth = result.berths().get(i);
+            System.out.printf("| %-3d | %-19s | %-3d | %-9s | %-7s | %-5s |\n",
+                result.reservationIds().get(i),
+                passenger.name(),
+                passenger.age(),
+                berth.berthType(),
+                berth.coach() + "/" + berth.seatNo(),
+                passenger.meals() ? "Yes" : "No");
+        }
+        System.out.println("+-----+---------------------+-----+-----------+---------+-------+");
+        System.out.println("Note: Please carry valid ID proof during journey");
+    }
+    
+    private static String truncate(String s, int length) {
+        if (s == null) return "";
+        return s.length() <= length ? s : s.substring(0, length - 1) + "~";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,1666 @@
+package com.sumanth.railway;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Train, reservation and profile operations shared by the console menus and the HTTP API.
+ * Methods validate their input with the same rules the console prompts use and
+ * report refusals as {@link ServiceException}.
+ */
+class RailwayService {
+    private static final Logger logger = LoggerFactory.getLogger(RailwayService.class);
+    private static final AtomicInteger USER_SEQUENCE = new AtomicInteger();
+    static final int DEFAULT_CATALOG_CACHE_SIZE = 10_000;
+    static final Duration DEFAULT_CATALOG_CACHE_TTL = Duration.ofMinutes(1);
+
+    // Shared with QueryDiagnostics, which explains the statements the service actually runs
+    static final String LOGIN_QUERY = "SELECT user_id, password, full_name FROM users WHERE username = ?";
+    static final String RESERVATIONS_QUERY =
+        "SELECT r.reservation_id, r.train_no, t.train_name, r.berth_type, r.meals_required, " +
+        "r.departure_date, r.booking_date, s.coach_no, s.seat_no " +
+        "FROM reservations r JOIN train_details t ON r.train_no = t.train_no " +
+        "LEFT JOIN seat_assignments s ON s.reservation_id = r.reservation_id " +
+        "WHERE r.user_id = ? ORDER BY r.departure_date";
+    static final String CANCEL_LOOKUP_QUERY =
+        "SELECT r.train_no, r.departure_date, r.berth_type, r.meals_required, s.coach_no, s.seat_no " +
+        "FROM reservations r " +
+        "LEFT JOIN seat_assignments s ON s.reservation_id = r.reservation_id " +
+        "WHERE r.reservation_id = ? AND r.user_id = ?";
+    static final String BOOKED_SEATS_QUERY =
+        "SELECT departure_date, COUNT(*) FROM reservations WHERE train_no = ? " +
+        "GROUP BY departure_date ORDER BY departure_date";
+
+    // Validation rules
+    static final Predicate<String> VALID_NAME = input -> input.matches("[A-Za-z ]+");
+    static final Predicate<String> VALID_PHONE = input -> input.matches("\\d{10}");
+    static final Predicate<String> VALID_AADHAAR = input -> input.matches("\\d{12}");
+    static final Predicate<String> VALID_PINCODE = input -> input.matches("\\d{6}");
+    static final Predicate<String> VALID_USERNAME = input -> input.matches("[A-Za-z0-9_]+");
+    static final Predicate<String> VALID_PASSWORD = input -> input.length() >= 8;
+    static final Predicate<String> NOT_BLANK = input -> !input.trim().isEmpty();
+    static final Set<String> BERTH_TYPES = Set.of("LOWER", "UPPER", "MIDDLE", "SIDE");
+    static final Predicate<String> VALID_BERTH = input -> BERTH_TYPES.contains(input.toUpperCase());
+
+    record Train(String trainName, int trainNo, String startingPoint, String destination,
+                 String specifications, int seatsPerDeparture) {}
+
+    // coachNo and seatNo are 0 for reservations made before seats were assigned
+    record Reservation(int reservationId, int trainNo, String trainName, String berthType, boolean meals,
+                       LocalDate departureDate, LocalDateTime bookingDate, int coachNo, int seatNo) {}
+
+    record Ticket(int reservationId, String passengerName, int trainNo, String trainName, String berthType,
+                  boolean meals, LocalDate departureDate, String coach, int seatNo) {}
+
+    record UserAccount(String userId, String fullName) {}
+
+    record UserProfile(String userId, String username, String fullName, int age, String phone,
+                       String aadhaar, String address, String pincode) {}
+
+    record NewUser(String fullName, int age, String phone, String aadhaar, String address,
+                   String pincode, String username, String password) {}
+
+    // Items of the bulk calls, which take many commands of one kind at once
+    record BookingRequest(UserAccount passenger, int trainNo, LocalDate departureDate, String berthType,
+                          boolean meals) {}
+
+    record Cancellation(String userId, int reservationId) {}
+
+    record ProfileUpdate(String userId, ProfileField field, String value) {}
+
+    // What one item of a bulk call produced, or the ServiceException or SQLException it ended in
+    record BulkResult<T>(T value, Exception error) {
+        static <T> BulkResult<T> of(T value) {
+            return new BulkResult<>(value, null);
+        }
+
+        static <T> BulkResult<T> failed(Exception error) {
+            return new BulkResult<>(null, error);
+        }
+    }
+
+    enum TrainField {
+        NAME("train_name"), STARTING_POINT("starting_point"), DESTINATION("destination"),
+        SEATS("seats_available"), SPECIFICATIONS("extra_specifications");
+
+        final String column;
+
+        TrainField(String column) {
+            this.column = column;
+        }
+    }
+
+    enum ProfileField {
+        FULL_NAME("full_name", NOT_BLANK, "Value cannot be empty"),
+        PHONE("phone", VALID_PHONE, "Invalid phone number"),
+        ADDRESS("address", NOT_BLANK, "Value cannot be empty"),
+        PINCODE("pincode", VALID_PINCODE, "Invalid pincode");
+
+        final String column;
+        final Predicate<String> validator;
+        final String errorMessage;
+
+        ProfileField(String column, Predicate<String> validator, String errorMessage) {
+            this.column = column;
+            this.validator = validator;
+            this.errorMessage = errorMessage;
+        }
+    }
+
+    private final ShardRouter shards;
+    // The home shard's primary: users, and everything else that is not kept per train
+    private final DataSource dataSource;
+    private final SeatInventory seatInventory;
+    private final SeatMapRegistry seatMaps;
+    private final PnrBooking pnrBooking;
+    private final Waitlist waitlist;
+    private final OccupancyAnalytics analytics;
+    private final TrainCatalogCache catalogCache;
+    private final PagedListings pagedListings;
+    private final RouteGraph routeGraph;
+    private final StationIndex stationIndex = new StationIndex();
+    private final AuthEngine authEngine;
+    private final AuditLog auditLog;
+    private final Metrics metrics;
+    private ScheduledExecutorService snapshotter;
+    private Path snapshotFile;
+    private ReservationArchive archive;
+    private BookingOutbox outbox;
+
+    RailwayService(DataSource dataSource, SeatInventory seatInventory) {
+        this(ShardRouter.single(DataSources.single(dataSource)), seatInventory, new TrainCatalogCache(DEFAULT_CATALOG_CACHE_SIZE, DEFAULT_CATALOG_CACHE_TTL),
+            new AuthEngine(AuthEngine.defaultThreads(), AuthEngine.DEFAULT_QUEUE_CAPACITY, AuthEngine.DEFAULT_COST),
+            AuditLog.disabled(), new Metrics());
+    }
+
+    RailwayService(ShardRouter shards, SeatInventory seatInventory, TrainCatalogCache catalogCache,
+                   AuthEngine authEngine, AuditLog auditLog, Metrics metrics) {
+        this.shards = shards;
+        this.dataSource = shards.home().primary();
+        this.authEngine = authEngine;
+        this.auditLog = auditLog;
+        this.metrics = metrics;
+        this.seatInventory = seatInventory;
+        this.seatMaps = new SeatMapRegistry(shards, seatInventory);
+        this.pnrBooking = new PnrBooking(shards, seatInventory, seatMaps, metrics);
+        this.analytics = new OccupancyAnalytics(shards.primaries(), seatInventory::capacity,
+            OccupancyAnalytics.DEFAULT_PARALLELISM);
+        this.waitlist = new Waitlist(shards, seatInventory, seatMaps, analytics, auditLog, metrics);
+        this.catalogCache = catalogCache;
+        this.pagedListings = new PagedListings(shards, metrics);
+        this.routeGraph = new RouteGraph(seatInventory);
+    }
+
+    void loadRouteGraph() throws SQLException {
+        List<Train> trains = loadTrains();
+        routeGraph.rebuild(trains);
+        stationIndex.rebuild(trains);
+    }
+
+    void loadWaitlist() throws SQLException {
+        waitlist.load();
+    }
+
+    void rebuildAnalytics() throws SQLException {
+        analytics.rebuild();
+    }
+
+    // Lets queued waitlist promotions finish, takes a last snapshot and gets the audit log to disk
+    // before the pool goes away
+    void close() {
+        waitlist.close();
+        if (snapshotter != null) {
+            snapshotter.shutdown();
+            try {
+                snapshotter.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writeSnapshotQuietly();
+        }
+        if (archive != null) {
+            archive.close();
+        }
+        if (outbox != null) {
+            outbox.close();
+        }
+        analytics.close();
+        authEngine.close();
+        auditLog.close();
+    }
+
+    // Snapshots
+
+    /**
+     * Loads seat counters, seat maps and the route graph from a snapshot, then replays the
+     * journaled changes and the reservations made since it was written. Returns false, leaving
+     * everything untouched, when there is no usable snapshot.
+     */
+    boolean restoreSnapshot(Path file) throws SQLException {
+        if (!Files.exists(file)) return false;
+        // The journal and reservation ids it replays from are per shard, so a snapshot is not used
+        if (shards.sharded()) {
+            // Changes made while sharded are not journalled, so the file could never be replayed safely again
+            logger.info("Sharded: discarding snapshot {}, loading state from the shards", file);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("Could not delete snapshot {}: {}", file, e.getMessage());
+            }
+            return false;
+        }
+        long started = System.nanoTime();
+        StateSnapshot snapshot;
+        try {
+            snapshot = StateSnapshot.open(file);
+        } catch (IOException e) {
+            logger.warn("Ignoring snapshot {}: {}", file, e.getMessage());
+            return false;
+        }
+
+        seatInventory.restore(snapshot);
+        seatMaps.restore(snapshot);
+        Map<Integer, Train> trains = new HashMap<>();
+        for (Train train : snapshot.trains()) {
+            trains.put(train.trainNo(), train);
+        }
+        int replayed = replay(snapshot, trains);
+        routeGraph.rebuild(trains.values());
+        stationIndex.rebuild(trains.values());
+        logger.info("Restored state from snapshot of {} with {} reservations, replayed {} changes in {} ms",
+            new java.util.Date(snapshot.createdAt()), snapshot.reservationCount(), replayed,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return true;
+    }
+
+    private int replay(StateSnapshot snapshot, Map<Integer, Train> trains) throws SQLException {
+        BitSet live = snapshot.reservationIds();
+        int replayed = 0;
+
+        try (Connection conn = dataSource.getConnection()) {
+            List<StateSnapshot.Change> changes = snapshot.changesSince(conn);
+
+            // Trains first, so reservations on trains added since have a capacity to count against
+            Set<Integer> changedTrains = new LinkedHashSet<>();
+            for (StateSnapshot.Change change : changes) {
+                if (change.type() == StateSnapshot.TRAIN_CHANGED) changedTrains.add(change.trainNo());
+            }
+            for (int trainNo : changedTrains) {
+                Train previous = trains.remove(trainNo);
+                Train current = loadTrain(trainNo);
+                if (current == null) {
+                    seatInventory.removeTrain(trainNo);
+                    seatMaps.removeTrain(trainNo);
+                    continue;
+                }
+                trains.put(trainNo, current);
+                if (previous == null) {
+                    seatInventory.registerTrain(trainNo, current.seatsPerDeparture());
+                } else if (previous.seatsPerDeparture() != current.seatsPerDeparture()) {
+                    seatInventory.updateCapacity(trainNo, current.seatsPerDeparture());
+                }
+                replayed++;
+            }
+
+            // Only cancellations of reservations the snapshot still counts
+            List<StateSnapshot.Change> departedCancellations = new ArrayList<>();
+            for (StateSnapshot.Change change : changes) {
+                if (change.type() != StateSnapshot.RESERVATION_CANCELLED) continue;
+                if (change.departureDate().isBefore(snapshot.snapshotDay())) {
+                    if (snapshot.countsDeparted(change.reservationId())
+                            && !snapshot.reflectsCancellation(change.changeId())) {
+                        departedCancellations.add(change);
+                    }
+                    continue;
+                }
+                if (!live.get(change.reservationId())) continue;
+                live.clear(change.reservationId());
+                if (change.coachNo() > 0) {
+                    seatMaps.release(change.trainNo(), change.departureDate(), change.coachNo(), change.seatNo());
+                }
+                seatInventory.release(change.trainNo(), change.departureDate(), 1);
+                replayed++;
+            }
+
+            // Analytics starts from what the snapshot still holds, then takes the rest like live changes
+            analytics.restore(snapshot, live);
+            for (StateSnapshot.Change change : departedCancellations) {
+                analytics.cancelled(change.trainNo(), change.departureDate(), change.berthType(), change.meals());
+                replayed++;
+            }
+
+            try (PreparedStatement pstmt = snapshot.reservationsSince(conn);
+                 ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int reservationId = rs.getInt("reservation_id");
+                    int trainNo = rs.getInt("train_no");
+                    LocalDate departureDate = rs.getDate("departure_date").toLocalDate();
+                    String berthType = rs.getString("berth_type");
+                    boolean meals = rs.getBoolean("meals_required");
+                    // Departed trips are only in the snapshot's totals, not its seat counts or maps
+                    if (departureDate.isBefore(snapshot.snapshotDay())) {
+                        if (snapshot.countsDeparted(reservationId)) continue;
+                        analytics.booked(trainNo, departureDate, berthType, meals);
+                        replayed++;
+                        continue;
+                    }
+                    if (live.get(reservationId)) continue;
+                    analytics.booked(trainNo, departureDate, berthType, meals);
+                    seatInventory.recordBooked(trainNo, departureDate, 1);
+                    int coachNo = rs.getInt("coach_no");
+                    if (coachNo > 0) seatMaps.occupy(trainNo, departureDate, coachNo, rs.getInt("seat_no"));
+                    replayed++;
+                }
+            }
+        }
+        return replayed;
+    }
+
+    void startSnapshots(Path file, Duration interval) {
+        if (shards.sharded()) return;
+        snapshotFile = file;
+        snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(this::writeSnapshotQuietly, interval.toMillis(), interval.toMillis(),
+            TimeUnit.MILLISECONDS);
+    }
+
+    // The journal only feeds snapshot replay, which a sharded service never does, and nothing would prune it
+    private void journalTrainChange(Connection conn, int trainNo) throws SQLException {
+        if (!shards.sharded()) StateSnapshot.recordTrainChange(conn, trainNo);
+    }
+
+    private void journalCancellation(Connection conn, int reservationId, int trainNo, LocalDate departureDate,
+                                     int coachNo, int seatNo, String berthType, boolean meals) throws SQLException {
+        if (!shards.sharded()) {
+            StateSnapshot.recordCancellation(conn, reservationId, trainNo, departureDate, coachNo, seatNo, berthType, meals);
+        }
+    }
+
+    private void writeSnapshotQuietly() {
+        try {
+            StateSnapshot.write(dataSource, snapshotFile);
+        } catch (SQLException | IOException e) {
+            logger.error("Snapshot to {} failed: {}", snapshotFile, e.getMessage(), e);
+        }
+    }
+
+    Metrics metrics() {
+        return metrics;
+    }
+
+    List<DataSources.Status> dataSourceStatus() {
+        return shards.status();
+    }
+
+    AuditLog.Stats auditStats() {
+        return auditLog.stats();
+    }
+
+    void setListingFetchSize(int fetchSize) {
+        pagedListings.setFetchSize(fetchSize);
+    }
+
+    // Departed trips the archiver has moved out of the reservations table; closed with the service
+    void setArchive(ReservationArchive archive) {
+        this.archive = archive;
+    }
+
+    // Publishes the booking events written alongside each change; closed, after a last drain, with the service
+    void setOutbox(BookingOutbox outbox) {
+        this.outbox = outbox;
+    }
+
+    BookingOutbox.Stats outboxStats() throws SQLException, ServiceException {
+        if (outbox == null) {
+            throw new ServiceException(ServiceException.Kind.NOT_FOUND, "Outbox publisher is not running");
+        }
+        return outbox.stats();
+    }
+
+    // Users
+
+    boolean hasUsers() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             // Stops at the first row instead of counting the table
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM users LIMIT 1")) {
+
+            return rs.next();
+        }
+    }
+
+    String registerUser(NewUser user) throws SQLException, ServiceException {
+        validateNewUser(user);
+
+        String userId = newUserId();
+        String hashedPassword = authEngine.hash(user.password());
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "INSERT INTO users VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+
+            pstmt.setString(1, userId);
+            pstmt.setString(2, user.username());
+            pstmt.setString(3, hashedPassword);
+            pstmt.setString(4, user.fullName());
+            pstmt.setString(5, user.phone());
+            pstmt.setString(6, user.aadhaar());
+            pstmt.setString(7, user.address());
+            pstmt.setString(8, user.pincode());
+            pstmt.setInt(9, user.age());
+
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            if (e.getErrorCode() == 1062) {
+                throw new ServiceException(ServiceException.Kind.CONFLICT, "Username or Aadhaar already registered");
+            }
+            throw e;
+        }
+
+        audit(AuditLog.Event.USER_REGISTERED, userId, user.username(), user.fullName(), user.age(),
+            user.phone(), user.aadhaar(), user.address(), user.pincode());
+        return userId;
+    }
+
+    // The registration rules, shared with the bulk import
+    static void validateNewUser(NewUser user) throws ServiceException {
+        require(user.fullName() != null && VALID_NAME.test(user.fullName()), "Invalid name format");
+        require(user.age() >= 15 && user.age() <= 120, "Age must be between 15 and 120");
+        require(user.phone() != null && VALID_PHONE.test(user.phone()), "Invalid phone number");
+        require(user.aadhaar() != null && VALID_AADHAAR.test(user.aadhaar()), "Invalid Aadhaar number");
+        require(user.address() != null && NOT_BLANK.test(user.address()), "Address cannot be empty");
+        require(user.pincode() != null && VALID_PINCODE.test(user.pincode()), "Invalid pincode");
+        require(user.username() != null && VALID_USERNAME.test(user.username()), "Invalid username");
+        require(user.password() != null && VALID_PASSWORD.test(user.password()), "Password too short");
+    }
+
+    // The sequence keeps ids unique when several registrations land in the same millisecond
+    static String newUserId() {
+        return "USER" + System.currentTimeMillis() + (USER_SEQUENCE.getAndIncrement() % 1000);
+    }
+
+    // Returns null when the username or password is wrong
+    UserAccount authenticate(String username, String password) throws SQLException, ServiceException {
+        long started = System.nanoTime();
+        try {
+            try {
+                authEngine.checkThrottle(username);
+            } catch (ServiceException e) {
+                metrics.increment(Metrics.Counter.THROTTLED_LOGINS);
+                throw e;
+            }
+
+            String userId;
+            String fullName;
+            String hash;
+            long queryStarted = System.nanoTime();
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(LOGIN_QUERY)) {
+
+                pstmt.setString(1, username);
+                ResultSet rs = pstmt.executeQuery();
+                if (!rs.next()) {
+                    authEngine.recordFailure(username);
+                    metrics.increment(Metrics.Counter.FAILED_LOGINS);
+                    return null;
+                }
+                userId = rs.getString("user_id");
+                fullName = rs.getString("full_name");
+                hash = rs.getString("password");
+            } finally {
+                metrics.recordSql(Metrics.Query.FIND_USER, queryStarted);
+            }
+
+            // Hashing happens with no connection held
+            if (!authEngine.verify(password, hash)) {
+                authEngine.recordFailure(username);
+                metrics.increment(Metrics.Counter.FAILED_LOGINS);
+                return null;
+            }
+            authEngine.recordSuccess(username);
+            if (authEngine.needsRehash(hash)) {
+                rehash(userId, password, hash);
+            }
+            return new UserAccount(userId, fullName);
+        } finally {
+            metrics.record(Metrics.Operation.LOGIN, started);
+        }
+    }
+
+    // Moves a hash to the configured cost; a busy engine just leaves it for a later login
+    private void rehash(String userId, String password, String oldHash) throws SQLException {
+        String newHash;
+        try {
+            newHash = authEngine.hash(password);
+        } catch (ServiceException e) {
+            return;
+        }
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "UPDATE users SET password = ? WHERE user_id = ? AND password = ?")) {
+
+            pstmt.setString(1, newHash);
+            pstmt.setString(2, userId);
+            pstmt.setString(3, oldHash);
+            if (pstmt.executeUpdate() > 0) {
+                authEngine.rehashed();
+            }
+        }
+    }
+
+    AuthEngine.Stats authStats() {
+        return authEngine.stats();
+    }
+
+    // Accounts by username, for callers that name users instead of holding a login; unknown names are left out
+    Map<String, UserAccount> findAccounts(Collection<String> usernames) throws SQLException {
+        Map<String, UserAccount> accounts = new HashMap<>();
+        if (usernames.isEmpty()) return accounts;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT username, user_id, full_name FROM users WHERE username IN (" +
+                 "?, ".repeat(usernames.size() - 1) + "?)")) {
+
+            int index = 1;
+            for (String username : usernames) {
+                pstmt.setString(index++, username);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    accounts.put(rs.getString(1), new UserAccount(rs.getString(2), rs.getString(3)));
+                }
+            }
+        }
+        return accounts;
+    }
+
+    UserProfile getProfile(String userId) throws SQLException, ServiceException {
+        try (Connection conn = shards.home().dataSources().reader(userId).getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT * FROM users WHERE user_id = ?")) {
+
+            pstmt.setString(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+
+            if (!rs.next()) {
+                throw new ServiceException(ServiceException.Kind.NOT_FOUND, "User not found!");
+            }
+            return new UserProfile(
+                rs.getString("user_id"),
+                rs.getString("username"),
+                rs.getString("full_name"),
+                rs.getInt("age"),
+                rs.getString("phone"),
+                rs.getString("aadhaar"),
+                rs.getString("address"),
+                rs.getString("pincode"));
+        }
+    }
+
+    void updateProfile(String userId, ProfileField field, String value) throws SQLException, ServiceException {
+        require(value != null && field.validator.test(value), field.errorMessage);
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "UPDATE users SET " + field.column + " = ? WHERE user_id = ?")) {
+
+            pstmt.setString(1, value);
+            pstmt.setString(2, userId);
+
+            if (pstmt.executeUpdate() == 0) {
+                throw new ServiceException(ServiceException.Kind.NOT_FOUND, "User not found!");
+            }
+        }
+        if (shards.sharded()) {
+            // Keeps the copies on other shards current, so tickets there carry the new name
+            shards.scatter(shard -> {
+                if (shard == shards.home()) return 0;
+                try (Connection conn = shard.primary().getConnection();
+                     PreparedStatement pstmt = conn.prepareStatement(
+                         "UPDATE users SET " + field.column + " = ? WHERE user_id = ?")) {
+                    pstmt.setString(1, value);
+                    pstmt.setString(2, userId);
+                    return pstmt.executeUpdate();
+                }
+            });
+        }
+        shards.home().dataSources().wrote(userId);
+        audit(AuditLog.Event.PROFILE_UPDATED, userId, field.column, value);
+    }
+
+    /*
+     * Bulk calls apply each group in one transaction per shard with batched statements. When a
+     * group's transaction fails, it is replayed one item at a time through the single-item method,
+     * so one bad item cannot sink the rest.
+     */
+
+    List<BulkResult<Void>> updateProfiles(List<ProfileUpdate> updates) throws SQLException {
+        List<BulkResult<Void>> results = new ArrayList<>(Collections.nCopies(updates.size(), null));
+        Map<ProfileField, List<Integer>> byField = new EnumMap<>(ProfileField.class);
+        for (int i = 0; i < updates.size(); i++) {
+            ProfileUpdate update = updates.get(i);
+            if (update.value() == null || !update.field().validator.test(update.value())) {
+                results.set(i, BulkResult.failed(
+                    new ServiceException(ServiceException.Kind.INVALID, update.field().errorMessage)));
+                continue;
+            }
+            byField.computeIfAbsent(update.field(), field -> new ArrayList<>()).add(i);
+        }
+        if (byField.isEmpty()) return results;
+
+        int[][] counts;
+        try {
+            try (Connection conn = dataSource.getConnection()) {
+                counts = inTransaction(conn, () -> updateUsers(conn, updates, byField));
+            }
+            if (shards.sharded()) {
+                shards.scatter(shard -> {
+                    if (shard == shards.home()) return 0;
+                    try (Connection conn = shard.primary().getConnection()) {
+                        inTransaction(conn, () -> updateUsers(conn, updates, byField));
+                    }
+                    return 0;
+                });
+            }
+        } catch (SQLException e) {
+            logger.warn("Bulk profile update failed ({}); applying its {} updates one at a time", e.getMessage(),
+                updates.size());
+            for (List<Integer> indices : byField.values()) {
+                for (int i : indices) {
+                    ProfileUpdate update = updates.get(i);
+                    try {
+                        updateProfile(update.userId(), update.field(), update.value());
+                        results.set(i, BulkResult.of(null));
+                    } catch (ServiceException | SQLException error) {
+                        results.set(i, BulkResult.failed(error));
+                    }
+                }
+            }
+            return results;
+        }
+
+        int f = 0;
+        for (List<Integer> indices : byField.values()) {
+            for (int k = 0; k < indices.size(); k++) {
+                ProfileUpdate update = updates.get(indices.get(k));
+                if (counts[f][k] == 0) {
+                    results.set(indices.get(k), BulkResult.failed(
+                        new ServiceException(ServiceException.Kind.NOT_FOUND, "User not found!")));
+                    continue;
+                }
+                results.set(indices.get(k), BulkResult.of(null));
+                shards.home().dataSources().wrote(update.userId());
+                audit(AuditLog.Event.PROFILE_UPDATED, update.userId(), update.field().column, update.value());
+            }
+            f++;
+        }
+        return results;
+    }
+
+    // One batched UPDATE per field; the update counts come back in the same order
+    private static int[][] updateUsers(Connection conn, List<ProfileUpdate> updates,
+                                       Map<ProfileField, List<Integer>> byField) throws SQLException {
+        int[][] counts = new int[byField.size()][];
+        int f = 0;
+        for (Map.Entry<ProfileField, List<Integer>> entry : byField.entrySet()) {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "UPDATE users SET " + entry.getKey().column + " = ? WHERE user_id = ?")) {
+                for (int i : entry.getValue()) {
+                    pstmt.setString(1, updates.get(i).value());
+                    pstmt.setString(2, updates.get(i).userId());
+                    pstmt.addBatch();
+                }
+                counts[f++] = pstmt.executeBatch();
+            }
+        }
+        return counts;
+    }
+
+    void changePassword(String userId, String currentPassword, String newPassword) throws SQLException, ServiceException {
+        String currentHash;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT password FROM users WHERE user_id = ?")) {
+
+            pstmt.setString(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+
+            if (!rs.next()) {
+                throw new ServiceException(ServiceException.Kind.NOT_FOUND, "User not found!");
+            }
+            currentHash = rs.getString("password");
+        }
+        if (!authEngine.verify(currentPassword, currentHash)) {
+            throw new ServiceException(ServiceException.Kind.UNAUTHORIZED, "Incorrect current password!");
+        }
+
+        require(VALID_PASSWORD.test(newPassword), "Password too short");
+        String newHash = authEngine.hash(newPassword);
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "UPDATE users SET password = ? WHERE user_id = ?")) {
+
+            pstmt.setString(1, newHash);
+            pstmt.setString(2, userId);
+            pstmt.executeUpdate();
+        }
+        shards.home().dataSources().wrote(userId);
+        audit(AuditLog.Event.PASSWORD_CHANGED, userId);
+    }
+
+    // Trains
+
+    List<Train> listTrains() throws SQLException {
+        return catalogCache.getAll(this::loadTrains);
+    }
+
+    // Returns null when no such train exists
+    Train findTrain(int trainNo) throws SQLException {
+        return catalogCache.get(trainNo, () -> loadTrain(trainNo));
+    }
+
+    PagedListings.Page<Train> trainPage(PagedListings.TrainFilter filter, String cursor, int limit)
+            throws SQLException, ServiceException {
+        long started = System.nanoTime();
+        try {
+            requirePageSize(limit);
+            return pagedListings.trains(filter, cursor, limit);
+        } finally {
+            metrics.record(Metrics.Operation.TRAIN_PAGE, started);
+        }
+    }
+
+    TrainCatalogCache.Stats catalogCacheStats() {
+        return catalogCache.stats();
+    }
+
+    private List<Train> loadTrains() throws SQLException {
+        List<Train> trains = new ArrayList<>();
+        for (List<Train> shardTrains : shards.scatter(RailwayService::loadTrains)) {
+            trains.addAll(shardTrains);
+        }
+        return trains;
+    }
+
+    private static List<Train> loadTrains(ShardRouter.Shard shard) throws SQLException {
+        try (Connection conn = shard.primary().getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM train_details")) {
+
+            List<Train> trains = new ArrayList<>();
+            while (rs.next()) {
+                trains.add(readTrain(rs));
+            }
+            return trains;
+        }
+    }
+
+    private Train loadTrain(int trainNo) throws SQLException {
+        try (Connection conn = shards.forTrain(trainNo).getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT * FROM train_details WHERE train_no = ?")) {
+
+            pstmt.setInt(1, trainNo);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? readTrain(rs) : null;
+        }
+    }
+
+    void addTrain(Train train) throws SQLException, ServiceException {
+        validateTrain(train);
+
+        try (Connection conn = shards.forTrain(train.trainNo()).getConnection()) {
+            inTransaction(conn, () -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "INSERT INTO train_details VALUES (?, ?, ?, ?, ?, ?)")) {
+
+                    bindTrain(pstmt, train);
+                    pstmt.executeUpdate();
+                }
+                journalTrainChange(conn, train.trainNo());
+                return null;
+            });
+            trainAdded(train);
+        } catch (SQLException e) {
+            if (e.getErrorCode() == 1062) {
+                throw new ServiceException(ServiceException.Kind.CONFLICT, "Train number already exists!");
+            }
+            throw e;
+        }
+    }
+
+    List<BulkResult<Train>> addTrains(List<Train> trains) throws SQLException {
+        List<BulkResult<Train>> results = new ArrayList<>(Collections.nCopies(trains.size(), null));
+        Map<ShardRouter.Shard, List<Integer>> byShard = new LinkedHashMap<>();
+        for (int i = 0; i < trains.size(); i++) {
+            try {
+                validateTrain(trains.get(i));
+            } catch (ServiceException e) {
+                results.set(i, BulkResult.failed(e));
+                continue;
+            }
+            byShard.computeIfAbsent(shards.shardFor(trains.get(i).trainNo()), shard -> new ArrayList<>()).add(i);
+        }
+
+        for (Map.Entry<ShardRouter.Shard, List<Integer>> entry : byShard.entrySet()) {
+            List<Integer> indices = entry.getValue();
+            try (Connection conn = entry.getKey().primary().getConnection()) {
+                inTransaction(conn, () -> {
+                    try (PreparedStatement pstmt = conn.prepareStatement(
+                            "INSERT INTO train_details VALUES (?, ?, ?, ?, ?, ?)")) {
+                        for (int i : indices) {
+                            bindTrain(pstmt, trains.get(i));
+                            pstmt.addBatch();
+                        }
+                        pstmt.executeBatch();
+                    }
+                    for (int i : indices) {
+                        journalTrainChange(conn, trains.get(i).trainNo());
+                    }
+                    return null;
+                });
+            } catch (SQLException e) {
+                logger.warn("Bulk train insert failed ({}); adding its {} trains one at a time", e.getMessage(),
+                    indices.size());
+                for (int i : indices) {
+                    try {
+                        addTrain(trains.get(i));
+                        results.set(i, BulkResult.of(trains.get(i)));
+                    } catch (ServiceException | SQLException error) {
+                        results.set(i, BulkResult.failed(error));
+                    }
+                }
+                continue;
+            }
+            for (int i : indices) {
+                trainAdded(trains.get(i));
+                results.set(i, BulkResult.of(trains.get(i)));
+            }
+        }
+        return results;
+    }
+
+    private static void validateTrain(Train train) throws ServiceException {
+        require(train.trainNo() >= 1, "Train number must be positive");
+        require(train.trainName() != null && NOT_BLANK.test(train.trainName()), "Name cannot be empty");
+        require(train.startingPoint() != null && NOT_BLANK.test(train.startingPoint()), "Starting point cannot be empty");
+        require(train.destination() != null && NOT_BLANK.test(train.destination()), "Destination cannot be empty");
+        require(train.seatsPerDeparture() >= 1, "Seats must be at least 1");
+    }
+
+    private static void bindTrain(PreparedStatement pstmt, Train train) throws SQLException {
+        pstmt.setString(1, train.trainName());
+        pstmt.setInt(2, train.trainNo());
+        pstmt.setString(3, train.startingPoint());
+        pstmt.setString(4, train.destination());
+        pstmt.setString(5, train.specifications());
+        pstmt.setInt(6, train.seatsPerDeparture());
+    }
+
+    private void trainAdded(Train train) {
+        seatInventory.registerTrain(train.trainNo(), train.seatsPerDeparture());
+        catalogCache.invalidate(train.trainNo());
+        routeGraph.addTrain(train);
+        stationIndex.addTrain(train);
+    }
+
+    void updateTrain(int trainNo, TrainField field, String value) throws SQLException, ServiceException {
+        int seats = 0;
+        if (field == TrainField.SEATS) {
+            try {
+                seats = Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                throw new ServiceException(ServiceException.Kind.INVALID, "Invalid number format");
+            }
+            require(seats >= 0, "Seats cannot be negative");
+        } else {
+            require(value != null && NOT_BLANK.test(value), "Value cannot be empty");
+        }
+
+        int newSeats = seats;
+        try (Connection conn = shards.forTrain(trainNo).getConnection()) {
+            int rows = inTransaction(conn, () -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "UPDATE train_details SET " + field.column + " = ? WHERE train_no = ?")) {
+
+                    if (field == TrainField.SEATS) {
+                        pstmt.setInt(1, newSeats);
+                    } else {
+                        pstmt.setString(1, value);
+                    }
+                    pstmt.setInt(2, trainNo);
+                    int updated = pstmt.executeUpdate();
+                    if (updated > 0) journalTrainChange(conn, trainNo);
+                    return updated;
+                }
+            });
+            catalogCache.invalidate(trainNo);
+            if (rows == 0) {
+                throw new ServiceException(ServiceException.Kind.NOT_FOUND, "Train not found!");
+            }
+            if (field == TrainField.SEATS) {
+                seatInventory.updateCapacity(trainNo, seats);
+                waitlist.scheduleTrain(trainNo);
+            } else {
+                Train updated = loadTrain(trainNo);
+                if (updated != null) {
+                    routeGraph.addTrain(updated);
+                    stationIndex.addTrain(updated);
+                }
+            }
+        }
+    }
+
+    void removeTrain(int trainNo) throws SQLException, ServiceException {
+        try (Connection conn = shards.forTrain(trainNo).getConnection()) {
+            int rows = inTransaction(conn, () -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "DELETE FROM train_details WHERE train_no = ?")) {
+
+                    pstmt.setInt(1, trainNo);
+                    int deleted = pstmt.executeUpdate();
+                    if (deleted > 0) journalTrainChange(conn, trainNo);
+                    return deleted;
+                }
+            });
+            catalogCache.invalidate(trainNo);
+            if (rows == 0) {
+                throw new ServiceException(ServiceException.Kind.NOT_FOUND, "Train not found!");
+            }
+            seatInventory.removeTrain(trainNo);
+            seatMaps.removeTrain(trainNo);
+            waitlist.removeTrain(trainNo);
+            routeGraph.removeTrain(trainNo);
+            stationIndex.removeTrain(trainNo);
+        }
+    }
+
+    List<RouteGraph.Itinerary> searchRoutes(String from, String to, LocalDate date) throws ServiceException {
+        long started = System.nanoTime();
+        try {
+            require(from != null && NOT_BLANK.test(from), "Starting point cannot be empty");
+            require(to != null && NOT_BLANK.test(to), "Destination cannot be empty");
+            return routeGraph.search(from, to, date, RouteGraph.DEFAULT_RESULT_LIMIT);
+        } finally {
+            metrics.record(Metrics.Operation.SEARCH_ROUTES, started);
+        }
+    }
+
+    // Typeahead for station names; cheap enough to call on every keystroke
+    List<StationIndex.Station> suggestStations(String query, int limit) throws ServiceException {
+        require(query != null && NOT_BLANK.test(query), "Query cannot be empty");
+        require(limit >= 1 && limit <= StationIndex.MAX_SUGGESTIONS,
+            "Limit must be between 1 and " + StationIndex.MAX_SUGGESTIONS);
+        return stationIndex.suggest(query, limit);
+    }
+
+    int availableSeats(int trainNo, LocalDate departureDate) throws ServiceException {
+        if (!seatInventory.isKnownTrain(trainNo)) {
+            throw new ServiceException(ServiceException.Kind.NOT_FOUND, "Train not found!");
+        }
+        // Seats freed while passengers are waiting belong to them, not to new bookings
+        return waitlist.hasQueue(trainNo, departureDate) ? 0 : seatInventory.available(trainNo, departureDate);
+    }
+
+    // Reservations per departure as the database has them, for checking the in-memory counters
+    Map<LocalDate, Integer> bookedSeats(int trainNo) throws SQLException {
+        try (Connection conn = shards.forTrain(trainNo).getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(BOOKED_SEATS_QUERY)) {
+
+            pstmt.setInt(1, trainNo);
+            ResultSet rs = pstmt.executeQuery();
+
+            Map<LocalDate, Integer> booked = new LinkedHashMap<>();
+            while (rs.next()) {
+                booked.put(rs.getDate(1).toLocalDate(), rs.getInt(2));
+            }
+            return booked;
+        }
+    }
+
+    // Occupancy
+
+    OccupancyAnalytics.Occupancy occupancy(int trainNo, LocalDate from, LocalDate to) throws ServiceException {
+        require(!from.isAfter(to), "From date must not be after to date");
+        if (!seatInventory.isKnownTrain(trainNo)) {
+            throw new ServiceException(ServiceException.Kind.NOT_FOUND, "Train not found!");
+        }
+        return analytics.occupancy(trainNo, from, to);
+    }
+
+    List<OccupancyAnalytics.Occupancy> occupancy(LocalDate from, LocalDate to) throws ServiceException {
+        require(!from.isAfter(to), "From date must not be after to date");
+        return analytics.occupancy(from, to);
+    }
+
+    // Reservations
+
+    // The ticket is built from the generated reservation id and what the caller already knows
+    Ticket book(UserAccount passenger, int trainNo, LocalDate departureDate, String berthType, boolean meals)
+            throws SQLException, ServiceException {
+        long started = System.nanoTime();
+        try {
+            BookingRequest request = new BookingRequest(passenger, trainNo, departureDate, berthType, meals);
+            Claim claim = claimSeat(request);
+            int reservationId;
+            try {
+                reservationId = insertReservation(passenger.userId(), trainNo, departureDate, claim.berth(), meals);
+            } catch (SQLException e) {
+                releaseSeat(request, claim.berth());
+                throw e;
+            }
+            return booked(request, claim, reservationId);
+        } finally {
+            metrics.record(Metrics.Operation.MAKE_RESERVATION, started);
+        }
+    }
+
+    // Seats are claimed one at a time as book() does, then each shard's reservations are written together
+    List<BulkResult<Ticket>> bookAll(List<BookingRequest> requests) throws SQLException {
+        List<BulkResult<Ticket>> results = new ArrayList<>(Collections.nCopies(requests.size(), null));
+        Claim[] claims = new Claim[requests.size()];
+        SeatMap.Berth[] berths = new SeatMap.Berth[requests.size()];
+        Map<ShardRouter.Shard, List<Integer>> byShard = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                claims[i] = claimSeat(requests.get(i));
+                berths[i] = claims[i].berth();
+            } catch (ServiceException | SQLException e) {
+                results.set(i, BulkResult.failed(e));
+                continue;
+            }
+            byShard.computeIfAbsent(shards.shardFor(requests.get(i).trainNo()), shard -> new ArrayList<>()).add(i);
+        }
+
+        for (Map.Entry<ShardRouter.Shard, List<Integer>> entry : byShard.entrySet()) {
+            List<Integer> indices = entry.getValue();
+            List<Integer> reservationIds;
+            try {
+                reservationIds = insertReservations(entry.getKey(), requests, berths, indices);
+            } catch (SQLException e) {
+                logger.warn("Bulk booking failed ({}); booking its {} seats one at a time", e.getMessage(),
+                    indices.size());
+                for (int i : indices) {
+                    releaseSeat(requests.get(i), berths[i]);
+                }
+                for (int i : indices) {
+                    BookingRequest request = requests.get(i);
+                    try {
+                        results.set(i, BulkResult.of(book(request.passenger(), request.trainNo(),
+                            request.departureDate(), request.berthType(), request.meals())));
+                    } catch (ServiceException | SQLException error) {
+                        results.set(i, BulkResult.failed(error));
+                    }
+                }
+                continue;
+            }
+            for (int k = 0; k < indices.size(); k++) {
+                int i = indices.get(k);
+                results.set(i, BulkResult.of(booked(requests.get(i), claims[i], reservationIds.get(k))));
+            }
+        }
+        return results;
+    }
+
+    // A claimed berth and the train it is on, resolved before the seat is taken so that nothing after
+    // the commit can fail for want of the train
+    private record Claim(Train train, SeatMap.Berth berth) {}
+
+    // Claims the seat first so concurrent bookings can never oversell; freed seats go to the waitlist first
+    private Claim claimSeat(BookingRequest request) throws SQLException, ServiceException {
+        int trainNo = request.trainNo();
+        LocalDate departureDate = request.departureDate();
+        require(request.berthType() != null && VALID_BERTH.test(request.berthType()), "Invalid berth type");
+        Train train = seatInventory.isKnownTrain(trainNo) ? findTrain(trainNo) : null;
+        if (train == null) {
+            throw new ServiceException(ServiceException.Kind.NOT_FOUND, "Train not found!");
+        }
+
+        if (waitlist.hasQueue(trainNo, departureDate) || !seatInventory.tryReserve(trainNo, departureDate, 1)) {
+            metrics.increment(Metrics.Counter.SOLD_OUT);
+            throw new ServiceException(ServiceException.Kind.CONFLICT,
+                "No seats available on this train for " + departureDate + "!");
+        }
+        try {
+            // The counter guarantees a free berth exists; the preferred class may still be full
+            SeatMap.Berth berth = seatMaps.get(trainNo, departureDate).allocate(request.berthType());
+            if (berth == null) {
+                throw new SQLException("Seat map for train " + trainNo + " on " + departureDate + " is full");
+            }
+            return new Claim(train, berth);
+        } catch (SQLException e) {
+            seatInventory.release(trainNo, departureDate, 1);
+            throw e;
+        }
+    }
+
+    // Undoes claimSeat() for a booking that was not written
+    private void releaseSeat(BookingRequest request, SeatMap.Berth berth) {
+        seatMaps.release(request.trainNo(), request.departureDate(), berth.coachNo(), berth.seatNo());
+        seatInventory.release(request.trainNo(), request.departureDate(), 1);
+    }
+
+    // Bookkeeping once the reservation is committed
+    private Ticket booked(BookingRequest request, Claim claim, int reservationId) {
+        SeatMap.Berth berth = claim.berth();
+        String userId = request.passenger().userId();
+        int trainNo = request.trainNo();
+        metrics.increment(Metrics.Counter.BOOKINGS);
+        analytics.booked(trainNo, request.departureDate(), berth.berthType(), request.meals());
+        shards.shardFor(trainNo).dataSources().wrote(userId);
+        audit(AuditLog.Event.RESERVATION_BOOKED, reservationId, userId, trainNo, request.departureDate(),
+            berth.berthType(), berth.coach(), berth.seatNo(), request.meals());
+        return new Ticket(reservationId, request.passenger().fullName(), trainNo, claim.train().trainName(),
+            berth.berthType(), request.meals(), request.departureDate(), berth.coach(), berth.seatNo());
+    }
+
+    // The reservation and its berth are written together so a seat is never held without a booking
+    private int insertReservation(String userId, int trainNo, LocalDate departureDate, SeatMap.Berth berth,
+                                  boolean meals) throws SQLException {
+        ShardRouter.Shard shard = shards.shardFor(trainNo);
+        shards.ensureUser(shard, userId);
+        long started = System.nanoTime();
+        try (Connection conn = shard.primary().getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                int reservationId;
+                try (PreparedStatement insertStmt = conn.prepareStatement(
+                        "INSERT INTO reservations (user_id, train_no, berth_type, meals_required, departure_date) " +
+                        "VALUES (?, ?, ?, ?, ?)",
+                        Statement.RETURN_GENERATED_KEYS)) {
+
+                    insertStmt.setString(1, userId);
+                    insertStmt.setInt(2, trainNo);
+                    insertStmt.setString(3, berth.berthType());
+                    insertStmt.setBoolean(4, meals);
+                    insertStmt.setDate(5, java.sql.Date.valueOf(departureDate));
+                    insertStmt.executeUpdate();
+
+                    try (ResultSet keys = insertStmt.getGeneratedKeys()) {
+                        if (!keys.next()) throw new SQLException("No reservation id generated");
+                        reservationId = keys.getInt(1);
+                    }
+                }
+                insertSeatAssignments(conn, trainNo, departureDate, List.of(reservationId), List.of(berth));
+                BookingOutbox.append(conn,
+                    BookingOutbox.Change.booked(reservationId, userId, trainNo, departureDate, berth, meals));
+
+                conn.commit();
+                return reservationId;
+            } catch (SQLException e) {
+                conn.rollback();
+                metrics.increment(Metrics.Counter.ROLLBACKS);
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } finally {
+            metrics.recordSql(Metrics.Query.INSERT_RESERVATION, started);
+        }
+    }
+
+    // Returns the generated reservation ids in the order of indices
+    private List<Integer> insertReservations(ShardRouter.Shard shard, List<BookingRequest> requests,
+                                             SeatMap.Berth[] berths, List<Integer> indices) throws SQLException {
+        for (int i : indices) {
+            shards.ensureUser(shard, requests.get(i).passenger().userId());
+        }
+        long started = System.nanoTime();
+        try (Connection conn = shard.primary().getConnection()) {
+            return inTransaction(conn, () -> {
+                List<Integer> reservationIds = new ArrayList<>(indices.size());
+                try (PreparedStatement insertStmt = conn.prepareStatement(
+                        "INSERT INTO reservations (user_id, train_no, berth_type, meals_required, departure_date) " +
+                        "VALUES (?, ?, ?, ?, ?)",
+                        Statement.RETURN_GENERATED_KEYS)) {
+
+                    for (int i : indices) {
+                        BookingRequest request = requests.get(i);
+                        insertStmt.setString(1, request.passenger().userId());
+                        insertStmt.setInt(2, request.trainNo());
+                        insertStmt.setString(3, berths[i].berthType());
+                        insertStmt.setBoolean(4, request.meals());
+                        insertStmt.setDate(5, java.sql.Date.valueOf(request.departureDate()));
+                        insertStmt.addBatch();
+                    }
+                    insertStmt.executeBatch();
+
+                    try (ResultSet keys = insertStmt.getGeneratedKeys()) {
+                        while (keys.next()) {
+                            reservationIds.add(keys.getInt(1));
+                        }
+                    }
+                }
+                if (reservationIds.size() != indices.size()) {
+                    throw new SQLException("Expected " + indices.size() + " reservation ids, got " + reservationIds.size());
+                }
+
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "INSERT INTO seat_assignments (reservation_id, train_no, departure_date, coach_no, seat_no) " +
+                        "VALUES (?, ?, ?, ?, ?)")) {
+
+                    for (int k = 0; k < indices.size(); k++) {
+                        BookingRequest request = requests.get(indices.get(k));
+                        SeatMap.Berth berth = berths[indices.get(k)];
+                        pstmt.setInt(1, reservationIds.get(k));
+                        pstmt.setInt(2, request.trainNo());
+                        pstmt.setDate(3, java.sql.Date.valueOf(request.departureDate()));
+                        pstmt.setInt(4, berth.coachNo());
+                        pstmt.setInt(5, berth.seatNo());
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                }
+
+                List<BookingOutbox.Change> changes = new ArrayList<>(indices.size());
+                for (int k = 0; k < indices.size(); k++) {
+                    BookingRequest request = requests.get(indices.get(k));
+                    changes.add(BookingOutbox.Change.booked(reservationIds.get(k), request.passenger().userId(),
+                        request.trainNo(), request.departureDate(), berths[indices.get(k)], request.meals()));
+                }
+                BookingOutbox.append(conn, changes);
+                return reservationIds;
+            });
+        } finally {
+            metrics.recordSql(Metrics.Query.INSERT_RESERVATION, started);
+        }
+    }
+
+    static void insertSeatAssignments(Connection conn, int trainNo, LocalDate departureDate,
+                                      List<Integer> reservationIds, List<SeatMap.Berth> berths) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO seat_assignments (reservation_id, train_no, departure_date, coach_no, seat_no) " +
+                "VALUES (?, ?, ?, ?, ?)")) {
+
+            for (int i = 0; i < berths.size(); i++) {
+                pstmt.setInt(1, reservationIds.get(i));
+                pstmt.setInt(2, trainNo);
+                pstmt.setDate(3, java.sql.Date.valueOf(departureDate));
+                pstmt.setInt(4, berths.get(i).coachNo());
+                pstmt.setInt(5, berths.get(i).seatNo());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    PnrBooking.Result bookGroup(String userId, int trainNo, LocalDate departureDate,
+                                List<PnrBooking.Passenger> passengers) throws SQLException, ServiceException {
+        long started = System.nanoTime();
+        try {
+            require(!passengers.isEmpty() && passengers.size() <= PnrBooking.MAX_PASSENGERS,
+                "A PNR must carry between 1 and " + PnrBooking.MAX_PASSENGERS + " passengers");
+            for (PnrBooking.Passenger passenger : passengers) {
+                require(passenger.name() != null && VALID_NAME.test(passenger.name()), "Invalid name format");
+                require(passenger.age() >= 1 && passenger.age() <= 120, "Invalid passenger age");
+                require(passenger.berthType() != null && VALID_BERTH.test(passenger.berthType()), "Invalid berth type");
+            }
+            if (!seatInventory.isKnownTrain(trainNo)) {
+                throw new ServiceException(ServiceException.Kind.NOT_FOUND, "Train not found!");
+            }
+
+            PnrBooking.Result result = waitlist.hasQueue(trainNo, departureDate)
+                ? null : pnrBooking.book(userId, trainNo, departureDate, passengers);
+            if (result == null) {
+                metrics.increment(Metrics.Counter.SOLD_OUT);
+                throw new ServiceException(ServiceException.Kind.CONFLICT,
+                    "Not enough seats available for " + passengers.size() + " passengers!");
+            }
+            metrics.add(Metrics.Counter.BOOKINGS, passengers.size());
+            shards.shardFor(trainNo).dataSources().wrote(userId);
+            for (int i = 0; i < passengers.size(); i++) {
+                SeatMap.Berth berth = result.berths().get(i);
+                analytics.booked(trainNo, departureDate, berth.berthType(), passengers.get(i).meals());
+                audit(AuditLog.Event.RESERVATION_BOOKED, result.reservationIds().get(i), userId, trainNo,
+                    departureDate, berth.berthType(), berth.coach(), berth.seatNo(), passengers.get(i).meals());
+            }
+            audit(AuditLog.Event.PNR_BOOKED, result.pnrNo(), userId, trainNo, departureDate, passengers.size());
+            return result;
+        } finally {
+            metrics.record(Metrics.Operation.GROUP_BOOKING, started);
+        }
+    }
+
+    List<Reservation> listReservations(String userId) throws SQLException {
+        long started = System.nanoTime();
+        try {
+            List<Reservation> reservations = new ArrayList<>();
+            for (List<Reservation> shardReservations : shards.scatter(shard -> listReservations(shard, userId))) {
+                reservations.addAll(shardReservations);
+            }
+            if (shards.sharded()) reservations.sort(Comparator.comparing(Reservation::departureDate));
+            return reservations;
+        } finally {
+            metrics.record(Metrics.Operation.LIST_RESERVATIONS, started);
+        }
+    }
+
+    private List<Reservation> listReservations(ShardRouter.Shard shard, String userId) throws SQLException {
+        try (Connection conn = shard.dataSources().reader(userId).getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(RESERVATIONS_QUERY)) {
+
+            long queryStarted = System.nanoTime();
+
+            pstmt.setString(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+
+            List<Reservation> reservations = new ArrayList<>();
+            while (rs.next()) {
+                reservations.add(readReservation(rs));
+            }
+            metrics.recordSql(Metrics.Query.LIST_RESERVATIONS, queryStarted);
+            return reservations;
+        }
+    }
+
+    PagedListings.Page<Reservation> reservationPage(String userId, PagedListings.ReservationFilter filter,
+                                                    String cursor, int limit) throws SQLException, ServiceException {
+        long started = System.nanoTime();
+        try {
+            requirePageSize(limit);
+            if (filter.fromDate() != null && filter.toDate() != null) {
+                require(!filter.fromDate().isAfter(filter.toDate()), "From date must not be after to date");
+            }
+            return pagedListings.reservations(userId, filter, cursor, limit);
+        } finally {
+            metrics.record(Metrics.Operation.RESERVATION_PAGE, started);
+        }
+    }
+
+    void cancelReservation(String userId, int reservationId) throws SQLException, ServiceException {
+        long started = System.nanoTime();
+        try {
+            ShardRouter.Shard shard = reservationShard(userId, reservationId);
+            try (Connection conn = shard.primary().getConnection()) {
+                // First get the departure and berth the reservation holds
+                int trainNo;
+                LocalDate departureDate;
+                int coachNo;
+                int seatNo;
+                String berthType;
+                boolean meals;
+                try (PreparedStatement pstmt = conn.prepareStatement(CANCEL_LOOKUP_QUERY)) {
+
+                    pstmt.setInt(1, reservationId);
+                    pstmt.setString(2, userId);
+                    ResultSet rs = pstmt.executeQuery();
+
+                    if (!rs.next()) {
+                        throw new ServiceException(ServiceException.Kind.NOT_FOUND,
+                            "Reservation not found or doesn't belong to you!");
+                    }
+                    trainNo = rs.getInt("train_no");
+                    departureDate = rs.getDate("departure_date").toLocalDate();
+                    coachNo = rs.getInt("coach_no");
+                    seatNo = rs.getInt("seat_no");
+                    berthType = rs.getString("berth_type");
+                    meals = rs.getBoolean("meals_required");
+                }
+
+                long deleteStarted = System.nanoTime();
+                int deleted = inTransaction(conn, () -> {
+                    try (PreparedStatement deleteStmt = conn.prepareStatement(
+                        "DELETE FROM reservations WHERE reservation_id = ? AND user_id = ?")) {
+
+                        deleteStmt.setInt(1, reservationId);
+                        deleteStmt.setString(2, userId);
+                        if (deleteStmt.executeUpdate() == 0) return 0;
+                    }
+                    journalCancellation(conn, reservationId, trainNo, departureDate, coachNo, seatNo, berthType, meals);
+                    BookingOutbox.append(conn, BookingOutbox.Change.cancelled(reservationId, userId, trainNo,
+                        departureDate, berthType, meals, coachNo, seatNo));
+                    return 1;
+                });
+                metrics.recordSql(Metrics.Query.CANCEL_RESERVATION, deleteStarted);
+                if (deleted == 0) {
+                    throw new ServiceException(ServiceException.Kind.NOT_FOUND,
+                        "Reservation not found or doesn't belong to you!");
+                }
+
+                cancelled(shard, reservationId, new Held(userId, trainNo, departureDate, berthType, meals, coachNo, seatNo));
+            }
+        } finally {
+            metrics.record(Metrics.Operation.CANCEL_RESERVATION, started);
+        }
+    }
+
+    // What a reservation holds, read before it is deleted
+    private record Held(String userId, int trainNo, LocalDate departureDate, String berthType, boolean meals,
+                        int coachNo, int seatNo) {}
+
+    // Return the seat only once the row is gone; the assignment went with it
+    private void cancelled(ShardRouter.Shard shard, int reservationId, Held held) {
+        if (held.coachNo() > 0) seatMaps.release(held.trainNo(), held.departureDate(), held.coachNo(), held.seatNo());
+        seatInventory.release(held.trainNo(), held.departureDate(), 1);
+        analytics.cancelled(held.trainNo(), held.departureDate(), held.berthType(), held.meals());
+        metrics.increment(Metrics.Counter.CANCELLATIONS);
+        shard.dataSources().wrote(held.userId());
+        audit(AuditLog.Event.RESERVATION_CANCELLED, reservationId, held.userId(), held.trainNo(),
+            held.departureDate());
+        // Promotion runs in the background so the cancelling user is not kept waiting
+        waitlist.schedule(held.trainNo(), held.departureDate());
+    }
+
+    List<BulkResult<Void>> cancelAll(List<Cancellation> cancellations) throws SQLException {
+        List<BulkResult<Void>> results = new ArrayList<>(Collections.nCopies(cancellations.size(), null));
+        Set<Integer> reservationIds = new LinkedHashSet<>();
+        for (Cancellation cancellation : cancellations) {
+            reservationIds.add(cancellation.reservationId());
+        }
+        List<Map<Integer, Held>> found = shards.scatter(shard -> heldReservations(shard, reservationIds));
+
+        Map<ShardRouter.Shard, List<Integer>> byShard = new LinkedHashMap<>();
+        Map<Integer, Held> holdings = new HashMap<>();
+        for (int i = 0; i < cancellations.size(); i++) {
+            Cancellation cancellation = cancellations.get(i);
+            int s = 0;
+            while (s < found.size() && !found.get(s).containsKey(cancellation.reservationId())) s++;
+            Held held = s < found.size() ? found.get(s).get(cancellation.reservationId()) : null;
+            // A reservation named twice in the group is cancelled by the first and not found by the second
+            if (held == null || !held.userId().equals(cancellation.userId())
+                    || holdings.putIfAbsent(cancellation.reservationId(), held) != null) {
+                results.set(i, BulkResult.failed(new ServiceException(ServiceException.Kind.NOT_FOUND,
+                    "Reservation not found or doesn't belong to you!")));
+                continue;
+            }
+            byShard.computeIfAbsent(shards.shards().get(s), shard -> new ArrayList<>()).add(i);
+        }
+
+        for (Map.Entry<ShardRouter.Shard, List<Integer>> entry : byShard.entrySet()) {
+            List<Integer> indices = entry.getValue();
+            int[] deleted;
+            long started = System.nanoTime();
+            try (Connection conn = entry.getKey().primary().getConnection()) {
+                deleted = inTransaction(conn, () -> {
+                    int[] counts;
+                    try (PreparedStatement pstmt = conn.prepareStatement(
+                            "DELETE FROM reservations WHERE reservation_id = ? AND user_id = ?")) {
+                        for (int i : indices) {
+                            pstmt.setInt(1, cancellations.get(i).reservationId());
+                            pstmt.setString(2, cancellations.get(i).userId());
+                            pstmt.addBatch();
+                        }
+                        counts = pstmt.executeBatch();
+                    }
+                    List<BookingOutbox.Change> changes = new ArrayList<>(indices.size());
+                    for (int k = 0; k < indices.size(); k++) {
+                        if (counts[k] == 0) continue;
+                        int reservationId = cancellations.get(indices.get(k)).reservationId();
+                        Held held = holdings.get(reservationId);
+                        journalCancellation(conn, reservationId, held.trainNo(), held.departureDate(),
+                            held.coachNo(), held.seatNo(), held.berthType(), held.meals());
+                        changes.add(BookingOutbox.Change.cancelled(reservationId, held.userId(), held.trainNo(),
+                            held.departureDate(), held.berthType(), held.meals(), held.coachNo(), held.seatNo()));
+                    }
+                    BookingOutbox.append(conn, changes);
+                    return counts;
+                });
+            } catch (SQLException e) {
+                logger.warn("Bulk cancellation failed ({}); cancelling its {} reservations one at a time",
+                    e.getMessage(), indices.size());
+                for (int i : indices) {
+                    try {
+                        cancelReservation(cancellations.get(i).userId(), cancellations.get(i).reservationId());
+                        results.set(i, BulkResult.of(null));
+                    } catch (ServiceException | SQLException error) {
+                        results.set(i, BulkResult.failed(error));
+                    }
+                }
+                continue;
+            } finally {
+                metrics.recordSql(Metrics.Query.CANCEL_RESERVATION, started);
+            }
+
+            for (int k = 0; k < indices.size(); k++) {
+                int i = indices.get(k);
+                int reservationId = cancellations.get(i).reservationId();
+                if (deleted[k] == 0) {
+                    // Cancelled by someone else since it was read
+                    results.set(i, BulkResult.failed(new ServiceException(ServiceException.Kind.NOT_FOUND,
+                        "Reservation not found or doesn't belong to you!")));
+                    continue;
+                }
+                cancelled(entry.getKey(), reservationId, holdings.get(reservationId));
+                results.set(i, BulkResult.of(null));
+            }
+        }
+        return results;
+    }
+
+    private static Map<Integer, Held> heldReservations(ShardRouter.Shard shard, Set<Integer> reservationIds)
+            throws SQLException {
+        Map<Integer, Held> held = new HashMap<>();
+        if (reservationIds.isEmpty()) return held;
+        try (Connection conn = shard.primary().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT r.reservation_id, r.user_id, r.train_no, r.departure_date, r.berth_type, r.meals_required, " +
+                 "s.coach_no, s.seat_no " +
+                 "FROM reservations r " +
+                 "LEFT JOIN seat_assignments s ON s.reservation_id = r.reservation_id " +
+                 "WHERE r.reservation_id IN (" + "?, ".repeat(reservationIds.size() - 1) + "?)")) {
+
+            int index = 1;
+            for (int reservationId : reservationIds) {
+                pstmt.setInt(index++, reservationId);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    held.put(rs.getInt("reservation_id"), new Held(rs.getString("user_id"), rs.getInt("train_no"),
+                        rs.getDate("departure_date").toLocalDate(), rs.getString("berth_type"),
+                        rs.getBoolean("meals_required"), rs.getInt("coach_no"), rs.getInt("seat_no")));
+                }
+            }
+        }
+        return held;
+    }
+
+    // Past trips from the archive, read on demand; empty when archiving is not set up
+    List<Reservation> listArchivedReservations(String userId) throws SQLException {
+        if (archive == null) return List.of();
+        try {
+            return archive.find(userId);
+        } catch (IOException e) {
+            throw new SQLException("Reservation archive could not be read: " + e.getMessage(), e);
+        }
+    }
+
+    // Reservation ids are unique across shards, so at most one shard holds the row
+    private ShardRouter.Shard reservationShard(String userId, int reservationId) throws SQLException {
+        if (!shards.sharded()) return shards.home();
+        List<Boolean> found = shards.scatter(shard -> {
+            try (Connection conn = shard.primary().getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT 1 FROM reservations WHERE reservation_id = ? AND user_id = ?")) {
+                pstmt.setInt(1, reservationId);
+                pstmt.setString(2, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next();
+                }
+            }
+        });
+        int index = found.indexOf(Boolean.TRUE);
+        return index < 0 ? shards.home() : shards.shards().get(index);
+    }
+
+    Waitlist.Entry joinWaitlist(String userId, int trainNo, LocalDate departureDate, String berthType, boolean meals)
+            throws SQLException, ServiceException {
+        require(berthType != null && VALID_BERTH.test(berthType), "Invalid berth type");
+        if (!seatInventory.isKnownTrain(trainNo)) {
+            throw new ServiceException(ServiceException.Kind.NOT_FOUND, "Train not found!");
+        }
+        // Queueing is only for when booking is impossible; a seat freed after this check is promoted to
+        if (availableSeats(trainNo, departureDate) > 0) {
+            throw new ServiceException(ServiceException.Kind.CONFLICT,
+                "Seats are available on this train for " + departureDate + "; book one instead of joining the waitlist");
+        }
+
+        Waitlist.Entry entry = waitlist.join(userId, trainNo, departureDate, berthType, meals);
+        if (entry == null) {
+            throw new ServiceException(ServiceException.Kind.CONFLICT,
+                "The waitlist for this train on " + departureDate + " is full!");
+        }
+        return entry;
+    }
+
+    List<Waitlist.Entry> listWaitlist(String userId) throws SQLException {
+        return waitlist.list(userId);
+    }
+
+    void leaveWaitlist(String userId, int waitlistId) throws SQLException, ServiceException {
+        if (!waitlist.leave(userId, waitlistId)) {
+            throw new ServiceException(ServiceException.Kind.NOT_FOUND,
+                "Waitlist entry not found or doesn't belong to you!");
+        }
+    }
+
+    static Reservation readReservation(ResultSet rs) throws SQLException {
+        return new Reservation(
+            rs.getInt("reservation_id"),
+            rs.getInt("train_no"),
+            rs.getString("train_name"),
+            rs.getString("berth_type"),
+            rs.getBoolean("meals_required"),
+            rs.getDate("departure_date").toLocalDate(),
+            rs.getTimestamp("booking_date").toLocalDateTime(),
+            rs.getInt("coach_no"),
+            rs.getInt("seat_no"));
+    }
+
+    static Train readTrain(ResultSet rs) throws SQLException {
+        return new Train(
+            rs.getString("train_name"),
+            rs.getInt("train_no"),
+            rs.getString("starting_point"),
+            rs.getString("destination"),
+            rs.getString("extra_specifications"),
+            rs.getInt("seats_available"));
+    }
+
+    private static void requirePageSize(int limit) throws ServiceException {
+        require(limit >= 1 && limit <= PagedListings.MAX_PAGE_SIZE,
+            "Page size must be between 1 and " + PagedListings.MAX_PAGE_SIZE);
+    }
+
+    @FunctionalInterface
+    private interface SqlWork<T> {
+        T run() throws SQLException;
+    }
+
+    private <T> T inTransaction(Connection conn, SqlWork<T> work) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            T result = work.run();
+            conn.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            metrics.increment(Metrics.Counter.ROLLBACKS);
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    // A refused record is already logged by the audit log; counting it here puts it on the metrics alerts watch
+    private void audit(AuditLog.Event event, Object... fields) {
+        if (!auditLog.append(event, fields)) metrics.increment(Metrics.Counter.AUDIT_REFUSED);
+    }
+
+    private static void require(boolean condition, String message) throws ServiceException {
+        if (!condition) {
+            throw new ServiceException(ServiceException.Kind.INVALID, message);
+        }
+    }
+
+}
@@ -0,0 +1,326 @@
+package com.sumanth.railway;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Departed journeys, moved out of the reservations table so it only holds trips that are still
+ * ahead. Rows are taken in chunks of {@link #DEFAULT_CHUNK_SIZE}, oldest departure first; each
+ * chunk is written to one file per departure month and only then deleted, in a short transaction
+ * of its own, so the archiver never holds locks for long.
+ *
+ * <p>Files are named {@code reservations-YYYY-MM-<first id>.rca} and are gzip-compressed with the
+ * values stored column by column: user ids (a string table, then an index per row) come first, so
+ * a lookup for one user decompresses the rest of a file only when the user is in it. A run that
+ * stops between writing and deleting archives those rows again, so readers drop repeated ids.
+ */
+final class ReservationArchive implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ReservationArchive.class);
+    private static final int MAGIC = 0x52415243;  // "RARC"
+    static final int VERSION = 1;
+    static final int DEFAULT_CHUNK_SIZE = 1_000;
+    private static final String FILE_PREFIX = "reservations-";
+    private static final String FILE_SUFFIX = ".rca";
+
+    record Report(int archived, int files, long elapsedMillis) {}
+
+    private record Row(int reservationId, String userId, int trainNo, String trainName, String berthType,
+                       boolean meals, LocalDate departureDate, Timestamp bookingDate, int coachNo, int seatNo) {}
+
+    private final ShardRouter shards;
+    private final Path directory;
+    private final int chunkSize;
+    private ScheduledExecutorService archiver;
+
+    ReservationArchive(ShardRouter shards, Path directory, int chunkSize) {
+        this.shards = shards;
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+    }
+
+    // Runs a minute after startup and then every interval, archiving departures more than keepDays old
+    void start(Duration interval, int keepDays) {
+        long intervalMillis = interval.toMillis();
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Archive interval must be at least a millisecond: " + interval);
+        }
+        if (keepDays < 0) throw new IllegalArgumentException("Archive keep days must not be negative: " + keepDays);
+        archiver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reservation-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        archiver.scheduleWithFixedDelay(() -> {
+            try {
+                archiveBefore(LocalDate.now().minusDays(keepDays));
+            } catch (SQLException | IOException | RuntimeException e) {
+                logger.error("Archiving departed reservations failed: {}", e.getMessage(), e);
+            }
+        }, TimeUnit.MINUTES.toMillis(1), intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Moves every reservation departing before the cutoff into the archive
+    Report archiveBefore(LocalDate cutoff) throws SQLException, IOException {
+        long started = System.nanoTime();
+        Files.createDirectories(directory);
+        int archived = 0;
+        int files = 0;
+        for (ShardRouter.Shard shard : shards.shards()) {
+            while (true) {
+                List<Row> chunk = readChunk(shard.primary(), cutoff);
+                if (chunk.isEmpty()) break;
+                files += write(chunk);
+                delete(shard.primary(), chunk);
+                archived += chunk.size();
+                if (chunk.size() < chunkSize) break;
+            }
+        }
+        Report report = new Report(archived, files, (System.nanoTime() - started) / 1_000_000);
+        if (archived > 0) {
+            logger.info("Archived {} reservations departing before {} into {} files in {} ms", archived, cutoff,
+                files, report.elapsedMillis());
+        }
+        return report;
+    }
+
+    private List<Row> readChunk(DataSource dataSource, LocalDate cutoff) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT r.reservation_id, r.user_id, r.train_no, t.train_name, r.berth_type, r.meals_required, " +
+                 "r.departure_date, r.booking_date, s.coach_no, s.seat_no " +
+                 "FROM reservations r LEFT JOIN train_details t ON r.train_no = t.train_no " +
+                 "LEFT JOIN seat_assignments s ON s.reservation_id = r.reservation_id " +
+                 "WHERE r.departure_date < ? ORDER BY r.departure_date, r.reservation_id LIMIT ?")) {
+
+            pstmt.setDate(1, java.sql.Date.valueOf(cutoff));
+            pstmt.setInt(2, chunkSize);
+            ResultSet rs = pstmt.executeQuery();
+
+            List<Row> rows = new ArrayList<>();
+            while (rs.next()) {
+                rows.add(new Row(rs.getInt("reservation_id"), rs.getString("user_id"), rs.getInt("train_no"),
+                    rs.getString("train_name"), rs.getString("berth_type"), rs.getBoolean("meals_required"),
+                    rs.getDate("departure_date").toLocalDate(), rs.getTimestamp("booking_date"),
+                    rs.getInt("coach_no"), rs.getInt("seat_no")));
+            }
+            return rows;
+        }
+    }
+
+    private int write(List<Row> chunk) throws IOException {
+        Map<YearMonth, List<Row>> byMonth = new TreeMap<>();
+        for (Row row : chunk) {
+            byMonth.computeIfAbsent(YearMonth.from(row.departureDate()), month -> new ArrayList<>()).add(row);
+        }
+        for (Map.Entry<YearMonth, List<Row>> month : byMonth.entrySet()) {
+            List<Row> rows = month.getValue();
+            Path file = directory.resolve(FILE_PREFIX + month.getKey() + "-" + rows.get(0).reservationId() + FILE_SUFFIX);
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                GZIPOutputStream gzip = new GZIPOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), 1 << 16);
+                DataOutputStream out = new DataOutputStream(gzip);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(rows.size());
+                writeStrings(out, rows, Row::userId);
+                for (Row row : rows) out.writeInt(row.reservationId());
+                for (Row row : rows) out.writeInt(row.trainNo());
+                writeStrings(out, rows, Row::trainName);
+                writeStrings(out, rows, Row::berthType);
+                for (Row row : rows) out.writeBoolean(row.meals());
+                for (Row row : rows) out.writeInt((int) row.departureDate().toEpochDay());
+                for (Row row : rows) out.writeLong(row.bookingDate() == null ? 0L : row.bookingDate().getTime());
+                for (Row row : rows) out.writeShort(row.coachNo());
+                for (Row row : rows) out.writeShort(row.seatNo());
+                gzip.finish();
+                out.flush();
+                // On disk before the rows are deleted
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return byMonth.size();
+    }
+
+    // A column of strings: each distinct value once, then one index per row (-1 for null)
+    private static void writeStrings(DataOutputStream out, List<Row> rows,
+                                     Function<Row, String> column) throws IOException {
+        Map<String, Integer> table = new LinkedHashMap<>();
+        int[] indexes = new int[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            String value = column.apply(rows.get(i));
+            indexes[i] = value == null ? -1 : table.computeIfAbsent(value, key -> table.size());
+        }
+        out.writeInt(table.size());
+        for (String value : table.keySet()) {
+            out.writeUTF(value);
+        }
+        for (int index : indexes) {
+            out.writeInt(index);
+        }
+    }
+
+    // Seat assignments and PNR passengers go with their reservation; emptied PNRs are removed after
+    private void delete(DataSource dataSource, List<Row> chunk) throws SQLException {
+        String ids = "?, ".repeat(chunk.size() - 1) + "?";
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Set<Long> pnrs = new HashSet<>();
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT DISTINCT pnr_no FROM pnr_passengers WHERE reservation_id IN (" + ids + ")")) {
+                    bindIds(pstmt, chunk);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) pnrs.add(rs.getLong(1));
+                    }
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "DELETE FROM reservations WHERE reservation_id IN (" + ids + ")")) {
+                    bindIds(pstmt, chunk);
+                    pstmt.executeUpdate();
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "DELETE FROM pnr WHERE pnr_no = ? AND NOT EXISTS " +
+                        "(SELECT 1 FROM pnr_passengers p WHERE p.pnr_no = ?)")) {
+                    for (long pnr : pnrs) {
+                        pstmt.setLong(1, pnr);
+                        pstmt.setLong(2, pnr);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static void bindIds(PreparedStatement pstmt, List<Row> chunk) throws SQLException {
+        for (int i = 0; i < chunk.size(); i++) {
+            pstmt.setInt(i + 1, chunk.get(i).reservationId());
+        }
+    }
+
+    // The user's archived trips, oldest departure first
+    List<RailwayService.Reservation> find(String userId) throws IOException {
+        if (!Files.isDirectory(directory)) return List.of();
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        Map<Integer, RailwayService.Reservation> found = new HashMap<>();
+        for (Path file : files) {
+            for (RailwayService.Reservation reservation : read(file, userId)) {
+                found.putIfAbsent(reservation.reservationId(), reservation);
+            }
+        }
+        List<RailwayService.Reservation> reservations = new ArrayList<>(found.values());
+        reservations.sort(Comparator.comparing(RailwayService.Reservation::departureDate)
+            .thenComparing(RailwayService.Reservation::reservationId));
+        return reservations;
+    }
+
+    private static List<RailwayService.Reservation> read(Path file, String userId) throws IOException {
+        try (InputStream stream = Files.newInputStream(file)) {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new GZIPInputStream(stream, 1 << 16), 1 << 16));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a reservation archive this version can read");
+            }
+            int count = in.readInt();
+
+            // The user column decides whether the rest of the file is worth decompressing
+            String[] users = readTable(in);
+            int wanted = Arrays.asList(users).indexOf(userId);
+            if (wanted < 0) return List.of();
+            BitSet matches = new BitSet(count);
+            for (int i = 0; i < count; i++) {
+                if (in.readInt() == wanted) matches.set(i);
+            }
+
+            int[] ids = readInts(in, count);
+            int[] trainNumbers = readInts(in, count);
+            String[] trainNames = readTable(in);
+            int[] trainNameIndexes = readInts(in, count);
+            String[] berths = readTable(in);
+            int[] berthIndexes = readInts(in, count);
+            boolean[] meals = new boolean[count];
+            for (int i = 0; i < count; i++) meals[i] = in.readBoolean();
+            int[] departureDays = readInts(in, count);
+            long[] bookedAt = new long[count];
+            for (int i = 0; i < count; i++) bookedAt[i] = in.readLong();
+            short[] coaches = new short[count];
+            for (int i = 0; i < count; i++) coaches[i] = in.readShort();
+            short[] seats = new short[count];
+            for (int i = 0; i < count; i++) seats[i] = in.readShort();
+
+            List<RailwayService.Reservation> reservations = new ArrayList<>();
+            for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+                reservations.add(new RailwayService.Reservation(ids[i], trainNumbers[i],
+                    value(trainNames, trainNameIndexes[i]), value(berths, berthIndexes[i]), meals[i],
+                    LocalDate.ofEpochDay(departureDays[i]),
+                    bookedAt[i] == 0 ? null : new Timestamp(bookedAt[i]).toLocalDateTime(),
+                    coaches[i], seats[i]));
+            }
+            return reservations;
+        }
+    }
+
+    private static String[] readTable(DataInputStream in) throws IOException {
+        String[] table = new String[in.readInt()];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = in.readUTF();
+        }
+        return table;
+    }
+
+    private static int[] readInts(DataInputStream in, int count) throws IOException {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static String value(String[] table, int index) {
+        return index < 0 ? null : table[index];
+    }
+
+    @Override
+    public void close() {
+        if (archiver != null) {
+            archiver.shutdownNow();
+        }
+    }
+}
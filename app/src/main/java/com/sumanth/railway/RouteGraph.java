@@ -0,0 +1,181 @@
+package com.sumanth.railway;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory station graph built from train_details: stations are nodes, each train is an edge
+ * from its starting point to its destination. Answers direct, one-change and two-change
+ * itineraries for a date, using the seat inventory for live availability.
+ * Trains are added and removed one at a time as the catalog changes.
+ */
+class RouteGraph {
+    private static final Logger logger = LoggerFactory.getLogger(RouteGraph.class);
+    static final int DEFAULT_RESULT_LIMIT = 10;
+
+    record Leg(int trainNo, String trainName, String from, String to, int seatsAvailable) {}
+
+    record Itinerary(List<Leg> legs, int changes, int seatsAvailable) {}
+
+    private record Edge(int trainNo, String trainName, String from, String to, String fromKey, String toKey) {}
+
+    private final SeatInventory seatInventory;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Edge> edges = new HashMap<>();
+    // from station key -> to station key -> trains running that route
+    private final Map<String, Map<String, List<Edge>>> routes = new HashMap<>();
+    // station key -> stations with a train into it
+    private final Map<String, Set<String>> predecessors = new HashMap<>();
+
+    RouteGraph(SeatInventory seatInventory) {
+        this.seatInventory = seatInventory;
+    }
+
+    void rebuild(Collection<RailwayService.Train> trains) {
+        lock.writeLock().lock();
+        try {
+            edges.clear();
+            routes.clear();
+            predecessors.clear();
+            for (RailwayService.Train train : trains) {
+                addEdge(train);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Route graph built: {} trains, {} stations with departures", edges.size(), routes.size());
+    }
+
+    void addTrain(RailwayService.Train train) {
+        lock.writeLock().lock();
+        try {
+            removeEdge(train.trainNo());
+            addEdge(train);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void removeTrain(int trainNo) {
+        lock.writeLock().lock();
+        try {
+            removeEdge(trainNo);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Itineraries with a seat on every leg, fewest changes first, then most seats
+    List<Itinerary> search(String from, String to, LocalDate date, int limit) {
+        String fromKey = key(from);
+        String toKey = key(to);
+        List<Itinerary> results = new ArrayList<>();
+        if (fromKey.equals(toKey)) return results;
+
+        lock.readLock().lock();
+        try {
+            // Each tier is only explored when the ones with fewer changes left room in the result
+            List<Itinerary> tier = new ArrayList<>();
+            addItinerary(tier, date, fromKey, toKey);
+            addTier(results, tier, limit);
+
+            Set<String> firstStops = routes.getOrDefault(fromKey, Map.of()).keySet();
+            Set<String> intoDestination = predecessors.getOrDefault(toKey, Set.of());
+            if (results.size() < limit) {
+                for (String first : firstStops) {
+                    if (!first.equals(toKey) && intoDestination.contains(first)) {
+                        addItinerary(tier, date, fromKey, first, toKey);
+                    }
+                }
+                addTier(results, tier, limit);
+            }
+
+            if (results.size() < limit) {
+                for (String first : firstStops) {
+                    if (first.equals(toKey)) continue;
+                    for (String second : routes.getOrDefault(first, Map.of()).keySet()) {
+                        if (second.equals(fromKey) || second.equals(toKey)) continue;
+                        if (intoDestination.contains(second)) {
+                            addItinerary(tier, date, fromKey, first, second, toKey);
+                        }
+                    }
+                }
+                addTier(results, tier, limit);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return results;
+    }
+
+    private static void addTier(List<Itinerary> results, List<Itinerary> tier, int limit) {
+        tier.sort(Comparator.comparingInt(Itinerary::seatsAvailable).reversed());
+        for (Itinerary itinerary : tier) {
+            if (results.size() >= limit) break;
+            results.add(itinerary);
+        }
+        tier.clear();
+    }
+
+    // For each hop, takes the train with the most free seats; skipped if any hop is full
+    private void addItinerary(List<Itinerary> results, LocalDate date, String... stations) {
+        List<Leg> legs = new ArrayList<>(stations.length - 1);
+        int bottleneck = Integer.MAX_VALUE;
+        for (int i = 0; i + 1 < stations.length; i++) {
+            List<Edge> trains = routes.getOrDefault(stations[i], Map.of()).get(stations[i + 1]);
+            if (trains == null) return;
+
+            Edge best = null;
+            int bestSeats = 0;
+            for (Edge edge : trains) {
+                int seats = seatInventory.available(edge.trainNo(), date);
+                if (seats > bestSeats) {
+                    best = edge;
+                    bestSeats = seats;
+                }
+            }
+            if (best == null) return;
+
+            legs.add(new Leg(best.trainNo(), best.trainName(), best.from(), best.to(), bestSeats));
+            bottleneck = Math.min(bottleneck, bestSeats);
+        }
+        results.add(new Itinerary(legs, legs.size() - 1, bottleneck));
+    }
+
+    private void addEdge(RailwayService.Train train) {
+        Edge edge = new Edge(train.trainNo(), train.trainName(), train.startingPoint(), train.destination(),
+            key(train.startingPoint()), key(train.destination()));
+        if (edge.fromKey().equals(edge.toKey())) return;
+
+        edges.put(edge.trainNo(), edge);
+        routes.computeIfAbsent(edge.fromKey(), k -> new HashMap<>())
+            .computeIfAbsent(edge.toKey(), k -> new ArrayList<>())
+            .add(edge);
+        predecessors.computeIfAbsent(edge.toKey(), k -> new HashSet<>()).add(edge.fromKey());
+    }
+
+    private void removeEdge(int trainNo) {
+        Edge edge = edges.remove(trainNo);
+        if (edge == null) return;
+
+        Map<String, List<Edge>> destinations = routes.get(edge.fromKey());
+        List<Edge> trains = destinations.get(edge.toKey());
+        trains.removeIf(e -> e.trainNo() == trainNo);
+        if (!trains.isEmpty()) return;
+
+        // Last train on this route: the stations are no longer directly connected
+        destinations.remove(edge.toKey());
+        if (destinations.isEmpty()) routes.remove(edge.fromKey());
+        Set<String> sources = predecessors.get(edge.toKey());
+        sources.remove(edge.fromKey());
+        if (sources.isEmpty()) predecessors.remove(edge.toKey());
+    }
+
+    static String key(String station) {
+        return station.trim().toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,100 @@
+package com.sumanth.railway;
+
+import java.sql.*;
+import java.util.List;
+
+/**
+ * Table definitions, shared by the application's startup and the benchmark fixtures.
+ */
+final class Schema {
+    private Schema() {}
+
+    // The tables as of the first versioned migration; later changes are steps in SchemaMigrations
+    static final List<String> TABLES = List.of(
+        "CREATE TABLE IF NOT EXISTS train_details (" +
+            "train_name VARCHAR(255) NOT NULL, " +
+            "train_no INT PRIMARY KEY, " +
+            "starting_point VARCHAR(255) NOT NULL, " +
+            "destination VARCHAR(255) NOT NULL, " +
+            "extra_specifications VARCHAR(255), " +
+            "seats_available INT NOT NULL)",
+
+        "CREATE TABLE IF NOT EXISTS users (" +
+            "user_id VARCHAR(30) PRIMARY KEY, " +
+            "username VARCHAR(30) NOT NULL UNIQUE, " +
+            "password VARCHAR(60) NOT NULL, " +  // 60 chars for BCrypt hash
+            "full_name VARCHAR(50) NOT NULL, " +
+            "phone VARCHAR(15) NOT NULL, " +
+            "aadhaar VARCHAR(12) UNIQUE, " +
+            "address VARCHAR(100) NOT NULL, " +
+            "pincode VARCHAR(6) NOT NULL, " +
+            "age INT NOT NULL)",
+
+        "CREATE TABLE IF NOT EXISTS reservations (" +
+            "reservation_id INT AUTO_INCREMENT PRIMARY KEY, " +
+            "user_id VARCHAR(30) NOT NULL, " +
+            "train_no INT NOT NULL, " +
+            "berth_type VARCHAR(10), " +
+            "meals_required BOOLEAN, " +
+            "departure_date DATE NOT NULL, " +
+            "booking_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+            "FOREIGN KEY (user_id) REFERENCES users(user_id), " +
+            "FOREIGN KEY (train_no) REFERENCES train_details(train_no))",
+
+        "CREATE TABLE IF NOT EXISTS pnr (" +
+            "pnr_no BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+            "user_id VARCHAR(30) NOT NULL, " +
+            "train_no INT NOT NULL, " +
+            "departure_date DATE NOT NULL, " +
+            "passenger_count INT NOT NULL, " +
+            "booking_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+            "FOREIGN KEY (user_id) REFERENCES users(user_id), " +
+            "FOREIGN KEY (train_no) REFERENCES train_details(train_no))",
+
+        "CREATE TABLE IF NOT EXISTS pnr_passengers (" +
+            "reservation_id INT PRIMARY KEY, " +
+            "pnr_no BIGINT NOT NULL, " +
+            "passenger_name VARCHAR(50) NOT NULL, " +
+            "passenger_age INT NOT NULL, " +
+            "FOREIGN KEY (pnr_no) REFERENCES pnr(pnr_no), " +
+            "FOREIGN KEY (reservation_id) REFERENCES reservations(reservation_id) ON DELETE CASCADE)",
+
+        "CREATE TABLE IF NOT EXISTS seat_assignments (" +
+            "reservation_id INT PRIMARY KEY, " +
+            "train_no INT NOT NULL, " +
+            "departure_date DATE NOT NULL, " +
+            "coach_no INT NOT NULL, " +
+            "seat_no INT NOT NULL, " +
+            "UNIQUE (train_no, departure_date, coach_no, seat_no), " +
+            "FOREIGN KEY (reservation_id) REFERENCES reservations(reservation_id) ON DELETE CASCADE)",
+
+        "CREATE TABLE IF NOT EXISTS waitlist (" +
+            "waitlist_id INT AUTO_INCREMENT PRIMARY KEY, " +
+            "user_id VARCHAR(30) NOT NULL, " +
+            "train_no INT NOT NULL, " +
+            "berth_type VARCHAR(10), " +
+            "meals_required BOOLEAN, " +
+            "departure_date DATE NOT NULL, " +
+            "joined_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+            "INDEX idx_waitlist_departure (train_no, departure_date, waitlist_id), " +
+            "FOREIGN KEY (user_id) REFERENCES users(user_id), " +
+            "FOREIGN KEY (train_no) REFERENCES train_details(train_no))",
+
+        // Changes a snapshot cannot see from reservation ids alone; see StateSnapshot
+        "CREATE TABLE IF NOT EXISTS change_journal (" +
+            "change_id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+            "change_type CHAR(1) NOT NULL, " +
+            "train_no INT NOT NULL, " +
+            "reservation_id INT, " +
+            "departure_date DATE, " +
+            "coach_no INT, " +
+            "seat_no INT, " +
+            "changed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+
+    // Create tables if they don't exist
+    static void createTables(Statement stmt) throws SQLException {
+        for (String ddl : TABLES) {
+            stmt.execute(ddl);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.sumanth.railway;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ordered, checksummed schema changes, recorded in schema_version as they are applied. Steps
+ * that already ran are never run again, and a step edited after it was applied stops startup
+ * instead of leaving databases that disagree about their schema. New changes go at the end of
+ * {@link #MIGRATIONS} with the next version number.
+ */
+final class SchemaMigrations {
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMigrations.class);
+    private static final Pattern CREATE_INDEX =
+        Pattern.compile("CREATE INDEX (\\w+) ON (\\w+) .*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern ADD_COLUMN =
+        Pattern.compile("ALTER TABLE (\\w+) ADD COLUMN (\\w+) .*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    record Migration(int version, String description, List<String> statements) {
+        String checksum() {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                for (String statement : statements) {
+                    digest.update(statement.getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) '\n');
+                }
+                return HexFormat.of().formatHex(digest.digest());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    record Applied(int version, String description, String checksum, Timestamp appliedAt, long executionMillis) {}
+
+    static final List<Migration> MIGRATIONS = List.of(
+        // Creates nothing on databases made before versioning, so they are adopted as they are
+        new Migration(1, "Baseline tables", Schema.TABLES),
+
+        new Migration(2, "Indexes for reservation lookups", List.of(
+            // viewReservations and the paged listing: a user's bookings in departure order, no filesort
+            "CREATE INDEX idx_reservations_user_departure ON reservations (user_id, departure_date, reservation_id)",
+            // Seats booked per departure, answered from the index alone
+            "CREATE INDEX idx_reservations_departure ON reservations (train_no, departure_date)",
+            // A user's waitlist entries
+            "CREATE INDEX idx_waitlist_user ON waitlist (user_id, departure_date)")),
+
+        new Migration(3, "Index for archiving departed reservations", List.of(
+            // The archiver takes the oldest departures first, a chunk at a time
+            "CREATE INDEX idx_reservations_departure_date ON reservations (departure_date, reservation_id)")),
+
+        new Migration(4, "Outbox for booking events", List.of(
+            // Written with each booking and cancellation; see BookingOutbox
+            "CREATE TABLE IF NOT EXISTS booking_outbox (" +
+                "event_id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "event_type VARCHAR(30) NOT NULL, " +
+                "train_no INT NOT NULL, " +
+                "payload VARCHAR(1000) NOT NULL, " +
+                "created_at TIMESTAMP(3) NOT NULL)")),
+
+        new Migration(5, "Berth and meals on journalled cancellations", List.of(
+            // So a snapshot's totals for departed trips can take off cancellations made after it
+            "ALTER TABLE change_journal ADD COLUMN berth_type VARCHAR(10)",
+            "ALTER TABLE change_journal ADD COLUMN meals_required BOOLEAN")));
+
+    private SchemaMigrations() {}
+
+    static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version();
+    }
+
+    // Brings the schema on conn up to the latest version; returns the number of steps applied
+    static int migrate(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                "version INT PRIMARY KEY, " +
+                "description VARCHAR(200) NOT NULL, " +
+                "checksum CHAR(64) NOT NULL, " +
+                "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                "execution_ms BIGINT NOT NULL)");
+        }
+
+        Map<Integer, Applied> applied = applied(conn);
+        int count = 0;
+        for (Migration migration : MIGRATIONS) {
+            Applied previous = applied.remove(migration.version());
+            if (previous != null) {
+                if (!previous.checksum().equals(migration.checksum())) {
+                    throw new SQLException("Migration " + migration.version() + " (" + migration.description() +
+                        ") was changed after it was applied: recorded checksum " + previous.checksum() +
+                        ", now " + migration.checksum());
+                }
+                continue;
+            }
+            apply(conn, migration);
+            count++;
+        }
+        if (!applied.isEmpty()) {
+            throw new SQLException("Database has schema versions this build does not know: " + applied.keySet());
+        }
+        if (count > 0) {
+            logger.info("Applied {} schema migration(s); schema is at version {}", count, latestVersion());
+        }
+        return count;
+    }
+
+    // One read of schema_version: true when exactly this build's migrations are recorded, unchanged,
+    // so startup can skip migrate and its DDL altogether
+    static boolean isCurrent(Connection conn) throws SQLException {
+        Map<Integer, Applied> applied;
+        try {
+            applied = applied(conn);
+        } catch (SQLException e) {
+            // No schema_version table yet: a new database, or one from before versioning
+            return false;
+        }
+        if (applied.size() != MIGRATIONS.size()) return false;
+        for (Migration migration : MIGRATIONS) {
+            Applied previous = applied.get(migration.version());
+            if (previous == null || !previous.checksum().equals(migration.checksum())) return false;
+        }
+        return true;
+    }
+
+    static Map<Integer, Applied> applied(Connection conn) throws SQLException {
+        Map<Integer, Applied> applied = new TreeMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM schema_version ORDER BY version")) {
+            while (rs.next()) {
+                applied.put(rs.getInt("version"), new Applied(rs.getInt("version"), rs.getString("description"),
+                    rs.getString("checksum").trim(), rs.getTimestamp("applied_at"), rs.getLong("execution_ms")));
+            }
+        }
+        return applied;
+    }
+
+    // MySQL commits DDL as it goes, so each statement is made safe to repeat after a partial run
+    private static void apply(Connection conn, Migration migration) throws SQLException {
+        long started = System.nanoTime();
+        try (Statement stmt = conn.createStatement()) {
+            for (String statement : migration.statements()) {
+                Matcher index = CREATE_INDEX.matcher(statement);
+                if (index.matches() && indexExists(conn, index.group(2), index.group(1))) continue;
+                Matcher column = ADD_COLUMN.matcher(statement);
+                if (column.matches() && columnExists(conn, column.group(1), column.group(2))) continue;
+                stmt.execute(statement);
+            }
+        }
+        long elapsed = (System.nanoTime() - started) / 1_000_000;
+
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO schema_version (version, description, checksum, execution_ms) VALUES (?, ?, ?, ?)")) {
+            pstmt.setInt(1, migration.version());
+            pstmt.setString(2, migration.description());
+            pstmt.setString(3, migration.checksum());
+            pstmt.setLong(4, elapsed);
+            pstmt.executeUpdate();
+        }
+        logger.info("Schema migration {} ({}) applied in {} ms", migration.version(), migration.description(), elapsed);
+    }
+
+    private static boolean indexExists(Connection conn, String table, String index) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        // Unquoted names are stored upper case by some databases and as written by others
+        for (String name : List.of(table, table.toUpperCase(Locale.ROOT))) {
+            try (ResultSet rs = metaData.getIndexInfo(conn.getCatalog(), null, name, false, false)) {
+                while (rs.next()) {
+                    if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean columnExists(Connection conn, String table, String column) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        for (String name : List.of(table, table.toUpperCase(Locale.ROOT))) {
+            try (ResultSet rs = metaData.getColumns(conn.getCatalog(), null, name, null)) {
+                while (rs.next()) {
+                    if (column.equalsIgnoreCase(rs.getString("COLUMN_NAME"))) return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,155 @@
+package com.sumanth.railway;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory seat counters per (train_no, departure_date).
+ * The reservations table stays the system of record: counters are rebuilt from it
+ * at startup and every reserve/release is paired with the reservation row that persists it.
+ */
+class SeatInventory {
+    private static final Logger logger = LoggerFactory.getLogger(SeatInventory.class);
+
+    record Key(int trainNo, LocalDate departureDate) {}
+
+    // One per shard; each train's rows are all on one of them
+    private final List<DataSource> dataSources;
+    // Seats per departure, taken from train_details.seats_available
+    private final Map<Integer, Integer> capacities = new ConcurrentHashMap<>();
+    private final Map<Key, AtomicInteger> counters = new ConcurrentHashMap<>();
+
+    SeatInventory(DataSource dataSource) {
+        this(List.of(dataSource));
+    }
+
+    SeatInventory(List<DataSource> dataSources) {
+        this.dataSources = List.copyOf(dataSources);
+    }
+
+    void load() throws SQLException {
+        capacities.clear();
+        counters.clear();
+        for (DataSource dataSource : dataSources) {
+            load(dataSource);
+        }
+        logger.info("Seat inventory loaded: {} trains, {} departures", capacities.size(), counters.size());
+    }
+
+    private void load(DataSource dataSource) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            try (ResultSet rs = stmt.executeQuery("SELECT train_no, seats_available FROM train_details")) {
+                while (rs.next()) {
+                    capacities.put(rs.getInt("train_no"), rs.getInt("seats_available"));
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT train_no, departure_date, COUNT(*) AS booked FROM reservations " +
+                    "GROUP BY train_no, departure_date")) {
+                while (rs.next()) {
+                    int trainNo = rs.getInt("train_no");
+                    Integer capacity = capacities.get(trainNo);
+                    if (capacity == null) continue;
+                    Key key = new Key(trainNo, rs.getDate("departure_date").toLocalDate());
+                    counters.put(key, new AtomicInteger(capacity - rs.getInt("booked")));
+                }
+            }
+        }
+    }
+
+    // Same state as load(), taken from a snapshot instead of the database
+    void restore(StateSnapshot snapshot) {
+        capacities.clear();
+        counters.clear();
+        for (RailwayService.Train train : snapshot.trains()) {
+            capacities.put(train.trainNo(), train.seatsPerDeparture());
+        }
+        for (int i = 0; i < snapshot.departureCount(); i++) {
+            StateSnapshot.Departure departure = snapshot.departure(i);
+            Integer capacity = capacities.get(departure.trainNo());
+            if (capacity == null) continue;
+            counters.put(new Key(departure.trainNo(), departure.departureDate()),
+                new AtomicInteger(capacity - departure.booked()));
+        }
+        logger.info("Seat inventory restored from snapshot: {} trains, {} departures",
+            capacities.size(), counters.size());
+    }
+
+    boolean isKnownTrain(int trainNo) {
+        return capacities.containsKey(trainNo);
+    }
+
+    int capacity(int trainNo) {
+        return capacities.getOrDefault(trainNo, 0);
+    }
+
+    // Read-only: looking at a departure nobody has booked does not create a counter for it
+    int available(int trainNo, LocalDate departureDate) {
+        Integer capacity = capacities.get(trainNo);
+        if (capacity == null) return 0;
+        AtomicInteger counter = counters.get(new Key(trainNo, departureDate));
+        return counter == null ? capacity : Math.max(counter.get(), 0);
+    }
+
+    boolean tryReserve(int trainNo, LocalDate departureDate, int seats) {
+        AtomicInteger counter = counterFor(trainNo, departureDate);
+        if (counter == null) return false;
+
+        while (true) {
+            int current = counter.get();
+            if (current < seats) return false;
+            if (counter.compareAndSet(current, current - seats)) return true;
+        }
+    }
+
+    // Counts seats that are already booked in the database, such as replayed reservations; never refuses
+    void recordBooked(int trainNo, LocalDate departureDate, int seats) {
+        AtomicInteger counter = counterFor(trainNo, departureDate);
+        if (counter != null) {
+            counter.addAndGet(-seats);
+        }
+    }
+
+    void release(int trainNo, LocalDate departureDate, int seats) {
+        AtomicInteger counter = counterFor(trainNo, departureDate);
+        if (counter != null) {
+            counter.addAndGet(seats);
+        }
+    }
+
+    void registerTrain(int trainNo, int capacity) {
+        capacities.put(trainNo, capacity);
+    }
+
+    // Shifts every known departure by the change in capacity so existing bookings are kept
+    void updateCapacity(int trainNo, int capacity) {
+        Integer previous = capacities.put(trainNo, capacity);
+        if (previous == null) return;
+
+        int delta = capacity - previous;
+        counters.forEach((key, counter) -> {
+            if (key.trainNo() == trainNo) counter.addAndGet(delta);
+        });
+    }
+
+    void removeTrain(int trainNo) {
+        capacities.remove(trainNo);
+        counters.keySet().removeIf(key -> key.trainNo() == trainNo);
+    }
+
+    private AtomicInteger counterFor(int trainNo, LocalDate departureDate) {
+        Integer capacity = capacities.get(trainNo);
+        if (capacity == null) return null;
+        return counters.computeIfAbsent(new Key(trainNo, departureDate), k -> new AtomicInteger(capacity));
+    }
+}
@@ -0,0 +1,209 @@
+package com.sumanth.railway;
+
+import java.util.Arrays;
+
+/**
+ * Berth occupancy for one departure of one train. Seats are laid out in sleeper coaches of
+ * {@value #BERTHS_PER_COACH} berths, eight to a bay (LOWER, MIDDLE, UPPER, LOWER, MIDDLE, UPPER,
+ * SIDE LOWER, SIDE UPPER), so each berth class holds 18 berths per coach and fits in one long.
+ * A second bitset per class marks coaches that still have a free berth of that class, which
+ * makes allocation two trailing-zero counts.
+ */
+class SeatMap {
+    static final int BERTHS_PER_COACH = 72;
+    static final String[] BERTH_CLASSES = {"LOWER", "MIDDLE", "UPPER", "SIDE"};
+    private static final int CLASSES = BERTH_CLASSES.length;
+    private static final int BAY_SIZE = 8;
+    // Berth class of each position within a bay
+    private static final int[] BAY_LAYOUT = {0, 1, 2, 0, 1, 2, 3, 3};
+
+    record Berth(int coachNo, int seatNo, String berthType) {
+        String coach() {
+            return coachLabel(coachNo);
+        }
+    }
+
+    static String coachLabel(int coachNo) {
+        return "S" + coachNo;
+    }
+
+    // Read without the lock to tell whether a resize is due; everything else is guarded by this
+    private volatile int capacity;
+    private int coaches;
+    // Occupied berths, indexed [coach * CLASSES + class]; bit i is the i-th berth of that class. May
+    // hold berths past the capacity, and coaches past it, whose assignments outlived a capacity cut
+    private long[] occupied;
+    // Berths that exist (the last coach may be partial), same indexing
+    private long[] present;
+    // Per class, one bit per coach that still has a free berth of that class
+    private long[][] coachesWithSpace;
+
+    SeatMap(int capacity) {
+        layout(capacity, 1);
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Lays the berths out again for a new capacity, in place, so callers already holding this map
+     * keep allocating and releasing against the same berths. Every taken berth stays taken,
+     * including ones allocated for bookings not yet committed and ones past a reduced capacity:
+     * their seat_assignments rows remain, and handing them out again once the capacity grows back
+     * would fail every booking on the departure on the unique seat constraint.
+     */
+    synchronized void resize(int newCapacity) {
+        if (newCapacity == capacity) return;
+        long[] taken = occupied;
+        int takenCoaches = coaches;
+        while (takenCoaches > 0 && !anyTaken(taken, takenCoaches - 1)) takenCoaches--;
+        layout(newCapacity, takenCoaches);
+        System.arraycopy(taken, 0, occupied, 0, takenCoaches * CLASSES);
+        for (int coach = 0; coach < takenCoaches; coach++) {
+            for (int berthClass = 0; berthClass < CLASSES; berthClass++) {
+                updateSpace(coach, berthClass);
+            }
+        }
+    }
+
+    private static boolean anyTaken(long[] occupied, int coach) {
+        for (int berthClass = 0; berthClass < CLASSES; berthClass++) {
+            if (occupied[coach * CLASSES + berthClass] != 0) return true;
+        }
+        return false;
+    }
+
+    // minCoaches keeps room for taken berths past the capacity
+    private void layout(int capacity, int minCoaches) {
+        this.capacity = capacity;
+        this.coaches = Math.max(minCoaches, Math.max(1, (capacity + BERTHS_PER_COACH - 1) / BERTHS_PER_COACH));
+        this.occupied = new long[coaches * CLASSES];
+        this.present = new long[coaches * CLASSES];
+        this.coachesWithSpace = new long[CLASSES][(coaches + 63) / 64];
+
+        for (int seat = 0; seat < capacity; seat++) {
+            int coach = seat / BERTHS_PER_COACH;
+            int position = seat % BERTHS_PER_COACH;
+            int berthClass = BAY_LAYOUT[position % BAY_SIZE];
+            present[coach * CLASSES + berthClass] |= 1L << indexInClass(position);
+            coachesWithSpace[berthClass][coach >> 6] |= 1L << (coach & 63);
+        }
+    }
+
+    static int classOf(String berthType) {
+        for (int i = 0; i < CLASSES; i++) {
+            if (BERTH_CLASSES[i].equalsIgnoreCase(berthType)) return i;
+        }
+        throw new IllegalArgumentException("Unknown berth type: " + berthType);
+    }
+
+    // Preferred class first, then the others in layout order; null when the coach set is full
+    synchronized Berth allocate(String preferredBerthType) {
+        int preferred = classOf(preferredBerthType);
+        Berth berth = allocateIn(preferred);
+        for (int berthClass = 0; berth == null && berthClass < CLASSES; berthClass++) {
+            if (berthClass != preferred) berth = allocateIn(berthClass);
+        }
+        return berth;
+    }
+
+    /**
+     * Marks a berth taken by an existing assignment; false if it is already taken or is no berth
+     * position at all. A berth past the capacity is kept too, since its assignment is still in
+     * seat_assignments: it is never allocated, and stays taken if the capacity grows back over it.
+     */
+    synchronized boolean occupy(int coachNo, int seatNo) {
+        int coach = coachNo - 1;
+        int position = seatNo - 1;
+        if (coach < 0 || position < 0 || position >= BERTHS_PER_COACH) return false;
+        if (coach >= coaches) grow(coach + 1);
+
+        int berthClass = BAY_LAYOUT[position % BAY_SIZE];
+        int word = coach * CLASSES + berthClass;
+        long bit = 1L << indexInClass(position);
+        if ((occupied[word] & bit) != 0) return false;
+
+        occupied[word] |= bit;
+        updateSpace(coach, berthClass);
+        return true;
+    }
+
+    synchronized void release(int coachNo, int seatNo) {
+        int coach = coachNo - 1;
+        int position = seatNo - 1;
+        if (coach < 0 || coach >= coaches || position < 0 || position >= BERTHS_PER_COACH) return;
+
+        int berthClass = BAY_LAYOUT[position % BAY_SIZE];
+        occupied[coach * CLASSES + berthClass] &= ~(1L << indexInClass(position));
+        updateSpace(coach, berthClass);
+    }
+
+    synchronized int free(String berthType) {
+        int berthClass = classOf(berthType);
+        int free = 0;
+        for (int coach = 0; coach < coaches; coach++) {
+            int word = coach * CLASSES + berthClass;
+            free += Long.bitCount(present[word] & ~occupied[word]);
+        }
+        return free;
+    }
+
+    private Berth allocateIn(int berthClass) {
+        long[] summary = coachesWithSpace[berthClass];
+        for (int i = 0; i < summary.length; i++) {
+            if (summary[i] == 0) continue;
+
+            int coach = (i << 6) + Long.numberOfTrailingZeros(summary[i]);
+            int word = coach * CLASSES + berthClass;
+            int index = Long.numberOfTrailingZeros(present[word] & ~occupied[word]);
+            occupied[word] |= 1L << index;
+            updateSpace(coach, berthClass);
+            return new Berth(coach + 1, seatNumber(berthClass, index), BERTH_CLASSES[berthClass]);
+        }
+        return null;
+    }
+
+    // Keeps a coach's summary bit in step with whether it has a free berth of the class within the capacity
+    private void updateSpace(int coach, int berthClass) {
+        int word = coach * CLASSES + berthClass;
+        if ((present[word] & ~occupied[word]) != 0) {
+            coachesWithSpace[berthClass][coach >> 6] |= 1L << (coach & 63);
+        } else {
+            coachesWithSpace[berthClass][coach >> 6] &= ~(1L << (coach & 63));
+        }
+    }
+
+    // Room for an assignment in a coach past the capacity; the added coaches have no berths present
+    private void grow(int newCoaches) {
+        occupied = Arrays.copyOf(occupied, newCoaches * CLASSES);
+        present = Arrays.copyOf(present, newCoaches * CLASSES);
+        for (int berthClass = 0; berthClass < CLASSES; berthClass++) {
+            coachesWithSpace[berthClass] = Arrays.copyOf(coachesWithSpace[berthClass], (newCoaches + 63) / 64);
+        }
+        coaches = newCoaches;
+    }
+
+    // Position of a berth among the berths of its class within the coach
+    private static int indexInClass(int position) {
+        int bay = position / BAY_SIZE;
+        int offset = position % BAY_SIZE;
+        int berthClass = BAY_LAYOUT[offset];
+        int before = 0;
+        for (int i = 0; i < offset; i++) {
+            if (BAY_LAYOUT[i] == berthClass) before++;
+        }
+        return bay * 2 + before;
+    }
+
+    private static int seatNumber(int berthClass, int index) {
+        int bay = index / 2;
+        int nth = index % 2;
+        for (int offset = 0; offset < BAY_SIZE; offset++) {
+            if (BAY_LAYOUT[offset] == berthClass && nth-- == 0) {
+                return bay * BAY_SIZE + offset + 1;
+            }
+        }
+        throw new IllegalStateException("No berth " + index + " in class " + berthClass);
+    }
+}
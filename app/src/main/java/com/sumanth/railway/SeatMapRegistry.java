@@ -0,0 +1,96 @@
+package com.sumanth.railway;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Seat maps per (train_no, departure_date), loaded from seat_assignments the first time a
+ * departure is touched and kept in memory afterwards. A map is never replaced once registered:
+ * a capacity change resizes it in place, so a booking holding it while the change lands still
+ * allocates and releases against the map everyone else sees.
+ */
+class SeatMapRegistry {
+    static final String LOAD_QUERY =
+        "SELECT coach_no, seat_no FROM seat_assignments WHERE train_no = ? AND departure_date = ?";
+
+    private final ShardRouter shards;
+    private final SeatInventory seatInventory;
+    private final Map<SeatInventory.Key, SeatMap> maps = new ConcurrentHashMap<>();
+
+    SeatMapRegistry(ShardRouter shards, SeatInventory seatInventory) {
+        this.shards = shards;
+        this.seatInventory = seatInventory;
+    }
+
+    SeatMap get(int trainNo, LocalDate departureDate) throws SQLException {
+        SeatInventory.Key key = new SeatInventory.Key(trainNo, departureDate);
+        SeatMap map = maps.get(key);
+        if (map == null) {
+            try {
+                // Loaded under the key's lock, which release() also takes, so a seat freed while the load
+                // runs is released after it rather than lost while the load still reads it as taken
+                map = maps.computeIfAbsent(key, k -> {
+                    try {
+                        return load(trainNo, departureDate);
+                    } catch (SQLException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            } catch (RuntimeException e) {
+                if (e.getCause() instanceof SQLException sql) throw sql;
+                throw e;
+            }
+        }
+        int capacity = seatInventory.capacity(trainNo);
+        if (map.capacity() != capacity) map.resize(capacity);
+        return map;
+    }
+
+    void release(int trainNo, LocalDate departureDate, int coachNo, int seatNo) {
+        maps.computeIfPresent(new SeatInventory.Key(trainNo, departureDate), (key, map) -> {
+            map.release(coachNo, seatNo);
+            return map;
+        });
+    }
+
+    // Builds the maps of every departure the snapshot holds assigned seats for
+    void restore(StateSnapshot snapshot) {
+        maps.clear();
+        for (int i = 0; i < snapshot.reservationCount(); i++) {
+            StateSnapshot.ActiveReservation reservation = snapshot.reservation(i);
+            if (reservation.coachNo() > 0) {
+                occupy(reservation.trainNo(), reservation.departureDate(), reservation.coachNo(),
+                    reservation.seatNo());
+            }
+        }
+    }
+
+    // Only for replay: a departure missing here has no seats taken before the replayed ones
+    void occupy(int trainNo, LocalDate departureDate, int coachNo, int seatNo) {
+        maps.computeIfAbsent(new SeatInventory.Key(trainNo, departureDate),
+            key -> new SeatMap(seatInventory.capacity(trainNo))).occupy(coachNo, seatNo);
+    }
+
+    // For a deleted train; a capacity change needs nothing here, get() resizes the maps on next use
+    void removeTrain(int trainNo) {
+        maps.keySet().removeIf(key -> key.trainNo() == trainNo);
+    }
+
+    private SeatMap load(int trainNo, LocalDate departureDate) throws SQLException {
+        SeatMap map = new SeatMap(seatInventory.capacity(trainNo));
+        try (Connection conn = shards.forTrain(trainNo).getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(LOAD_QUERY)) {
+
+            pstmt.setInt(1, trainNo);
+            pstmt.setDate(2, java.sql.Date.valueOf(departureDate));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    map.occupy(rs.getInt("coach_no"), rs.getInt("seat_no"));
+                }
+            }
+        }
+        return map;
+    }
+}
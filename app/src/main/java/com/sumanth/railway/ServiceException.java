@@ -0,0 +1,21 @@
+package com.sumanth.railway;
+
+/**
+ * A request the service layer refused, with a message fit to show the user.
+ */
+class ServiceException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    enum Kind { INVALID, NOT_FOUND, CONFLICT, UNAUTHORIZED, THROTTLED, UNAVAILABLE }
+
+    private final Kind kind;
+
+    ServiceException(Kind kind, String message) {
+        super(message);
+        this.kind = kind;
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+}
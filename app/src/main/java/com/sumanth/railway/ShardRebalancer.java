@@ -0,0 +1,198 @@
+package com.sumanth.railway;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves every train that is not on the shard the ring now assigns it to, after shards have been
+ * added or removed from the configuration. A train's rows are copied to its new shard in one
+ * transaction and then deleted from the old one in another, so a run that stops part way can
+ * simply be started again. Run it with the application stopped; bookings made during a move
+ * could be left behind on the old shard.
+ */
+class ShardRebalancer {
+    private static final Logger logger = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    record Move(int trainNo, String from, String to, int reservations) {}
+
+    record Report(List<Move> moves, boolean dryRun, long elapsedMillis) {}
+
+    // One train's rows in a table; the condition takes the train number as its only parameter
+    private record Rows(String table, String condition) {}
+
+    private static final String BY_TRAIN = "train_no = ?";
+
+    // Parents before children, for the foreign keys on the new shard
+    private static final List<Rows> COPY_ORDER = List.of(
+        new Rows("train_details", BY_TRAIN),
+        new Rows("reservations", BY_TRAIN),
+        new Rows("pnr", BY_TRAIN),
+        new Rows("pnr_passengers", "pnr_no IN (SELECT pnr_no FROM pnr WHERE train_no = ?)"),
+        new Rows("seat_assignments", BY_TRAIN),
+        new Rows("waitlist", BY_TRAIN),
+        // Events not yet published go with their train, ids and order kept
+        new Rows("booking_outbox", BY_TRAIN));
+
+    private static final List<Rows> DELETE_ORDER = List.of(
+        new Rows("booking_outbox", BY_TRAIN),
+        new Rows("waitlist", BY_TRAIN),
+        new Rows("seat_assignments", BY_TRAIN),
+        new Rows("pnr_passengers", "pnr_no IN (SELECT pnr_no FROM pnr WHERE train_no = ?)"),
+        new Rows("pnr", BY_TRAIN),
+        new Rows("reservations", BY_TRAIN),
+        // The journal only serves snapshots, which are not used once sharded
+        new Rows("change_journal", BY_TRAIN),
+        new Rows("train_details", BY_TRAIN));
+
+    private final ShardRouter shards;
+
+    ShardRebalancer(ShardRouter shards) {
+        this.shards = shards;
+    }
+
+    Report run(boolean dryRun) throws SQLException {
+        long started = System.nanoTime();
+        List<Move> moves = new ArrayList<>();
+        for (ShardRouter.Shard from : shards.shards()) {
+            for (int trainNo : trainNumbers(from)) {
+                ShardRouter.Shard to = shards.shardFor(trainNo);
+                if (to == from) continue;
+                int reservations = dryRun ? countReservations(from, trainNo) : move(trainNo, from, to);
+                moves.add(new Move(trainNo, from.name(), to.name(), reservations));
+            }
+        }
+        return new Report(moves, dryRun, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private int move(int trainNo, ShardRouter.Shard from, ShardRouter.Shard to) throws SQLException {
+        int reservations;
+        try (Connection source = from.primary().getConnection();
+             Connection target = to.primary().getConnection()) {
+            reservations = countReservations(source, trainNo);
+            // A run that stopped after the copy committed finds the train already there
+            if (!hasTrain(target, trainNo)) {
+                ShardRouter.copyUsers(shards.home().primary(), target, userIds(source, trainNo));
+                target.setAutoCommit(false);
+                try {
+                    for (Rows rows : COPY_ORDER) {
+                        copyRows(source, target, rows, trainNo);
+                    }
+                    target.commit();
+                } catch (SQLException e) {
+                    target.rollback();
+                    throw e;
+                } finally {
+                    target.setAutoCommit(true);
+                }
+            }
+
+            source.setAutoCommit(false);
+            try {
+                for (Rows rows : DELETE_ORDER) {
+                    try (PreparedStatement pstmt = source.prepareStatement(
+                            "DELETE FROM " + rows.table() + " WHERE " + rows.condition())) {
+                        pstmt.setInt(1, trainNo);
+                        pstmt.executeUpdate();
+                    }
+                }
+                source.commit();
+            } catch (SQLException e) {
+                source.rollback();
+                throw e;
+            } finally {
+                source.setAutoCommit(true);
+            }
+        }
+        logger.info("Moved train {} with {} reservations from {} to {}", trainNo, reservations, from.name(), to.name());
+        return reservations;
+    }
+
+    private static List<Integer> trainNumbers(ShardRouter.Shard shard) throws SQLException {
+        try (Connection conn = shard.primary().getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT train_no FROM train_details ORDER BY train_no")) {
+            List<Integer> trainNumbers = new ArrayList<>();
+            while (rs.next()) {
+                trainNumbers.add(rs.getInt(1));
+            }
+            return trainNumbers;
+        }
+    }
+
+    private static int countReservations(ShardRouter.Shard shard, int trainNo) throws SQLException {
+        try (Connection conn = shard.primary().getConnection()) {
+            return countReservations(conn, trainNo);
+        }
+    }
+
+    private static int countReservations(Connection conn, int trainNo) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM reservations WHERE train_no = ?")) {
+            pstmt.setInt(1, trainNo);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private static boolean hasTrain(Connection conn, int trainNo) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT 1 FROM train_details WHERE train_no = ?")) {
+            pstmt.setInt(1, trainNo);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    // Everyone with a booking or a waitlist entry on the train, for the new shard's foreign keys
+    private static List<String> userIds(Connection conn, int trainNo) throws SQLException {
+        Set<String> userIds = new LinkedHashSet<>();
+        for (String table : List.of("reservations", "pnr", "waitlist")) {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT DISTINCT user_id FROM " + table + " WHERE train_no = ?")) {
+                pstmt.setInt(1, trainNo);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        userIds.add(rs.getString(1));
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(userIds);
+    }
+
+    // Copies rows column for column, ids included; they are unique across shards already
+    private static void copyRows(Connection source, Connection target, Rows rows, int trainNo)
+            throws SQLException {
+        try (PreparedStatement query = source.prepareStatement(
+                "SELECT * FROM " + rows.table() + " WHERE " + rows.condition())) {
+            query.setInt(1, trainNo);
+            try (ResultSet rs = query.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                int columns = meta.getColumnCount();
+                StringBuilder insert = new StringBuilder("INSERT INTO ").append(rows.table()).append(" (");
+                for (int i = 1; i <= columns; i++) {
+                    insert.append(i > 1 ? ", " : "").append(meta.getColumnName(i));
+                }
+                insert.append(") VALUES (").append("?, ".repeat(columns - 1)).append("?)");
+
+                try (PreparedStatement pstmt = target.prepareStatement(insert.toString())) {
+                    int batched = 0;
+                    while (rs.next()) {
+                        for (int i = 1; i <= columns; i++) {
+                            pstmt.setObject(i, rs.getObject(i));
+                        }
+                        pstmt.addBatch();
+                        if (++batched % 1000 == 0) pstmt.executeBatch();
+                    }
+                    pstmt.executeBatch();
+                }
+            }
+        }
+    }
+}
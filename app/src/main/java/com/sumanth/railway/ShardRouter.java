@@ -0,0 +1,226 @@
+package com.sumanth.railway;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Places each train, with its departures, reservations, PNRs, seat assignments and waitlist, on
+ * one shard chosen by a consistent-hash ring over the shard names. Adding a shard moves only the
+ * trains the new shard takes over; {@link ShardRebalancer} moves their rows. Users live on the
+ * home shard (the primary), and every other shard keeps a copy of the user rows its bookings
+ * refer to. Queries that are not about one train run on every shard in parallel.
+ */
+final class ShardRouter implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ShardRouter.class);
+    static final int MAX_SHARDS = 64;
+    // Points per shard on the ring; enough to spread trains evenly over a handful of shards
+    static final int VIRTUAL_NODES = 128;
+    // Mirrored users remembered per shard before the set is simply started over
+    private static final int MAX_MIRRORED_USERS = 1_000_000;
+
+    record Shard(String name, int id, DataSources dataSources) {
+        DataSource primary() {
+            return dataSources.primary();
+        }
+    }
+
+    @FunctionalInterface
+    interface ShardWork<T> {
+        T run(Shard shard) throws SQLException;
+    }
+
+    private final List<Shard> shards;
+    private final NavigableMap<Long, Shard> ring = new TreeMap<>();
+    private final Map<Integer, Set<String>> mirroredUsers = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    // The first shard is home: it holds the users table and everything that is not per train
+    ShardRouter(List<Shard> shards) {
+        if (shards.isEmpty()) throw new IllegalArgumentException("At least one shard is needed");
+        this.shards = List.copyOf(shards);
+        for (Shard shard : this.shards) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(shard.name() + "#" + i), shard);
+            }
+        }
+        if (this.shards.size() == 1) {
+            this.executor = null;
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "shard-query-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    static ShardRouter single(DataSources dataSources) {
+        return new ShardRouter(List.of(new Shard("primary", 0, dataSources)));
+    }
+
+    static ShardRouter open(DataSourceConfig config, MetricsTrackerFactory metrics) {
+        List<Shard> shards = new ArrayList<>();
+        try {
+            shards.add(new Shard(config.primary().name(), config.primary().shardId(),
+                DataSources.open(config, metrics)));
+            for (DataSourceConfig.Pool pool : config.shards()) {
+                shards.add(new Shard(pool.name(), pool.shardId(), DataSources.open(config, pool, List.of(), metrics)));
+            }
+        } catch (RuntimeException e) {
+            shards.forEach(shard -> shard.dataSources().close());
+            throw e;
+        }
+        if (shards.size() > 1) {
+            logger.info("Sharding trains over {} shards: {}", shards.size(),
+                shards.stream().map(Shard::name).toList());
+        }
+        return new ShardRouter(shards);
+    }
+
+    // Run on every connection of a sharded MySQL primary, so generated ids never collide across shards
+    static String idSequenceSql(int shardId) {
+        return "SET SESSION auto_increment_increment = " + MAX_SHARDS + ", auto_increment_offset = " + shardId;
+    }
+
+    boolean sharded() {
+        return shards.size() > 1;
+    }
+
+    Shard home() {
+        return shards.get(0);
+    }
+
+    List<Shard> shards() {
+        return shards;
+    }
+
+    List<DataSource> primaries() {
+        return shards.stream().map(Shard::primary).toList();
+    }
+
+    Shard shardFor(int trainNo) {
+        if (shards.size() == 1) return shards.get(0);
+        Map.Entry<Long, Shard> entry = ring.ceilingEntry(hash("train:" + trainNo));
+        return (entry != null ? entry : ring.firstEntry()).getValue();
+    }
+
+    // Primary of the train's shard: its writes, and reads that must see them
+    DataSource forTrain(int trainNo) {
+        return shardFor(trainNo).primary();
+    }
+
+    /**
+     * Runs the work on every shard, in parallel when there are several, and returns the results
+     * in shard order. If any shard fails, the first failure is thrown once all have finished.
+     */
+    <T> List<T> scatter(ShardWork<T> work) throws SQLException {
+        if (executor == null) {
+            return List.of(work.run(shards.get(0)));
+        }
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (Shard shard : shards) {
+            futures.add(executor.submit(() -> work.run(shard)));
+        }
+        List<T> results = new ArrayList<>(shards.size());
+        SQLException failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for shards", e);
+            } catch (ExecutionException e) {
+                SQLException cause = e.getCause() instanceof SQLException sql ? sql
+                    : new SQLException("Shard query failed", e.getCause());
+                if (failure == null) failure = cause; else failure.addSuppressed(cause);
+            }
+        }
+        if (failure != null) throw failure;
+        return results;
+    }
+
+    // Rows referring to a user need the user on the same shard for their foreign keys
+    void ensureUser(Shard shard, String userId) throws SQLException {
+        if (shard == home()) return;
+        Set<String> mirrored = mirroredUsers.computeIfAbsent(shard.id(), id -> ConcurrentHashMap.newKeySet());
+        if (mirrored.contains(userId)) return;
+        try (Connection conn = shard.primary().getConnection()) {
+            copyUsers(home().primary(), conn, List.of(userId));
+        }
+        if (mirrored.size() >= MAX_MIRRORED_USERS) mirrored.clear();
+        mirrored.add(userId);
+    }
+
+    // Copies the users' rows from home; users the target already has are left alone
+    static void copyUsers(DataSource home, Connection target, List<String> userIds) throws SQLException {
+        try (Connection source = home.getConnection();
+             PreparedStatement select = source.prepareStatement(
+                 "SELECT user_id, username, password, full_name, phone, aadhaar, address, pincode, age " +
+                 "FROM users WHERE user_id = ?");
+             PreparedStatement insert = target.prepareStatement(
+                 "INSERT IGNORE INTO users (user_id, username, password, full_name, phone, aadhaar, address, " +
+                 "pincode, age) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+
+            for (String userId : userIds) {
+                select.setString(1, userId);
+                try (ResultSet rs = select.executeQuery()) {
+                    if (!rs.next()) throw new SQLException("User " + userId + " not found on the home shard");
+                    for (int i = 1; i <= 9; i++) {
+                        insert.setObject(i, rs.getObject(i));
+                    }
+                }
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    List<DataSources.Status> status() {
+        List<DataSources.Status> status = new ArrayList<>();
+        for (Shard shard : shards) {
+            status.addAll(shard.dataSources().status());
+        }
+        return status;
+    }
+
+    // First 8 bytes of MD5: spreads sequential train numbers evenly, which hashCode() would not
+    static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xff);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) executor.shutdownNow();
+        for (Shard shard : shards) {
+            shard.dataSources().close();
+        }
+    }
+}
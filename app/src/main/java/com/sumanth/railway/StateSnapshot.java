@@ -0,0 +1,493 @@
+package com.sumanth.railway;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binary snapshot of train_details, per-departure booked counts and the reservations for
+ * departures from the snapshot day on, read at startup through a memory-mapped file. Departures
+ * before the snapshot day are kept only as occupancy totals, which is all analytics needs of them.
+ *
+ * <p>Layout, big-endian: a {@value #HEADER_BYTES}-byte header (magic, version, watermarks, section
+ * counts and a CRC32 of the body), then a table of interned strings (station and train names,
+ * specifications, berth types, user ids) as length-prefixed UTF-8, then fixed-width train,
+ * departure and reservation records that refer to strings by index, then the departed totals
+ * and the ids of departed reservations and cancellations the snapshot saw within
+ * {@link #REPLAY_OVERLAP} of its watermarks.
+ *
+ * <p>Cancellations and train edits write a change_journal row in the same transaction. After
+ * loading a snapshot, only journal rows and reservations past its watermarks are read back.
+ */
+final class StateSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(StateSnapshot.class);
+    private static final int MAGIC = 0x52534E50;  // "RSNP"
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 80;
+    // train_no, name, starting point, destination, specifications, seats
+    private static final int TRAIN_BYTES = 24;
+    // train_no, departure day, booked
+    private static final int DEPARTURE_BYTES = 12;
+    // id, train_no, departure day, user, berth type, coach, seat, meals, 3 spare, booking time
+    private static final int RESERVATION_BYTES = 36;
+    // train_no, departure day, a count per OccupancyAnalytics.Measure
+    private static final int DEPARTED_BYTES = 8 + 4 * OccupancyAnalytics.MEASURES;
+    private static final int NO_STRING = -1;
+    private static final byte[] SPARE = new byte[3];
+    // Ids are handed out before commit, so rows can become visible out of order. Replay re-reads
+    // this many ids below each watermark and skips what the snapshot already holds.
+    static final int REPLAY_OVERLAP = 1_000;
+    static final String REPLAY_QUERY =
+        "SELECT r.reservation_id, r.train_no, r.departure_date, r.berth_type, r.meals_required, " +
+        "s.coach_no, s.seat_no FROM reservations r " +
+        "LEFT JOIN seat_assignments s ON s.reservation_id = r.reservation_id " +
+        "WHERE r.reservation_id > ?";
+
+    static final char TRAIN_CHANGED = 'T';
+    static final char RESERVATION_CANCELLED = 'C';
+
+    record Departure(int trainNo, LocalDate departureDate, int booked) {}
+
+    record ActiveReservation(int reservationId, String userId, int trainNo, LocalDate departureDate,
+                             String berthType, boolean meals, int coachNo, int seatNo, Timestamp bookingDate) {}
+
+    record Change(long changeId, char type, int trainNo, int reservationId, LocalDate departureDate,
+                  int coachNo, int seatNo, String berthType, boolean meals) {}
+
+    // Occupancy of one departed trip, counts in OccupancyAnalytics.Measure order
+    record Departed(int trainNo, LocalDate departureDate, long[] counts) {}
+
+    private record TrainRow(int trainNo, int name, int startingPoint, int destination, int specifications,
+                            int seats) {}
+
+    private record ReservationRow(int reservationId, int trainNo, int departureDay, int userId, int berthType,
+                                  int coachNo, int seatNo, boolean meals, long bookedAt) {}
+
+    private final MappedByteBuffer buffer;
+    private final long createdAt;
+    private final LocalDate snapshotDay;
+    private final int reservationWatermark;
+    private final long journalWatermark;
+    private final String[] strings;
+    private final int trainOffset;
+    private final int trainCount;
+    private final int departureOffset;
+    private final int departureCount;
+    private final int reservationOffset;
+    private final int reservationCount;
+    private final int departedOffset;
+    private final int departedCount;
+    private final int seenReservationOffset;
+    private final int seenReservationCount;
+    private final int seenCancellationOffset;
+    private final int seenCancellationCount;
+
+    private StateSnapshot(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a snapshot file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version " + buffer.getInt(4));
+        }
+        this.createdAt = buffer.getLong(8);
+        this.snapshotDay = LocalDate.ofEpochDay(buffer.getInt(16));
+        this.reservationWatermark = buffer.getInt(20);
+        this.journalWatermark = buffer.getLong(24);
+        int stringCount = buffer.getInt(32);
+        this.trainCount = buffer.getInt(36);
+        this.departureCount = buffer.getInt(40);
+        this.reservationCount = buffer.getInt(44);
+        long expectedCrc = buffer.getLong(48);
+        this.departedCount = buffer.getInt(56);
+        this.seenReservationCount = buffer.getInt(60);
+        this.seenCancellationCount = buffer.getInt(64);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(HEADER_BYTES));
+        if (crc.getValue() != expectedCrc) throw new IOException("Snapshot checksum mismatch");
+
+        ByteBuffer in = buffer.duplicate().position(HEADER_BYTES);
+        this.strings = new String[stringCount];
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < stringCount; i++) {
+            int length = in.getShort() & 0xFFFF;
+            if (length > bytes.length) bytes = new byte[length];
+            in.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        this.trainOffset = in.position();
+        this.departureOffset = trainOffset + trainCount * TRAIN_BYTES;
+        this.reservationOffset = departureOffset + departureCount * DEPARTURE_BYTES;
+        this.departedOffset = reservationOffset + reservationCount * RESERVATION_BYTES;
+        this.seenReservationOffset = departedOffset + departedCount * DEPARTED_BYTES;
+        this.seenCancellationOffset = seenReservationOffset + seenReservationCount * Integer.BYTES;
+        if ((long) seenCancellationOffset + (long) seenCancellationCount * Long.BYTES != buffer.capacity()) {
+            throw new IOException("Snapshot size does not match its header");
+        }
+    }
+
+    // Maps the file; the mapping stays valid after the channel is closed
+    static StateSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new StateSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    long createdAt() {
+        return createdAt;
+    }
+
+    LocalDate snapshotDay() {
+        return snapshotDay;
+    }
+
+    int reservationWatermark() {
+        return reservationWatermark;
+    }
+
+    long journalWatermark() {
+        return journalWatermark;
+    }
+
+    List<RailwayService.Train> trains() {
+        List<RailwayService.Train> trains = new ArrayList<>(trainCount);
+        for (int i = 0; i < trainCount; i++) {
+            int at = trainOffset + i * TRAIN_BYTES;
+            trains.add(new RailwayService.Train(string(buffer.getInt(at + 4)), buffer.getInt(at),
+                string(buffer.getInt(at + 8)), string(buffer.getInt(at + 12)), string(buffer.getInt(at + 16)),
+                buffer.getInt(at + 20)));
+        }
+        return trains;
+    }
+
+    int departureCount() {
+        return departureCount;
+    }
+
+    Departure departure(int index) {
+        int at = departureOffset + index * DEPARTURE_BYTES;
+        return new Departure(buffer.getInt(at), LocalDate.ofEpochDay(buffer.getInt(at + 4)), buffer.getInt(at + 8));
+    }
+
+    int reservationCount() {
+        return reservationCount;
+    }
+
+    ActiveReservation reservation(int index) {
+        int at = reservationOffset + index * RESERVATION_BYTES;
+        return new ActiveReservation(buffer.getInt(at), string(buffer.getInt(at + 12)), buffer.getInt(at + 4),
+            LocalDate.ofEpochDay(buffer.getInt(at + 8)), string(buffer.getInt(at + 16)), buffer.get(at + 24) != 0,
+            buffer.getShort(at + 20), buffer.getShort(at + 22), new Timestamp(buffer.getLong(at + 28)));
+    }
+
+    // Ids of every reservation in the snapshot, for deduplicating replayed rows
+    BitSet reservationIds() {
+        BitSet ids = new BitSet();
+        for (int i = 0; i < reservationCount; i++) {
+            ids.set(buffer.getInt(reservationOffset + i * RESERVATION_BYTES));
+        }
+        return ids;
+    }
+
+    int departedCount() {
+        return departedCount;
+    }
+
+    Departed departed(int index) {
+        int at = departedOffset + index * DEPARTED_BYTES;
+        long[] counts = new long[OccupancyAnalytics.MEASURES];
+        for (int m = 0; m < counts.length; m++) {
+            counts[m] = buffer.getInt(at + 8 + m * 4);
+        }
+        return new Departed(buffer.getInt(at), LocalDate.ofEpochDay(buffer.getInt(at + 4)), counts);
+    }
+
+    // Whether the departed totals include this reservation; ids well below the watermark had committed
+    boolean countsDeparted(int reservationId) {
+        if (reservationId <= reservationWatermark - REPLAY_OVERLAP) return true;
+        int lo = 0;
+        int hi = seenReservationCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int id = buffer.getInt(seenReservationOffset + mid * Integer.BYTES);
+            if (id == reservationId) return true;
+            if (id < reservationId) lo = mid + 1; else hi = mid - 1;
+        }
+        return false;
+    }
+
+    // Whether the departed totals already leave out the reservation this journal row cancelled
+    boolean reflectsCancellation(long changeId) {
+        if (changeId <= journalWatermark - REPLAY_OVERLAP) return true;
+        int lo = 0;
+        int hi = seenCancellationCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long id = buffer.getLong(seenCancellationOffset + mid * Long.BYTES);
+            if (id == changeId) return true;
+            if (id < changeId) lo = mid + 1; else hi = mid - 1;
+        }
+        return false;
+    }
+
+    private String string(int index) {
+        return index == NO_STRING ? null : strings[index];
+    }
+
+    // Reading back
+
+    List<Change> changesSince(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT * FROM change_journal WHERE change_id > ? ORDER BY change_id")) {
+            pstmt.setLong(1, journalWatermark - REPLAY_OVERLAP);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                List<Change> changes = new ArrayList<>();
+                while (rs.next()) {
+                    java.sql.Date departure = rs.getDate("departure_date");
+                    changes.add(new Change(rs.getLong("change_id"), rs.getString("change_type").charAt(0),
+                        rs.getInt("train_no"), rs.getInt("reservation_id"),
+                        departure == null ? null : departure.toLocalDate(), rs.getInt("coach_no"),
+                        rs.getInt("seat_no"), rs.getString("berth_type"), rs.getBoolean("meals_required")));
+                }
+                return changes;
+            }
+        }
+    }
+
+    // Reservations the snapshot may not hold yet, departed or not
+    PreparedStatement reservationsSince(Connection conn) throws SQLException {
+        PreparedStatement pstmt = conn.prepareStatement(REPLAY_QUERY);
+        pstmt.setInt(1, reservationWatermark - REPLAY_OVERLAP);
+        return pstmt;
+    }
+
+    // Journal
+
+    static void recordTrainChange(Connection conn, int trainNo) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO change_journal (change_type, train_no) VALUES (?, ?)")) {
+            pstmt.setString(1, String.valueOf(TRAIN_CHANGED));
+            pstmt.setInt(2, trainNo);
+            pstmt.executeUpdate();
+        }
+    }
+
+    static void recordCancellation(Connection conn, int reservationId, int trainNo, LocalDate departureDate,
+                                   int coachNo, int seatNo, String berthType, boolean meals) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO change_journal (change_type, train_no, reservation_id, departure_date, coach_no, seat_no, " +
+                "berth_type, meals_required) VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            pstmt.setString(1, String.valueOf(RESERVATION_CANCELLED));
+            pstmt.setInt(2, trainNo);
+            pstmt.setInt(3, reservationId);
+            pstmt.setDate(4, java.sql.Date.valueOf(departureDate));
+            pstmt.setInt(5, coachNo);
+            pstmt.setInt(6, seatNo);
+            pstmt.setString(7, berthType);
+            pstmt.setBoolean(8, meals);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // Writing
+
+    /**
+     * Writes a snapshot of the database as of one consistent read to a temporary file, then moves
+     * it over {@code file}. Journal rows the new snapshot no longer needs are deleted afterwards.
+     */
+    static void write(DataSource dataSource, Path file) throws SQLException, IOException {
+        long started = System.nanoTime();
+        LocalDate today = LocalDate.now();
+        Map<String, Integer> interned = new LinkedHashMap<>();
+        List<TrainRow> trains = new ArrayList<>();
+        Map<SeatInventory.Key, Integer> booked = new LinkedHashMap<>();
+        List<ReservationRow> reservations = new ArrayList<>();
+        Map<Long, long[]> departed = new LinkedHashMap<>();
+        List<Integer> seenReservations = new ArrayList<>();
+        List<Long> seenCancellations = new ArrayList<>();
+        int reservationWatermark;
+        long journalWatermark;
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            try (Statement stmt = conn.createStatement()) {
+                // Watermarks come from the same read view as the rows they describe
+                try (ResultSet rs = stmt.executeQuery(
+                        "SELECT (SELECT COALESCE(MAX(reservation_id), 0) FROM reservations), " +
+                        "(SELECT COALESCE(MAX(change_id), 0) FROM change_journal)")) {
+                    rs.next();
+                    reservationWatermark = rs.getInt(1);
+                    journalWatermark = rs.getLong(2);
+                }
+
+                try (ResultSet rs = stmt.executeQuery("SELECT * FROM train_details ORDER BY train_no")) {
+                    while (rs.next()) {
+                        RailwayService.Train train = RailwayService.readTrain(rs);
+                        trains.add(new TrainRow(train.trainNo(), intern(interned, train.trainName()),
+                            intern(interned, train.startingPoint()), intern(interned, train.destination()),
+                            intern(interned, train.specifications()), train.seatsPerDeparture()));
+                    }
+                }
+
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT r.reservation_id, r.user_id, r.train_no, r.departure_date, r.berth_type, " +
+                        "r.meals_required, r.booking_date, s.coach_no, s.seat_no FROM reservations r " +
+                        "LEFT JOIN seat_assignments s ON s.reservation_id = r.reservation_id " +
+                        "WHERE r.departure_date >= ? ORDER BY r.train_no, r.departure_date, r.reservation_id")) {
+                    pstmt.setDate(1, java.sql.Date.valueOf(today));
+                    pstmt.setFetchSize(PagedListings.DEFAULT_FETCH_SIZE);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            int trainNo = rs.getInt("train_no");
+                            LocalDate departureDate = rs.getDate("departure_date").toLocalDate();
+                            Timestamp bookingDate = rs.getTimestamp("booking_date");
+                            booked.merge(new SeatInventory.Key(trainNo, departureDate), 1, Integer::sum);
+                            reservations.add(new ReservationRow(rs.getInt("reservation_id"), trainNo,
+                                (int) departureDate.toEpochDay(), intern(interned, rs.getString("user_id")),
+                                intern(interned, rs.getString("berth_type")), rs.getInt("coach_no"),
+                                rs.getInt("seat_no"), rs.getBoolean("meals_required"),
+                                bookingDate == null ? 0L : bookingDate.getTime()));
+                        }
+                    }
+                }
+
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT train_no, departure_date, berth_type, meals_required, COUNT(*) FROM reservations " +
+                        "WHERE departure_date < ? GROUP BY train_no, departure_date, berth_type, meals_required " +
+                        "ORDER BY train_no, departure_date")) {
+                    pstmt.setDate(1, java.sql.Date.valueOf(today));
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            long key = OccupancyAnalytics.key(rs.getInt(1), (int) rs.getDate(2).toLocalDate().toEpochDay());
+                            OccupancyAnalytics.count(departed.computeIfAbsent(key, k -> new long[OccupancyAnalytics.MEASURES]),
+                                rs.getString(3), rs.getBoolean(4), rs.getLong(5));
+                        }
+                    }
+                }
+
+                // Replay re-reads rows this close to the watermarks; these say which the totals hold already
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT reservation_id FROM reservations WHERE reservation_id > ? AND departure_date < ? " +
+                        "ORDER BY reservation_id")) {
+                    pstmt.setInt(1, reservationWatermark - REPLAY_OVERLAP);
+                    pstmt.setDate(2, java.sql.Date.valueOf(today));
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) seenReservations.add(rs.getInt(1));
+                    }
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT change_id FROM change_journal WHERE change_id > ? AND change_type = ? " +
+                        "AND departure_date < ? ORDER BY change_id")) {
+                    pstmt.setLong(1, journalWatermark - REPLAY_OVERLAP);
+                    pstmt.setString(2, String.valueOf(RESERVATION_CANCELLED));
+                    pstmt.setDate(3, java.sql.Date.valueOf(today));
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) seenCancellations.add(rs.getLong(1));
+                    }
+                }
+                conn.commit();
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_BYTES);
+            CheckedOutputStream checked = new CheckedOutputStream(Channels.newOutputStream(channel), new CRC32());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked, 1 << 16));
+
+            for (String value : interned.keySet()) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+            for (TrainRow train : trains) {
+                out.writeInt(train.trainNo());
+                out.writeInt(train.name());
+                out.writeInt(train.startingPoint());
+                out.writeInt(train.destination());
+                out.writeInt(train.specifications());
+                out.writeInt(train.seats());
+            }
+            for (Map.Entry<SeatInventory.Key, Integer> departure : booked.entrySet()) {
+                out.writeInt(departure.getKey().trainNo());
+                out.writeInt((int) departure.getKey().departureDate().toEpochDay());
+                out.writeInt(departure.getValue());
+            }
+            for (ReservationRow row : reservations) {
+                out.writeInt(row.reservationId());
+                out.writeInt(row.trainNo());
+                out.writeInt(row.departureDay());
+                out.writeInt(row.userId());
+                out.writeInt(row.berthType());
+                out.writeShort(row.coachNo());
+                out.writeShort(row.seatNo());
+                out.writeByte(row.meals() ? 1 : 0);
+                out.write(SPARE);
+                out.writeLong(row.bookedAt());
+            }
+            for (Map.Entry<Long, long[]> entry : departed.entrySet()) {
+                out.writeInt((int) (entry.getKey() >> 32));
+                out.writeInt((int) (long) entry.getKey());
+                for (long count : entry.getValue()) {
+                    out.writeInt((int) count);
+                }
+            }
+            for (int reservationId : seenReservations) {
+                out.writeInt(reservationId);
+            }
+            for (long changeId : seenCancellations) {
+                out.writeLong(changeId);
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis())
+                .putInt((int) today.toEpochDay()).putInt(reservationWatermark).putLong(journalWatermark)
+                .putInt(interned.size()).putInt(trains.size()).putInt(booked.size()).putInt(reservations.size())
+                .putLong(checked.getChecksum().getValue())
+                .putInt(departed.size()).putInt(seenReservations.size()).putInt(seenCancellations.size());
+            header.clear();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("DELETE FROM change_journal WHERE change_id <= ?")) {
+            pstmt.setLong(1, journalWatermark - REPLAY_OVERLAP);
+            pstmt.executeUpdate();
+        }
+        logger.info("Snapshot written to {}: {} trains, {} departures, {} reservations, {} departed trips, " +
+            "{} strings in {} ms", file, trains.size(), booked.size(), reservations.size(), departed.size(), interned.size(),
+            (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private static int intern(Map<String, Integer> interned, String value) {
+        if (value == null) return NO_STRING;
+        return interned.computeIfAbsent(value, key -> interned.size());
+    }
+}
@@ -0,0 +1,373 @@
+package com.sumanth.railway;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Typeahead over the stations trains start from or run to. Names are matched on a folded form:
+ * case, accents and punctuation dropped and spaces collapsed, so "sanchi" finds "Sāñchī" and
+ * "new  delhi" finds "New Delhi". Any word of a name can start the match, so "delhi" finds it
+ * too. Suggestions are ranked by the number of trains serving the station. Fuzzy matching keeps
+ * the first letter and allows one edit in queries of three or more characters, two in queries of
+ * six or more; each wider search only runs when the narrower ones left room in the result.
+ *
+ * <p>The stations live in a trie whose nodes are flat sorted arrays, and every node keeps the
+ * best {@value #MAX_SUGGESTIONS} stations below it. A prefix lookup is therefore one walk down
+ * the query with no scan of the matches. Train changes only adjust per-station counts; the trie is
+ * rebuilt by the first lookup after a change, so a bulk load pays for one build.
+ */
+final class StationIndex {
+    private static final Logger logger = LoggerFactory.getLogger(StationIndex.class);
+    static final int MAX_SUGGESTIONS = 10;
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NOT_NAME = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    record Station(String name, int trains) {}
+
+    // One station per RouteGraph key; the name is the spelling of the first train to mention it
+    private static final class Entry {
+        final String name;
+        int trains;
+
+        Entry(String name) {
+            this.name = name;
+        }
+    }
+
+    private final Map<String, Entry> stations = new HashMap<>();
+    // train_no -> station keys it serves, so an update or removal can take the old ones back
+    private final Map<Integer, String[]> served = new HashMap<>();
+    private volatile Trie trie = Trie.build(List.of());
+    private volatile boolean dirty;
+
+    synchronized void rebuild(Collection<RailwayService.Train> trains) {
+        stations.clear();
+        served.clear();
+        for (RailwayService.Train train : trains) {
+            add(train);
+        }
+        dirty = true;
+        logger.info("Station index built: {} stations from {} trains", stations.size(), served.size());
+    }
+
+    // Also used for updates: the train's previous stations are released first
+    synchronized void addTrain(RailwayService.Train train) {
+        remove(train.trainNo());
+        add(train);
+        dirty = true;
+    }
+
+    synchronized void removeTrain(int trainNo) {
+        remove(trainNo);
+        dirty = true;
+    }
+
+    private void add(RailwayService.Train train) {
+        String from = RouteGraph.key(train.startingPoint());
+        String to = RouteGraph.key(train.destination());
+        String[] keys = from.equals(to) ? new String[] {from} : new String[] {from, to};
+        String[] names = {train.startingPoint().trim(), train.destination().trim()};
+        for (int i = 0; i < keys.length; i++) {
+            int index = i;
+            stations.computeIfAbsent(keys[i], key -> new Entry(names[index])).trains++;
+        }
+        served.put(train.trainNo(), keys);
+    }
+
+    private void remove(int trainNo) {
+        String[] keys = served.remove(trainNo);
+        if (keys == null) return;
+        for (String key : keys) {
+            Entry entry = stations.get(key);
+            if (--entry.trains == 0) stations.remove(key);
+        }
+    }
+
+    /**
+     * Stations whose name starts with the query, best served first; when fewer than the limit
+     * match exactly, the rest are filled from stations within the allowed edit distance of it.
+     */
+    List<Station> suggest(String query, int limit) {
+        String folded = fold(query);
+        if (folded.isEmpty()) return List.of();
+        return current().suggest(folded, Math.min(limit, MAX_SUGGESTIONS), maxDistance(folded.length()));
+    }
+
+    private Trie current() {
+        if (!dirty) return trie;
+        synchronized (this) {
+            if (dirty) {
+                List<Station> all = new ArrayList<>(stations.size());
+                for (Entry entry : stations.values()) {
+                    all.add(new Station(entry.name, entry.trains));
+                }
+                trie = Trie.build(all);
+                dirty = false;
+            }
+            return trie;
+        }
+    }
+
+    static int maxDistance(int queryLength) {
+        return queryLength >= 6 ? 2 : queryLength >= 3 ? 1 : 0;
+    }
+
+    static String fold(String name) {
+        String stripped = COMBINING_MARKS.matcher(Normalizer.normalize(name, Normalizer.Form.NFD)).replaceAll("");
+        return NOT_NAME.matcher(stripped.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    /*
+     * Immutable once built. Nodes are numbered in depth-first order; node n's children are
+     * labels[childStart[n] .. childStart[n + 1]) in sorted order, pointing at nodes childNode[..].
+     * best[n] holds station indexes, which are in rank order, so the smallest index is the best.
+     */
+    private static final class Trie {
+        private final Station[] stations;
+        private final int[] childStart;
+        private final char[] labels;
+        private final int[] childNode;
+        private final int[][] best;
+
+        private Trie(Station[] stations, int[] childStart, char[] labels, int[] childNode, int[][] best) {
+            this.stations = stations;
+            this.childStart = childStart;
+            this.labels = labels;
+            this.childNode = childNode;
+            this.best = best;
+        }
+
+        static Trie build(List<Station> stations) {
+            Station[] ranked = stations.toArray(Station[]::new);
+            // Rank order: more trains first, then by name
+            Arrays.sort(ranked, Comparator.comparingInt(Station::trains).reversed().thenComparing(Station::name));
+
+            // Every word start is a key, so "delhi" finds "New Delhi" too
+            List<String> keys = new ArrayList<>();
+            List<Integer> owners = new ArrayList<>();
+            for (int s = 0; s < ranked.length; s++) {
+                String folded = fold(ranked[s].name());
+                for (int start = 0; start < folded.length(); start = folded.indexOf(' ', start) + 1) {
+                    keys.add(folded.substring(start));
+                    owners.add(s);
+                    if (folded.indexOf(' ', start) < 0) break;
+                }
+            }
+            Integer[] sorted = new Integer[keys.size()];
+            for (int k = 0; k < sorted.length; k++) {
+                sorted[k] = k;
+            }
+            Arrays.sort(sorted, Comparator.comparing(keys::get).thenComparing(owners::get));
+
+            // Sorted keys share their common prefix with the key before, so the trie is laid out
+            // depth first in one pass: only the characters past that prefix add nodes
+            int capacity = 1;
+            for (String key : keys) {
+                capacity += key.length();
+            }
+            int[] parent = new int[capacity];
+            char[] label = new char[capacity];
+            int[] children = new int[capacity];
+            List<List<Integer>> terminals = new ArrayList<>(Collections.nCopies(capacity, null));
+            int[] path = new int[keys.stream().mapToInt(String::length).max().orElse(0) + 1];
+            int nodes = 1;
+            String previous = "";
+            for (int k : sorted) {
+                String key = keys.get(k);
+                int common = 0;
+                while (common < key.length() && common < previous.length()
+                        && key.charAt(common) == previous.charAt(common)) {
+                    common++;
+                }
+                for (int depth = common; depth < key.length(); depth++) {
+                    parent[nodes] = path[depth];
+                    label[nodes] = key.charAt(depth);
+                    children[path[depth]]++;
+                    path[depth + 1] = nodes++;
+                }
+                int node = path[key.length()];
+                if (terminals.get(node) == null) terminals.set(node, new ArrayList<>());
+                terminals.get(node).add(owners.get(k));
+                previous = key;
+            }
+
+            int[] childStart = new int[nodes + 1];
+            for (int n = 0; n < nodes; n++) {
+                childStart[n + 1] = childStart[n] + children[n];
+            }
+            char[] labels = new char[nodes - 1];
+            int[] childNode = new int[nodes - 1];
+            int[] filled = Arrays.copyOf(childStart, nodes);
+            for (int n = 1; n < nodes; n++) {
+                int edge = filled[parent[n]]++;
+                labels[edge] = label[n];
+                childNode[edge] = n;
+            }
+
+            // Children are numbered after their parent, so walking backwards sees them first
+            int[][] best = new int[nodes][];
+            for (int n = nodes - 1; n >= 0; n--) {
+                List<Integer> own = terminals.get(n);
+                int[] merged = own == null ? new int[0] : own.stream().mapToInt(Integer::intValue).toArray();
+                for (int e = childStart[n]; e < childStart[n + 1]; e++) {
+                    merged = merge(merged, best[childNode[e]]);
+                }
+                best[n] = merged;
+            }
+            return new Trie(ranked, childStart, labels, childNode, best);
+        }
+
+        // Both inputs ascending; a station reached through two of its words is kept once
+        private static int[] merge(int[] a, int[] b) {
+            int[] merged = new int[Math.min(a.length + b.length, MAX_SUGGESTIONS)];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (k < merged.length && (i < a.length || j < b.length)) {
+                if (j >= b.length || i < a.length && a[i] < b[j]) {
+                    merged[k++] = a[i++];
+                } else {
+                    if (i < a.length && a[i] == b[j]) i++;
+                    merged[k++] = b[j++];
+                }
+            }
+            return k == merged.length ? merged : Arrays.copyOf(merged, k);
+        }
+
+        List<Station> suggest(String query, int limit, int maxDistance) {
+            int exact = find(query);
+            if (exact >= 0 && (best[exact].length >= limit || maxDistance == 0)) {
+                return stations(best[exact], limit);
+            }
+            if (maxDistance == 0) return List.of();
+
+            // Typos in the first letter are rare, and fixing it saves walking every branch of the root
+            int first = child(0, query.charAt(0));
+            if (first < 0) return List.of();
+            Candidates candidates = new Candidates(limit);
+            // One row per depth of the walk, reused; no path deeper than this can be within range
+            int[][] rows = new int[query.length() + maxDistance + 1][query.length() + 1];
+            rows[1][0] = 1;
+            for (int i = 1; i <= query.length(); i++) {
+                rows[1][i] = i - 1;
+            }
+            for (int distance = 1; distance <= maxDistance && !candidates.full(); distance++) {
+                walk(first, 1, query, rows, distance, candidates);
+            }
+            return candidates.stations();
+        }
+
+        private List<Station> stations(int[] indexes, int limit) {
+            List<Station> results = new ArrayList<>(Math.min(limit, indexes.length));
+            for (int i = 0; i < indexes.length && i < limit; i++) {
+                results.add(stations[indexes[i]]);
+            }
+            return results;
+        }
+
+        private int find(String query) {
+            int node = 0;
+            for (int i = 0; i < query.length(); i++) {
+                node = child(node, query.charAt(i));
+                if (node < 0) return -1;
+            }
+            return node;
+        }
+
+        private int child(int node, char label) {
+            int lo = childStart[node];
+            int hi = childStart[node + 1] - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (labels[mid] < label) lo = mid + 1;
+                else if (labels[mid] > label) hi = mid - 1;
+                else return childNode[mid];
+            }
+            return -1;
+        }
+
+        /*
+         * Levenshtein distance of the query to every path in the trie, one row per depth: a node
+         * whose last cell is within range has a name prefix that close to the query. A branch is
+         * cut once every cell of its row is out of range, or worse than a full candidate list.
+         */
+        private void walk(int node, int depth, String query, int[][] rows, int maxDistance, Candidates candidates) {
+            int[] row = rows[depth];
+            int distance = row[row.length - 1];
+            int closest = distance;
+            for (int cell : row) {
+                closest = Math.min(closest, cell);
+            }
+            if (distance <= maxDistance) {
+                for (int s : best[node]) {
+                    if (!candidates.offer(distance, s)) break;
+                }
+                // Nothing below can be closer, and the best of everything below was just offered
+                if (distance == closest) return;
+            }
+            if (depth + 1 == rows.length) return;
+            int[] next = rows[depth + 1];
+            for (int e = childStart[node]; e < childStart[node + 1]; e++) {
+                char label = labels[e];
+                next[0] = row[0] + 1;
+                int smallest = next[0];
+                for (int i = 1; i < next.length; i++) {
+                    int substitute = row[i - 1] + (query.charAt(i - 1) == label ? 0 : 1);
+                    next[i] = Math.min(substitute, Math.min(row[i], next[i - 1]) + 1);
+                    smallest = Math.min(smallest, next[i]);
+                }
+                if (smallest <= Math.min(maxDistance, candidates.worstDistance())) {
+                    walk(childNode[e], depth + 1, query, rows, maxDistance, candidates);
+                }
+            }
+        }
+
+        // The best matches so far, closest first and then by rank, never more than the limit
+        private final class Candidates {
+            private final long[] keys;
+            private int size;
+
+            Candidates(int limit) {
+                this.keys = new long[limit];
+            }
+
+            // False once this and any worse-ranked station at the same distance cannot get in
+            boolean offer(int distance, int station) {
+                long key = (long) distance << 32 | station;
+                for (int i = 0; i < size; i++) {
+                    if ((int) keys[i] != station) continue;
+                    if (keys[i] <= key) return true;
+                    System.arraycopy(keys, i + 1, keys, i, --size - i);
+                    break;
+                }
+                if (size == keys.length && key >= keys[size - 1]) return false;
+                int at = size == keys.length ? size - 1 : size++;
+                while (at > 0 && keys[at - 1] > key) {
+                    keys[at] = keys[at - 1];
+                    at--;
+                }
+                keys[at] = key;
+                return true;
+            }
+
+            boolean full() {
+                return size == keys.length;
+            }
+
+            int worstDistance() {
+                return size < keys.length ? Integer.MAX_VALUE : (int) (keys[size - 1] >>> 32);
+            }
+
+            List<Station> stations() {
+                List<Station> results = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    results.add(Trie.this.stations[(int) keys[i]]);
+                }
+                return results;
+            }
+        }
+    }
+}
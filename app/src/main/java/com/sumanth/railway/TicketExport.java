@@ -0,0 +1,124 @@
+package com.sumanth.railway;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renders every ticket of one departure for chart preparation. A single query streams the
+ * departure's reservations in coach and seat order, and each row is written as it arrives: the
+ * ticket to its coach's file, and a line to chart.csv. Reservations made before seats were
+ * assigned go to unassigned.txt.
+ */
+class TicketExport {
+    private static final Logger logger = LoggerFactory.getLogger(TicketExport.class);
+    private static final String UNASSIGNED = "unassigned";
+    static final String CHART_QUERY =
+        "SELECT r.reservation_id, COALESCE(p.passenger_name, u.full_name) AS passenger_name, " +
+        "r.berth_type, r.meals_required, s.coach_no, s.seat_no " +
+        "FROM reservations r " +
+        "JOIN users u ON u.user_id = r.user_id " +
+        "LEFT JOIN pnr_passengers p ON p.reservation_id = r.reservation_id " +
+        "LEFT JOIN seat_assignments s ON s.reservation_id = r.reservation_id " +
+        "WHERE r.train_no = ? AND r.departure_date = ? " +
+        "ORDER BY s.coach_no, s.seat_no, r.reservation_id";
+
+    record Report(int tickets, int files, Path directory, long elapsedMillis) {}
+
+    private final DataSource dataSource;
+    private final int fetchSize;
+
+    TicketExport(DataSource dataSource, int fetchSize) {
+        this.dataSource = dataSource;
+        this.fetchSize = fetchSize;
+    }
+
+    Report export(RailwayService.Train train, LocalDate departureDate, Path baseDirectory)
+            throws SQLException, IOException {
+        long started = System.nanoTime();
+        Path directory = baseDirectory.resolve(train.trainNo() + "-" + departureDate);
+        Files.createDirectories(directory);
+
+        int tickets = 0;
+        int files = 0;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(CHART_QUERY);
+             BufferedWriter chart = Files.newBufferedWriter(directory.resolve("chart.csv"), StandardCharsets.UTF_8)) {
+
+            pstmt.setInt(1, train.trainNo());
+            pstmt.setDate(2, java.sql.Date.valueOf(departureDate));
+            pstmt.setFetchSize(fetchSize);
+            chart.write("coach,seat,reservation_id,passenger_name,berth_type,meals\n");
+
+            BufferedWriter coachFile = null;
+            String currentCoach = null;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int coachNo = rs.getInt("coach_no");
+                    RailwayService.Ticket ticket = new RailwayService.Ticket(
+                        rs.getInt("reservation_id"),
+                        rs.getString("passenger_name"),
+                        train.trainNo(),
+                        train.trainName(),
+                        rs.getString("berth_type"),
+                        rs.getBoolean("meals_required"),
+                        departureDate,
+                        coachNo > 0 ? SeatMap.coachLabel(coachNo) : "-",
+                        rs.getInt("seat_no"));
+
+                    // Rows arrive grouped by coach, so only one coach file is ever open
+                    String coach = coachNo > 0 ? ticket.coach() : UNASSIGNED;
+                    if (!coach.equals(currentCoach)) {
+                        if (coachFile != null) coachFile.close();
+                        coachFile = Files.newBufferedWriter(directory.resolve(coach + ".txt"), StandardCharsets.UTF_8);
+                        currentCoach = coach;
+                        files++;
+                    }
+                    coachFile.write(render(ticket));
+                    coachFile.write('\n');
+                    chart.write(ticket.coach() + "," + ticket.seatNo() + "," + ticket.reservationId() + "," +
+                        csv(ticket.passengerName()) + "," + ticket.berthType() + "," + (ticket.meals() ? "Yes" : "No") + "\n");
+                    tickets++;
+                }
+            } finally {
+                if (coachFile != null) coachFile.close();
+            }
+        }
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        logger.info("Exported {} tickets for train {} on {} to {} in {} ms",
+            tickets, train.trainNo(), departureDate, directory, elapsed);
+        return new Report(tickets, files + 1, directory, elapsed);
+    }
+
+    // The same box the console prints after a booking
+    static String render(RailwayService.Ticket ticket) {
+        String border = "+---------------------+---------------------+\n";
+        return border +
+            row("Reservation ID", String.valueOf(ticket.reservationId())) +
+            row("Passenger Name", ticket.passengerName()) +
+            row("Train", ticket.trainNo() + " " + ticket.trainName()) +
+            row("Berth Type", ticket.berthType()) +
+            row("Coach / Seat", ticket.coach() + " / " + ticket.seatNo()) +
+            row("Meals Included", ticket.meals() ? "Yes" : "No") +
+            row("Departure Date", ticket.departureDate().toString()) +
+            border;
+    }
+
+    private static String row(String label, String value) {
+        return String.format("| %-19s | %-19s |\n", label, value);
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) return value;
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
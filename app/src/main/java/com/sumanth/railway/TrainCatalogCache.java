@@ -0,0 +1,135 @@
+package com.sumanth.railway;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-through cache of train_details rows and of the full listing.
+ * Entries expire after a TTL and the per-train map is LRU-bounded; writers call
+ * {@link #invalidate(int)} so the next read goes back to the database.
+ */
+class TrainCatalogCache {
+    private static final Logger logger = LoggerFactory.getLogger(TrainCatalogCache.class);
+
+    interface Loader<T> {
+        T load() throws SQLException;
+    }
+
+    record Stats(long hits, long misses, long evictions, long invalidations, int size) {
+        double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+
+    private record Entry<T>(T value, long loadedAt) {}
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<Integer, Entry<RailwayService.Train>> trains;
+    private volatile Entry<List<RailwayService.Train>> listing;
+    // Bumped by every invalidation so a load that raced with a write is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    TrainCatalogCache(int maxEntries, Duration ttl) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.trains = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry<RailwayService.Train>> eldest) {
+                if (size() > TrainCatalogCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        logger.info("Train catalog cache enabled: {} entries, TTL {}s", maxEntries, ttl.toSeconds());
+    }
+
+    // A null result (no such train) is not cached
+    RailwayService.Train get(int trainNo, Loader<RailwayService.Train> loader) throws SQLException {
+        long now = System.nanoTime();
+        synchronized (trains) {
+            Entry<RailwayService.Train> entry = trains.get(trainNo);
+            if (entry != null && now - entry.loadedAt() < ttlNanos) {
+                hits.increment();
+                return entry.value();
+            }
+        }
+
+        misses.increment();
+        long expectedGeneration = generation.get();
+        RailwayService.Train train = loader.load();
+        if (train != null) {
+            synchronized (trains) {
+                if (generation.get() == expectedGeneration) {
+                    trains.put(trainNo, new Entry<>(train, now));
+                }
+            }
+        }
+        return train;
+    }
+
+    List<RailwayService.Train> getAll(Loader<List<RailwayService.Train>> loader) throws SQLException {
+        long now = System.nanoTime();
+        Entry<List<RailwayService.Train>> current = listing;
+        if (current != null && now - current.loadedAt() < ttlNanos) {
+            hits.increment();
+            return current.value();
+        }
+
+        misses.increment();
+        long expectedGeneration = generation.get();
+        List<RailwayService.Train> all = List.copyOf(loader.load());
+        synchronized (trains) {
+            if (generation.get() == expectedGeneration) {
+                listing = new Entry<>(all, now);
+                // Warm the per-train entries too, up to the size bound
+                for (RailwayService.Train train : all) {
+                    if (trains.size() >= maxEntries) break;
+                    trains.putIfAbsent(train.trainNo(), new Entry<>(train, now));
+                }
+            }
+        }
+        return all;
+    }
+
+    void invalidate(int trainNo) {
+        synchronized (trains) {
+            generation.incrementAndGet();
+            trains.remove(trainNo);
+            listing = null;
+        }
+        invalidations.increment();
+    }
+
+    void invalidateAll() {
+        synchronized (trains) {
+            generation.incrementAndGet();
+            trains.clear();
+            listing = null;
+        }
+        invalidations.increment();
+    }
+
+    Stats stats() {
+        int size;
+        synchronized (trains) {
+            size = trains.size();
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(), size);
+    }
+}
@@ -0,0 +1,349 @@
+package com.sumanth.railway;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+import javax.sql.DataSource;
+import org.mindrot.jbcrypt.BCrypt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bulk user import from CSV with a header row. Columns are matched by name: full_name, age,
+ * phone, aadhaar, address, pincode and username are required, plus either password (hashed
+ * here) or password_hash (an existing BCrypt hash, kept as is). A user_id column keeps the
+ * original ids. USER_REGISTERED records in the audit log carry no credentials, so restoring
+ * users from it needs one of the password columns added.
+ *
+ * <p>Rows are validated with the registration rules while the file streams in, hashed in
+ * parallel on every core, and written by one connection in JDBC batches with a commit every
+ * {@value #COMMIT_INTERVAL} rows. Rejected rows go to a report next to the input instead of
+ * stopping the import.
+ */
+class UserImport {
+    private static final Logger logger = LoggerFactory.getLogger(UserImport.class);
+    static final int BATCH_SIZE = 500;
+    static final int COMMIT_INTERVAL = 5_000;
+    private static final Pattern BCRYPT_HASH = Pattern.compile("\\$2[aby]\\$\\d{2}\\$[./A-Za-z0-9]{53}");
+    private static final List<String> REQUIRED_COLUMNS =
+        List.of("full_name", "age", "phone", "aadhaar", "address", "pincode", "username");
+
+    record Report(long rowsRead, long imported, long rejected, Path rejectedRows, long elapsedMillis) {}
+
+    private record Row(long lineNo, String raw, String userId, RailwayService.NewUser user, String passwordHash) {}
+
+    private final DataSource dataSource;
+    private final int cost;
+    private final int threads;
+
+    UserImport(DataSource dataSource, int cost) {
+        this(dataSource, cost, Runtime.getRuntime().availableProcessors());
+    }
+
+    UserImport(DataSource dataSource, int cost, int threads) {
+        this.dataSource = dataSource;
+        this.cost = cost;
+        this.threads = threads;
+    }
+
+    Report run(Path csv) throws IOException, SQLException {
+        long started = System.nanoTime();
+        Path rejectedRows = csv.resolveSibling(csv.getFileName() + ".rejected.csv");
+        ExecutorService hashers = Executors.newFixedThreadPool(threads);
+        long rowsRead = 0;
+        long imported = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8);
+             PrintWriter rejects = new PrintWriter(Files.newBufferedWriter(rejectedRows, StandardCharsets.UTF_8));
+             Connection conn = dataSource.getConnection()) {
+
+            rejects.println("line,reason,row");
+            String headerLine = reader.readLine();
+            if (headerLine == null) throw new IOException(csv + " is empty");
+            Map<String, Integer> columns = header(headerLine);
+
+            BatchWriter writer = new BatchWriter(conn, rejects);
+            // Batches being hashed, oldest first; bounded so the reader cannot run far ahead
+            Deque<Future<List<Row>>> inFlight = new ArrayDeque<>();
+            Set<String> usernames = new HashSet<>();
+            Set<String> aadhaars = new HashSet<>();
+            List<Row> batch = new ArrayList<>(BATCH_SIZE);
+
+            String line;
+            long lineNo = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank()) continue;
+                rowsRead++;
+
+                Row row;
+                try {
+                    row = parse(lineNo, line, columns);
+                } catch (ServiceException | IllegalArgumentException e) {
+                    writer.reject(lineNo, e.getMessage(), line);
+                    continue;
+                }
+                if (usernames.contains(row.user().username()) || aadhaars.contains(row.user().aadhaar())) {
+                    writer.reject(lineNo, "Duplicate username or Aadhaar in file", line);
+                    continue;
+                }
+                usernames.add(row.user().username());
+                aadhaars.add(row.user().aadhaar());
+
+                batch.add(row);
+                if (batch.size() == BATCH_SIZE) {
+                    inFlight.add(hash(hashers, batch));
+                    batch = new ArrayList<>(BATCH_SIZE);
+                    if (inFlight.size() > threads * 2) {
+                        imported += writer.write(await(inFlight.poll()));
+                    }
+                }
+            }
+            if (!batch.isEmpty()) inFlight.add(hash(hashers, batch));
+            while (!inFlight.isEmpty()) {
+                imported += writer.write(await(inFlight.poll()));
+            }
+            writer.finish();
+
+            long rejected = writer.rejected;
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            logger.info("User import of {}: {} rows, {} imported, {} rejected in {} ms",
+                csv, rowsRead, imported, rejected, elapsed);
+            return new Report(rowsRead, imported, rejected, rejectedRows, elapsed);
+        } finally {
+            hashers.shutdownNow();
+        }
+    }
+
+    private Future<List<Row>> hash(ExecutorService hashers, List<Row> batch) {
+        return hashers.submit(() -> {
+            List<Row> hashed = new ArrayList<>(batch.size());
+            for (Row row : batch) {
+                String hash = row.passwordHash() != null
+                    ? row.passwordHash()
+                    : BCrypt.hashpw(row.user().password(), BCrypt.gensalt(cost));
+                hashed.add(new Row(row.lineNo(), row.raw(), row.userId(), row.user(), hash));
+            }
+            return hashed;
+        });
+    }
+
+    private static List<Row> await(Future<List<Row>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("User import interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Password hashing failed", e.getCause());
+        }
+    }
+
+    private static Map<String, Integer> header(String line) throws IOException {
+        Map<String, Integer> columns = new HashMap<>();
+        List<String> names = split(line);
+        for (int i = 0; i < names.size(); i++) {
+            columns.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String column : REQUIRED_COLUMNS) {
+            if (!columns.containsKey(column)) throw new IOException("Missing column: " + column);
+        }
+        if (!columns.containsKey("password") && !columns.containsKey("password_hash")) {
+            throw new IOException("Need a password or password_hash column");
+        }
+        return columns;
+    }
+
+    private static Row parse(long lineNo, String line, Map<String, Integer> columns) throws ServiceException {
+        List<String> fields = split(line);
+        if (fields.size() != columns.size()) {
+            throw new IllegalArgumentException("Expected " + columns.size() + " fields, found " + fields.size());
+        }
+
+        String passwordHash = field(fields, columns, "password_hash");
+        String password = field(fields, columns, "password");
+        if (passwordHash != null && !passwordHash.isEmpty()) {
+            if (!BCRYPT_HASH.matcher(passwordHash).matches()) {
+                throw new IllegalArgumentException("Invalid password hash");
+            }
+            // Only the hash is stored, so the length rule has nothing to check
+            password = passwordHash;
+        } else {
+            passwordHash = null;
+        }
+
+        int age;
+        try {
+            age = Integer.parseInt(field(fields, columns, "age").trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid age");
+        }
+
+        RailwayService.NewUser user = new RailwayService.NewUser(
+            field(fields, columns, "full_name").trim(),
+            age,
+            field(fields, columns, "phone").trim(),
+            field(fields, columns, "aadhaar").trim(),
+            field(fields, columns, "address").trim(),
+            field(fields, columns, "pincode").trim(),
+            field(fields, columns, "username").trim(),
+            password);
+        RailwayService.validateNewUser(user);
+
+        String userId = field(fields, columns, "user_id");
+        userId = userId == null || userId.isBlank() ? null : userId.trim();
+        // The widths of the users columns in Schema, so an overlong value is a rejected row, not a failed batch
+        checkLength("user_id", userId, 30);
+        checkLength("username", user.username(), 30);
+        checkLength("full_name", user.fullName(), 50);
+        checkLength("phone", user.phone(), 15);
+        checkLength("aadhaar", user.aadhaar(), 12);
+        checkLength("address", user.address(), 100);
+        checkLength("pincode", user.pincode(), 6);
+        return new Row(lineNo, line, userId, user, passwordHash);
+    }
+
+    private static void checkLength(String column, String value, int maxLength) {
+        if (value != null && value.length() > maxLength) {
+            throw new IllegalArgumentException(column + " is longer than " + maxLength + " characters");
+        }
+    }
+
+    private static String field(List<String> fields, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        return index == null ? null : fields.get(index);
+    }
+
+    // Comma-separated, with double-quoted fields and "" as an escaped quote
+    static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    // Single-connection batch writer; a failed batch is replayed row by row to find the culprits
+    private static final class BatchWriter {
+        private final Connection conn;
+        private final PrintWriter rejects;
+        private long uncommitted;
+        long rejected;
+
+        BatchWriter(Connection conn, PrintWriter rejects) throws SQLException {
+            this.conn = conn;
+            this.rejects = rejects;
+            conn.setAutoCommit(false);
+        }
+
+        int write(List<Row> rows) throws SQLException {
+            Savepoint savepoint = conn.setSavepoint();
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO users VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                for (Row row : rows) {
+                    bind(pstmt, row);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                conn.releaseSavepoint(savepoint);
+            } catch (BatchUpdateException e) {
+                conn.rollback(savepoint);
+                return commitIfDue(writeOneByOne(rows));
+            }
+            return commitIfDue(rows.size());
+        }
+
+        void finish() throws SQLException {
+            try {
+                conn.commit();
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+
+        void reject(long lineNo, String reason, String raw) {
+            rejected++;
+            rejects.println(lineNo + "," + quote(reason) + "," + quote(raw));
+        }
+
+        private int writeOneByOne(List<Row> rows) throws SQLException {
+            int written = 0;
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO users VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                for (Row row : rows) {
+                    Savepoint savepoint = conn.setSavepoint();
+                    try {
+                        bind(pstmt, row);
+                        pstmt.executeUpdate();
+                        conn.releaseSavepoint(savepoint);
+                        written++;
+                    } catch (SQLException e) {
+                        conn.rollback(savepoint);
+                        // SQLState class 23 is an integrity constraint violation and class 22 bad data, such
+                        // as a value too long for its column; anything else is not the row's fault
+                        String state = e.getSQLState();
+                        if (state != null && state.startsWith("23")) {
+                            reject(row.lineNo(), "User id, username or Aadhaar already registered", row.raw());
+                        } else if (state != null && state.startsWith("22")) {
+                            reject(row.lineNo(), "Rejected by the database: " + e.getMessage(), row.raw());
+                        } else {
+                            throw e;
+                        }
+                    }
+                }
+            }
+            return written;
+        }
+
+        private int commitIfDue(int written) throws SQLException {
+            uncommitted += written;
+            if (uncommitted >= COMMIT_INTERVAL) {
+                conn.commit();
+                uncommitted = 0;
+            }
+            return written;
+        }
+
+        private static void bind(PreparedStatement pstmt, Row row) throws SQLException {
+            RailwayService.NewUser user = row.user();
+            pstmt.setString(1, row.userId() != null ? row.userId() : RailwayService.newUserId());
+            pstmt.setString(2, user.username());
+            pstmt.setString(3, row.passwordHash());
+            pstmt.setString(4, user.fullName());
+            pstmt.setString(5, user.phone());
+            pstmt.setString(6, user.aadhaar());
+            pstmt.setString(7, user.address());
+            pstmt.setString(8, user.pincode());
+            pstmt.setInt(9, user.age());
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package com.sumanth.railway;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-departure queue for bookings past capacity, served strictly in arrival order. The first
+ * {@value #RAC_PER_DEPARTURE} in line hold RAC (reservation against cancellation) and the rest are
+ * WL, so RAC passengers are always promoted first. Cancellations only mark a departure as pending;
+ * a single background thread picks pending departures up after a short delay and confirms up to
+ * {@value #PROMOTION_BATCH} entries per transaction.
+ *
+ * <p>RAC here is only a queue position and the status label that goes with it. Unlike Indian
+ * Railways RAC, an entry does not hold half of a side berth while it waits, and no ticket is issued
+ * until promotion. At that point it gets a full berth from the seat map like any WL entry, so
+ * SeatInventory and SeatMap keep counting one passenger per berth.
+ */
+class Waitlist implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(Waitlist.class);
+    // Sized as one coach's side berths shared two to a berth; only the label follows from it, see above
+    static final int RAC_PER_DEPARTURE = 36;
+    static final int MAX_PER_DEPARTURE = 300;
+    static final int PROMOTION_BATCH = 200;
+    static final long PROMOTION_DELAY_MILLIS = 100;
+    // Status of an entry the promoter confirmed before it could be read back
+    static final String CONFIRMED = "CNF";
+    static final String HEAD_QUERY = "SELECT waitlist_id, user_id, berth_type, meals_required FROM waitlist " +
+        "WHERE train_no = ? AND departure_date = ? ORDER BY waitlist_id LIMIT ? FOR UPDATE";
+    static final String USER_ENTRIES_QUERY = entryQuery("w.user_id = ?") + " ORDER BY w.departure_date, w.waitlist_id";
+
+    // position counts from 1 at the head of the departure's queue
+    record Entry(int waitlistId, int trainNo, String trainName, String berthType, boolean meals,
+                 LocalDate departureDate, int position, String status) {}
+
+    private record Candidate(int waitlistId, String userId, String berthType, boolean meals) {}
+
+    private final ShardRouter shards;
+    private final SeatInventory seatInventory;
+    private final SeatMapRegistry seatMaps;
+    private final OccupancyAnalytics analytics;
+    private final AuditLog auditLog;
+    private final Metrics metrics;
+    // Entries waiting per departure, so bookings can tell whether someone is ahead of them
+    private final Map<SeatInventory.Key, AtomicInteger> queued = new ConcurrentHashMap<>();
+    private final Set<SeatInventory.Key> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean closed;
+    private final ScheduledExecutorService promoter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "waitlist-promoter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    Waitlist(ShardRouter shards, SeatInventory seatInventory, SeatMapRegistry seatMaps, OccupancyAnalytics analytics,
+             AuditLog auditLog, Metrics metrics) {
+        this.shards = shards;
+        this.seatInventory = seatInventory;
+        this.seatMaps = seatMaps;
+        this.analytics = analytics;
+        this.auditLog = auditLog;
+        this.metrics = metrics;
+    }
+
+    // Also schedules every queued departure, in case seats were freed while the application was down
+    void load() throws SQLException {
+        queued.clear();
+        for (ShardRouter.Shard shard : shards.shards()) {
+            try (Connection conn = shard.primary().getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(
+                     "SELECT train_no, departure_date, COUNT(*) AS waiting FROM waitlist " +
+                     "GROUP BY train_no, departure_date")) {
+
+                while (rs.next()) {
+                    SeatInventory.Key key = new SeatInventory.Key(rs.getInt("train_no"),
+                        rs.getDate("departure_date").toLocalDate());
+                    queued.put(key, new AtomicInteger(rs.getInt("waiting")));
+                }
+            }
+        }
+        queued.keySet().forEach(key -> schedule(key.trainNo(), key.departureDate()));
+        logger.info("Waitlist loaded: {} departures with passengers waiting", queued.size());
+    }
+
+    boolean hasQueue(int trainNo, LocalDate departureDate) {
+        AtomicInteger count = queued.get(new SeatInventory.Key(trainNo, departureDate));
+        return count != null && count.get() > 0;
+    }
+
+    // Returns null when the departure's queue is full
+    Entry join(String userId, int trainNo, LocalDate departureDate, String berthType, boolean meals)
+            throws SQLException {
+        AtomicInteger count = queued.computeIfAbsent(new SeatInventory.Key(trainNo, departureDate),
+            key -> new AtomicInteger());
+        while (true) {
+            int current = count.get();
+            if (current >= MAX_PER_DEPARTURE) return null;
+            if (count.compareAndSet(current, current + 1)) break;
+        }
+
+        ShardRouter.Shard shard = shards.shardFor(trainNo);
+        int waitlistId;
+        try (Connection conn = connectionFor(shard, userId);
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "INSERT INTO waitlist (user_id, train_no, berth_type, meals_required, departure_date) " +
+                 "VALUES (?, ?, ?, ?, ?)",
+                 Statement.RETURN_GENERATED_KEYS)) {
+
+            pstmt.setString(1, userId);
+            pstmt.setInt(2, trainNo);
+            pstmt.setString(3, berthType.toUpperCase());
+            pstmt.setBoolean(4, meals);
+            pstmt.setDate(5, java.sql.Date.valueOf(departureDate));
+            pstmt.executeUpdate();
+
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                if (!keys.next()) throw new SQLException("No waitlist id generated");
+                waitlistId = keys.getInt(1);
+            }
+        } catch (SQLException e) {
+            count.decrementAndGet();
+            throw e;
+        }
+
+        Entry entry = find(shard.primary(), userId, waitlistId);
+        // A seat may have been freed between the availability check and the insert
+        schedule(trainNo, departureDate);
+        return entry != null ? entry
+            : new Entry(waitlistId, trainNo, null, berthType.toUpperCase(), meals, departureDate, 0, CONFIRMED);
+    }
+
+    List<Entry> list(String userId) throws SQLException {
+        List<Entry> entries = new ArrayList<>();
+        for (List<Entry> shardEntries : shards.scatter(shard -> list(shard.primary(), userId))) {
+            entries.addAll(shardEntries);
+        }
+        if (shards.sharded()) {
+            entries.sort(Comparator.comparing(Entry::departureDate).thenComparingInt(Entry::waitlistId));
+        }
+        return entries;
+    }
+
+    private static List<Entry> list(DataSource dataSource, String userId) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(USER_ENTRIES_QUERY)) {
+
+            pstmt.setString(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                List<Entry> entries = new ArrayList<>();
+                while (rs.next()) {
+                    entries.add(readEntry(rs));
+                }
+                return entries;
+            }
+        }
+    }
+
+    // False when the entry does not exist, belongs to someone else or was already promoted
+    boolean leave(String userId, int waitlistId) throws SQLException {
+        // Waitlist ids are unique across shards, so at most one shard has the entry
+        for (ShardRouter.Shard shard : shards.shards()) {
+            if (leave(shard.primary(), userId, waitlistId)) return true;
+        }
+        return false;
+    }
+
+    private boolean leave(DataSource dataSource, String userId, int waitlistId) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            int trainNo;
+            LocalDate departureDate;
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT train_no, departure_date FROM waitlist WHERE waitlist_id = ? AND user_id = ?")) {
+
+                pstmt.setInt(1, waitlistId);
+                pstmt.setString(2, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) return false;
+                    trainNo = rs.getInt("train_no");
+                    departureDate = rs.getDate("departure_date").toLocalDate();
+                }
+            }
+
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                "DELETE FROM waitlist WHERE waitlist_id = ? AND user_id = ?")) {
+
+                pstmt.setInt(1, waitlistId);
+                pstmt.setString(2, userId);
+                if (pstmt.executeUpdate() == 0) return false;
+            }
+            dequeued(new SeatInventory.Key(trainNo, departureDate), 1);
+            return true;
+        }
+    }
+
+    // Non-blocking: the departure is promoted on the background thread. After close the queue stays in
+    // the database, and load() schedules it again at the next start.
+    void schedule(int trainNo, LocalDate departureDate) {
+        if (closed || !hasQueue(trainNo, departureDate)) return;
+        pending.add(new SeatInventory.Key(trainNo, departureDate));
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                promoter.schedule(this::drain, PROMOTION_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // close() ran between the check and here
+                scheduled.set(false);
+            }
+        }
+    }
+
+    void scheduleTrain(int trainNo) {
+        queued.keySet().forEach(key -> {
+            if (key.trainNo() == trainNo) schedule(key.trainNo(), key.departureDate());
+        });
+    }
+
+    void removeTrain(int trainNo) {
+        queued.keySet().removeIf(key -> key.trainNo() == trainNo);
+    }
+
+    // Pending promotions still run; only new ones are refused
+    @Override
+    public void close() {
+        closed = true;
+        promoter.shutdown();
+        try {
+            if (!promoter.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("Waitlist promoter did not finish within 10s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        // Cleared first so a cancellation arriving mid-drain schedules another pass
+        scheduled.set(false);
+        for (SeatInventory.Key key : pending) {
+            pending.remove(key);
+            try {
+                promote(key);
+            } catch (SQLException e) {
+                logger.error("Waitlist promotion failed for train {} on {}: {}",
+                    key.trainNo(), key.departureDate(), e.getMessage(), e);
+            }
+        }
+    }
+
+    private void promote(SeatInventory.Key key) throws SQLException {
+        int trainNo = key.trainNo();
+        LocalDate departureDate = key.departureDate();
+        int promoted = 0;
+
+        while (true) {
+            // Read once: removeTrain can drop the departure's counter at any point
+            AtomicInteger waiting = queued.get(key);
+            int seats = waiting == null ? 0
+                : Math.min(Math.min(seatInventory.available(trainNo, departureDate), PROMOTION_BATCH), waiting.get());
+            if (seats <= 0 || !seatInventory.tryReserve(trainNo, departureDate, seats)) break;
+
+            int confirmed;
+            try {
+                confirmed = promoteBatch(trainNo, departureDate, seats);
+            } catch (SQLException e) {
+                seatInventory.release(trainNo, departureDate, seats);
+                throw e;
+            }
+            if (confirmed < seats) {
+                seatInventory.release(trainNo, departureDate, seats - confirmed);
+            }
+            promoted += confirmed;
+            if (confirmed == 0) break;
+        }
+
+        if (promoted > 0) {
+            logger.info("Promoted {} waitlisted passengers on train {} for {}", promoted, trainNo, departureDate);
+        }
+    }
+
+    // Confirms up to the given number of entries from the head of the queue; returns how many were confirmed
+    private int promoteBatch(int trainNo, LocalDate departureDate, int seats) throws SQLException {
+        SeatMap seatMap = seatMaps.get(trainNo, departureDate);
+        List<SeatMap.Berth> berths = new ArrayList<>(seats);
+
+        long started = System.nanoTime();
+        try (Connection conn = shards.forTrain(trainNo).getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // The head rows stay locked until commit, so an owner leaving the queue waits for us
+                List<Candidate> head = head(conn, trainNo, departureDate, seats);
+                for (Candidate candidate : head) {
+                    SeatMap.Berth berth = seatMap.allocate(candidate.berthType());
+                    if (berth == null) {
+                        throw new SQLException("Seat map for train " + trainNo + " on " + departureDate + " is full");
+                    }
+                    berths.add(berth);
+                }
+                List<Integer> reservationIds = List.of();
+                if (!head.isEmpty()) {
+                    delete(conn, head);
+                    reservationIds = insertReservations(conn, trainNo, departureDate, head, berths);
+                    RailwayService.insertSeatAssignments(conn, trainNo, departureDate, reservationIds, berths);
+                    List<BookingOutbox.Change> changes = new ArrayList<>(head.size());
+                    for (int i = 0; i < head.size(); i++) {
+                        changes.add(BookingOutbox.Change.booked(reservationIds.get(i), head.get(i).userId(), trainNo,
+                            departureDate, berths.get(i), head.get(i).meals()));
+                    }
+                    BookingOutbox.append(conn, changes);
+                }
+
+                conn.commit();
+                dequeued(new SeatInventory.Key(trainNo, departureDate), head.size());
+                metrics.add(Metrics.Counter.WAITLIST_PROMOTIONS, head.size());
+                for (int i = 0; i < head.size(); i++) {
+                    Candidate candidate = head.get(i);
+                    SeatMap.Berth berth = berths.get(i);
+                    analytics.booked(trainNo, departureDate, berth.berthType(), candidate.meals());
+                    audit(AuditLog.Event.WAITLIST_PROMOTED, candidate.waitlistId(), reservationIds.get(i),
+                        candidate.userId(), trainNo, departureDate, berth.berthType(), berth.coach(), berth.seatNo(),
+                        candidate.meals());
+                }
+                return head.size();
+            } catch (SQLException e) {
+                conn.rollback();
+                metrics.increment(Metrics.Counter.ROLLBACKS);
+                for (SeatMap.Berth berth : berths) {
+                    seatMap.release(berth.coachNo(), berth.seatNo());
+                }
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } finally {
+            metrics.recordSql(Metrics.Query.PROMOTE_WAITLIST, started);
+        }
+    }
+
+    private List<Candidate> head(Connection conn, int trainNo, LocalDate departureDate, int limit)
+            throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(HEAD_QUERY)) {
+
+            pstmt.setInt(1, trainNo);
+            pstmt.setDate(2, java.sql.Date.valueOf(departureDate));
+            pstmt.setInt(3, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                List<Candidate> candidates = new ArrayList<>();
+                while (rs.next()) {
+                    candidates.add(new Candidate(rs.getInt("waitlist_id"), rs.getString("user_id"),
+                        rs.getString("berth_type"), rs.getBoolean("meals_required")));
+                }
+                return candidates;
+            }
+        }
+    }
+
+    private static void delete(Connection conn, List<Candidate> candidates) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM waitlist WHERE waitlist_id = ?")) {
+            for (Candidate candidate : candidates) {
+                pstmt.setInt(1, candidate.waitlistId());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private static List<Integer> insertReservations(Connection conn, int trainNo, LocalDate departureDate,
+                                                    List<Candidate> candidates, List<SeatMap.Berth> berths)
+            throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO reservations (user_id, train_no, berth_type, meals_required, departure_date) " +
+                "VALUES (?, ?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+
+            for (int i = 0; i < candidates.size(); i++) {
+                pstmt.setString(1, candidates.get(i).userId());
+                pstmt.setInt(2, trainNo);
+                pstmt.setString(3, berths.get(i).berthType());
+                pstmt.setBoolean(4, candidates.get(i).meals());
+                pstmt.setDate(5, java.sql.Date.valueOf(departureDate));
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+
+            List<Integer> ids = new ArrayList<>(candidates.size());
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                while (keys.next()) {
+                    ids.add(keys.getInt(1));
+                }
+            }
+            if (ids.size() != candidates.size()) {
+                throw new SQLException("Expected " + candidates.size() + " reservation ids, got " + ids.size());
+            }
+            return ids;
+        }
+    }
+
+    private static Entry find(DataSource dataSource, String userId, int waitlistId) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(entryQuery("w.waitlist_id = ? AND w.user_id = ?"))) {
+
+            pstmt.setInt(1, waitlistId);
+            pstmt.setString(2, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                // Gone if an earlier scheduled promotion already confirmed it
+                return rs.next() ? readEntry(rs) : null;
+            }
+        }
+    }
+
+    // The shard needs its own copy of the user before a waitlist row can refer to them
+    private Connection connectionFor(ShardRouter.Shard shard, String userId) throws SQLException {
+        shards.ensureUser(shard, userId);
+        return shard.primary().getConnection();
+    }
+
+    private void audit(AuditLog.Event event, Object... fields) {
+        if (!auditLog.append(event, fields)) metrics.increment(Metrics.Counter.AUDIT_REFUSED);
+    }
+
+    private void dequeued(SeatInventory.Key key, int count) {
+        AtomicInteger waiting = queued.get(key);
+        if (waiting != null) waiting.addAndGet(-count);
+    }
+
+    private static String entryQuery(String where) {
+        return "SELECT w.waitlist_id, w.train_no, t.train_name, w.berth_type, w.meals_required, w.departure_date, " +
+            "(SELECT COUNT(*) FROM waitlist a WHERE a.train_no = w.train_no " +
+            "AND a.departure_date = w.departure_date AND a.waitlist_id <= w.waitlist_id) AS position " +
+            "FROM waitlist w JOIN train_details t ON w.train_no = t.train_no WHERE " + where;
+    }
+
+    private static Entry readEntry(ResultSet rs) throws SQLException {
+        int position = rs.getInt("position");
+        return new Entry(
+            rs.getInt("waitlist_id"),
+            rs.getInt("train_no"),
+            rs.getString("train_name"),
+            rs.getString("berth_type"),
+            rs.getBoolean("meals_required"),
+            rs.getDate("departure_date").toLocalDate(),
+            position,
+            position <= RAC_PER_DEPARTURE ? "RAC " + position : "WL " + (position - RAC_PER_DEPARTURE));
+    }
+}
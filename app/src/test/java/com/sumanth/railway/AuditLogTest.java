@@ -0,0 +1,59 @@
+package com.sumanth.railway;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AuditLogTest {
+    private static final int TRAIN = 401;
+
+    @TempDir
+    Path dir;
+
+    private AuditLog open() throws Exception {
+        return new AuditLog(dir.resolve("audit.csv"), Duration.ofMillis(10), AuditLog.DEFAULT_MAX_FILE_BYTES, 16);
+    }
+
+    @Test
+    void acceptedRecordsAreOnDiskAfterClose() throws Exception {
+        AuditLog auditLog = open();
+        assertTrue(auditLog.append(AuditLog.Event.PASSWORD_CHANGED, "U1"));
+        assertTrue(auditLog.append(AuditLog.Event.PROFILE_UPDATED, "U1", "address", "1, Main Road"));
+        auditLog.close();
+
+        List<String> lines = Files.readAllLines(dir.resolve("audit.csv"));
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).endsWith(",PASSWORD_CHANGED,U1"), lines.get(0));
+        assertTrue(lines.get(1).endsWith(",PROFILE_UPDATED,U1,address,\"1, Main Road\""), lines.get(1));
+        assertEquals(2, auditLog.stats().appended());
+        assertEquals(0, auditLog.stats().refused());
+    }
+
+    @Test
+    void recordsRefusedAfterCloseAreCountedInTheServiceMetrics() throws Exception {
+        AuditLog auditLog = open();
+        RailwayService service = TestDatabase.service(TestDatabase.create(), auditLog);
+        try {
+            service.addTrain(TestDatabase.train(TRAIN, 4));
+            RailwayService.UserAccount user = TestDatabase.register(service);
+            auditLog.close();
+
+            assertFalse(auditLog.append(AuditLog.Event.PASSWORD_CHANGED, "U1"));
+            service.book(user, TRAIN, LocalDate.now().plusDays(2), "LOWER", false);
+
+            assertEquals(1, service.auditStats().appended(), "the registration");
+            assertEquals(2, service.auditStats().refused());
+            // The direct append bypassed the service, so only the booking reached its counter
+            assertEquals(1, service.metrics().count(Metrics.Counter.AUDIT_REFUSED));
+            assertTrue(service.metrics().prometheus().contains("railway_audit_refused_total 1"));
+        } finally {
+            service.close();
+        }
+    }
+}
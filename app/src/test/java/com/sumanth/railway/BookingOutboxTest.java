@@ -0,0 +1,124 @@
+package com.sumanth.railway;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BookingOutboxTest {
+    private static final int TRAIN = 301;
+    private static final LocalDate DAY = LocalDate.now().plusDays(3);
+
+    private ShardRouter shards;
+    private RailwayService service;
+    private RailwayService.UserAccount user;
+    private final List<BookingOutbox.Event> published = new ArrayList<>();
+    private final BookingOutbox.Sink capturing = published::addAll;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DataSource dataSource = TestDatabase.create();
+        shards = ShardRouter.single(DataSources.single(dataSource));
+        service = TestDatabase.service(dataSource);
+        service.addTrain(TestDatabase.train(TRAIN, 10));
+        user = TestDatabase.register(service);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.close();
+    }
+
+    @Test
+    void bookingsAndCancellationsAreDeliveredInOrderThenDeleted() throws Exception {
+        int reservationId = service.book(user, TRAIN, DAY, "LOWER", true).reservationId();
+        service.cancelReservation(user.userId(), reservationId);
+
+        BookingOutbox outbox = new BookingOutbox(shards, capturing, BookingOutbox.DEFAULT_BATCH_SIZE);
+        assertEquals(2, outbox.stats().pending());
+        assertEquals(2, outbox.drain());
+
+        assertEquals(List.of(BookingOutbox.Type.RESERVATION_BOOKED, BookingOutbox.Type.RESERVATION_CANCELLED),
+            published.stream().map(BookingOutbox.Event::type).toList());
+        assertTrue(published.get(0).eventId() < published.get(1).eventId());
+        for (BookingOutbox.Event event : published) {
+            assertEquals(TRAIN, event.trainNo());
+            assertTrue(event.payload().contains("\"reservationId\":" + reservationId), event.payload());
+            assertTrue(event.payload().contains("\"departureDate\":\"" + DAY + "\""), event.payload());
+        }
+        assertTrue(published.get(0).payload().contains("\"coach\":\"S1\""), published.get(0).payload());
+
+        BookingOutbox.Stats stats = outbox.stats();
+        assertEquals(0, stats.pending());
+        assertEquals(2, stats.delivered());
+        assertEquals(0, outbox.drain(), "delivered rows are gone");
+        assertEquals(2, published.size());
+    }
+
+    @Test
+    void backlogLargerThanABatchIsDeliveredInSeveral() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            service.book(user, TRAIN, DAY, "UPPER", false);
+        }
+        List<Integer> batchSizes = new ArrayList<>();
+        BookingOutbox outbox = new BookingOutbox(shards, events -> {
+            batchSizes.add(events.size());
+            published.addAll(events);
+        }, 2);
+
+        assertEquals(5, outbox.drain());
+        assertEquals(List.of(2, 2, 1), batchSizes);
+        assertEquals(3, outbox.stats().batches());
+        for (int i = 1; i < published.size(); i++) {
+            assertTrue(published.get(i - 1).eventId() < published.get(i).eventId());
+        }
+    }
+
+    @Test
+    void failedDeliveryKeepsTheRowsForTheNextRound() throws Exception {
+        service.book(user, TRAIN, DAY, "SIDE", false);
+        BookingOutbox failing = new BookingOutbox(shards, events -> {
+            throw new IOException("queue unavailable");
+        }, BookingOutbox.DEFAULT_BATCH_SIZE);
+
+        assertEquals(0, failing.drain());
+        BookingOutbox.Stats stats = failing.stats();
+        assertEquals(1, stats.failures());
+        assertEquals(1, stats.pending());
+
+        BookingOutbox outbox = new BookingOutbox(shards, capturing, BookingOutbox.DEFAULT_BATCH_SIZE);
+        assertEquals(1, outbox.drain());
+        assertEquals(0, outbox.stats().pending());
+    }
+
+    @Test
+    void directoryQueueWritesOneFilePerBatch(@TempDir Path dir) throws Exception {
+        service.book(user, TRAIN, DAY, "LOWER", false);
+        service.book(user, TRAIN, DAY, "LOWER", false);
+        BookingOutbox outbox = new BookingOutbox(shards, new BookingOutbox.DirectoryQueue(dir), 1);
+        assertEquals(2, outbox.drain());
+
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(dir)) {
+            files = listing.sorted().toList();
+        }
+        assertEquals(2, files.size());
+        for (Path file : files) {
+            assertTrue(file.getFileName().toString().endsWith(".jsonl"), file.toString());
+            List<String> lines = Files.readAllLines(file);
+            assertEquals(1, lines.size());
+            assertTrue(lines.get(0).startsWith("{\"eventId\":"), lines.get(0));
+            assertTrue(lines.get(0).contains("\"type\":\"RESERVATION_BOOKED\""), lines.get(0));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.sumanth.railway;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    @Test
+    void smallValuesGetABucketEach() {
+        for (int value = 0; value < LatencyHistogram.SUB_BUCKETS; value++) {
+            assertEquals(value, LatencyHistogram.index(value));
+            assertEquals(value, LatencyHistogram.upperBound(value));
+        }
+    }
+
+    @Test
+    void everyValueFallsInsideItsBucket() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong(1L << 40);
+            int index = LatencyHistogram.index(value);
+            assertTrue(value <= LatencyHistogram.upperBound(index), "above its bucket: " + value);
+            assertTrue(index == 0 || value > LatencyHistogram.upperBound(index - 1), "below its bucket: " + value);
+            // Log-linear: a bucket is at most 1/SUB_BUCKETS of its values wide
+            long width = LatencyHistogram.upperBound(index) - (index == 0 ? -1 : LatencyHistogram.upperBound(index - 1));
+            assertTrue(width <= Math.max(1, value / LatencyHistogram.SUB_BUCKETS + 1), "bucket too wide at " + value);
+        }
+    }
+
+    @Test
+    void bucketBoundariesAreContiguous() {
+        for (long value : new long[] {31, 32, 33, 63, 64, 65, 1_000, 1_000_000, 1L << 39, (1L << 40) - 1}) {
+            int index = LatencyHistogram.index(value);
+            assertEquals(index, LatencyHistogram.index(LatencyHistogram.upperBound(index)));
+            assertEquals(index + 1, LatencyHistogram.index(LatencyHistogram.upperBound(index) + 1));
+        }
+    }
+
+    @Test
+    void hugeValuesShareTheLastBucket() {
+        int last = LatencyHistogram.index(Long.MAX_VALUE);
+        assertEquals(last, LatencyHistogram.index(1L << 50));
+        assertTrue(LatencyHistogram.index(1L << 40) <= last);
+    }
+
+    @Test
+    void percentilesAreWithinABucketOfTheTruth() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1_000L);
+        }
+        LatencyHistogram.Summary summary = histogram.snapshot();
+        assertEquals(1000, summary.count());
+        assertEquals(1_000_000L, summary.maxNanos());
+        assertEquals(500_500_000L, summary.sumNanos());
+        assertWithin(500_000, summary.p50());
+        assertWithin(900_000, summary.p90());
+        assertWithin(990_000, summary.p99());
+        assertWithin(999_000, summary.p999());
+        assertEquals(500_500.0, summary.meanNanos());
+    }
+
+    @Test
+    void percentilesNeverPassTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000_001);
+        LatencyHistogram.Summary summary = histogram.snapshot();
+        assertEquals(1_000_001, summary.p50());
+        assertEquals(1_000_001, summary.p999());
+    }
+
+    @Test
+    void negativeDurationsCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        LatencyHistogram.Summary summary = histogram.snapshot();
+        assertEquals(1, summary.count());
+        assertEquals(0, summary.sumNanos());
+        assertEquals(0, summary.p99());
+    }
+
+    @Test
+    void emptyHistogramReportsZeros() {
+        LatencyHistogram.Summary summary = new LatencyHistogram().snapshot();
+        assertEquals(new LatencyHistogram.Summary(0, 0, 0, 0, 0, 0, 0), summary);
+        assertEquals(0.0, summary.meanNanos());
+    }
+
+    // Never under-reported, and over by no more than the bucket width
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / LatencyHistogram.SUB_BUCKETS,
+            "expected about " + expected + " but was " + actual);
+    }
+}
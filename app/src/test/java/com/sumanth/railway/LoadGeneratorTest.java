@@ -0,0 +1,106 @@
+package com.sumanth.railway;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class LoadGeneratorTest {
+    private static final int SEATS = 3;
+
+    private DataSource dataSource;
+    private RailwayService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = TestDatabase.create();
+        service = TestDatabase.service(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.close();
+    }
+
+    private static LoadGenerator.Settings settings(Map<LoadGenerator.Operation, Integer> mix) {
+        return new LoadGenerator.Settings(4, 2, SEATS, 2, 200, Duration.ofMillis(300), 4, mix);
+    }
+
+    private static Map<LoadGenerator.Operation, Integer> mix(LoadGenerator.Operation... operations) {
+        Map<LoadGenerator.Operation, Integer> mix = new EnumMap<>(LoadGenerator.Operation.class);
+        for (LoadGenerator.Operation operation : operations) {
+            mix.put(operation, 1);
+        }
+        return mix;
+    }
+
+    @Test
+    void settingsThatCannotRunAreRejected() {
+        Map<LoadGenerator.Operation, Integer> mix = mix(LoadGenerator.Operation.LIST);
+        Duration second = Duration.ofSeconds(1);
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Settings.defaults(0, second, 4));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Settings.defaults(-5, second, 4));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Settings.defaults(Double.NaN, second, 4));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Settings.defaults(2e9, second, 4));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Settings.defaults(100, second, 0));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Settings.defaults(100, Duration.ZERO, 4));
+        assertThrows(IllegalArgumentException.class,
+            () -> new LoadGenerator.Settings(4, 2, SEATS, 0, 100, second, 4, mix));
+        assertDoesNotThrow(() -> LoadGenerator.Settings.defaults(LoadGenerator.MAX_RATE_PER_SECOND, second, 1));
+    }
+
+    @Test
+    void bookingsAndCancellationsLeaveEveryDepartureConsistent() throws Exception {
+        LoadGenerator.Report report = new LoadGenerator(service,
+            settings(mix(LoadGenerator.Operation.BOOK, LoadGenerator.Operation.CANCEL))).run();
+
+        assertTrue(report.offered() > 0);
+        assertFalse(report.departures().isEmpty(), "the run booked something");
+        assertEquals(List.of(), report.problems());
+        for (LoadGenerator.Departure departure : report.departures()) {
+            assertEquals(SEATS, departure.capacity());
+            assertTrue(departure.booked() <= SEATS, departure.toString());
+        }
+    }
+
+    @Test
+    void checkerReportsADepartureTheCountersDoNotMatch() throws Exception {
+        // A synthetic train from an earlier run, with more reservations than seats written behind the service's back
+        service.addTrain(new RailwayService.Train("Load Test 1", LoadGenerator.FIRST_TRAIN_NO, "LOADTEST-0",
+            "LOADTEST-1", "synthetic", SEATS));
+        String userId = TestDatabase.register(service).userId();
+        LocalDate day = LocalDate.now().plusDays(1);
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "INSERT INTO reservations (user_id, train_no, berth_type, meals_required, departure_date) " +
+                 "VALUES (?, ?, 'LOWER', FALSE, ?)")) {
+            for (int i = 0; i < SEATS + 1; i++) {
+                pstmt.setString(1, userId);
+                pstmt.setInt(2, LoadGenerator.FIRST_TRAIN_NO);
+                pstmt.setDate(3, java.sql.Date.valueOf(day));
+                pstmt.executeUpdate();
+            }
+        }
+
+        LoadGenerator.Report report = new LoadGenerator(service, settings(mix(LoadGenerator.Operation.LIST))).run();
+
+        assertEquals(1, report.problems().size());
+        LoadGenerator.Departure departure = report.problems().get(0);
+        assertEquals(LoadGenerator.FIRST_TRAIN_NO, departure.trainNo());
+        assertEquals(day, departure.departureDate());
+        assertEquals(SEATS + 1, departure.booked());
+        assertTrue(departure.oversold());
+        // The in-memory counter never saw those rows
+        assertEquals(SEATS, departure.available());
+        assertTrue(departure.inconsistent());
+    }
+}
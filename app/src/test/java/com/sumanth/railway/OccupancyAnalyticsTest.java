@@ -0,0 +1,216 @@
+package com.sumanth.railway;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OccupancyAnalyticsTest {
+    private static final int TRAIN = 501;
+    private static final LocalDate DAY = LocalDate.of(2030, 6, 1);
+
+    private static OccupancyAnalytics analytics() {
+        return new OccupancyAnalytics(List.of(), trainNo -> 10, 2);
+    }
+
+    private static long booked(OccupancyAnalytics analytics, LocalDate from, LocalDate to) {
+        return analytics.occupancy(TRAIN, from, to).booked();
+    }
+
+    // A reservation as the service would have written it, with the id chosen by the test
+    private static void insert(DataSource dataSource, int reservationId, String userId, LocalDate departureDate,
+                               String berthType, boolean meals) throws Exception {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "INSERT INTO reservations (reservation_id, user_id, train_no, berth_type, meals_required, " +
+                 "departure_date) VALUES (?, ?, ?, ?, ?, ?)")) {
+            pstmt.setInt(1, reservationId);
+            pstmt.setString(2, userId);
+            pstmt.setInt(3, TRAIN);
+            pstmt.setString(4, berthType);
+            pstmt.setBoolean(5, meals);
+            pstmt.setDate(6, java.sql.Date.valueOf(departureDate));
+            pstmt.executeUpdate();
+        }
+    }
+
+    @Test
+    void countsEveryMeasureAndTakesCancellationsOff() {
+        OccupancyAnalytics analytics = analytics();
+        analytics.booked(TRAIN, DAY, "LOWER", true);
+        analytics.booked(TRAIN, DAY, "side", false);
+        analytics.booked(TRAIN, DAY.plusDays(1), "UPPER", true);
+        analytics.cancelled(TRAIN, DAY, "LOWER", true);
+
+        OccupancyAnalytics.Occupancy occupancy = analytics.occupancy(TRAIN, DAY, DAY.plusDays(1));
+        assertEquals(20, occupancy.seatCapacity());
+        assertEquals(2, occupancy.booked());
+        assertEquals(0, occupancy.lower());
+        assertEquals(1, occupancy.side());
+        assertEquals(1, occupancy.upper());
+        assertEquals(1, occupancy.meals());
+        assertEquals(0.1, occupancy.loadFactor(), 1e-9);
+        assertEquals(0.5, occupancy.mealShare(), 1e-9);
+
+        assertEquals(0, analytics.occupancy(999, DAY, DAY).booked(), "a train with no changes");
+    }
+
+    @Test
+    void bookingsBeforeTheFirstDayGrowTheTreesBackwards() {
+        OccupancyAnalytics analytics = analytics();
+        analytics.booked(TRAIN, DAY, "LOWER", false);
+        // Inside the slack kept before the first day, then well before it
+        analytics.booked(TRAIN, DAY.minusDays(3), "LOWER", false);
+        analytics.booked(TRAIN, DAY.minusDays(200), "MIDDLE", false);
+
+        assertEquals(3, booked(analytics, DAY.minusDays(365), DAY.plusDays(365)));
+        assertEquals(1, booked(analytics, DAY.minusDays(200), DAY.minusDays(200)));
+        assertEquals(2, booked(analytics, DAY.minusDays(3), DAY));
+        assertEquals(0, booked(analytics, DAY.minusDays(199), DAY.minusDays(4)));
+        assertEquals(1, analytics.occupancy(TRAIN, DAY.minusDays(300), DAY.minusDays(100)).middle());
+    }
+
+    @Test
+    void bookingsPastTheInitialSpanGrowTheTreesForwards() {
+        OccupancyAnalytics analytics = analytics();
+        analytics.booked(TRAIN, DAY, "LOWER", false);
+        analytics.booked(TRAIN, DAY.plusDays(55), "LOWER", false);
+        analytics.booked(TRAIN, DAY.plusDays(56), "LOWER", false);
+        analytics.booked(TRAIN, DAY.plusDays(400), "LOWER", false);
+
+        assertEquals(4, booked(analytics, DAY, DAY.plusDays(400)));
+        assertEquals(2, booked(analytics, DAY.plusDays(55), DAY.plusDays(56)));
+        assertEquals(1, booked(analytics, DAY.plusDays(56), DAY.plusDays(399)));
+        assertEquals(1, booked(analytics, DAY.plusDays(400), DAY.plusDays(1000)));
+    }
+
+    @Test
+    void rangeTotalsOverGrownTreesMatchADirectCount() {
+        OccupancyAnalytics analytics = analytics();
+        Map<Integer, Integer> perDay = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 2_000; i++) {
+            int offset = random.nextInt(1_000) - 500;
+            boolean cancel = perDay.getOrDefault(offset, 0) > 0 && random.nextInt(4) == 0;
+            if (cancel) {
+                analytics.cancelled(TRAIN, DAY.plusDays(offset), "LOWER", false);
+                perDay.merge(offset, -1, Integer::sum);
+            } else {
+                analytics.booked(TRAIN, DAY.plusDays(offset), "LOWER", false);
+                perDay.merge(offset, 1, Integer::sum);
+            }
+        }
+
+        for (int i = 0; i < 500; i++) {
+            int from = random.nextInt(1_200) - 600;
+            int to = from + random.nextInt(300);
+            long expected = 0;
+            for (int day = from; day <= to; day++) {
+                expected += perDay.getOrDefault(day, 0);
+            }
+            assertEquals(expected, booked(analytics, DAY.plusDays(from), DAY.plusDays(to)), from + ".." + to);
+        }
+    }
+
+    @Test
+    void busiestTrainsComeFirst() {
+        OccupancyAnalytics analytics = new OccupancyAnalytics(List.of(), trainNo -> trainNo == 1 ? 2 : 100, 2);
+        analytics.booked(1, DAY, "LOWER", false);
+        analytics.booked(2, DAY, "LOWER", false);
+        analytics.booked(2, DAY, "LOWER", false);
+        analytics.booked(3, DAY.plusDays(30), "LOWER", false);
+
+        List<OccupancyAnalytics.Occupancy> rows = analytics.occupancy(DAY, DAY);
+        assertEquals(List.of(1, 2), rows.stream().map(OccupancyAnalytics.Occupancy::trainNo).toList());
+    }
+
+    @Test
+    void rebuildCountsEveryChunkOfTheReservationTable() throws Exception {
+        DataSource dataSource = TestDatabase.create();
+        RailwayService service = TestDatabase.service(dataSource);
+        OccupancyAnalytics analytics = new OccupancyAnalytics(List.of(dataSource), trainNo -> 10, 3);
+        try {
+            service.addTrain(TestDatabase.train(TRAIN, 10));
+            String userId = TestDatabase.register(service).userId();
+            // Ids spread past several chunks, so the range is split and read by parallel tasks
+            int[] ids = {1, 2, OccupancyAnalytics.REBUILD_CHUNK + 7, 3 * OccupancyAnalytics.REBUILD_CHUNK,
+                5 * OccupancyAnalytics.REBUILD_CHUNK + 1};
+            for (int i = 0; i < ids.length; i++) {
+                insert(dataSource, ids[i], userId, DAY.plusDays(i % 2), i % 2 == 0 ? "LOWER" : "SIDE", i < 2);
+            }
+
+            analytics.booked(TRAIN, DAY.plusDays(90), "LOWER", false);
+            analytics.rebuild();
+
+            OccupancyAnalytics.Occupancy first = analytics.occupancy(TRAIN, DAY, DAY);
+            assertEquals(3, first.booked());
+            assertEquals(3, first.lower());
+            assertEquals(1, first.meals());
+            OccupancyAnalytics.Occupancy second = analytics.occupancy(TRAIN, DAY.plusDays(1), DAY.plusDays(1));
+            assertEquals(2, second.booked());
+            assertEquals(2, second.side());
+            assertEquals(0, booked(analytics, DAY.plusDays(2), DAY.plusDays(365)), "counts before the rebuild are gone");
+        } finally {
+            analytics.close();
+            service.close();
+        }
+    }
+
+    @Test
+    void restoreTakesDepartedTotalsAndLiveReservationsThenLaterChanges(@TempDir Path dir) throws Exception {
+        DataSource dataSource = TestDatabase.create();
+        RailwayService service = TestDatabase.service(dataSource);
+        OccupancyAnalytics analytics = analytics();
+        try {
+            service.addTrain(TestDatabase.train(TRAIN, 10));
+            String userId = TestDatabase.register(service).userId();
+            LocalDate departed = LocalDate.now().minusDays(5);
+            LocalDate upcoming = LocalDate.now().plusDays(5);
+            insert(dataSource, 1, userId, departed, "LOWER", true);
+            insert(dataSource, 2, userId, departed, "UPPER", false);
+            insert(dataSource, 3, userId, upcoming, "MIDDLE", true);
+            insert(dataSource, 4, userId, upcoming, "SIDE", false);
+            insert(dataSource, 5, userId, upcoming, "SIDE", false);
+
+            Path file = dir.resolve("state.snap");
+            StateSnapshot.write(dataSource, file);
+            StateSnapshot snapshot = StateSnapshot.open(file);
+            BitSet live = snapshot.reservationIds();
+            // As if reservation 5 were cancelled after the snapshot was written
+            live.clear(5);
+
+            analytics.booked(TRAIN, upcoming.plusDays(1), "LOWER", false);
+            analytics.restore(snapshot, live);
+
+            OccupancyAnalytics.Occupancy past = analytics.occupancy(TRAIN, departed, departed);
+            assertEquals(2, past.booked());
+            assertEquals(1, past.lower());
+            assertEquals(1, past.upper());
+            assertEquals(1, past.meals());
+            OccupancyAnalytics.Occupancy ahead = analytics.occupancy(TRAIN, upcoming, upcoming.plusDays(1));
+            assertEquals(2, ahead.booked(), "the cancelled reservation and the change before the restore are gone");
+            assertEquals(1, ahead.side());
+
+            // Replayed and live changes land on the restored trees
+            analytics.cancelled(TRAIN, upcoming, "MIDDLE", true);
+            analytics.cancelled(TRAIN, departed, "UPPER", false);
+            analytics.booked(TRAIN, upcoming.plusDays(100), "LOWER", true);
+            assertEquals(1, booked(analytics, upcoming, upcoming));
+            assertEquals(0, analytics.occupancy(TRAIN, upcoming, upcoming).meals());
+            assertEquals(1, booked(analytics, departed, departed));
+            assertEquals(3, booked(analytics, departed.minusDays(30), upcoming.plusDays(100)));
+        } finally {
+            service.close();
+        }
+    }
+}
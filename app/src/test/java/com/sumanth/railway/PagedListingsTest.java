@@ -0,0 +1,98 @@
+package com.sumanth.railway;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PagedListingsTest {
+    private RailwayService service;
+    private RailwayService.UserAccount user;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        service = TestDatabase.service(TestDatabase.create());
+        for (int trainNo = 101; trainNo <= 105; trainNo++) {
+            service.addTrain(TestDatabase.train(trainNo, 10));
+        }
+        user = TestDatabase.register(service);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.close();
+    }
+
+    @Test
+    void trainPagesFollowTheCursorToTheEnd() throws Exception {
+        PagedListings.Page<RailwayService.Train> first = service.trainPage(PagedListings.TrainFilter.NONE, null, 2);
+        assertEquals(List.of(101, 102), first.items().stream().map(RailwayService.Train::trainNo).toList());
+        assertEquals("102", first.nextCursor());
+
+        PagedListings.Page<RailwayService.Train> second = service.trainPage(PagedListings.TrainFilter.NONE, "102", 2);
+        assertEquals(List.of(103, 104), second.items().stream().map(RailwayService.Train::trainNo).toList());
+        PagedListings.Page<RailwayService.Train> last = service.trainPage(PagedListings.TrainFilter.NONE, "104", 2);
+        assertEquals(List.of(105), last.items().stream().map(RailwayService.Train::trainNo).toList());
+        assertNull(last.nextCursor());
+    }
+
+    @Test
+    void reservationPagesAreOrderedByDateThenId() throws Exception {
+        LocalDate today = LocalDate.now();
+        List<Integer> booked = new ArrayList<>();
+        for (int day : new int[] {3, 1, 3, 2, 1}) {
+            booked.add(service.book(user, 101, today.plusDays(day), "LOWER", false).reservationId());
+        }
+
+        List<RailwayService.Reservation> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            PagedListings.Page<RailwayService.Reservation> page =
+                service.reservationPage(user.userId(), PagedListings.ReservationFilter.NONE, cursor, 2);
+            seen.addAll(page.items());
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(List.of(booked.get(1), booked.get(4), booked.get(3), booked.get(0), booked.get(2)),
+            seen.stream().map(RailwayService.Reservation::reservationId).toList());
+    }
+
+    @Test
+    void reservationCursorIsTheLastDateAndId() throws Exception {
+        LocalDate day = LocalDate.now().plusDays(5);
+        int id = service.book(user, 102, day, "UPPER", false).reservationId();
+        service.book(user, 102, day, "UPPER", false);
+        PagedListings.Page<RailwayService.Reservation> page =
+            service.reservationPage(user.userId(), PagedListings.ReservationFilter.NONE, null, 1);
+        assertEquals(day + ":" + id, page.nextCursor());
+    }
+
+    @Test
+    void malformedCursorsAreRejected() {
+        PagedListings.ReservationFilter none = PagedListings.ReservationFilter.NONE;
+        assertThrows(IllegalArgumentException.class,
+            () -> service.trainPage(PagedListings.TrainFilter.NONE, "abc", 10));
+        assertThrows(IllegalArgumentException.class,
+            () -> service.reservationPage(user.userId(), none, "2026-01-01", 10));
+        assertThrows(IllegalArgumentException.class,
+            () -> service.reservationPage(user.userId(), none, "2026-01-01:x", 10));
+        assertThrows(DateTimeParseException.class,
+            () -> service.reservationPage(user.userId(), none, "yesterday:5", 10));
+    }
+
+    @Test
+    void pageSizeIsBounded() {
+        ServiceException tooBig = assertThrows(ServiceException.class,
+            () -> service.trainPage(PagedListings.TrainFilter.NONE, null, PagedListings.MAX_PAGE_SIZE + 1));
+        assertEquals(ServiceException.Kind.INVALID, tooBig.getKind());
+        assertThrows(ServiceException.class, () -> service.trainPage(PagedListings.TrainFilter.NONE, null, 0));
+    }
+}
@@ -0,0 +1,24 @@
+package com.sumanth.railway;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class QueryDiagnosticsTest {
+
+    @Test
+    void everyHotQueryIsExplainedAndUsesAnIndex() throws Exception {
+        List<QueryDiagnostics.Access> accesses = new QueryDiagnostics(TestDatabase.create()).explainAll();
+
+        Set<String> explained = accesses.stream().map(QueryDiagnostics.Access::query).collect(Collectors.toSet());
+        for (QueryDiagnostics.HotQuery query : QueryDiagnostics.HOT_QUERIES) {
+            assertTrue(explained.contains(query.name()), query.name());
+        }
+        for (QueryDiagnostics.Access access : accesses) {
+            assertFalse(access.fullScan(), access.toString());
+        }
+    }
+}
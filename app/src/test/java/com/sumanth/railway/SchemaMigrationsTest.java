@@ -0,0 +1,106 @@
+package com.sumanth.railway;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SchemaMigrationsTest {
+    private Connection conn;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        conn = TestDatabase.empty().getConnection();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        conn.close();
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    @Test
+    void versionsAreUniqueAndAscending() {
+        Set<Integer> versions = new HashSet<>();
+        int previous = 0;
+        for (SchemaMigrations.Migration migration : SchemaMigrations.MIGRATIONS) {
+            assertTrue(migration.version() > previous, "out of order: " + migration.version());
+            assertTrue(versions.add(migration.version()));
+            previous = migration.version();
+        }
+        assertEquals(previous, SchemaMigrations.latestVersion());
+    }
+
+    @Test
+    void freshDatabaseIsMigratedOnceAndThenCurrent() throws Exception {
+        assertFalse(SchemaMigrations.isCurrent(conn));
+        assertEquals(SchemaMigrations.MIGRATIONS.size(), SchemaMigrations.migrate(conn));
+        assertTrue(SchemaMigrations.isCurrent(conn));
+        assertEquals(0, SchemaMigrations.migrate(conn));
+
+        Map<Integer, SchemaMigrations.Applied> applied = SchemaMigrations.applied(conn);
+        for (SchemaMigrations.Migration migration : SchemaMigrations.MIGRATIONS) {
+            assertEquals(migration.checksum(), applied.get(migration.version()).checksum());
+        }
+    }
+
+    @Test
+    void editedMigrationStopsStartup() throws Exception {
+        SchemaMigrations.migrate(conn);
+        execute("UPDATE schema_version SET checksum = '" + "0".repeat(64) + "' WHERE version = 2");
+
+        assertFalse(SchemaMigrations.isCurrent(conn));
+        SQLException e = assertThrows(SQLException.class, () -> SchemaMigrations.migrate(conn));
+        assertTrue(e.getMessage().startsWith("Migration 2 (Indexes for reservation lookups) was changed after it was applied"),
+            e.getMessage());
+    }
+
+    @Test
+    void unknownVersionStopsStartup() throws Exception {
+        SchemaMigrations.migrate(conn);
+        execute("INSERT INTO schema_version (version, description, checksum, execution_ms) " +
+            "VALUES (999, 'From a newer build', '" + "0".repeat(64) + "', 0)");
+
+        assertFalse(SchemaMigrations.isCurrent(conn));
+        SQLException e = assertThrows(SQLException.class, () -> SchemaMigrations.migrate(conn));
+        assertTrue(e.getMessage().contains("[999]"), e.getMessage());
+    }
+
+    @Test
+    void stepsInterruptedBeforeTheyWereRecordedRunAgainSafely() throws Exception {
+        SchemaMigrations.migrate(conn);
+        // As if the DDL had run but the process died before the version rows were written
+        execute("DELETE FROM schema_version WHERE version >= 2");
+
+        assertEquals(SchemaMigrations.MIGRATIONS.size() - 1, SchemaMigrations.migrate(conn));
+        assertTrue(SchemaMigrations.isCurrent(conn));
+    }
+
+    @Test
+    void databaseFromBeforeVersioningIsAdopted() throws Exception {
+        for (String table : Schema.TABLES) {
+            execute(table);
+        }
+        execute("INSERT INTO train_details VALUES ('Old Train', 7, 'A', 'B', '', 50)");
+
+        assertEquals(SchemaMigrations.MIGRATIONS.size(), SchemaMigrations.migrate(conn));
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM train_details")) {
+            rs.next();
+            assertEquals(1, rs.getInt(1));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.sumanth.railway;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class SeatInventoryTest {
+    private static final int TRAIN = 12345;
+    private static final LocalDate DAY = LocalDate.of(2026, 3, 1);
+
+    private static SeatInventory inventory(int capacity) {
+        SeatInventory inventory = new SeatInventory(List.of());
+        inventory.registerTrain(TRAIN, capacity);
+        return inventory;
+    }
+
+    @Test
+    void concurrentReservationsNeverOversell() throws Exception {
+        int capacity = 500;
+        SeatInventory inventory = inventory(capacity);
+        int threads = 16;
+        int attemptsPerThread = 100;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    int won = 0;
+                    for (int i = 0; i < attemptsPerThread; i++) {
+                        if (inventory.tryReserve(TRAIN, DAY, 1)) won++;
+                    }
+                    return won;
+                }));
+            }
+            start.countDown();
+            int won = 0;
+            for (Future<Integer> result : results) {
+                won += result.get(30, TimeUnit.SECONDS);
+            }
+            assertEquals(capacity, won);
+            assertEquals(0, inventory.available(TRAIN, DAY));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void groupReservationIsAllOrNothing() {
+        SeatInventory inventory = inventory(5);
+        assertTrue(inventory.tryReserve(TRAIN, DAY, 3));
+        assertFalse(inventory.tryReserve(TRAIN, DAY, 3));
+        assertEquals(2, inventory.available(TRAIN, DAY));
+        assertTrue(inventory.tryReserve(TRAIN, DAY, 2));
+        assertEquals(0, inventory.available(TRAIN, DAY));
+    }
+
+    @Test
+    void releaseReturnsSeats() {
+        SeatInventory inventory = inventory(2);
+        assertTrue(inventory.tryReserve(TRAIN, DAY, 2));
+        inventory.release(TRAIN, DAY, 1);
+        assertEquals(1, inventory.available(TRAIN, DAY));
+        assertTrue(inventory.tryReserve(TRAIN, DAY, 1));
+    }
+
+    @Test
+    void unknownTrainHasNoSeats() {
+        SeatInventory inventory = inventory(10);
+        assertFalse(inventory.isKnownTrain(999));
+        assertFalse(inventory.tryReserve(999, DAY, 1));
+        assertEquals(0, inventory.available(999, DAY));
+    }
+
+    @Test
+    void availabilityLookupDoesNotCreateACounter() {
+        SeatInventory inventory = inventory(10);
+        assertEquals(10, inventory.available(TRAIN, DAY));
+        inventory.updateCapacity(TRAIN, 4);
+        // No counter existed to shift, so the new capacity applies as it is
+        assertEquals(4, inventory.available(TRAIN, DAY));
+    }
+
+    @Test
+    void capacityChangeKeepsExistingBookings() {
+        SeatInventory inventory = inventory(10);
+        assertTrue(inventory.tryReserve(TRAIN, DAY, 6));
+        inventory.updateCapacity(TRAIN, 8);
+        assertEquals(2, inventory.available(TRAIN, DAY));
+        inventory.updateCapacity(TRAIN, 4);
+        // Overbooked after the cut: reported as none left, and nothing more can be reserved
+        assertEquals(0, inventory.available(TRAIN, DAY));
+        assertFalse(inventory.tryReserve(TRAIN, DAY, 1));
+    }
+
+    @Test
+    void recordBookedCountsEvenPastCapacity() {
+        SeatInventory inventory = inventory(1);
+        inventory.recordBooked(TRAIN, DAY, 2);
+        assertEquals(0, inventory.available(TRAIN, DAY));
+        inventory.release(TRAIN, DAY, 1);
+        assertEquals(0, inventory.available(TRAIN, DAY));
+        inventory.release(TRAIN, DAY, 1);
+        assertEquals(1, inventory.available(TRAIN, DAY));
+    }
+}
@@ -0,0 +1,147 @@
+package com.sumanth.railway;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class SeatMapTest {
+
+    @Test
+    void allocatesThePreferredClassFirst() {
+        SeatMap map = new SeatMap(SeatMap.BERTHS_PER_COACH);
+        SeatMap.Berth first = map.allocate("lower");
+        SeatMap.Berth second = map.allocate("LOWER");
+        assertEquals(new SeatMap.Berth(1, 1, "LOWER"), first);
+        assertEquals(new SeatMap.Berth(1, 4, "LOWER"), second);
+        assertEquals(new SeatMap.Berth(1, 7, "SIDE"), map.allocate("SIDE"));
+        assertEquals("S1", first.coach());
+    }
+
+    @Test
+    void fallsBackToOtherClassesWhenThePreferredIsFull() {
+        // One bay: two berths of each class
+        SeatMap map = new SeatMap(8);
+        assertEquals("UPPER", map.allocate("UPPER").berthType());
+        assertEquals("UPPER", map.allocate("UPPER").berthType());
+        assertEquals(0, map.free("UPPER"));
+
+        SeatMap.Berth fallback = map.allocate("UPPER");
+        assertEquals("LOWER", fallback.berthType());
+    }
+
+    @Test
+    void returnsNullWhenEveryBerthIsTaken() {
+        int capacity = SeatMap.BERTHS_PER_COACH + 10;
+        SeatMap map = new SeatMap(capacity);
+        Set<SeatMap.Berth> berths = new HashSet<>();
+        for (int i = 0; i < capacity; i++) {
+            SeatMap.Berth berth = map.allocate("MIDDLE");
+            assertNotNull(berth);
+            assertTrue(berths.add(berth), "berth handed out twice: " + berth);
+        }
+        assertNull(map.allocate("MIDDLE"));
+        for (String berthClass : SeatMap.BERTH_CLASSES) {
+            assertEquals(0, map.free(berthClass));
+        }
+        // The partial second coach only has the berths the capacity covers
+        assertTrue(berths.stream().filter(b -> b.coachNo() == 2).allMatch(b -> b.seatNo() <= 10));
+    }
+
+    @Test
+    void releasedBerthIsHandedOutAgain() {
+        SeatMap map = new SeatMap(8);
+        for (int i = 0; i < 8; i++) map.allocate("SIDE");
+        map.release(1, 5);
+        assertEquals(new SeatMap.Berth(1, 5, "MIDDLE"), map.allocate("SIDE"));
+        assertNull(map.allocate("SIDE"));
+    }
+
+    @Test
+    void occupyRejectsTakenAndInvalidBerths() {
+        SeatMap map = new SeatMap(SeatMap.BERTHS_PER_COACH + 2);
+        assertTrue(map.occupy(2, 2));
+        assertFalse(map.occupy(2, 2));
+        assertFalse(map.occupy(1, 0));
+        assertFalse(map.occupy(1, SeatMap.BERTHS_PER_COACH + 1));
+        assertFalse(map.occupy(0, 1));
+        // The first coach's 18 middle berths; the second coach's only one is taken
+        assertEquals(18, map.free("MIDDLE"));
+    }
+
+    @Test
+    void assignmentsPastTheCapacityAreKeptButNeverAllocated() {
+        SeatMap map = new SeatMap(2);
+        assertTrue(map.occupy(1, 3), "beyond the capacity");
+        assertTrue(map.occupy(3, 1), "no third coach");
+        assertFalse(map.occupy(3, 1));
+        assertEquals(1, map.free("LOWER"));
+        assertEquals(0, map.free("UPPER"));
+        assertNotNull(map.allocate("LOWER"));
+        assertNotNull(map.allocate("LOWER"));
+        assertNull(map.allocate("LOWER"));
+
+        // Cancelling one of them frees it, though it is still not for sale until the capacity covers it
+        map.release(3, 1);
+        map.resize(SeatMap.BERTHS_PER_COACH * 3);
+        assertFalse(map.occupy(1, 3));
+        assertTrue(map.occupy(3, 1));
+    }
+
+    @Test
+    void unknownBerthTypeIsRejected() {
+        SeatMap map = new SeatMap(8);
+        assertThrows(IllegalArgumentException.class, () -> map.allocate("WINDOW"));
+    }
+
+    @Test
+    void resizeKeepsTakenBerths() {
+        SeatMap map = new SeatMap(8);
+        SeatMap.Berth lower = map.allocate("LOWER");
+        assertTrue(map.occupy(1, 8));
+
+        map.resize(SeatMap.BERTHS_PER_COACH * 2);
+        assertEquals(SeatMap.BERTHS_PER_COACH * 2, map.capacity());
+        assertFalse(map.occupy(lower.coachNo(), lower.seatNo()));
+        assertFalse(map.occupy(1, 8));
+        assertEquals(2 * 18 - 1, map.free("LOWER"));
+        assertEquals(2 * 18 - 1, map.free("SIDE"));
+
+        // Shrinking takes berths past the new capacity off sale and keeps the rest
+        map.resize(4);
+        assertEquals(1, map.free("LOWER"));
+        assertEquals(0, map.free("SIDE"));
+        assertTrue(map.occupy(1, 4));
+        assertEquals(new SeatMap.Berth(1, 2, "MIDDLE"), map.allocate("LOWER"));
+        assertEquals(new SeatMap.Berth(1, 3, "UPPER"), map.allocate("LOWER"));
+        assertNull(map.allocate("LOWER"));
+    }
+
+    @Test
+    void berthsTakenPastAShrinkAreStillTakenAfterItGrowsBack() {
+        SeatMap map = new SeatMap(SeatMap.BERTHS_PER_COACH * 2);
+        assertTrue(map.occupy(1, 8));
+        assertTrue(map.occupy(2, 1));
+        assertTrue(map.occupy(2, 7));
+
+        map.resize(4);
+        assertEquals(0, map.free("SIDE"));
+        map.resize(SeatMap.BERTHS_PER_COACH * 2);
+
+        // Their seat_assignments rows are still there, so handing them out again would collide
+        assertFalse(map.occupy(1, 8));
+        assertFalse(map.occupy(2, 1));
+        assertFalse(map.occupy(2, 7));
+        assertEquals(2 * 18 - 1, map.free("LOWER"));
+        assertEquals(2 * 18 - 2, map.free("SIDE"));
+        for (int i = 0; i < 2 * SeatMap.BERTHS_PER_COACH - 3; i++) {
+            SeatMap.Berth berth = map.allocate("SIDE");
+            assertNotNull(berth);
+            assertNotEquals(new SeatMap.Berth(2, 1, "LOWER"), berth);
+            assertNotEquals(new SeatMap.Berth(2, 7, "SIDE"), berth);
+            assertNotEquals(new SeatMap.Berth(1, 8, "SIDE"), berth);
+        }
+        assertNull(map.allocate("SIDE"));
+    }
+}
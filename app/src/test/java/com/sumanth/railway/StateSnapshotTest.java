@@ -0,0 +1,168 @@
+package com.sumanth.railway;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StateSnapshotTest {
+    private static final int TRAIN = 601;
+    private static final int SEATS = 4;
+    private static final LocalDate DAY = LocalDate.now().plusDays(7);
+
+    @TempDir
+    Path dir;
+    private Path file;
+    private DataSource dataSource;
+    private RailwayService service;
+    private RailwayService restored;
+    private RailwayService.UserAccount user;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = dir.resolve("state.snap");
+        dataSource = TestDatabase.create();
+        service = TestDatabase.service(dataSource);
+        service.addTrain(TestDatabase.train(TRAIN, SEATS));
+        user = TestDatabase.register(service);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.close();
+        if (restored != null) restored.close();
+    }
+
+    // A second service over the same database, as after a restart
+    private RailwayService restart() throws Exception {
+        service.close();
+        restored = TestDatabase.service(dataSource);
+        return restored;
+    }
+
+    private int seatOf(RailwayService service, int reservationId) throws Exception {
+        return service.listReservations(user.userId()).stream()
+            .filter(reservation -> reservation.reservationId() == reservationId)
+            .findFirst().orElseThrow().seatNo();
+    }
+
+    // A reservation written the way the service writes one, with the id chosen by the test
+    private void insert(int reservationId, int seatNo) throws Exception {
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO reservations (reservation_id, user_id, train_no, berth_type, meals_required, " +
+                    "departure_date) VALUES (?, ?, ?, 'LOWER', FALSE, ?)")) {
+                pstmt.setInt(1, reservationId);
+                pstmt.setString(2, user.userId());
+                pstmt.setInt(3, TRAIN);
+                pstmt.setDate(4, java.sql.Date.valueOf(DAY));
+                pstmt.executeUpdate();
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO seat_assignments (reservation_id, train_no, departure_date, coach_no, seat_no) " +
+                    "VALUES (?, ?, ?, 1, ?)")) {
+                pstmt.setInt(1, reservationId);
+                pstmt.setInt(2, TRAIN);
+                pstmt.setDate(3, java.sql.Date.valueOf(DAY));
+                pstmt.setInt(4, seatNo);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    @Test
+    void restoreReplaysBookingsAndCancellationsMadeAfterTheSnapshot() throws Exception {
+        int first = service.book(user, TRAIN, DAY, "LOWER", false).reservationId();
+        int second = service.book(user, TRAIN, DAY, "LOWER", false).reservationId();
+        service.book(user, TRAIN, DAY, "LOWER", false);
+        StateSnapshot.write(dataSource, file);
+
+        service.cancelReservation(user.userId(), second);
+        service.book(user, TRAIN, DAY, "UPPER", true);
+        assertEquals(1, service.availableSeats(TRAIN, DAY));
+
+        RailwayService restarted = restart();
+        assertTrue(restarted.restoreSnapshot(file));
+        assertEquals(1, restarted.availableSeats(TRAIN, DAY));
+        assertEquals(3, restarted.occupancy(TRAIN, DAY, DAY).booked());
+        assertEquals(1, restarted.occupancy(TRAIN, DAY, DAY).meals());
+
+        // The seat map took the replayed cancellation and booking: once the last berth is sold, the only
+        // free one is the one freed next
+        restarted.book(user, TRAIN, DAY, "MIDDLE", false);
+        assertEquals(0, restarted.availableSeats(TRAIN, DAY));
+        int freed = seatOf(restarted, first);
+        restarted.cancelReservation(user.userId(), first);
+        assertEquals(1, restarted.availableSeats(TRAIN, DAY));
+        int rebooked = restarted.book(user, TRAIN, DAY, "SIDE", false).reservationId();
+        assertEquals(freed, seatOf(restarted, rebooked));
+
+        Set<Integer> seats = new HashSet<>();
+        for (RailwayService.Reservation reservation : restarted.listReservations(user.userId())) {
+            assertTrue(seats.add(reservation.seatNo()), "seat " + reservation.seatNo() + " sold twice");
+        }
+        assertEquals(SEATS, seats.size());
+        ServiceException e = assertThrows(ServiceException.class,
+            () -> restarted.book(user, TRAIN, DAY, "LOWER", false));
+        assertEquals(ServiceException.Kind.CONFLICT, e.getKind());
+    }
+
+    @Test
+    void rowsCommittedLateBelowTheWatermarkAreReplayedOnce() throws Exception {
+        int first = service.book(user, TRAIN, DAY, "LOWER", false).reservationId();
+        int second = service.book(user, TRAIN, DAY, "LOWER", false).reservationId();
+        Set<Integer> free = new TreeSet<>(Set.of(1, 2, 3, 4));
+        free.remove(seatOf(service, first));
+        free.remove(seatOf(service, second));
+        List<Integer> seats = List.copyOf(free);
+
+        // Id 50 takes the watermark up; id 40 was handed out before it but commits after the snapshot
+        insert(50, seats.get(0));
+        StateSnapshot.write(dataSource, file);
+        insert(40, seats.get(1));
+
+        RailwayService restarted = restart();
+        assertTrue(restarted.restoreSnapshot(file));
+        // Rows inside the overlap that the snapshot already holds are not counted again
+        assertEquals(0, restarted.availableSeats(TRAIN, DAY));
+        assertEquals(4, restarted.occupancy(TRAIN, DAY, DAY).booked());
+
+        int freed = seatOf(restarted, first);
+        restarted.cancelReservation(user.userId(), first);
+        int rebooked = restarted.book(user, TRAIN, DAY, "LOWER", false).reservationId();
+        assertEquals(freed, seatOf(restarted, rebooked), "the late row's berth is taken in the restored map");
+    }
+
+    @Test
+    void versionOneFileIsIgnoredAndStateComesFromTheDatabase() throws Exception {
+        service.book(user, TRAIN, DAY, "LOWER", false);
+        StateSnapshot.write(dataSource, file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, 1), 4);
+        }
+
+        IOException e = assertThrows(IOException.class, () -> StateSnapshot.open(file));
+        assertEquals("Unsupported snapshot version 1", e.getMessage());
+
+        service.book(user, TRAIN, DAY, "LOWER", false);
+        RailwayService restarted = restart();
+        assertFalse(restarted.restoreSnapshot(file));
+        assertEquals(SEATS - 2, restarted.availableSeats(TRAIN, DAY));
+        assertEquals(2, restarted.occupancy(TRAIN, DAY, DAY).booked());
+    }
+}
@@ -0,0 +1,100 @@
+package com.sumanth.railway;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StationIndexTest {
+    private StationIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new StationIndex();
+        index.rebuild(List.of(
+            train(1, "New Delhi", "Mumbai Central"),
+            train(2, "New Delhi", "Chennai"),
+            train(3, "New Delhi", "Sāñchī"),
+            train(4, "Mumbai Central", "Chennai"),
+            train(5, "Munnar", "  chennai ")));
+    }
+
+    private static RailwayService.Train train(int trainNo, String from, String to) {
+        return new RailwayService.Train("Train " + trainNo, trainNo, from, to, "", 100);
+    }
+
+    private List<String> names(String query) {
+        return index.suggest(query, StationIndex.MAX_SUGGESTIONS).stream().map(StationIndex.Station::name).toList();
+    }
+
+    @Test
+    void prefixMatchesAreRankedByTrainsServed() {
+        assertEquals(List.of(new StationIndex.Station("Mumbai Central", 2), new StationIndex.Station("Munnar", 1)),
+            index.suggest("mu", 10));
+        assertEquals(List.of("Mumbai Central"), index.suggest("mu", 1).stream().map(StationIndex.Station::name).toList());
+    }
+
+    @Test
+    void spellingsOfOneStationAreCountedTogether() {
+        assertEquals(new StationIndex.Station("Chennai", 3), index.suggest("CHEN", 1).get(0));
+    }
+
+    @Test
+    void anyWordOfTheNameCanStartTheMatch() {
+        assertEquals(List.of("Mumbai Central"), names("central"));
+        assertEquals(List.of("New Delhi"), names("delhi"));
+        assertEquals(List.of("New Delhi"), names("new   delhi"));
+    }
+
+    @Test
+    void accentsAndCaseAreFolded() {
+        assertEquals(List.of("Sāñchī"), names("SANCHI"));
+        assertEquals("sanchi", StationIndex.fold(" Sāñchī! "));
+        assertEquals("new delhi", StationIndex.fold("New-Delhi"));
+    }
+
+    @Test
+    void typosWithinTheAllowedDistanceStillMatch() {
+        // One edit allowed from three characters; "cen" of Central is one edit away too
+        assertEquals(List.of("Chennai", "Mumbai Central"), names("chn"));
+        // Two from six: a missing letter and a transposition
+        assertEquals(List.of("Chennai"), names("chenai"));
+        assertEquals(List.of("Mumbai Central"), names("mumbia"));
+        assertEquals(List.of("Sāñchī"), names("snachi"));
+    }
+
+    @Test
+    void shortQueriesAndFirstLetterTyposDoNotMatchFuzzily() {
+        assertEquals(List.of(), names("mx"));
+        assertEquals(List.of(), names("xhennai"));
+        assertEquals(List.of(), names("chxxxx"));
+        assertEquals(List.of(), names(" - "));
+        assertEquals(0, StationIndex.maxDistance(2));
+        assertEquals(1, StationIndex.maxDistance(5));
+        assertEquals(2, StationIndex.maxDistance(6));
+    }
+
+    @Test
+    void exactMatchesComeBeforeFuzzyOnes() {
+        // Chennai is the only prefix match; Central's "cent" is one edit from "chen"
+        assertEquals(List.of("Chennai", "Mumbai Central"), names("chen"));
+
+        index.addTrain(train(6, "Munar", "Chennai"));
+        // "munar" is an exact prefix of Munar and one edit from Munnar
+        assertEquals(List.of("Munar", "Munnar"), names("munar"));
+    }
+
+    @Test
+    void trainChangesAdjustTheCounts() {
+        index.removeTrain(1);
+        index.removeTrain(4);
+        assertEquals(List.of("Munnar"), names("mu"));
+
+        // Re-adding a train number moves it: its old stations are released
+        index.addTrain(train(5, "Ooty", "Chennai"));
+        assertEquals(List.of(), names("mun"));
+        assertEquals(List.of(new StationIndex.Station("Chennai", 2)), index.suggest("chennai", 10));
+        assertEquals(List.of("Ooty"), names("oo"));
+    }
+}
@@ -0,0 +1,63 @@
+package com.sumanth.railway;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcDataSource;
+
+/**
+ * A fresh in-memory H2 database in MySQL mode per call, migrated to the current schema, and a
+ * service over it wired the way the application wires a single unsharded database.
+ */
+final class TestDatabase {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static final AtomicInteger USERS = new AtomicInteger();
+
+    private TestDatabase() {}
+
+    static DataSource create() throws SQLException {
+        DataSource dataSource = empty();
+        try (Connection conn = dataSource.getConnection()) {
+            SchemaMigrations.migrate(conn);
+        }
+        return dataSource;
+    }
+
+    // No tables at all, not even schema_version
+    static DataSource empty() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:test" + DATABASES.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        return dataSource;
+    }
+
+    // The lowest BCrypt cost, so registering users does not dominate the test run
+    static RailwayService service(DataSource dataSource) throws SQLException {
+        return service(dataSource, AuditLog.disabled());
+    }
+
+    static RailwayService service(DataSource dataSource, AuditLog auditLog) throws SQLException {
+        SeatInventory seatInventory = new SeatInventory(dataSource);
+        RailwayService service = new RailwayService(ShardRouter.single(DataSources.single(dataSource)), seatInventory,
+            new TrainCatalogCache(100, Duration.ofMinutes(1)), new AuthEngine(2, 64, 4), auditLog, new Metrics());
+        seatInventory.load();
+        service.loadRouteGraph();
+        service.loadWaitlist();
+        service.rebuildAnalytics();
+        return service;
+    }
+
+    static RailwayService.Train train(int trainNo, int seats) {
+        return new RailwayService.Train("Train " + trainNo, trainNo, "Origin", "Terminus", "", seats);
+    }
+
+    // A valid new user; the number keeps the username and Aadhaar unique
+    static RailwayService.UserAccount register(RailwayService service) throws SQLException, ServiceException {
+        int n = USERS.incrementAndGet();
+        String userId = service.registerUser(new RailwayService.NewUser("Test User", 30, "9999999999",
+            String.format("%012d", n), "Somewhere", "560001", "tester" + n, "secret12"));
+        return new RailwayService.UserAccount(userId, "Test User");
+    }
+}
@@ -0,0 +1,150 @@
+package com.sumanth.railway;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class TrainCatalogCacheTest {
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private static RailwayService.Train train(int trainNo, String name) {
+        return new RailwayService.Train(name, trainNo, "A", "B", "", 100);
+    }
+
+    private TrainCatalogCache.Loader<RailwayService.Train> loading(RailwayService.Train train) {
+        return () -> {
+            loads.incrementAndGet();
+            return train;
+        };
+    }
+
+    @Test
+    void secondReadIsAHit() throws Exception {
+        TrainCatalogCache cache = new TrainCatalogCache(10, Duration.ofMinutes(1));
+        RailwayService.Train train = train(1, "Express");
+        assertSame(train, cache.get(1, loading(train)));
+        assertSame(train, cache.get(1, loading(train(1, "Other"))));
+        assertEquals(1, loads.get());
+        TrainCatalogCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(0.5, stats.hitRatio());
+    }
+
+    @Test
+    void missingTrainsAreNotCached() throws Exception {
+        TrainCatalogCache cache = new TrainCatalogCache(10, Duration.ofMinutes(1));
+        assertNull(cache.get(1, loading(null)));
+        assertNull(cache.get(1, loading(null)));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void expiredEntriesAreLoadedAgain() throws Exception {
+        TrainCatalogCache cache = new TrainCatalogCache(10, Duration.ZERO);
+        cache.get(1, loading(train(1, "Express")));
+        cache.get(1, loading(train(1, "Express")));
+        cache.getAll(() -> List.of(train(1, "Express")));
+        cache.getAll(() -> List.of(train(1, "Express")));
+        assertEquals(0, cache.stats().hits());
+        assertEquals(4, cache.stats().misses());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() throws Exception {
+        TrainCatalogCache cache = new TrainCatalogCache(2, Duration.ofMinutes(1));
+        cache.get(1, loading(train(1, "One")));
+        cache.get(2, loading(train(2, "Two")));
+        cache.get(1, loading(train(1, "One")));
+        cache.get(3, loading(train(3, "Three")));
+        assertEquals(1, cache.stats().evictions());
+        assertEquals(2, cache.stats().size());
+
+        loads.set(0);
+        cache.get(1, loading(train(1, "One")));
+        assertEquals(0, loads.get(), "recently used entry was kept");
+        cache.get(2, loading(train(2, "Two")));
+        assertEquals(1, loads.get(), "eldest entry was evicted");
+    }
+
+    @Test
+    void invalidationDropsTheTrainAndTheListing() throws Exception {
+        TrainCatalogCache cache = new TrainCatalogCache(10, Duration.ofMinutes(1));
+        cache.getAll(() -> List.of(train(1, "One"), train(2, "Two")));
+        // The listing warmed the per-train entries
+        assertEquals("Two", cache.get(2, loading(train(2, "Stale"))).trainName());
+        assertEquals(0, loads.get());
+
+        cache.invalidate(2);
+        assertEquals("Renamed", cache.get(2, loading(train(2, "Renamed"))).trainName());
+        assertEquals("One", cache.get(1, loading(train(1, "Stale"))).trainName());
+        List<RailwayService.Train> reloaded = cache.getAll(() -> List.of(train(1, "One"), train(2, "Renamed")));
+        assertEquals("Renamed", reloaded.get(1).trainName());
+        assertEquals(1, cache.stats().invalidations());
+    }
+
+    @Test
+    void loadRacingAnInvalidationIsNotCached() throws Exception {
+        TrainCatalogCache cache = new TrainCatalogCache(10, Duration.ofMinutes(1));
+        // The write lands after the loader read the row but before the result is stored
+        RailwayService.Train stale = cache.get(1, () -> {
+            cache.invalidate(1);
+            return train(1, "Before");
+        });
+        assertEquals("Before", stale.trainName(), "the caller still gets what it read");
+        assertEquals("After", cache.get(1, loading(train(1, "After"))).trainName());
+        assertEquals(0, cache.stats().hits());
+    }
+
+    @Test
+    void listingRacingAnInvalidationIsNotCached() throws Exception {
+        TrainCatalogCache cache = new TrainCatalogCache(10, Duration.ofMinutes(1));
+        cache.getAll(() -> {
+            cache.invalidateAll();
+            return List.of(train(1, "Before"));
+        });
+        assertEquals(0, cache.stats().size(), "per-train entries were not warmed either");
+        List<RailwayService.Train> all = cache.getAll(() -> List.of(train(1, "After")));
+        assertEquals("After", all.get(0).trainName());
+    }
+
+    @Test
+    void loadOnAnotherThreadRacingAnInvalidationIsNotCached() throws Exception {
+        TrainCatalogCache cache = new TrainCatalogCache(10, Duration.ofMinutes(1));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        CompletableFuture<RailwayService.Train> reader = CompletableFuture.supplyAsync(() -> {
+            try {
+                return cache.get(7, () -> {
+                    started.countDown();
+                    await(written);
+                    return train(7, "Before");
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        await(started);
+        cache.invalidate(7);
+        written.countDown();
+        assertEquals("Before", reader.get(10, TimeUnit.SECONDS).trainName());
+
+        assertEquals("After", cache.get(7, loading(train(7, "After"))).trainName());
+        assertEquals(1, loads.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.sumanth.railway;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mindrot.jbcrypt.BCrypt;
+
+class UserImportTest {
+    private static final String HEADER = "user_id,full_name,age,phone,aadhaar,address,pincode,username,password,password_hash";
+
+    @TempDir
+    Path dir;
+    private DataSource dataSource;
+    private RailwayService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = TestDatabase.create();
+        service = TestDatabase.service(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.close();
+    }
+
+    private Path csv(String... rows) throws Exception {
+        Path file = dir.resolve("users.csv");
+        Files.write(file, List.of(rows));
+        return file;
+    }
+
+    private static String row(String userId, String name, String aadhaar, String address, String username,
+                              String password, String hash) {
+        return String.join(",", userId, name, "30", "9876543210", aadhaar, address, "560001", username,
+            password, hash);
+    }
+
+    private List<String> rejectReasons(UserImport.Report report) throws Exception {
+        return Files.readAllLines(report.rejectedRows()).stream().skip(1).map(line -> UserImport.split(line).get(1))
+            .toList();
+    }
+
+    private int users() throws Exception {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM users")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    void validRowsAreImportedAndBadOnesReported() throws Exception {
+        String hash = BCrypt.hashpw("hashed-secret", BCrypt.gensalt(4));
+        Path file = csv(HEADER,
+            row("U1", "Asha Rao", "100000000001", "1 Main Road", "asha", "secret123", ""),
+            row("", "Ravi Kumar", "100000000002", "2 Main Road", "ravi", "", hash),
+            "",
+            row("", "Asha Again", "100000000003", "3 Main Road", "asha", "secret123", ""),
+            row("", "Bad Phone", "100000000004", "4 Main Road", "badphone", "secret123", "").replace("9876543210", "12"),
+            row("", "A".repeat(51), "100000000005", "5 Main Road", "longname", "secret123", ""),
+            row("", "Long Address", "100000000006", "\"" + "x".repeat(101) + "\"", "longaddr", "secret123", ""),
+            row("U".repeat(31), "Long Id", "100000000007", "7 Main Road", "longid", "secret123", ""),
+            ",Short Row,30",
+            row("", "Bad Hash", "100000000009", "9 Main Road", "badhash", "", "$2a$04$tooshort"));
+
+        UserImport.Report report = new UserImport(dataSource, 4, 2).run(file);
+
+        assertEquals(9, report.rowsRead(), "the blank line is skipped");
+        assertEquals(2, report.imported());
+        assertEquals(7, report.rejected());
+        assertEquals(2, users());
+        assertEquals(List.of(
+                "Duplicate username or Aadhaar in file",
+                "Invalid phone number",
+                "full_name is longer than 50 characters",
+                "address is longer than 100 characters",
+                "user_id is longer than 30 characters",
+                "Expected 10 fields, found 3",
+                "Invalid password hash"),
+            rejectReasons(report));
+
+        // Plain passwords are hashed on the way in, existing hashes kept
+        assertEquals("U1", service.authenticate("asha", "secret123").userId());
+        assertNotNull(service.authenticate("ravi", "hashed-secret"));
+    }
+
+    @Test
+    void rowsAlreadyInTheDatabaseAreRejectedOneByOne() throws Exception {
+        Path file = csv(HEADER,
+            row("U1", "Asha Rao", "100000000001", "1 Main Road", "asha", "secret123", ""),
+            row("U2", "Ravi Kumar", "100000000002", "2 Main Road", "ravi", "secret123", ""));
+        assertEquals(2, new UserImport(dataSource, 4, 2).run(file).imported());
+
+        // The batch fails on the second row and is replayed row by row, so the new one still goes in
+        file = csv(HEADER,
+            row("U3", "Meera Das", "100000000003", "3 Main Road", "meera", "secret123", ""),
+            row("U4", "Ravi Again", "100000000004", "4 Main Road", "ravi", "secret123", ""));
+        UserImport.Report report = new UserImport(dataSource, 4, 2).run(file);
+
+        assertEquals(1, report.imported());
+        assertEquals(List.of("User id, username or Aadhaar already registered"), rejectReasons(report));
+        assertEquals(3, users());
+    }
+
+    @Test
+    void missingColumnsFailTheWholeImport() throws Exception {
+        Path file = csv("full_name,age,phone,aadhaar,address,pincode,username");
+        Exception e = assertThrows(IOException.class, () -> new UserImport(dataSource, 4).run(file));
+        assertEquals("Need a password or password_hash column", e.getMessage());
+        assertEquals(0, users());
+    }
+}
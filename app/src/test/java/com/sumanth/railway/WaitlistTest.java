@@ -0,0 +1,136 @@
+package com.sumanth.railway;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class WaitlistTest {
+    private static final int TRAIN = 201;
+    private static final LocalDate DAY = LocalDate.now().plusDays(10);
+
+    private RailwayService service;
+    private RailwayService.UserAccount first;
+    private RailwayService.UserAccount second;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        service = TestDatabase.service(TestDatabase.create());
+        service.addTrain(TestDatabase.train(TRAIN, 2));
+        first = TestDatabase.register(service);
+        second = TestDatabase.register(service);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.close();
+    }
+
+    // Promotion runs on the promoter thread a short delay after the seat is freed
+    private static void waitFor(Check check) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!check.passes()) {
+            if (System.nanoTime() > deadline) fail("Timed out waiting for the waitlist promoter");
+            Thread.sleep(20);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Check {
+        boolean passes() throws Exception;
+    }
+
+    @Test
+    void joiningIsRefusedWhileSeatsAreFree() throws Exception {
+        RailwayService.UserAccount waiting = TestDatabase.register(service);
+        ServiceException e = assertThrows(ServiceException.class,
+            () -> service.joinWaitlist(waiting.userId(), TRAIN, DAY, "LOWER", false));
+        assertEquals(ServiceException.Kind.CONFLICT, e.getKind());
+        assertEquals(List.of(), service.listWaitlist(waiting.userId()));
+    }
+
+    @Test
+    void cancellationPromotesTheHeadOfTheQueue() throws Exception {
+        int cancelled = service.book(first, TRAIN, DAY, "LOWER", false).reservationId();
+        service.book(second, TRAIN, DAY, "LOWER", false);
+        assertEquals(0, service.availableSeats(TRAIN, DAY));
+
+        RailwayService.UserAccount head = TestDatabase.register(service);
+        RailwayService.UserAccount next = TestDatabase.register(service);
+        Waitlist.Entry entry = service.joinWaitlist(head.userId(), TRAIN, DAY, "UPPER", true);
+        assertEquals(1, entry.position());
+        assertEquals("RAC 1", entry.status());
+        assertEquals(2, service.joinWaitlist(next.userId(), TRAIN, DAY, "SIDE", false).position());
+
+        service.cancelReservation(first.userId(), cancelled);
+        waitFor(() -> service.listWaitlist(head.userId()).isEmpty());
+
+        List<RailwayService.Reservation> promoted = service.listReservations(head.userId());
+        assertEquals(1, promoted.size());
+        assertEquals(DAY, promoted.get(0).departureDate());
+        // A two-berth train has no upper; the passenger gets the lower berth the cancellation freed
+        assertEquals("LOWER", promoted.get(0).berthType());
+        assertTrue(promoted.get(0).meals());
+
+        // The freed seat went to the queue, not back on sale, and the next in line moved up
+        assertEquals(0, service.availableSeats(TRAIN, DAY));
+        List<Waitlist.Entry> stillWaiting = service.listWaitlist(next.userId());
+        assertEquals(1, stillWaiting.size());
+        assertEquals(1, stillWaiting.get(0).position());
+    }
+
+    @Test
+    void bookingCannotJumpTheQueue() throws Exception {
+        int cancelled = service.book(first, TRAIN, DAY, "LOWER", false).reservationId();
+        service.book(second, TRAIN, DAY, "LOWER", false);
+        RailwayService.UserAccount waiting = TestDatabase.register(service);
+        service.joinWaitlist(waiting.userId(), TRAIN, DAY, "LOWER", false);
+        RailwayService.UserAccount next = TestDatabase.register(service);
+        service.joinWaitlist(next.userId(), TRAIN, DAY, "LOWER", false);
+
+        service.cancelReservation(first.userId(), cancelled);
+        // Whether or not the promoter has run yet, a seat freed for a queued departure is not sold
+        ServiceException e = assertThrows(ServiceException.class,
+            () -> service.book(first, TRAIN, DAY, "LOWER", false));
+        assertEquals(ServiceException.Kind.CONFLICT, e.getKind());
+        waitFor(() -> service.listReservations(waiting.userId()).size() == 1);
+        assertEquals(List.of(), service.listReservations(next.userId()));
+    }
+
+    @Test
+    void addedCapacityPromotesEveryoneItCan() throws Exception {
+        service.book(first, TRAIN, DAY, "LOWER", false);
+        service.book(second, TRAIN, DAY, "LOWER", false);
+        RailwayService.UserAccount[] waiting = new RailwayService.UserAccount[3];
+        for (int i = 0; i < waiting.length; i++) {
+            waiting[i] = TestDatabase.register(service);
+            service.joinWaitlist(waiting[i].userId(), TRAIN, DAY, "MIDDLE", false);
+        }
+
+        service.updateTrain(TRAIN, RailwayService.TrainField.SEATS, "4");
+        waitFor(() -> service.listWaitlist(waiting[1].userId()).isEmpty());
+
+        assertEquals(1, service.listReservations(waiting[0].userId()).size());
+        assertEquals(1, service.listReservations(waiting[1].userId()).size());
+        assertEquals(1, service.listWaitlist(waiting[2].userId()).size());
+        assertEquals(List.of(), service.listReservations(waiting[2].userId()));
+    }
+
+    @Test
+    void leavingTheQueueOnlyWorksForTheOwner() throws Exception {
+        service.book(first, TRAIN, DAY, "LOWER", false);
+        service.book(second, TRAIN, DAY, "LOWER", false);
+        RailwayService.UserAccount waiting = TestDatabase.register(service);
+        int waitlistId = service.joinWaitlist(waiting.userId(), TRAIN, DAY, "LOWER", false).waitlistId();
+
+        ServiceException e = assertThrows(ServiceException.class,
+            () -> service.leaveWaitlist(first.userId(), waitlistId));
+        assertEquals(ServiceException.Kind.NOT_FOUND, e.getKind());
+        service.leaveWaitlist(waiting.userId(), waitlistId);
+        assertEquals(List.of(), service.listWaitlist(waiting.userId()));
+    }
+}
@@ -0,0 +1,141 @@
+package com.sumanth.railway;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.mindrot.jbcrypt.BCrypt;
+
+/**
+ * Embedded H2 database in MySQL mode, seeded with a synthetic catalog and user population,
+ * behind the same pool settings and service the application uses.
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+    static final String PASSWORD = "benchmark-password";
+    static final LocalDate FIRST_DEPARTURE = LocalDate.of(2030, 1, 1);
+    static final int DEPARTURE_DAYS = 30;
+    // Large enough that no departure sells out during a run
+    static final int SEATS_PER_DEPARTURE = 1_000_000;
+
+    private static final AtomicInteger DATABASE_SEQUENCE = new AtomicInteger();
+    private static final int BATCH_SIZE = 1000;
+
+    final HikariDataSource dataSource;
+    final RailwayService service;
+    final int catalogSize;
+    final int userCount;
+
+    private BenchmarkDatabase(HikariDataSource dataSource, RailwayService service, int catalogSize, int userCount) {
+        this.dataSource = dataSource;
+        this.service = service;
+        this.catalogSize = catalogSize;
+        this.userCount = userCount;
+    }
+
+    static BenchmarkDatabase create(int catalogSize, int userCount, int reservationsPerUser) throws SQLException {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:bench" + DATABASE_SEQUENCE.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        config.setMaximumPoolSize(10);
+        config.setMinimumIdle(2);
+        HikariDataSource dataSource = new HikariDataSource(config);
+
+        try (Connection conn = dataSource.getConnection()) {
+            SchemaMigrations.migrate(conn);
+            conn.setAutoCommit(false);
+            seedTrains(conn, catalogSize);
+            seedUsers(conn, userCount);
+            seedReservations(conn, catalogSize, userCount, reservationsPerUser);
+            conn.commit();
+        }
+
+        SeatInventory seatInventory = new SeatInventory(dataSource);
+        seatInventory.load();
+        return new BenchmarkDatabase(dataSource, new RailwayService(dataSource, seatInventory), catalogSize, userCount);
+    }
+
+    static String userId(int index) {
+        return "BENCH" + index;
+    }
+
+    static RailwayService.UserAccount account(int index) {
+        return new RailwayService.UserAccount(userId(index), "Bench User");
+    }
+
+    static String username(int index) {
+        return "bench_user_" + index;
+    }
+
+    static int trainNo(int index) {
+        return 10_000 + index;
+    }
+
+    static LocalDate departure(int index) {
+        return FIRST_DEPARTURE.plusDays(index % DEPARTURE_DAYS);
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+
+    private static void seedTrains(Connection conn, int catalogSize) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO train_details VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < catalogSize; i++) {
+                pstmt.setString(1, "Express " + i);
+                pstmt.setInt(2, trainNo(i));
+                pstmt.setString(3, "Station " + (i % 500));
+                pstmt.setString(4, "Station " + ((i * 7 + 1) % 500));
+                pstmt.setString(5, "AC");
+                pstmt.setInt(6, SEATS_PER_DEPARTURE);
+                pstmt.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) pstmt.executeBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private static void seedUsers(Connection conn, int userCount) throws SQLException {
+        // One hash for everyone: hashing each user at the default cost would dominate setup
+        String hash = BCrypt.hashpw(PASSWORD, BCrypt.gensalt());
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO users VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < userCount; i++) {
+                pstmt.setString(1, userId(i));
+                pstmt.setString(2, username(i));
+                pstmt.setString(3, hash);
+                pstmt.setString(4, "Bench User");
+                pstmt.setString(5, "9000000000");
+                pstmt.setString(6, String.format("%012d", i));
+                pstmt.setString(7, "Benchmark Street");
+                pstmt.setString(8, "500001");
+                pstmt.setInt(9, 30);
+                pstmt.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) pstmt.executeBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private static void seedReservations(Connection conn, int catalogSize, int userCount,
+                                         int reservationsPerUser) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO reservations (user_id, train_no, berth_type, meals_required, departure_date) " +
+                "VALUES (?, ?, ?, ?, ?)")) {
+            int n = 0;
+            for (int user = 0; user < userCount; user++) {
+                for (int r = 0; r < reservationsPerUser; r++, n++) {
+                    pstmt.setString(1, userId(user));
+                    pstmt.setInt(2, trainNo(n % catalogSize));
+                    pstmt.setString(3, "LOWER");
+                    pstmt.setBoolean(4, r % 2 == 0);
+                    pstmt.setDate(5, java.sql.Date.valueOf(departure(n)));
+                    pstmt.addBatch();
+                    if ((n + 1) % BATCH_SIZE == 0) pstmt.executeBatch();
+                }
+            }
+            pstmt.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.sumanth.railway;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmark suite once per thread count and writes one JSON result file per run,
+ * so throughput and p99 can be compared release to release.
+ *
+ * Usage: BenchmarkRunner [threadCounts] [includeRegex], e.g. {@code BenchmarkRunner 1,4,16 Reservation}
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner() {}
+
+    public static void main(String[] args) throws RunnerException {
+        String threadCounts = args.length > 0 ? args[0] : "1,4,16";
+        String include = args.length > 1 ? args[1] : "com\\.sumanth\\.railway\\..*Benchmark";
+
+        for (String value : threadCounts.split(",")) {
+            int threads = Integer.parseInt(value.trim());
+            Options options = new OptionsBuilder()
+                .include(include)
+                .threads(threads)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-result-" + threads + "-threads.json")
+                .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.sumanth.railway;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * displayAllTrains and viewReservations through the service layer.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ListingBenchmark {
+    private static final int USERS = 256;
+
+    @Param({"1000", "50000"})
+    public int catalogSize;
+
+    @Param({"10", "200"})
+    public int reservationsPerUser;
+
+    private BenchmarkDatabase database;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = BenchmarkDatabase.create(catalogSize, USERS, reservationsPerUser);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<RailwayService.Train> displayAllTrains() throws SQLException {
+        return database.service.listTrains();
+    }
+
+    @Benchmark
+    public List<RailwayService.Reservation> viewReservations() throws SQLException {
+        String userId = BenchmarkDatabase.userId(ThreadLocalRandom.current().nextInt(USERS));
+        return database.service.listReservations(userId);
+    }
+}
@@ -0,0 +1,61 @@
+package com.sumanth.railway;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * loginUser: the user lookup plus BCrypt.checkpw at the default cost. The loginStorm group
+ * books seats on one thread while eight others log in, to show hashing stays off the booking path.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoginBenchmark {
+    private static final int USERS = 256;
+    private static final int TRAINS = 10;
+
+    private BenchmarkDatabase database;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = BenchmarkDatabase.create(TRAINS, USERS, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public RailwayService.UserAccount login() throws Exception {
+        String username = BenchmarkDatabase.username(ThreadLocalRandom.current().nextInt(USERS));
+        return database.service.authenticate(username, BenchmarkDatabase.PASSWORD);
+    }
+
+    @Benchmark
+    @Group("loginStorm")
+    @GroupThreads(8)
+    public Object stormLogin() throws Exception {
+        try {
+            return login();
+        } catch (ServiceException e) {
+            // Refused by the bounded auth queue; that is the point of the storm
+            return e;
+        }
+    }
+
+    @Benchmark
+    @Group("loginStorm")
+    @GroupThreads(1)
+    public RailwayService.Ticket bookDuringStorm() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return database.service.book(BenchmarkDatabase.account(random.nextInt(USERS)),
+            BenchmarkDatabase.trainNo(random.nextInt(TRAINS)),
+            BenchmarkDatabase.departure(random.nextInt(BenchmarkDatabase.DEPARTURE_DAYS)), "LOWER", false);
+    }
+}
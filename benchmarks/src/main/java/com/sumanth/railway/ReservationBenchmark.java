@@ -0,0 +1,81 @@
+package com.sumanth.railway;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * makeReservation and cancelReservation through the service layer.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReservationBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Catalog {
+        @Param({"1000", "50000"})
+        public int catalogSize;
+
+        BenchmarkDatabase database;
+        final AtomicInteger nextUser = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setUp() throws SQLException {
+            database = BenchmarkDatabase.create(catalogSize, 256, 0);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            database.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Traveller {
+        RailwayService.UserAccount account;
+
+        @Setup(Level.Trial)
+        public void setUp(Catalog catalog) {
+            account = BenchmarkDatabase.account(catalog.nextUser.getAndIncrement() % catalog.database.userCount);
+        }
+    }
+
+    // A booking made outside the measured region, so cancellation is timed on its own
+    @State(Scope.Thread)
+    public static class PendingReservation {
+        RailwayService.UserAccount account;
+        int reservationId;
+
+        @Setup(Level.Trial)
+        public void setUp(Catalog catalog) {
+            account = BenchmarkDatabase.account(catalog.nextUser.getAndIncrement() % catalog.database.userCount);
+        }
+
+        @Setup(Level.Invocation)
+        public void book(Catalog catalog) throws Exception {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int trainNo = BenchmarkDatabase.trainNo(random.nextInt(catalog.catalogSize));
+            LocalDate departure = BenchmarkDatabase.departure(random.nextInt(BenchmarkDatabase.DEPARTURE_DAYS));
+            reservationId = catalog.database.service.book(account, trainNo, departure, "LOWER", false).reservationId();
+        }
+    }
+
+    @Benchmark
+    public RailwayService.Ticket makeReservation(Catalog catalog, Traveller traveller) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int trainNo = BenchmarkDatabase.trainNo(random.nextInt(catalog.catalogSize));
+        LocalDate departure = BenchmarkDatabase.departure(random.nextInt(BenchmarkDatabase.DEPARTURE_DAYS));
+        return catalog.database.service.book(traveller.account, trainNo, departure, "LOWER", false);
+    }
+
+    @Benchmark
+    public void cancelReservation(Catalog catalog, PendingReservation pending) throws Exception {
+        catalog.database.service.cancelReservation(pending.account.userId(), pending.reservationId);
+    }
+}